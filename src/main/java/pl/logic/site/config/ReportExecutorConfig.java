@@ -0,0 +1,27 @@
+package pl.logic.site.config;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+/**
+ * Configuration of the executor generating reports in the background.
+ * The number of threads bounds the number of database connections held by report generation,
+ * jobs over the queue capacity are rejected.
+ */
+@Configuration
+public class ReportExecutorConfig {
+    @Bean
+    public ThreadPoolTaskExecutor reportExecutor(@Value("${report.executor.threads:2}") int threads,
+                                                 @Value("${report.executor.queue-capacity:20}") int queueCapacity) {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(threads);
+        executor.setMaxPoolSize(threads);
+        executor.setQueueCapacity(queueCapacity);
+        executor.setThreadNamePrefix("report-");
+        executor.setWaitForTasksToCompleteOnShutdown(false);
+        executor.initialize();
+        return executor;
+    }
+}
@@ -9,6 +9,8 @@ import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.annotation.Scope;
 import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.ContentDisposition;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
@@ -18,13 +20,17 @@ import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 import pl.logic.site.aspects.AuthorizationHeaderHolder;
 import pl.logic.site.aspects.ControllerUtils;
 import pl.logic.site.facade.ObjectFacade;
+import pl.logic.site.model.ReportProgress;
 import pl.logic.site.model.dao.ChartDAO;
 import pl.logic.site.model.dao.ReportDAO;
 import pl.logic.site.model.dao.SpecialisationDAO;
 import pl.logic.site.model.enums.LogType;
+import pl.logic.site.model.enums.ReportFiletype;
+import pl.logic.site.model.enums.ReportType;
 import pl.logic.site.model.exception.EntityNotFound;
 import pl.logic.site.model.exception.SaveError;
 import pl.logic.site.model.mysql.Chart;
@@ -35,6 +41,8 @@ import pl.logic.site.model.response.Response;
 import pl.logic.site.service.LoggingService;
 import pl.logic.site.utils.Consts;
 
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
@@ -59,18 +67,18 @@ public class StatisticsController  {
     //createNewReport
 
     @PostMapping(value = "/report", produces = MediaType.APPLICATION_JSON_VALUE)
-    @Operation(summary = "Create report based on the form, generate file and push it to database", description = "Create report based on the form, generate file and push it to database")
+    @Operation(summary = "Create report based on the form and queue the generation of its file", description = "Create report based on the form, the file is generated in the background, poll /report/{reportId}/status for its state")
     @ApiResponses(value = {
-            @ApiResponse(responseCode = "201", description = "Successfully created"),
+            @ApiResponse(responseCode = "202", description = "Successfully queued"),
             @ApiResponse(responseCode = "453", description = "Error during saving an entity")
     })
     public ResponseEntity<Response> createSpecialisation(@RequestBody ReportCreateForm reportCreateForm) {
         Report report = new Report();
         try {
             report = objectFacade.createReport(reportCreateForm);
-            loggingService.createLog(ControllerUtils.combinePaths(request) + Consts.LOG_SUCCESFULLY_CREATED + "Specialisation ", report,
+            loggingService.createLog(ControllerUtils.combinePaths(request) + Consts.LOG_SUCCESFULLY_CREATED + "Report ", report,
                     LogType.create, AuthorizationHeaderHolder.getAuthorizationHeader());
-            return ResponseEntity.status(HttpStatus.CREATED).body(new Response<>(Consts.C201, 201, "", report));
+            return ResponseEntity.status(HttpStatus.ACCEPTED).body(new Response<>(Consts.C201, 202, "", report));
         } catch (SaveError e) {
             loggingService.createLog(ControllerUtils.combinePaths(request) + Consts.LOG_ERROR, e.getStackTrace(),
                     LogType.error, AuthorizationHeaderHolder.getAuthorizationHeader());
@@ -82,6 +90,73 @@ public class StatisticsController  {
         }
     }
 
+    /**
+     * An endpoint for getting the generation state of a report
+     *
+     * @param reportId - id of the report
+     * @return HTTP response
+     */
+    @GetMapping(value = "/report/{reportId}/status", produces = MediaType.APPLICATION_JSON_VALUE)
+    @Operation(summary = "Get generation state of the report", description = "Get status (queued, running, done, failed) and progress of the report")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Successfully retrieved"),
+            @ApiResponse(responseCode = "404", description = "Not found")
+    })
+    public ResponseEntity<Response> getReportStatus(@Parameter(description = "reportId") @PathVariable int reportId) {
+        try {
+            ReportProgress progress = objectFacade.getReportProgress(reportId);
+            return ResponseEntity.ok(new Response<>(Consts.C200, 200, "", progress));
+        } catch (EntityNotFound e) {
+            loggingService.createLog(ControllerUtils.combinePaths(request) + Consts.LOG_ERROR, e.getStackTrace(),
+                    LogType.error, AuthorizationHeaderHolder.getAuthorizationHeader());
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).body(new Response<>(e.getMessage(), 404, Arrays.toString(e.getStackTrace()), null));
+        } catch (Exception e) {
+            loggingService.createLog(ControllerUtils.combinePaths(request) + Consts.LOG_ERROR, e.getStackTrace(),
+                    LogType.error, AuthorizationHeaderHolder.getAuthorizationHeader());
+            return ResponseEntity.status(500).body(new Response<>(e.getMessage(), 500, Arrays.toString(e.getStackTrace()), null));
+        }
+    }
+
+    /**
+     * An endpoint streaming the file of a generated report from the report artifact store
+     *
+     * @param reportId - id of the report
+     * @return HTTP response with the file
+     */
+    @GetMapping(value = "/report/{reportId}/file")
+    @Operation(summary = "Download file of the report", description = "Stream the PDF or CSV file of a generated report")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Successfully retrieved"),
+            @ApiResponse(responseCode = "404", description = "Report not found or not generated yet")
+    })
+    public ResponseEntity<StreamingResponseBody> downloadReportFile(@Parameter(description = "reportId") @PathVariable int reportId) {
+        Report report;
+        try {
+            report = objectFacade.getReport(reportId);
+            if (report.getFileHash() == null) {
+                return ResponseEntity.notFound().build();
+            }
+        } catch (EntityNotFound e) {
+            loggingService.createLog(ControllerUtils.combinePaths(request) + Consts.LOG_ERROR, e.getStackTrace(),
+                    LogType.error, AuthorizationHeaderHolder.getAuthorizationHeader());
+            return ResponseEntity.notFound().build();
+        }
+        MediaType contentType = report.getFiletype() == ReportFiletype.pdf ? MediaType.APPLICATION_PDF
+                : new MediaType("text", "csv", StandardCharsets.UTF_8);
+        StreamingResponseBody body = out -> {
+            try (InputStream in = objectFacade.openReportFile(report)) {
+                in.transferTo(out);
+            }
+        };
+        return ResponseEntity.ok()
+                .header(HttpHeaders.CONTENT_DISPOSITION, ContentDisposition.attachment()
+                        .filename(report.getTitle() + "." + report.getFiletype(), StandardCharsets.UTF_8).build().toString())
+                .header(HttpHeaders.ETAG, "\"" + report.getFileHash() + "\"")
+                .contentLength(report.getFileSize())
+                .contentType(contentType)
+                .body(body);
+    }
+
     /**
      * An endpoint for getting all reports by doctor id
      *
@@ -112,6 +187,35 @@ public class StatisticsController  {
         }
     }
 
+    /**
+     * An endpoint streaming a table report as a CSV file, the file is written straight to the response
+     *
+     * @param reportType - symptoms_date, diseases_date, symptoms_age_groups or diseases_age_groups
+     * @param doctorId - id of the doctor
+     * @param fromDate - start date
+     * @param toDate - end date
+     * @return HTTP response with the CSV file
+     */
+    @GetMapping(value = "/export/{reportType}", produces = "text/csv")
+    @Operation(summary = "Export table report as CSV", description = "Stream the table report for a specific doctor and date range as a CSV file")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Successfully retrieved"),
+            @ApiResponse(responseCode = "400", description = "Report type is not a table report")
+    })
+    public ResponseEntity<StreamingResponseBody> exportCSVReport(@Parameter(description = "reportType") @PathVariable ReportType reportType,
+                                                                 @Parameter(description = "doctorId") @RequestParam int doctorId,
+                                                                 @Parameter(description = "from date") @DateTimeFormat(pattern = "yyyy-MM-dd") @RequestParam Date fromDate,
+                                                                 @Parameter(description = "to date") @DateTimeFormat(pattern = "yyyy-MM-dd") @RequestParam Date toDate) {
+        if (reportType == ReportType.user || reportType == ReportType.diseases) {
+            return ResponseEntity.badRequest().build();
+        }
+        StreamingResponseBody body = out -> objectFacade.writeCSVReport(reportType, doctorId, fromDate, toDate, out);
+        return ResponseEntity.ok()
+                .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"" + reportType + "_report.csv\"")
+                .contentType(new MediaType("text", "csv", StandardCharsets.UTF_8))
+                .body(body);
+    }
+
     @GetMapping(value = "/symptoms/date", produces = MediaType.APPLICATION_JSON_VALUE)
     @Operation(summary = "Get symptoms by date range", description = "Get symptoms for a specific doctor by date range")
     @ApiResponses(value = {
@@ -3,7 +3,9 @@ package pl.logic.site.facade;
 import lombok.RequiredArgsConstructor;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
+import pl.logic.site.model.ReportProgress;
 import pl.logic.site.model.dao.*;
+import pl.logic.site.model.enums.ReportType;
 import pl.logic.site.model.exception.UnknownObjectType;
 import pl.logic.site.model.mysql.Chart;
 import pl.logic.site.model.mysql.ChartSymptom;
@@ -14,7 +16,9 @@ import pl.logic.site.model.reportsForms.ReportCreateForm;
 import pl.logic.site.service.*;
 import pl.logic.site.utils.Consts;
 
-import java.sql.SQLException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.util.Date;
 import java.util.List;
 import java.util.Optional;
@@ -187,10 +191,26 @@ public class ObjectFacade {
         }
     }
 
-    public Report createReport(ReportCreateForm reportCreateForm) throws SQLException {
+    public Report createReport(ReportCreateForm reportCreateForm) {
         return statisticsService.createReport(reportCreateForm);
     }
 
+    public ReportProgress getReportProgress(int reportId) {
+        return statisticsService.getReportProgress(reportId);
+    }
+
+    public Report getReport(int reportId) {
+        return reportService.getReport(reportId);
+    }
+
+    public InputStream openReportFile(Report report) throws IOException {
+        return reportService.openReportFile(report);
+    }
+
+    public void writeCSVReport(ReportType reportType, int idDoctor, Date fromDate, Date toDate, OutputStream out) throws IOException {
+        statisticsService.writeCSVReport(reportType, idDoctor, fromDate, toDate, out);
+    }
+
     public List<List<Object>> getSymptomsDate(int idDoctor, Date fromDate, Date toDate) {
         return statisticsService.getSymptomsDate(idDoctor, fromDate, toDate);
     }
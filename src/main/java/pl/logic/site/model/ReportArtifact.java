@@ -0,0 +1,10 @@
+package pl.logic.site.model;
+
+/**
+ * A stored report file, identified by its content.
+ *
+ * @param hash SHA-256 of the file as a lowercase hex string
+ * @param size size of the file in bytes
+ */
+public record ReportArtifact(String hash, long size) {
+}
@@ -2,36 +2,35 @@ package pl.logic.site.model;
 
 import lombok.Data;
 import pl.logic.site.model.enums.ReportFiletype;
+import pl.logic.site.model.enums.ReportStatus;
 import pl.logic.site.model.mysql.Report;
 
-import java.io.IOException;
-import java.io.InputStream;
-import java.sql.Blob;
-import java.sql.SQLException;
-import java.util.Base64;
+import java.util.Date;
 
+/**
+ * Metadata of a report, the file itself is downloaded from /statisticsController/report/{reportId}/file.
+ */
 @Data
 public class ReportDTO {
     private int id;
     private String idDoctor;
-    private String file; // Base64 encoded string
     private ReportFiletype filetype;
     private String title;
+    private ReportStatus status;
+    private Integer progress;
+    private String fileHash;
+    private Long fileSize;
+    private Date creationDate;
 
-    public ReportDTO(Report report) throws SQLException, IOException {
+    public ReportDTO(Report report) {
         this.id = report.getId();
         this.idDoctor = report.getIdDoctor();
         this.filetype = report.getFiletype();
         this.title = report.getTitle();
-        if (report.getFile() != null) {
-            this.file = encodeBlobToBase64(report.getFile());
-        }
+        this.status = report.getStatus() == null ? ReportStatus.done : report.getStatus();
+        this.progress = report.getStatus() == null ? Integer.valueOf(100) : report.getProgress();
+        this.fileHash = report.getFileHash();
+        this.fileSize = report.getFileSize();
+        this.creationDate = report.getCreationDate();
     }
-
-    private String encodeBlobToBase64(Blob blob) throws SQLException, IOException {
-        try (InputStream inputStream = blob.getBinaryStream()) {
-            byte[] bytes = inputStream.readAllBytes();
-            return Base64.getEncoder().encodeToString(bytes);
-        }
-    }
-}
\ No newline at end of file
+}
@@ -0,0 +1,14 @@
+package pl.logic.site.model;
+
+import pl.logic.site.model.enums.ReportStatus;
+
+/**
+ * The generation state of a report, without its file.
+ *
+ * @param id       id of the report
+ * @param status   state of the generation
+ * @param progress percent of the generation
+ * @param error    reason of the failure, null if the report has not failed
+ */
+public record ReportProgress(int id, ReportStatus status, Integer progress, String error) {
+}
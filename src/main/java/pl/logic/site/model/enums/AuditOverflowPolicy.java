@@ -0,0 +1,10 @@
+package pl.logic.site.model.enums;
+
+/**
+ * What happens to a log when the audit log queue is full.
+ */
+public enum AuditOverflowPolicy {
+    block, // the request waits for space in the queue
+    drop, // the log is discarded
+    spill // the log is appended to a local file and written to the database when the queue is idle
+}
@@ -0,0 +1,7 @@
+package pl.logic.site.model.enums;
+
+public enum ChangeType {
+    created,
+    updated,
+    deleted
+}
@@ -0,0 +1,8 @@
+package pl.logic.site.model.enums;
+
+public enum ReportStatus {
+    queued,
+    running,
+    done,
+    failed
+}
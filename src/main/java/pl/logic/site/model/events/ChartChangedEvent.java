@@ -0,0 +1,15 @@
+package pl.logic.site.model.events;
+
+import pl.logic.site.model.enums.ChangeType;
+import pl.logic.site.model.mysql.Chart;
+
+/**
+ * Published after a chart or one of its symptoms (recognitions) was created, updated or deleted.
+ *
+ * @param chartId    the id of the changed chart
+ * @param chart      the changed chart (its state before removal for deleted charts),
+ *                   or null if only the symptoms of the chart have changed
+ * @param changeType the kind of change
+ */
+public record ChartChangedEvent(int chartId, Chart chart, ChangeType changeType) {
+}
@@ -0,0 +1,13 @@
+package pl.logic.site.model.events;
+
+import pl.logic.site.model.enums.ChangeType;
+import pl.logic.site.model.mysql.DiagnosisRequest;
+
+/**
+ * Published after a diagnosis request was created, updated or deleted.
+ *
+ * @param diagnosisRequest the changed diagnosis request (its state before removal for deleted requests)
+ * @param changeType       the kind of change
+ */
+public record DiagnosisRequestChangedEvent(DiagnosisRequest diagnosisRequest, ChangeType changeType) {
+}
@@ -0,0 +1,11 @@
+package pl.logic.site.model.events;
+
+/**
+ * Published after an update moved a diagnosis request to another doctor,
+ * in addition to the DiagnosisRequestChangedEvent which carries only the new doctor.
+ *
+ * @param diagnosisRequestId the id of the moved diagnosis request
+ * @param previousIdDoctor   the id of the doctor the request belonged to before the update
+ */
+public record DiagnosisRequestReassignedEvent(int diagnosisRequestId, int previousIdDoctor) {
+}
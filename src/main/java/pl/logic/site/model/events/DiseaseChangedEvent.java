@@ -0,0 +1,12 @@
+package pl.logic.site.model.events;
+
+import pl.logic.site.model.enums.ChangeType;
+
+/**
+ * Published after a disease was created, updated or deleted.
+ *
+ * @param diseaseId  the id of the changed disease
+ * @param changeType the kind of change
+ */
+public record DiseaseChangedEvent(int diseaseId, ChangeType changeType) {
+}
@@ -0,0 +1,61 @@
+package pl.logic.site.model.events;
+
+import jakarta.persistence.PostPersist;
+import jakarta.persistence.PostRemove;
+import jakarta.persistence.PostUpdate;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.stereotype.Component;
+import pl.logic.site.model.enums.ChangeType;
+import pl.logic.site.model.mysql.Chart;
+import pl.logic.site.model.mysql.ChartSymptom;
+import pl.logic.site.model.mysql.DiagnosisRequest;
+import pl.logic.site.model.mysql.Disease;
+import pl.logic.site.model.mysql.Patient;
+
+/**
+ * JPA entity listener that turns writes of the entities the prediction dataset depends on into application events.
+ * Hibernate obtains the listener from the Spring context, so the publisher is injected as in any other bean.
+ * The events are published inside the writing transaction, listeners that read the database should
+ * use TransactionalEventListener to see the committed state.
+ */
+@Component
+public class EntityChangeListener {
+    @Autowired
+    private ApplicationEventPublisher publisher;
+
+    @PostPersist
+    public void postPersist(Object entity) {
+        publish(entity, ChangeType.created);
+    }
+
+    @PostUpdate
+    public void postUpdate(Object entity) {
+        publish(entity, ChangeType.updated);
+    }
+
+    @PostRemove
+    public void postRemove(Object entity) {
+        publish(entity, ChangeType.deleted);
+    }
+
+    /**
+     * Publishes the event matching the type of the changed entity.
+     *
+     * @param entity     the changed entity
+     * @param changeType the kind of change
+     */
+    private void publish(Object entity, ChangeType changeType) {
+        switch (entity) {
+            case DiagnosisRequest diagnosisRequest ->
+                    publisher.publishEvent(new DiagnosisRequestChangedEvent(diagnosisRequest, changeType));
+            case ChartSymptom chartSymptom ->
+                    publisher.publishEvent(new ChartChangedEvent(chartSymptom.getIdChart(), null, ChangeType.updated));
+            case Chart chart -> publisher.publishEvent(new ChartChangedEvent(chart.getId(), chart, changeType));
+            case Patient patient -> publisher.publishEvent(new PatientChangedEvent(patient.getId(), patient.getBirth_date(), changeType));
+            case Disease disease -> publisher.publishEvent(new DiseaseChangedEvent(disease.getId(), changeType));
+            default -> {
+            }
+        }
+    }
+}
@@ -0,0 +1,15 @@
+package pl.logic.site.model.events;
+
+import pl.logic.site.model.enums.ChangeType;
+
+import java.util.Date;
+
+/**
+ * Published after a patient was created, updated or deleted.
+ *
+ * @param patientId  the id of the changed patient
+ * @param birthDate  the birth date of the patient after the change, null if it is unknown
+ * @param changeType the kind of change
+ */
+public record PatientChangedEvent(int patientId, Date birthDate, ChangeType changeType) {
+}
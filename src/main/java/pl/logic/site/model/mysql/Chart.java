@@ -1,6 +1,7 @@
 package pl.logic.site.model.mysql;
 
 import jakarta.persistence.Entity;
+import jakarta.persistence.EntityListeners;
 import jakarta.persistence.GeneratedValue;
 import jakarta.persistence.GenerationType;
 import lombok.AllArgsConstructor;
@@ -10,6 +11,7 @@ import lombok.NoArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import jakarta.persistence.Id;
 import org.springframework.data.annotation.Immutable;
+import pl.logic.site.model.events.EntityChangeListener;
 
 
 import jakarta.persistence.Column;
@@ -23,6 +25,7 @@ import java.util.Date;
 @AllArgsConstructor
 @NoArgsConstructor
 @Entity
+@EntityListeners(EntityChangeListener.class)
 public class Chart {
     @Id
     @GeneratedValue(strategy = GenerationType.IDENTITY)
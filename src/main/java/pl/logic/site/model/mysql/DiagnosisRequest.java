@@ -7,6 +7,7 @@ import lombok.Data;
 import lombok.NoArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.data.annotation.Immutable;
+import pl.logic.site.model.events.EntityChangeListener;
 
 
 import java.util.Date;
@@ -18,6 +19,7 @@ import java.util.Date;
 @AllArgsConstructor
 @NoArgsConstructor
 @Entity
+@EntityListeners(EntityChangeListener.class)
 @Table(name = "diagnosis_request")
 public class DiagnosisRequest {
     @Id
@@ -0,0 +1,35 @@
+package pl.logic.site.model.mysql;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.annotation.Immutable;
+
+@Slf4j
+@Immutable
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+@Entity
+@Table(name = "diagnosis_request_disease",
+        indexes = @Index(name = "idx_diagnosis_request_disease_request", columnList = "id_diagnosis_request"))
+public class DiagnosisRequestDisease {
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @Column(name = "id")
+    private int id;
+
+    @Column(name = "id_diagnosis_request", nullable = false)
+    private int idDiagnosisRequest;
+
+    @Column(name = "id_disease", nullable = false)
+    private int idDisease = -1; // -1 if no disease was found in the diagnosis
+
+    @Column(name = "diagnosis_crc", nullable = false)
+    private long diagnosisCrc; // CRC32 of the diagnosis the link was resolved from, the link is stale if it differs
+
+    @Column(name = "diseases_crc", nullable = false)
+    private long diseasesCrc; // checksum of the diseases the link was resolved from, the link is stale if it differs
+}
@@ -7,6 +7,7 @@ import lombok.Data;
 import lombok.NoArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.data.annotation.Immutable;
+import pl.logic.site.model.events.EntityChangeListener;
 
 @Slf4j
 @Immutable
@@ -14,6 +15,7 @@ import org.springframework.data.annotation.Immutable;
 @AllArgsConstructor
 @NoArgsConstructor
 @Entity
+@EntityListeners(EntityChangeListener.class)
 public class Disease {
     @Id
     @GeneratedValue(strategy = GenerationType.IDENTITY)
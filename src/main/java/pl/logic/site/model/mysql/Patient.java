@@ -7,6 +7,7 @@ import lombok.Data;
 import lombok.NoArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.data.annotation.Immutable;
+import pl.logic.site.model.events.EntityChangeListener;
 import pl.logic.site.model.enums.Status;
 import java.time.LocalDate;
 import java.time.Period;
@@ -21,6 +22,7 @@ import java.util.Date;
 @Slf4j
 @Immutable
 @Entity
+@EntityListeners(EntityChangeListener.class)
 @Table(name = "patient")
 public class Patient {
     @Id
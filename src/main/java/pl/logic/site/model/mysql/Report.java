@@ -8,9 +8,9 @@ import lombok.NoArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.data.annotation.Immutable;
 import pl.logic.site.model.enums.ReportFiletype;
+import pl.logic.site.model.enums.ReportStatus;
 import pl.logic.site.model.enums.Status;
 
-import java.sql.Blob;
 import java.util.Base64;
 import java.util.Date;
 
@@ -31,8 +31,11 @@ public class Report {
     @Column(name = "id_doctor", nullable = false)
     private String idDoctor;
 
-    @Column(name = "file")
-    private Blob file; //file encoded as base64
+    @Column(name = "file_hash", length = 64)
+    private String fileHash; // SHA-256 of the file in the report artifact store, null until the report is done
+
+    @Column(name = "file_size")
+    private Long fileSize; // bytes
 
     @Column(name = "filetype", nullable = false)
     @Enumerated(EnumType.STRING)
@@ -40,4 +43,20 @@ public class Report {
 
     @Column(name = "title", nullable = false)
     private String title;
+
+    @Column(name = "status")
+    @Enumerated(EnumType.STRING)
+    private ReportStatus status; // null for reports created before asynchronous generation (done)
+
+    @Column(name = "progress")
+    private Integer progress; // percent
+
+    @Column(name = "error")
+    private String error;
+
+    @Column(name = "creation_date")
+    private Date creationDate;
+
+    @Column(name = "instance_id", length = 64)
+    private String instanceId; // the application instance generating the report, null for reports created before
 }
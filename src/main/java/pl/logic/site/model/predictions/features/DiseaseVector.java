@@ -29,4 +29,41 @@ public class DiseaseVector implements Serializable {
         this.disease = disease;
         this.featureVector = new FeatureVector(patient.getHeight(), patient.getWeight(), patient.getGender(), patient.getBirth_date(), symptoms);
     }
+
+    /**
+     * Creates a new DiseaseVector instance with symptoms encoded in the column order of a SymptomIndex.
+     *
+     * @param disease       The disease that the patient has
+     * @param patient       The patient for whom the vector is being created
+     * @param symptomValues The values of all indexed symptoms, the value of column i is the value of the i-th symptom
+     */
+    public DiseaseVector(Disease disease, Patient patient, String[] symptomValues) {
+        this.disease = disease;
+        this.featureVector = new FeatureVector(patient.getHeight(), patient.getWeight(), patient.getGender(), patient.getBirth_date(), symptomValues);
+    }
+
+    /**
+     * Creates a new DiseaseVector instance with symptom values interned to codes of ValueEncoder.SYMPTOM_VALUES
+     * in the column order of a SymptomIndex.
+     *
+     * @param disease      The disease that the patient has
+     * @param patient      The patient for whom the vector is being created
+     * @param symptomCodes The codes of the values of all indexed symptoms
+     */
+    public DiseaseVector(Disease disease, Patient patient, byte[] symptomCodes) {
+        this.disease = disease;
+        this.featureVector = new FeatureVector(patient.getHeight(), patient.getWeight(), patient.getGender(), patient.getBirth_date(), symptomCodes);
+    }
+
+    /**
+     * Creates a new DiseaseVector instance with an already created feature vector,
+     * e.g. one shared by all diseases of the same chart.
+     *
+     * @param disease       The disease that the patient has
+     * @param featureVector The features of the patient and his chart
+     */
+    public DiseaseVector(Disease disease, FeatureVector featureVector) {
+        this.disease = disease;
+        this.featureVector = featureVector;
+    }
 }
@@ -0,0 +1,107 @@
+package pl.logic.site.model.predictions.features;
+
+import pl.logic.site.model.mysql.Disease;
+
+import java.util.List;
+
+/**
+ * A class that represents the whole learning set packed into a single row-major array of primitives.
+ * Every row holds the packed features of one DiseaseVector and the label array holds its disease,
+ * so the distance loop of KNN scans contiguous memory without boxing or per-call allocation.
+ *
+ * @author Kacper
+ */
+public class FeatureMatrix {
+    private final double[] features;
+    private final Disease[] labels;
+    private final int rows;
+    private final int columns;
+
+    /**
+     * Packs the given disease vectors into a new feature matrix.
+     *
+     * @param diseaseVectors the vectors to pack, all of them must have the same number of features
+     * @throws IllegalArgumentException if the vectors have different number of features
+     */
+    public FeatureMatrix(List<DiseaseVector> diseaseVectors) {
+        this.rows = diseaseVectors.size();
+        this.columns = rows == 0 ? 0 : diseaseVectors.getFirst().getFeatureVector().getLength();
+        this.features = new double[rows * columns];
+        this.labels = new Disease[rows];
+        for (int i = 0; i < rows; i++) {
+            DiseaseVector diseaseVector = diseaseVectors.get(i);
+            FeatureVector featureVector = diseaseVector.getFeatureVector();
+            if (featureVector.getLength() != columns) {
+                throw new IllegalArgumentException("All vectors must have the same number of features");
+            }
+            featureVector.copyFeatures(features, i * columns);
+            labels[i] = diseaseVector.getDisease();
+        }
+    }
+
+    /**
+     * Creates a feature matrix over already packed features.
+     *
+     * @param features the packed features, row i starts at index i * columns
+     * @param labels   the disease of every row
+     * @param columns  the number of features in every row
+     * @throws IllegalArgumentException if the size of features does not match labels and columns
+     */
+    public FeatureMatrix(double[] features, Disease[] labels, int columns) {
+        if (features.length != labels.length * columns) {
+            throw new IllegalArgumentException("Features must have exactly labels.length * columns elements");
+        }
+        this.rows = labels.length;
+        this.columns = columns;
+        this.features = features;
+        this.labels = labels;
+    }
+
+    /**
+     * Returns the backing array of the matrix. Row i starts at index i * getColumns().
+     * The array is shared, so it must not be modified.
+     *
+     * @return the packed features of all rows
+     */
+    public double[] getFeatures() {
+        return features;
+    }
+
+    /**
+     * Returns the disease (label) of the given row.
+     *
+     * @param row the row index
+     * @return the disease of the row
+     */
+    public Disease getLabel(int row) {
+        return labels[row];
+    }
+
+    /**
+     * Returns the index in the backing array at which the given row starts.
+     *
+     * @param row the row index
+     * @return the offset of the row
+     */
+    public int getOffset(int row) {
+        return row * columns;
+    }
+
+    /**
+     * Returns the number of rows (vectors) in the matrix.
+     *
+     * @return the number of rows
+     */
+    public int getRows() {
+        return rows;
+    }
+
+    /**
+     * Returns the number of features in every row.
+     *
+     * @return the number of columns
+     */
+    public int getColumns() {
+        return columns;
+    }
+}
@@ -5,11 +5,14 @@ import pl.logic.site.model.exception.IllegalHeight;
 import pl.logic.site.model.exception.IllegalWeight;
 
 import java.util.*;
+import java.util.concurrent.TimeUnit;
 
+import static pl.logic.site.utils.predictions.PredictionConsts.MAX_DATE_DIFF;
 import static pl.logic.site.utils.predictions.PredictionConsts.MAX_HEIGHT;
 import static pl.logic.site.utils.predictions.PredictionConsts.MAX_WEIGHT;
-import static pl.logic.site.utils.predictions.GenderDict.genderDict;
-import static pl.logic.site.utils.predictions.SymptomsDict.symptomsDict;
+import static pl.logic.site.utils.predictions.ValueEncoder.ABSENT;
+import static pl.logic.site.utils.predictions.ValueEncoder.GENDERS;
+import static pl.logic.site.utils.predictions.ValueEncoder.SYMPTOM_VALUES;
 
 /**
  * A class that represents a feature vector.
@@ -18,11 +21,19 @@ import static pl.logic.site.utils.predictions.SymptomsDict.symptomsDict;
  * @author Kacper
  */
 public class FeatureVector implements Vector {
+    private static final int PACKED_PERSONAL_INFO = 3;
+    private static final int PACKED_DATES = 1;
+    private static final double MILLIS_PER_DAY = TimeUnit.DAYS.toMillis(1);
+    /**
+     * The index of the first symptom in the packed representation of a vector.
+     */
+    public static final int PACKED_SYMPTOMS_OFFSET = PACKED_PERSONAL_INFO + PACKED_DATES;
+
     private double height;
     private double weight;
     private double gender;
     private Date birth_date;
-    private HashMap<String, Double> symptoms;
+    private double[] symptoms;
 
     /**
      * Constructs a new feature vector with the specified personal information, date, and symptom values.
@@ -33,19 +44,79 @@ public class FeatureVector implements Vector {
      * @param gender    the gender of the patient, as a string
      * @param birth_date the date of birth of the patient
      * @param symptoms  a map of symptom names to values, where the keys and values are a string.
-     *                  Key is a symptom name, value is a symptom value
+     *                  Key is a symptom name, value is a symptom value.
+     *                  Symptom columns are ordered by symptom name.
      * @throws IllegalGender    if the specified gender is not valid
      * @throws IllegalHeight    if the specified height is not valid
      * @throws IllegalWeight    if the specified weight is not valid
      */
     public FeatureVector(double height, double weight, String gender, Date birth_date, HashMap<String, String> symptoms)
             throws IllegalGender, IllegalHeight, IllegalWeight {
+        this(height, weight, gender, birth_date, new TreeMap<>(symptoms).values().toArray(new String[0]));
+    }
+
+    /**
+     * Constructs a new feature vector with symptom values already ordered by the columns of a SymptomIndex.
+     * With automatically convert the given parameters to numeric values
+     *
+     * @param height        the height of the patient, (in cm)
+     * @param weight        the weight of the patient, (in kilograms)
+     * @param gender        the gender of the patient, as a string
+     * @param birth_date    the date of birth of the patient
+     * @param symptomValues the symptom values, the value of column i is the value of the i-th indexed symptom
+     * @throws IllegalGender    if the specified gender is not valid
+     * @throws IllegalHeight    if the specified height is not valid
+     * @throws IllegalWeight    if the specified weight is not valid
+     */
+    public FeatureVector(double height, double weight, String gender, Date birth_date, String[] symptomValues)
+            throws IllegalGender, IllegalHeight, IllegalWeight {
+        this(height, weight, gender, birth_date, symptomsToCodes(symptomValues));
+    }
+
+    /**
+     * Constructs a new feature vector with symptom values already interned to codes of ValueEncoder.SYMPTOM_VALUES
+     * and ordered by the columns of a SymptomIndex.
+     *
+     * @param height       the height of the patient, (in cm)
+     * @param weight       the weight of the patient, (in kilograms)
+     * @param gender       the gender of the patient, as a string
+     * @param birth_date   the date of birth of the patient
+     * @param symptomCodes the codes of the symptom values, the code of column i is the code of the i-th indexed symptom
+     * @throws IllegalGender    if the specified gender is not valid
+     * @throws IllegalHeight    if the specified height is not valid
+     * @throws IllegalWeight    if the specified weight is not valid
+     */
+    public FeatureVector(double height, double weight, String gender, Date birth_date, byte[] symptomCodes)
+            throws IllegalGender, IllegalHeight, IllegalWeight {
         this.height = heightToDouble(height);
         this.weight = weightToDouble(weight);
         this.gender = genderToDouble(gender);
         this.birth_date = birth_date;
-        this.symptoms = new HashMap<>();
-        symptomsToDouble(symptoms);
+        this.symptoms = new double[symptomCodes.length];
+        SYMPTOM_VALUES.decode(symptomCodes, this.symptoms, 0);
+    }
+
+    private FeatureVector(double height, double weight, double gender, Date birth_date, double[] symptoms) {
+        this.height = height;
+        this.weight = weight;
+        this.gender = gender;
+        this.birth_date = birth_date;
+        this.symptoms = symptoms;
+    }
+
+    /**
+     * Restores a feature vector from already normalized features, e.g. read from a dataset snapshot file.
+     * The features are not validated again.
+     *
+     * @param height     the normalized height
+     * @param weight     the normalized weight
+     * @param gender     the numeric representation of the gender
+     * @param birth_date the date of birth of the patient
+     * @param symptoms   the numeric values of the symptoms, the array is not copied
+     * @return the restored feature vector
+     */
+    public static FeatureVector restore(double height, double weight, double gender, Date birth_date, double[] symptoms) {
+        return new FeatureVector(height, weight, gender, birth_date, symptoms);
     }
 
     /**
@@ -83,9 +154,45 @@ public class FeatureVector implements Vector {
      */
     @Override
     public Double[] getSymptomFeatures() {
-        List<Double> result = new ArrayList<>(this.symptoms.values());
+        return Arrays.stream(this.symptoms).boxed().toArray(Double[]::new);
+    }
 
-        return result.toArray(new Double[0]);
+    /**
+     * Returns the number of features in the packed representation of the vector.
+     *
+     * @return the number of packed features
+     */
+    public int getLength() {
+        return PACKED_PERSONAL_INFO + PACKED_DATES + this.symptoms.length;
+    }
+
+    /**
+     * Returns all features of the vector packed into a single primitive array.
+     *
+     * @return the packed features
+     * @see #copyFeatures(double[], int)
+     */
+    public double[] getPackedFeatures() {
+        double[] result = new double[getLength()];
+        copyFeatures(result, 0);
+        return result;
+    }
+
+    /**
+     * Copies the packed features into the given array starting at the given offset.
+     * The layout is: height, weight, gender, birth date (in days normalized by MAX_DATE_DIFF), symptoms.
+     * Because the date is stored as a normalized number of days, the squared difference of two packed dates
+     * is the date part of the Euclidean distance.
+     *
+     * @param target the array to copy the features into
+     * @param offset the index in target at which the first feature is written
+     */
+    public void copyFeatures(double[] target, int offset) {
+        target[offset++] = this.height;
+        target[offset++] = this.weight;
+        target[offset++] = this.gender;
+        target[offset++] = (double) this.birth_date.getTime() / MILLIS_PER_DAY / MAX_DATE_DIFF;
+        System.arraycopy(this.symptoms, 0, target, offset, this.symptoms.length);
     }
 
     /**
@@ -96,13 +203,11 @@ public class FeatureVector implements Vector {
      * @throws IllegalGender if the specified gender is not valid (is not in GenderDict)
      */
     private double genderToDouble(String gender) {
-        String tempGender = gender.toLowerCase();
-        for (int i = 0; i < genderDict.size(); i++) {
-            if (tempGender.equals(genderDict.keySet().toArray()[i])) {
-                return genderDict.get(tempGender);
-            }
+        byte code = gender == null ? ABSENT : GENDERS.code(gender.toLowerCase());
+        if (code == ABSENT) {
+            throw new IllegalGender("Invalid gender dictionary");
         }
-        throw new IllegalGender("Invalid gender dictionary");
+        return GENDERS.weight(code);
     }
 
     /**
@@ -141,19 +246,17 @@ public class FeatureVector implements Vector {
     }
 
     /**
-     * Converts a map of symptoms' values which are Strings to normalized numeric values.
+     * Interns symptoms' values which are Strings to the codes of ValueEncoder.SYMPTOM_VALUES.
+     * A value missing from SymptomsDict is treated as an absent symptom (0.0), so the column is kept.
      *
-     * @param symptoms a map of symptom names and (String) values
+     * @param symptomValues the (String) values of symptoms
+     * @return the codes of the values of symptoms, in the same order
      */
-    private void symptomsToDouble(HashMap<String, String> symptoms) {
-        for (Map.Entry<String, String> entry : symptoms.entrySet()) {
-            String symptom = entry.getKey();
-            String value = entry.getValue();
-            for (int i = 0; i < symptomsDict.size(); i++) {
-                if (value.equals(symptomsDict.keySet().toArray()[i])) {
-                    this.symptoms.put(symptom, symptomsDict.get(value));
-                }
-            }
+    private static byte[] symptomsToCodes(String[] symptomValues) {
+        byte[] result = new byte[symptomValues.length];
+        for (int i = 0; i < symptomValues.length; i++) {
+            result[i] = SYMPTOM_VALUES.code(symptomValues[i]);
         }
+        return result;
     }
 }
@@ -0,0 +1,93 @@
+package pl.logic.site.model.predictions.features;
+
+import pl.logic.site.model.mysql.Symptom;
+
+import java.util.*;
+
+/**
+ * A class that assigns every symptom a fixed column in the symptom part of a feature vector.
+ * Columns are ordered by symptom id, so every vector encoded with the same index has the same length
+ * and the same meaning of every column, regardless of the order in which symptoms were read.
+ *
+ * @author Kacper
+ */
+public class SymptomIndex {
+    private final int[] symptomIds;
+    private final String[] symptomNames;
+    private final HashMap<String, Integer> columnsByName;
+
+    /**
+     * Creates a new symptom index from the given symptoms (typically all symptoms from the database).
+     *
+     * @param symptoms the symptoms to index, duplicated ids are indexed once
+     */
+    public SymptomIndex(List<Symptom> symptoms) {
+        List<Symptom> sorted = symptoms.stream()
+                .sorted(Comparator.comparingInt(Symptom::getId))
+                .toList();
+        List<Symptom> distinct = new ArrayList<>(sorted.size());
+        for (Symptom symptom : sorted) {
+            if (distinct.isEmpty() || distinct.getLast().getId() != symptom.getId()) {
+                distinct.add(symptom);
+            }
+        }
+        this.symptomIds = new int[distinct.size()];
+        this.symptomNames = new String[distinct.size()];
+        this.columnsByName = new HashMap<>();
+        for (int i = 0; i < distinct.size(); i++) {
+            this.symptomIds[i] = distinct.get(i).getId();
+            this.symptomNames[i] = distinct.get(i).getName();
+            this.columnsByName.putIfAbsent(distinct.get(i).getName(), i);
+        }
+    }
+
+    /**
+     * Returns the column of the symptom with the given id.
+     *
+     * @param symptomId the id of the symptom
+     * @return the column of the symptom or -1 if the symptom is not indexed
+     */
+    public int getColumn(int symptomId) {
+        int column = Arrays.binarySearch(symptomIds, symptomId);
+        return column < 0 ? -1 : column;
+    }
+
+    /**
+     * Returns the column of the symptom with the given name.
+     *
+     * @param symptomName the name of the symptom
+     * @return the column of the symptom or -1 if the symptom is not indexed
+     */
+    public int getColumn(String symptomName) {
+        return columnsByName.getOrDefault(symptomName, -1);
+    }
+
+    /**
+     * Returns the id of the symptom in the given column.
+     *
+     * @param column the column index
+     * @return the id of the symptom
+     */
+    public int getSymptomId(int column) {
+        return symptomIds[column];
+    }
+
+    /**
+     * Returns the name of the symptom in the given column.
+     *
+     * @param column the column index
+     * @return the name of the symptom
+     */
+    public String getSymptomName(int column) {
+        return symptomNames[column];
+    }
+
+    /**
+     * Returns the number of indexed symptoms, which is the number of symptom columns of a feature vector.
+     *
+     * @return the number of indexed symptoms
+     */
+    public int size() {
+        return symptomIds.length;
+    }
+}
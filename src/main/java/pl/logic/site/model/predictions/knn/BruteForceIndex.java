@@ -0,0 +1,40 @@
+package pl.logic.site.model.predictions.knn;
+
+import pl.logic.site.model.predictions.features.FeatureMatrix;
+import pl.logic.site.model.predictions.metric.Metric;
+
+/**
+ * A neighbour index that calculates the distance to every row of the feature matrix.
+ * It works with any metric and is used as the fallback of other indexes.
+ *
+ * @author Kacper
+ */
+public class BruteForceIndex implements NeighbourIndex {
+    private final FeatureMatrix featureMatrix;
+    private final Metric metric;
+
+    /**
+     * Creates a new brute-force index over the given feature matrix.
+     *
+     * @param featureMatrix the rows to search
+     * @param metric        the metric used to calculate distances
+     */
+    public BruteForceIndex(FeatureMatrix featureMatrix, Metric metric) {
+        this.featureMatrix = featureMatrix;
+        this.metric = metric;
+    }
+
+    @Override
+    public Metric getMetric() {
+        return metric;
+    }
+
+    @Override
+    public void findNearest(double[] query, NeighbourHeap heap) {
+        double[] features = featureMatrix.getFeatures();
+        int columns = featureMatrix.getColumns();
+        for (int row = 0; row < featureMatrix.getRows(); row++) {
+            heap.offer(metric.calculateMetric(features, featureMatrix.getOffset(row), query, columns), row);
+        }
+    }
+}
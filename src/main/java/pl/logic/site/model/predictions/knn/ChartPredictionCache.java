@@ -0,0 +1,95 @@
+package pl.logic.site.model.predictions.knn;
+
+import pl.logic.site.model.mysql.Disease;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A class that memoises the predicted disease of every chart.
+ * An entry is valid only for the dataset version it was calculated with, and it is removed when the symptoms
+ * of the chart or the data of its patient change.
+ * To avoid storing a prediction calculated from data that has been invalidated in the meantime,
+ * a calculation takes a stamp before it starts and its result is stored only if no invalidation happened since.
+ * Reads are lock-free, writes and invalidations are serialized.
+ *
+ * @author Kacper
+ */
+public class ChartPredictionCache {
+    private final ConcurrentHashMap<Integer, Entry> entries;
+    private final AtomicLong invalidations;
+
+    /**
+     * Creates a new empty cache.
+     */
+    public ChartPredictionCache() {
+        this.entries = new ConcurrentHashMap<>();
+        this.invalidations = new AtomicLong();
+    }
+
+    /**
+     * Returns the stamp to pass to put, it must be taken before the data of the prediction is read.
+     *
+     * @return the current stamp
+     */
+    public long stamp() {
+        return invalidations.get();
+    }
+
+    /**
+     * Returns the memoised disease of the chart.
+     *
+     * @param chartId the id of the chart
+     * @param version the current dataset version
+     * @return the disease or null if there is no valid entry
+     */
+    public Disease get(int chartId, long version) {
+        Entry entry = entries.get(chartId);
+        return entry == null || entry.version() != version ? null : entry.disease();
+    }
+
+    /**
+     * Memoises the disease of the chart, unless the cache was invalidated after the stamp was taken.
+     *
+     * @param chartId   the id of the chart
+     * @param patientId the id of the owner of the chart
+     * @param version   the dataset version used for the prediction
+     * @param disease   the predicted disease
+     * @param stamp     the stamp taken before the prediction started
+     */
+    public synchronized void put(int chartId, int patientId, long version, Disease disease, long stamp) {
+        if (invalidations.get() == stamp) {
+            entries.put(chartId, new Entry(version, patientId, disease));
+        }
+    }
+
+    /**
+     * Removes the entry of the given chart.
+     *
+     * @param chartId the id of the chart
+     */
+    public synchronized void invalidateChart(int chartId) {
+        invalidations.incrementAndGet();
+        entries.remove(chartId);
+    }
+
+    /**
+     * Removes the entries of all charts of the given patient.
+     *
+     * @param patientId the id of the patient
+     */
+    public synchronized void invalidatePatient(int patientId) {
+        invalidations.incrementAndGet();
+        entries.values().removeIf(entry -> entry.patientId() == patientId);
+    }
+
+    /**
+     * Returns the number of memoised charts (including entries of older versions).
+     */
+    public int size() {
+        return entries.size();
+    }
+
+    private record Entry(long version, int patientId, Disease disease) {
+    }
+}
@@ -0,0 +1,224 @@
+package pl.logic.site.model.predictions.knn;
+
+import pl.logic.site.model.mysql.Chart;
+import pl.logic.site.model.mysql.Patient;
+import pl.logic.site.model.predictions.features.DiseaseVector;
+import pl.logic.site.model.predictions.features.FeatureMatrix;
+
+import java.util.*;
+import java.util.function.Function;
+
+/**
+ * A class that represents an immutable state of the prediction dataset: the patients, their charts,
+ * their DiseaseVectors and the KNN built over them.
+ * A snapshot is never modified, changes create a new snapshot (copy-on-write),
+ * so concurrent predictions can keep using the snapshot they started with.
+ * The version is increased only when the learning set of the KNN changes.
+ *
+ * @author Kacper
+ */
+public class DatasetSnapshot {
+    private final long version;
+    private final List<Patient> patients;
+    private final List<Chart> charts;
+    private final Map<Integer, List<DiseaseVector>> vectorsByPatient;
+    private final List<DiseaseVector> dataset;
+    private final KNN knn;
+    private final Function<FeatureMatrix, NeighbourIndex> indexFactory;
+
+    /**
+     * Creates a new snapshot.
+     *
+     * @param version          the version of the snapshot
+     * @param patients         all patients
+     * @param charts           all charts
+     * @param vectorsByPatient the DiseaseVectors grouped by patient id, in the order of the dataset
+     * @param indexFactory     the function that builds the neighbour index of the KNN
+     */
+    public DatasetSnapshot(long version, List<Patient> patients, List<Chart> charts,
+                           Map<Integer, List<DiseaseVector>> vectorsByPatient,
+                           Function<FeatureMatrix, NeighbourIndex> indexFactory) {
+        this.version = version;
+        this.patients = List.copyOf(patients);
+        this.charts = List.copyOf(charts);
+        LinkedHashMap<Integer, List<DiseaseVector>> copy = new LinkedHashMap<>();
+        List<DiseaseVector> flat = new ArrayList<>();
+        for (Map.Entry<Integer, List<DiseaseVector>> entry : vectorsByPatient.entrySet()) {
+            copy.put(entry.getKey(), List.copyOf(entry.getValue()));
+            flat.addAll(entry.getValue());
+        }
+        this.vectorsByPatient = Collections.unmodifiableMap(copy);
+        this.dataset = Collections.unmodifiableList(flat);
+        this.indexFactory = indexFactory;
+        this.knn = new KNN(flat, indexFactory);
+    }
+
+    /**
+     * Creates a snapshot that shares the dataset and the KNN of another snapshot.
+     */
+    private DatasetSnapshot(DatasetSnapshot source, List<Patient> patients, List<Chart> charts) {
+        this.version = source.version;
+        this.patients = List.copyOf(patients);
+        this.charts = List.copyOf(charts);
+        this.vectorsByPatient = source.vectorsByPatient;
+        this.dataset = source.dataset;
+        this.indexFactory = source.indexFactory;
+        this.knn = source.knn;
+    }
+
+    /**
+     * Creates a new snapshot in which the given patient and his DiseaseVectors replace the previous ones.
+     * If the DiseaseVectors of the patient have not changed, the KNN and the version are kept.
+     *
+     * @param patient        the changed patient
+     * @param patientVectors the DiseaseVectors of the patient, empty if the patient has none
+     * @return the new snapshot, or this snapshot if neither the patient nor his DiseaseVectors have changed
+     */
+    public DatasetSnapshot withPatient(Patient patient, List<DiseaseVector> patientVectors) {
+        return withPatients(List.of(patient), Map.of(patient.getId(), patientVectors), List.of());
+    }
+
+    /**
+     * Creates a new snapshot without the given patient and his DiseaseVectors.
+     *
+     * @param patientId the id of the removed patient
+     * @return the new snapshot, or this snapshot if there is no such patient
+     */
+    public DatasetSnapshot withoutPatient(int patientId) {
+        return withPatients(List.of(), Map.of(), List.of(patientId));
+    }
+
+    /**
+     * Creates a new snapshot with all given changes of patients, so the KNN is rebuilt at most once.
+     * If the DiseaseVectors of all the patients are unchanged, the KNN and the version are kept.
+     *
+     * @param changedPatients   the created or updated patients
+     * @param patientVectors    the DiseaseVectors of the changed patients, a patient without an entry has none
+     * @param removedPatientIds the ids of the removed patients
+     * @return the new snapshot, or this snapshot if nothing has changed
+     */
+    public DatasetSnapshot withPatients(Collection<Patient> changedPatients, Map<Integer, List<DiseaseVector>> patientVectors,
+                                        Collection<Integer> removedPatientIds) {
+        HashMap<Integer, Patient> current = new HashMap<>();
+        for (Patient patient : patients) {
+            current.put(patient.getId(), patient);
+        }
+        boolean patientsChanged = false;
+        boolean vectorsChanged = false;
+        LinkedHashMap<Integer, List<DiseaseVector>> newVectors = new LinkedHashMap<>(vectorsByPatient);
+        HashSet<Integer> replacedIds = new HashSet<>();
+        for (Patient patient : changedPatients) {
+            replacedIds.add(patient.getId());
+            patientsChanged |= !patient.equals(current.get(patient.getId()));
+            List<DiseaseVector> vectors = patientVectors.getOrDefault(patient.getId(), List.of());
+            if (!sameVectors(vectorsByPatient.getOrDefault(patient.getId(), List.of()), vectors)) {
+                vectorsChanged = true;
+                newVectors.remove(patient.getId());
+                if (!vectors.isEmpty()) {
+                    newVectors.put(patient.getId(), vectors);
+                }
+            }
+        }
+        for (int patientId : removedPatientIds) {
+            replacedIds.add(patientId);
+            patientsChanged |= current.containsKey(patientId);
+            vectorsChanged |= newVectors.remove(patientId) != null;
+        }
+        if (!patientsChanged && !vectorsChanged) {
+            return this;
+        }
+        List<Patient> newPatients = new ArrayList<>(patients);
+        newPatients.removeIf(p -> replacedIds.contains(p.getId()));
+        newPatients.addAll(changedPatients);
+        if (!vectorsChanged) {
+            return new DatasetSnapshot(this, newPatients, charts);
+        }
+        return new DatasetSnapshot(version + 1, newPatients, charts, newVectors, indexFactory);
+    }
+
+    /**
+     * Checks that two lists of DiseaseVectors have the same diseases and features in the same order.
+     */
+    private static boolean sameVectors(List<DiseaseVector> first, List<DiseaseVector> second) {
+        if (first.size() != second.size()) {
+            return false;
+        }
+        for (int i = 0; i < first.size(); i++) {
+            DiseaseVector a = first.get(i);
+            DiseaseVector b = second.get(i);
+            if (a.getDisease().getId() != b.getDisease().getId()
+                    || !Arrays.equals(a.getFeatureVector().getPackedFeatures(), b.getFeatureVector().getPackedFeatures())) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Creates a new snapshot in which the given chart replaces the chart with the same id.
+     * The KNN and the version are kept.
+     *
+     * @param chart the created or updated chart
+     * @return the new snapshot
+     */
+    public DatasetSnapshot withChart(Chart chart) {
+        List<Chart> newCharts = new ArrayList<>(charts);
+        newCharts.removeIf(c -> c.getId() == chart.getId());
+        newCharts.add(chart);
+        return new DatasetSnapshot(this, patients, newCharts);
+    }
+
+    /**
+     * Creates a new snapshot without the chart with the given id. The KNN and the version are kept.
+     *
+     * @param chartId the id of the removed chart
+     * @return the new snapshot
+     */
+    public DatasetSnapshot withoutChart(int chartId) {
+        List<Chart> newCharts = new ArrayList<>(charts);
+        newCharts.removeIf(c -> c.getId() == chartId);
+        return new DatasetSnapshot(this, patients, newCharts);
+    }
+
+    /**
+     * Returns the version of the snapshot, every change of the learning set increases it.
+     */
+    public long getVersion() {
+        return version;
+    }
+
+    /**
+     * Returns all patients (unmodifiable).
+     */
+    public List<Patient> getPatients() {
+        return patients;
+    }
+
+    /**
+     * Returns all charts (unmodifiable).
+     */
+    public List<Chart> getCharts() {
+        return charts;
+    }
+
+    /**
+     * Returns the DiseaseVectors of all patients (unmodifiable).
+     */
+    public List<DiseaseVector> getDataset() {
+        return dataset;
+    }
+
+    /**
+     * Returns the DiseaseVectors grouped by patient id, in the order of the dataset (unmodifiable).
+     */
+    public Map<Integer, List<DiseaseVector>> getVectorsByPatient() {
+        return vectorsByPatient;
+    }
+
+    /**
+     * Returns the KNN built over the whole dataset.
+     */
+    public KNN getKnn() {
+        return knn;
+    }
+}
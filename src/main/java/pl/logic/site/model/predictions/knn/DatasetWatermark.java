@@ -0,0 +1,28 @@
+package pl.logic.site.model.predictions.knn;
+
+/**
+ * A class that represents the state of the tables the prediction dataset is built from, as of the moment
+ * the dataset was read. Two equal watermarks mean that nothing the dataset depends on has changed in between.
+ * Every table is described by the number of its rows, the greatest id and a checksum of the columns
+ * the dataset depends on, so appended rows can be told apart from changed or removed ones.
+ *
+ * @param patients          the mark of the patient table
+ * @param charts            the mark of the chart table
+ * @param recognitions      the mark of the recognition table
+ * @param diagnosisRequests the mark of the diagnosis_request table, the checksum covers the diagnoses
+ * @param diseases          the mark of the disease table
+ * @author Kacper
+ */
+public record DatasetWatermark(TableMark patients, TableMark charts, TableMark recognitions,
+                               TableMark diagnosisRequests, TableMark diseases) {
+
+    /**
+     * The state of a single table.
+     *
+     * @param count    the number of rows
+     * @param maxId    the greatest id, 0 if the table is empty
+     * @param checksum the XOR of the CRC32 of the watched columns of every row
+     */
+    public record TableMark(long count, long maxId, long checksum) {
+    }
+}
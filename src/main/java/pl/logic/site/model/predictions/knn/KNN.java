@@ -2,35 +2,66 @@ package pl.logic.site.model.predictions.knn;
 
 import pl.logic.site.model.mysql.Disease;
 import pl.logic.site.model.predictions.features.DiseaseVector;
+import pl.logic.site.model.predictions.features.FeatureMatrix;
 import pl.logic.site.model.predictions.metric.Metric;
 import pl.logic.site.model.predictions.quality.Result;
 
 import java.util.*;
-import java.util.stream.Collectors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.function.Function;
 
 /**
  * KNN (k-nearest neighbors) algorithm implementation.
  * A class that uses its methods to find the most probable disease for a given patient based on the learning set.
+ * The learning set is packed once into a FeatureMatrix, so classification scans primitive arrays only.
  *
  * @author Kacper
  */
 public class KNN {
-    private List<DiseaseVector> learningSet;
+    /**
+     * The number of chunks per thread of the pool, more chunks even out chunks of different cost.
+     */
+    private static final int CHUNKS_PER_THREAD = 4;
+    /**
+     * The minimal number of vectors in a chunk, smaller batches are not worth splitting.
+     */
+    private static final int MIN_CHUNK_SIZE = 64;
+
+    private final FeatureMatrix learningSet;
+    private final NeighbourIndex index;
 
     /**
      * Creates a new instance of the KNN algorithm with the specified learning set.
+     * Every classification scans the whole learning set.
      *
      * @param learningSet the set of DiseaseVectors used for learning.
      *                    Important: disease in DiseaseVector in learningSet can't be null!
      */
     public KNN(List<DiseaseVector> learningSet) {
-        this.learningSet = learningSet;
+        this.learningSet = new FeatureMatrix(learningSet);
+        this.index = null;
+    }
+
+    /**
+     * Creates a new instance of the KNN algorithm with the specified learning set searched by the given index.
+     * Classifications with the metric of the index use the index, other metrics fall back to a full scan.
+     *
+     * @param learningSet  the set of DiseaseVectors used for learning.
+     *                     Important: disease in DiseaseVector in learningSet can't be null!
+     * @param indexFactory the function that builds the neighbour index over the packed learning set,
+     *                     e.g. {@code matrix -> new VPTree(matrix, metric)}
+     */
+    public KNN(List<DiseaseVector> learningSet, Function<FeatureMatrix, NeighbourIndex> indexFactory) {
+        this.learningSet = new FeatureMatrix(learningSet);
+        this.index = indexFactory.apply(this.learningSet);
     }
 
     /**
      * Classifies a list of disease vectors (testingSet) using the KNN algorithm with the specified parameters.
      * A method to predict probable diseases in the entire test set.
      * Typically used to calculate the accuracy of a prediction or statistics system.
+     * The neighbour heap and the vote counters are allocated once and reused for every vector.
      *
      * @param diseaseVectors the list of disease vectors (testingSet) to classify
      * @param neighbours     the number of nearest neighbors to use for classification
@@ -40,13 +71,58 @@ public class KNN {
      */
     public List<Result> classifyVectors(List<DiseaseVector> diseaseVectors, int neighbours, Metric m,
                                         List<Disease> diseases) {
-        List<Result> results = new LinkedList<>();
-        for (int i = 0; i < diseaseVectors.size(); i++) {
-            results.add(i, classifyVector(diseaseVectors.get(i), neighbours, m, diseases));
+        NeighbourIndex neighbourIndex = indexFor(m);
+        HashMap<Disease, Integer> diseasePositions = diseasePositions(diseases);
+        NeighbourHeap heap = new NeighbourHeap(neighbours);
+        int[] votes = new int[diseases.size()];
+        List<Result> results = new ArrayList<>(diseaseVectors.size());
+        for (DiseaseVector diseaseVector : diseaseVectors) {
+            results.add(classify(diseaseVector, neighbourIndex, diseases, diseasePositions, heap, votes));
         }
         return results;
     }
 
+    /**
+     * Classifies a list of disease vectors (testingSet) in parallel on the given pool.
+     * The vectors are split into contiguous chunks, every chunk is classified with its own heap and vote counters
+     * and its results are written at the positions of its vectors, so the results are identical to the serial
+     * classifyVectors regardless of the parallelism of the pool.
+     *
+     * @param diseaseVectors the list of disease vectors (testingSet) to classify
+     * @param neighbours     the number of nearest neighbors to use for classification
+     * @param m              the kind of distance metric to use for classification
+     * @param diseases       the list of all available diseases (from database) to classify the vectors against
+     * @param pool           the pool that classifies the chunks
+     * @return the list of classification results, in the order of diseaseVectors
+     */
+    public List<Result> classifyVectors(List<DiseaseVector> diseaseVectors, int neighbours, Metric m,
+                                        List<Disease> diseases, ForkJoinPool pool) {
+        int chunks = Math.min(pool.getParallelism() * CHUNKS_PER_THREAD,
+                (diseaseVectors.size() + MIN_CHUNK_SIZE - 1) / MIN_CHUNK_SIZE);
+        if (chunks <= 1) {
+            return classifyVectors(diseaseVectors, neighbours, m, diseases);
+        }
+        NeighbourIndex neighbourIndex = indexFor(m);
+        HashMap<Disease, Integer> diseasePositions = diseasePositions(diseases);
+        Result[] results = new Result[diseaseVectors.size()];
+        List<ForkJoinTask<?>> tasks = new ArrayList<>(chunks);
+        for (int chunk = 0; chunk < chunks; chunk++) {
+            int from = (int) ((long) results.length * chunk / chunks);
+            int to = (int) ((long) results.length * (chunk + 1) / chunks);
+            tasks.add(pool.submit(() -> {
+                NeighbourHeap heap = new NeighbourHeap(neighbours);
+                int[] votes = new int[diseases.size()];
+                for (int i = from; i < to; i++) {
+                    results[i] = classify(diseaseVectors.get(i), neighbourIndex, diseases, diseasePositions, heap, votes);
+                }
+            }));
+        }
+        for (ForkJoinTask<?> task : tasks) {
+            task.join();
+        }
+        return new ArrayList<>(Arrays.asList(results));
+    }
+
     /**
      * Classifies a single disease vector (with trainingSet) using the KNN algorithm with the specified parameters.
      * Used to count a predicate for a single person or as part of the classifyVectors method
@@ -58,27 +134,73 @@ public class KNN {
      * @return the classification result
      */
     public Result classifyVector(DiseaseVector diseaseVector, int neighbours, Metric m, List<Disease> diseases) {
-        HashMap<DiseaseVector, Double> results = new HashMap<>();
-        for (DiseaseVector feature : learningSet) {
-            results.put(feature, m.calculateMetric(feature.getFeatureVector(), diseaseVector.getFeatureVector()));
+        return classify(diseaseVector, indexFor(m), diseases, diseasePositions(diseases),
+                new NeighbourHeap(neighbours), new int[diseases.size()]);
+    }
+
+    /**
+     * Classifies a single disease vector reusing the given heap and vote counters.
+     * Every nearest row votes for its disease, the disease with the most votes wins.
+     * If several diseases have the same number of votes, the first one in the diseases list wins.
+     *
+     * @param diseaseVector    the disease vector to classify
+     * @param neighbourIndex   the index used to find the nearest rows
+     * @param diseases         the list of all available diseases to classify the vector against
+     * @param diseasePositions the position of every disease in the diseases list
+     * @param heap             the heap bounded to the number of nearest neighbors
+     * @param votes            the vote counters, one for every disease in the diseases list
+     * @return the classification result
+     */
+    private Result classify(DiseaseVector diseaseVector, NeighbourIndex neighbourIndex, List<Disease> diseases,
+                            HashMap<Disease, Integer> diseasePositions, NeighbourHeap heap, int[] votes) {
+        double[] query = diseaseVector.getFeatureVector().getPackedFeatures();
+        if (learningSet.getRows() > 0 && query.length != learningSet.getColumns()) {
+            throw new IllegalArgumentException("Vector must have the same number of features as the learning set");
         }
-        Map<DiseaseVector, Double> nBest = results
-                .entrySet().stream()
-                .sorted(Map.Entry.<DiseaseVector, Double>comparingByValue())
-                .limit(neighbours).collect(Collectors.toMap(Map.Entry::getKey, Map.Entry::getValue));
+        heap.clear();
+        neighbourIndex.findNearest(query, heap);
 
-        HashMap<Disease, Integer> labels = new HashMap<>();
-        for (Disease disease : diseases) {
-            labels.put(disease, 0);
+        Arrays.fill(votes, 0);
+        for (int i = 0; i < heap.size(); i++) {
+            Integer position = diseasePositions.get(learningSet.getLabel(heap.getRow(i)));
+            if (position != null) {
+                votes[position]++;
+            }
         }
-        for (Map.Entry<DiseaseVector, Double> entry : nBest.entrySet()) {
-            labels.computeIfPresent(entry.getKey().getDisease(), (k, v) -> v + 1);
+
+        int classified = 0;
+        for (int i = 1; i < votes.length; i++) {
+            if (votes[i] > votes[classified]) {
+                classified = i;
+            }
         }
+        return new Result(diseaseVector, diseases.get(classified));
+    }
 
-        int max = Collections.max(labels.values());
-        Disease classifiedLabel = labels.entrySet().stream().filter(l -> l.getValue() == max).limit(1)
-                .map(Map.Entry::getKey).toList().getFirst();
+    /**
+     * Maps every disease to its first position in the diseases list.
+     *
+     * @param diseases the list of all available diseases
+     * @return the positions of the diseases
+     */
+    private HashMap<Disease, Integer> diseasePositions(List<Disease> diseases) {
+        HashMap<Disease, Integer> result = new HashMap<>();
+        for (int i = 0; i < diseases.size(); i++) {
+            result.putIfAbsent(diseases.get(i), i);
+        }
+        return result;
+    }
 
-        return new Result(diseaseVector, classifiedLabel);
+    /**
+     * Returns the index to use with the given metric.
+     *
+     * @param m the metric of the classification
+     * @return the index built for the metric or a full scan if there is no such index
+     */
+    private NeighbourIndex indexFor(Metric m) {
+        if (index != null && index.getMetric() == m) {
+            return index;
+        }
+        return new BruteForceIndex(learningSet, m);
     }
 }
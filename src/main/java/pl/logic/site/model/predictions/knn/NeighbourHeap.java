@@ -0,0 +1,151 @@
+package pl.logic.site.model.predictions.knn;
+
+/**
+ * A bounded max-heap of (distance, row) pairs kept in primitive arrays.
+ * It keeps at most capacity nearest rows, ordered by distance and, for equal distances, by row index,
+ * so the farthest kept row is always on top and can be replaced in O(log K).
+ * The heap can be cleared and reused for the next query without allocation.
+ *
+ * @author Kacper
+ */
+public class NeighbourHeap {
+    private final double[] distances;
+    private final int[] rows;
+    private int size;
+
+    /**
+     * Creates a new empty heap.
+     *
+     * @param capacity the maximal number of rows kept (K)
+     */
+    public NeighbourHeap(int capacity) {
+        this.distances = new double[Math.max(capacity, 0)];
+        this.rows = new int[Math.max(capacity, 0)];
+        this.size = 0;
+    }
+
+    /**
+     * Removes all rows from the heap.
+     */
+    public void clear() {
+        size = 0;
+    }
+
+    /**
+     * Returns the maximal number of rows kept.
+     *
+     * @return the capacity of the heap
+     */
+    public int getCapacity() {
+        return rows.length;
+    }
+
+    /**
+     * Returns the number of rows currently kept.
+     *
+     * @return the size of the heap
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Returns the row at the given position of the heap (not ordered).
+     *
+     * @param i the position, from 0 to size() - 1
+     * @return the row index
+     */
+    public int getRow(int i) {
+        return rows[i];
+    }
+
+    /**
+     * Returns the distance of the farthest kept row, or infinity if the heap is not full yet.
+     * Rows farther than the radius can not enter the heap.
+     *
+     * @return the search radius
+     */
+    public double getRadius() {
+        return size < rows.length ? Double.POSITIVE_INFINITY : distances[0];
+    }
+
+    /**
+     * Adds the row if the heap is not full or it is nearer than the farthest kept row.
+     *
+     * @param distance the distance of the row to the query
+     * @param row      the row index
+     * @return true if the row was added
+     */
+    public boolean offer(double distance, int row) {
+        if (size < rows.length) {
+            int i = size++;
+            while (i > 0) {
+                int parent = (i - 1) >>> 1;
+                if (!greater(distance, row, distances[parent], rows[parent])) {
+                    break;
+                }
+                distances[i] = distances[parent];
+                rows[i] = rows[parent];
+                i = parent;
+            }
+            distances[i] = distance;
+            rows[i] = row;
+            return true;
+        }
+        if (size == 0 || !greater(distances[0], rows[0], distance, row)) {
+            return false;
+        }
+        siftDown(distance, row, size);
+        return true;
+    }
+
+    /**
+     * Empties the heap and returns its rows, the nearest first.
+     *
+     * @return the kept rows ordered by distance and row index
+     */
+    public int[] drainSorted() {
+        int[] result = new int[size];
+        while (size > 0) {
+            result[size - 1] = rows[0];
+            size--;
+            if (size > 0) {
+                siftDown(distances[size], rows[size], size);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Places the given pair at the top and moves it down to restore the heap order of the first n elements.
+     */
+    private void siftDown(double distance, int row, int n) {
+        int i = 0;
+        while (true) {
+            int child = 2 * i + 1;
+            if (child >= n) {
+                break;
+            }
+            if (child + 1 < n && greater(distances[child + 1], rows[child + 1], distances[child], rows[child])) {
+                child++;
+            }
+            if (!greater(distances[child], rows[child], distance, row)) {
+                break;
+            }
+            distances[i] = distances[child];
+            rows[i] = rows[child];
+            i = child;
+        }
+        distances[i] = distance;
+        rows[i] = row;
+    }
+
+    /**
+     * Compares two pairs by distance and then by row index.
+     *
+     * @return true if the first pair is farther than the second one
+     */
+    private static boolean greater(double distance1, int row1, double distance2, int row2) {
+        return distance1 > distance2 || (distance1 == distance2 && row1 > row2);
+    }
+}
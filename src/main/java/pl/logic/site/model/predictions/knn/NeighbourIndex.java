@@ -0,0 +1,41 @@
+package pl.logic.site.model.predictions.knn;
+
+import pl.logic.site.model.predictions.metric.Metric;
+
+/**
+ * Interface for indexes used by KNN to find the nearest rows of a feature matrix.
+ * Implementations must return the same rows as a full scan: ordered by distance and,
+ * for equal distances, by row index.
+ *
+ * @author Kacper
+ */
+public interface NeighbourIndex {
+    /**
+     * Returns the metric the index was built for.
+     *
+     * @return the metric of the index
+     */
+    Metric getMetric();
+
+    /**
+     * Offers the rows nearest to the given packed query vector to the heap.
+     * After the call the heap holds the getCapacity() nearest rows.
+     *
+     * @param query the packed query vector
+     * @param heap  an empty heap bounded to the number of rows to find
+     */
+    void findNearest(double[] query, NeighbourHeap heap);
+
+    /**
+     * Finds the nearest rows to the given packed query vector.
+     *
+     * @param query      the packed query vector
+     * @param neighbours the number of rows to find
+     * @return the indexes of at most neighbours nearest rows, the nearest first
+     */
+    default int[] findNearest(double[] query, int neighbours) {
+        NeighbourHeap heap = new NeighbourHeap(neighbours);
+        findNearest(query, heap);
+        return heap.drainSorted();
+    }
+}
@@ -0,0 +1,237 @@
+package pl.logic.site.model.predictions.knn;
+
+import pl.logic.site.model.mysql.Disease;
+import pl.logic.site.model.predictions.features.DiseaseVector;
+import pl.logic.site.model.predictions.features.FeatureVector;
+import pl.logic.site.model.predictions.features.SymptomIndex;
+
+import java.io.*;
+import java.nio.BufferUnderflowException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * A class that stores the encoded prediction dataset in a compact binary file, so a restarted service
+ * can restore its dataset without reading and parsing the whole database.
+ * The file holds the format version, the watermark of the tables the dataset was built from,
+ * the symptom ids of the feature columns (SymptomIndex) and the DiseaseVectors grouped by patient.
+ * The features shared by consecutive DiseaseVectors (all diseases of the same chart) are stored once,
+ * followed by the ids of their diseases. The file ends with the CRC32 of its content.
+ * A file is replaced atomically and read through a memory mapping.
+ *
+ * @author Kacper
+ */
+public final class SnapshotFile {
+    static final int MAGIC = 0x4D434453;
+    static final int FORMAT_VERSION = 2;
+    private static final int CHECKSUM_BYTES = Long.BYTES;
+
+    private SnapshotFile() {
+    }
+
+    /**
+     * The content of a snapshot file.
+     *
+     * @param watermark        the watermark of the tables the dataset was built from
+     * @param vectorsByPatient the DiseaseVectors grouped by patient id, in the order of the dataset
+     */
+    public record Stored(DatasetWatermark watermark, LinkedHashMap<Integer, List<DiseaseVector>> vectorsByPatient) {
+    }
+
+    /**
+     * Writes the dataset to the file. The content is written to a temporary file first and moved over the file,
+     * so a reader never sees a partially written snapshot.
+     *
+     * @param file             the snapshot file
+     * @param watermark        the watermark read before the dataset was read
+     * @param symptomIndex     the index the symptom columns of the dataset were encoded with
+     * @param vectorsByPatient the DiseaseVectors grouped by patient id
+     * @throws IOException if the file can't be written
+     */
+    public static void write(Path file, DatasetWatermark watermark, SymptomIndex symptomIndex,
+                             Map<Integer, List<DiseaseVector>> vectorsByPatient) throws IOException {
+        Path temporary = file.resolveSibling(file.getFileName() + ".tmp");
+        CRC32 crc = new CRC32();
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                new CheckedOutputStream(Files.newOutputStream(temporary), crc)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(FORMAT_VERSION);
+            writeWatermark(out, watermark);
+            out.writeInt(symptomIndex.size());
+            for (int column = 0; column < symptomIndex.size(); column++) {
+                out.writeInt(symptomIndex.getSymptomId(column));
+            }
+            out.writeInt(vectorsByPatient.size());
+            for (Map.Entry<Integer, List<DiseaseVector>> entry : vectorsByPatient.entrySet()) {
+                out.writeInt(entry.getKey());
+                writeVectors(out, entry.getValue(), symptomIndex.size());
+            }
+            out.flush();
+            out.writeLong(crc.getValue());
+        }
+        Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Reads the dataset from the file.
+     *
+     * @param file         the snapshot file
+     * @param symptomIndex the current index of symptoms, the stored columns must be the same
+     * @param diseases     all diseases (from database), every stored disease must be one of them
+     * @return the content of the file
+     * @throws NoSuchFileException if there is no snapshot file
+     * @throws IOException         if the file can't be read, is damaged, has another format version
+     *                             or was encoded with other symptoms or diseases
+     */
+    public static Stored read(Path file, SymptomIndex symptomIndex, List<Disease> diseases) throws IOException {
+        MappedByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        if (buffer.limit() < 2 * Integer.BYTES + CHECKSUM_BYTES) {
+            throw new IOException("Snapshot file is truncated");
+        }
+        CRC32 crc = new CRC32();
+        crc.update(buffer.slice(0, buffer.limit() - CHECKSUM_BYTES));
+        if (crc.getValue() != buffer.getLong(buffer.limit() - CHECKSUM_BYTES)) {
+            throw new IOException("Snapshot file is damaged");
+        }
+        buffer.limit(buffer.limit() - CHECKSUM_BYTES);
+        try {
+            if (buffer.getInt() != MAGIC) {
+                throw new IOException("Not a snapshot file");
+            }
+            int version = buffer.getInt();
+            if (version != FORMAT_VERSION) {
+                throw new IOException("Snapshot format version " + version + " is not supported");
+            }
+            DatasetWatermark watermark = readWatermark(buffer);
+            int columns = buffer.getInt();
+            if (columns != symptomIndex.size()) {
+                throw new IOException("Snapshot was encoded with " + columns + " symptoms instead of " + symptomIndex.size());
+            }
+            for (int column = 0; column < columns; column++) {
+                if (buffer.getInt() != symptomIndex.getSymptomId(column)) {
+                    throw new IOException("Snapshot was encoded with other symptoms");
+                }
+            }
+            HashMap<Integer, Disease> diseasesById = new HashMap<>();
+            for (Disease disease : diseases) {
+                diseasesById.putIfAbsent(disease.getId(), disease);
+            }
+            int patients = buffer.getInt();
+            LinkedHashMap<Integer, List<DiseaseVector>> vectorsByPatient = new LinkedHashMap<>();
+            for (int i = 0; i < patients; i++) {
+                int patientId = buffer.getInt();
+                vectorsByPatient.put(patientId, readVectors(buffer, columns, diseasesById));
+            }
+            if (buffer.hasRemaining()) {
+                throw new IOException("Snapshot file has unexpected trailing data");
+            }
+            return new Stored(watermark, vectorsByPatient);
+        } catch (BufferUnderflowException e) {
+            throw new IOException("Snapshot file is truncated", e);
+        }
+    }
+
+    /**
+     * Writes the vectors of a patient, consecutive vectors with the same features are written as one group.
+     */
+    private static void writeVectors(DataOutputStream out, List<DiseaseVector> vectors, int columns) throws IOException {
+        List<double[]> groupFeatures = new ArrayList<>();
+        List<Date> groupBirthDates = new ArrayList<>();
+        List<List<Integer>> groupDiseases = new ArrayList<>();
+        for (DiseaseVector vector : vectors) {
+            FeatureVector featureVector = vector.getFeatureVector();
+            if (featureVector.getLength() != FeatureVector.PACKED_SYMPTOMS_OFFSET + columns) {
+                throw new IllegalArgumentException("All vectors must be encoded with the given symptom index");
+            }
+            double[] packed = featureVector.getPackedFeatures();
+            if (groupFeatures.isEmpty() || !Arrays.equals(groupFeatures.getLast(), packed)) {
+                groupFeatures.add(packed);
+                groupBirthDates.add(featureVector.getDateFeatures()[0]);
+                groupDiseases.add(new ArrayList<>());
+            }
+            groupDiseases.getLast().add(vector.getDisease().getId());
+        }
+        out.writeInt(groupFeatures.size());
+        for (int group = 0; group < groupFeatures.size(); group++) {
+            double[] packed = groupFeatures.get(group);
+            out.writeDouble(packed[0]);
+            out.writeDouble(packed[1]);
+            out.writeDouble(packed[2]);
+            out.writeLong(groupBirthDates.get(group).getTime());
+            for (int i = FeatureVector.PACKED_SYMPTOMS_OFFSET; i < packed.length; i++) {
+                out.writeDouble(packed[i]);
+            }
+            out.writeInt(groupDiseases.get(group).size());
+            for (int diseaseId : groupDiseases.get(group)) {
+                out.writeInt(diseaseId);
+            }
+        }
+    }
+
+    /**
+     * Reads the vectors of a patient, the vectors of a group share one FeatureVector.
+     */
+    private static List<DiseaseVector> readVectors(MappedByteBuffer buffer, int columns,
+                                                   HashMap<Integer, Disease> diseasesById) throws IOException {
+        int groups = buffer.getInt();
+        List<DiseaseVector> vectors = new ArrayList<>();
+        for (int group = 0; group < groups; group++) {
+            double height = buffer.getDouble();
+            double weight = buffer.getDouble();
+            double gender = buffer.getDouble();
+            Date birthDate = new Date(buffer.getLong());
+            double[] symptoms = new double[columns];
+            buffer.asDoubleBuffer().get(symptoms);
+            buffer.position(buffer.position() + columns * Double.BYTES);
+            FeatureVector featureVector = FeatureVector.restore(height, weight, gender, birthDate, symptoms);
+            int labels = buffer.getInt();
+            for (int i = 0; i < labels; i++) {
+                int diseaseId = buffer.getInt();
+                Disease disease = diseasesById.get(diseaseId);
+                if (disease == null) {
+                    throw new IOException("Snapshot refers to unknown disease with ID: " + diseaseId);
+                }
+                vectors.add(new DiseaseVector(disease, featureVector));
+            }
+        }
+        return vectors;
+    }
+
+    private static void writeWatermark(DataOutputStream out, DatasetWatermark watermark) throws IOException {
+        writeMark(out, watermark.patients());
+        writeMark(out, watermark.charts());
+        writeMark(out, watermark.recognitions());
+        writeMark(out, watermark.diagnosisRequests());
+        writeMark(out, watermark.diseases());
+    }
+
+    private static DatasetWatermark readWatermark(MappedByteBuffer buffer) {
+        DatasetWatermark.TableMark patients = readMark(buffer);
+        DatasetWatermark.TableMark charts = readMark(buffer);
+        DatasetWatermark.TableMark recognitions = readMark(buffer);
+        DatasetWatermark.TableMark diagnosisRequests = readMark(buffer);
+        DatasetWatermark.TableMark diseases = readMark(buffer);
+        return new DatasetWatermark(patients, charts, recognitions, diagnosisRequests, diseases);
+    }
+
+    private static void writeMark(DataOutputStream out, DatasetWatermark.TableMark mark) throws IOException {
+        out.writeLong(mark.count());
+        out.writeLong(mark.maxId());
+        out.writeLong(mark.checksum());
+    }
+
+    private static DatasetWatermark.TableMark readMark(MappedByteBuffer buffer) {
+        return new DatasetWatermark.TableMark(buffer.getLong(), buffer.getLong(), buffer.getLong());
+    }
+}
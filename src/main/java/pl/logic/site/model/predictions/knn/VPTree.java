@@ -0,0 +1,178 @@
+package pl.logic.site.model.predictions.knn;
+
+import pl.logic.site.model.predictions.features.FeatureMatrix;
+import pl.logic.site.model.predictions.metric.Metric;
+
+/**
+ * A vantage-point tree over the rows of a feature matrix.
+ * Every node picks a vantage point and splits the remaining rows by the median distance to it,
+ * so a query can skip whole subtrees using the triangle inequality.
+ * It works for every metric that satisfies the triangle inequality, e.g. EuclideanMetric.
+ * The tree is stored in flat arrays: the node of a range of rows is kept at the first position of the range.
+ *
+ * @author Kacper
+ */
+public class VPTree implements NeighbourIndex {
+    /**
+     * Ranges with at most this number of rows are scanned without further splitting.
+     */
+    private static final int LEAF_SIZE = 16;
+    /**
+     * Tolerance of the pruning condition, protects equal distances from rounding errors.
+     */
+    private static final double EPSILON = 1e-9;
+
+    private final FeatureMatrix featureMatrix;
+    private final Metric metric;
+    private final int[] rows;
+    private final int[] splits;
+    private final double[] thresholds;
+
+    /**
+     * Builds a new vantage-point tree over the given feature matrix.
+     *
+     * @param featureMatrix the rows to index
+     * @param metric        the metric used to calculate distances, must satisfy the triangle inequality
+     */
+    public VPTree(FeatureMatrix featureMatrix, Metric metric) {
+        this.featureMatrix = featureMatrix;
+        this.metric = metric;
+        int size = featureMatrix.getRows();
+        this.rows = new int[size];
+        this.splits = new int[size];
+        this.thresholds = new double[size];
+        for (int i = 0; i < size; i++) {
+            rows[i] = i;
+        }
+        build(0, size, new double[size]);
+    }
+
+    @Override
+    public Metric getMetric() {
+        return metric;
+    }
+
+    @Override
+    public void findNearest(double[] query, NeighbourHeap heap) {
+        if (heap.getCapacity() > 0) {
+            search(0, rows.length, query, heap);
+        }
+    }
+
+    /**
+     * Builds the subtree of the given range of rows.
+     * The first row of the range becomes the vantage point, rows closer than the median distance
+     * are moved before the split position and the others after it.
+     *
+     * @param from      the first position of the range (inclusive)
+     * @param to        the last position of the range (exclusive)
+     * @param distances the buffer for distances to the vantage point, indexed by position
+     */
+    private void build(int from, int to, double[] distances) {
+        if (to - from <= LEAF_SIZE) {
+            return;
+        }
+        double[] vantagePoint = rowFeatures(rows[from]);
+        for (int i = from + 1; i < to; i++) {
+            distances[i] = distance(rows[i], vantagePoint);
+        }
+        int split = (from + 1 + to) >>> 1;
+        select(distances, from + 1, to, split);
+        splits[from] = split;
+        thresholds[from] = distances[split];
+        build(from + 1, split, distances);
+        build(split, to, distances);
+    }
+
+    /**
+     * Searches the subtree of the given range of rows and offers every closer row to the heap.
+     *
+     * @param from  the first position of the range (inclusive)
+     * @param to    the last position of the range (exclusive)
+     * @param query the packed query vector
+     * @param heap  the nearest rows found so far
+     */
+    private void search(int from, int to, double[] query, NeighbourHeap heap) {
+        if (from >= to) {
+            return;
+        }
+        if (to - from <= LEAF_SIZE) {
+            for (int i = from; i < to; i++) {
+                heap.offer(distance(rows[i], query), rows[i]);
+            }
+            return;
+        }
+        double distance = distance(rows[from], query);
+        heap.offer(distance, rows[from]);
+        int split = splits[from];
+        double threshold = thresholds[from];
+        if (distance < threshold) {
+            search(from + 1, split, query, heap);
+            if (threshold - distance <= heap.getRadius() + EPSILON) {
+                search(split, to, query, heap);
+            }
+        } else {
+            search(split, to, query, heap);
+            if (distance - threshold <= heap.getRadius() + EPSILON) {
+                search(from + 1, split, query, heap);
+            }
+        }
+    }
+
+    private double distance(int row, double[] query) {
+        return metric.calculateMetric(featureMatrix.getFeatures(), featureMatrix.getOffset(row), query,
+                featureMatrix.getColumns());
+    }
+
+    private double[] rowFeatures(int row) {
+        double[] result = new double[featureMatrix.getColumns()];
+        System.arraycopy(featureMatrix.getFeatures(), featureMatrix.getOffset(row), result, 0, result.length);
+        return result;
+    }
+
+    /**
+     * Partially sorts the range so that the element at position k is the one that would be there after sorting,
+     * smaller distances are before it and greater after it. Rows are moved together with their distances.
+     *
+     * @param distances the distances, indexed by position
+     * @param from      the first position of the range (inclusive)
+     * @param to        the last position of the range (exclusive)
+     * @param k         the position to select
+     */
+    private void select(double[] distances, int from, int to, int k) {
+        int left = from;
+        int right = to - 1;
+        while (left < right) {
+            double pivot = distances[(left + right) >>> 1];
+            int i = left;
+            int j = right;
+            while (i <= j) {
+                while (distances[i] < pivot) {
+                    i++;
+                }
+                while (distances[j] > pivot) {
+                    j--;
+                }
+                if (i <= j) {
+                    swap(distances, i++, j--);
+                }
+            }
+            if (k <= j) {
+                right = j;
+            } else if (k >= i) {
+                left = i;
+            } else {
+                return;
+            }
+        }
+    }
+
+    private void swap(double[] distances, int i, int j) {
+        double distance = distances[i];
+        distances[i] = distances[j];
+        distances[j] = distance;
+        int row = rows[i];
+        rows[i] = rows[j];
+        rows[j] = row;
+    }
+}
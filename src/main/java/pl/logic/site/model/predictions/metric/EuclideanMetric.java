@@ -38,6 +38,26 @@ public class EuclideanMetric implements Metric {
         return Math.sqrt(personalInfo + date + symptoms);
     }
 
+    /**
+     * Calculates the Euclidean distance between a packed row and a packed query vector.
+     * The packed layout already holds normalized values (dates included), so it is a plain sum of squares.
+     *
+     * @param features the array holding the packed row
+     * @param offset   the index in features at which the row starts
+     * @param query    the packed query vector
+     * @param length   the number of features to compare
+     * @return the Euclidean distance between the row and the query
+     */
+    @Override
+    public double calculateMetric(double[] features, int offset, double[] query, int length) {
+        double result = 0;
+        for (int i = 0; i < length; i++) {
+            double diff = features[offset + i] - query[i];
+            result += diff * diff;
+        }
+        return Math.sqrt(result);
+    }
+
     /**
      * Calculates the sum of the squares of the differences between the values of two lists.
      *
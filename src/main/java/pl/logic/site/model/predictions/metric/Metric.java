@@ -16,4 +16,15 @@ public interface Metric {
      * @return the distance between the two vectors
      */
     double calculateMetric(Vector v1, Vector v2);
+
+    /**
+     * Calculates the distance between a packed row of a feature matrix and a packed query vector.
+     *
+     * @param features the array holding the packed row
+     * @param offset   the index in features at which the row starts
+     * @param query    the packed query vector
+     * @param length   the number of features to compare
+     * @return the distance between the row and the query
+     */
+    double calculateMetric(double[] features, int offset, double[] query, int length);
 }
@@ -0,0 +1,241 @@
+package pl.logic.site.model.predictions.parser;
+
+import pl.logic.site.model.mysql.*;
+import pl.logic.site.model.predictions.features.DiseaseVector;
+import pl.logic.site.model.predictions.features.SymptomIndex;
+import pl.logic.site.repository.ChartRepository;
+import pl.logic.site.repository.DiagnosisRequestRepository;
+import pl.logic.site.repository.RecognitionRepository;
+import pl.logic.site.utils.predictions.ValueEncoder;
+
+import java.util.*;
+
+/**
+ * This class is responsible for loading the prediction dataset from the database.
+ * Charts, recognitions and diagnosis requests are fetched with a constant number of set-based queries
+ * and the DiseaseVectors are assembled in memory, so the load time depends on the number of rows
+ * and not on the number of round trips to the database.
+ * The loader also remembers the owner of every loaded chart.
+ *
+ * @author Kacper
+ */
+public class DatasetLoader {
+    private final ChartRepository chartRepository;
+    private final RecognitionRepository recognitionRepository;
+    private final DiagnosisRequestRepository diagnosisRequestRepository;
+    private final SymptomIndex symptomIndex;
+    private volatile DiseaseMatcher diseaseMatcher;
+    private final HashMap<Integer, Integer> chartOwners;
+
+    /**
+     * Constructs a new DatasetLoader instance.
+     *
+     * @param chartRepository            the repository of charts
+     * @param recognitionRepository      the repository of recognitions (symptoms of charts)
+     * @param diagnosisRequestRepository the repository of diagnosis requests
+     * @param symptomIndex               the index that assigns every symptom its column
+     * @param diseases                   the list of all diseases (from database)
+     */
+    public DatasetLoader(ChartRepository chartRepository, RecognitionRepository recognitionRepository,
+                         DiagnosisRequestRepository diagnosisRequestRepository, SymptomIndex symptomIndex,
+                         List<Disease> diseases) {
+        this(chartRepository, recognitionRepository, diagnosisRequestRepository, symptomIndex,
+                new DiseaseMatcher(diseases));
+    }
+
+    /**
+     * Constructs a new DatasetLoader instance that shares the matcher (and its memoised diagnoses) of all diseases.
+     *
+     * @param chartRepository            the repository of charts
+     * @param recognitionRepository      the repository of recognitions (symptoms of charts)
+     * @param diagnosisRequestRepository the repository of diagnosis requests
+     * @param symptomIndex               the index that assigns every symptom its column
+     * @param diseaseMatcher             the matcher of all diseases, used to parse diagnoses
+     */
+    public DatasetLoader(ChartRepository chartRepository, RecognitionRepository recognitionRepository,
+                         DiagnosisRequestRepository diagnosisRequestRepository, SymptomIndex symptomIndex,
+                         DiseaseMatcher diseaseMatcher) {
+        this.chartRepository = chartRepository;
+        this.recognitionRepository = recognitionRepository;
+        this.diagnosisRequestRepository = diagnosisRequestRepository;
+        this.symptomIndex = symptomIndex;
+        this.diseaseMatcher = diseaseMatcher;
+        this.chartOwners = new HashMap<>();
+    }
+
+    /**
+     * Replaces the matcher of all diseases, used when the diseases have changed.
+     *
+     * @param diseaseMatcher the matcher of the current diseases
+     */
+    public void setDiseaseMatcher(DiseaseMatcher diseaseMatcher) {
+        this.diseaseMatcher = diseaseMatcher;
+    }
+
+    /**
+     * Loads the DiseaseVectors of all given patients with one query per table.
+     *
+     * @param patients the patients to load
+     * @param charts   all charts (from database)
+     * @return the DiseaseVectors grouped by patient id, patients without vectors are omitted
+     */
+    public LinkedHashMap<Integer, List<DiseaseVector>> loadAll(List<Patient> patients, List<Chart> charts) {
+        return assemble(patients, charts, recognitionRepository.findAll(), diagnosisRequestRepository.findAll());
+    }
+
+    /**
+     * Loads the DiseaseVectors of a single patient with one query per table.
+     *
+     * @param patient the patient to load
+     * @return the DiseaseVectors of the patient, empty if the patient has no chart or no diagnosed disease
+     */
+    public List<DiseaseVector> loadPatient(Patient patient) {
+        forgetPatient(patient.getId());
+        List<Chart> charts = chartRepository.findAllByIdPatient(patient.getId());
+        if (charts.isEmpty()) {
+            return new ArrayList<>();
+        }
+        List<Integer> chartIds = charts.stream().map(Chart::getId).toList();
+        return assemble(List.of(patient), charts, recognitionRepository.findAllByIdChartIn(chartIds),
+                diagnosisRequestRepository.findAllByIdChartIn(chartIds))
+                .getOrDefault(patient.getId(), new ArrayList<>());
+    }
+
+    /**
+     * Returns the id of the patient who owned the chart when it was last loaded.
+     *
+     * @param chartId the id of the chart
+     * @return the id of the owner or null if the chart was not loaded
+     */
+    public Integer getChartOwner(int chartId) {
+        return this.chartOwners.get(chartId);
+    }
+
+    /**
+     * Remembers the owners of the charts of the given patients without loading them,
+     * used when the DiseaseVectors were restored from a dataset snapshot file.
+     *
+     * @param patients the patients of the dataset
+     * @param charts   all charts (from database)
+     */
+    public void rememberCharts(List<Patient> patients, List<Chart> charts) {
+        HashSet<Integer> patientIds = new HashSet<>();
+        for (Patient patient : patients) {
+            patientIds.add(patient.getId());
+        }
+        for (Chart chart : charts) {
+            if (patientIds.contains(chart.getIdPatient())) {
+                this.chartOwners.put(chart.getId(), chart.getIdPatient());
+            }
+        }
+    }
+
+    /**
+     * Forgets the charts of the given patient, used when the patient is evicted from the dataset.
+     *
+     * @param patientId the id of the patient
+     */
+    public void forgetPatient(int patientId) {
+        this.chartOwners.values().removeIf(owner -> owner == patientId);
+    }
+
+    /**
+     * Assembles DiseaseVectors from already fetched rows.
+     * A DiseaseVector is created for every chart of the patient and every disease found in the patient's
+     * diagnosis requests. Every diagnosis is parsed only once and the result is memoised by the matcher.
+     *
+     * @param patients          the patients to assemble
+     * @param charts            the charts of the patients (other charts are ignored)
+     * @param recognitions      the symptoms of the charts
+     * @param diagnosisRequests the diagnosis requests of the charts
+     * @return the DiseaseVectors grouped by patient id, patients without vectors are omitted
+     */
+    private LinkedHashMap<Integer, List<DiseaseVector>> assemble(List<Patient> patients, List<Chart> charts,
+                                                                 List<Recognition> recognitions,
+                                                                 List<DiagnosisRequest> diagnosisRequests) {
+        HashMap<Integer, List<Integer>> chartsByPatient = new HashMap<>();
+        for (Chart chart : charts) {
+            chartsByPatient.computeIfAbsent(chart.getIdPatient(), k -> new ArrayList<>()).add(chart.getId());
+        }
+
+        HashMap<Integer, byte[]> symptomsByChart = symptomsByChart(recognitions);
+
+        DiseaseMatcher matcher = this.diseaseMatcher;
+        HashMap<Integer, List<List<Disease>>> diseasesByChart = new HashMap<>();
+        for (DiagnosisRequest diagnosisRequest : diagnosisRequests) {
+            if (diagnosisRequest.getDiagnosis() == null) {
+                continue;
+            }
+            List<Disease> requestDiseases = matcher.match(diagnosisRequest.getId(), diagnosisRequest.getDiagnosis());
+            diseasesByChart.computeIfAbsent(diagnosisRequest.getIdChart(), k -> new ArrayList<>()).add(requestDiseases);
+        }
+
+        LinkedHashMap<Integer, List<DiseaseVector>> result = new LinkedHashMap<>();
+        for (Patient patient : patients) {
+            List<Integer> chartIds = chartsByPatient.get(patient.getId());
+            if (chartIds == null) {
+                continue;
+            }
+            List<List<Disease>> patientDiseases = new ArrayList<>();
+            for (Integer chartId : chartIds) {
+                this.chartOwners.put(chartId, patient.getId());
+                patientDiseases.addAll(diseasesByChart.getOrDefault(chartId, List.of()));
+            }
+            List<DiseaseVector> patientVectors = new ArrayList<>();
+            for (Integer chartId : chartIds) {
+                byte[] patientSymptoms = symptomsByChart.getOrDefault(chartId, emptySymptoms());
+                for (List<Disease> requestDiseases : patientDiseases) {
+                    for (Disease disease : requestDiseases) {
+                        patientVectors.add(new DiseaseVector(disease, patient, patientSymptoms));
+                    }
+                }
+            }
+            if (!patientVectors.isEmpty()) {
+                result.put(patient.getId(), patientVectors);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Loads the symptoms of the given charts with a single query.
+     *
+     * @param chartIds the ids of the charts
+     * @return the codes (ValueEncoder.SYMPTOM_VALUES) of the symptom values of every chart ordered by the columns
+     * of the symptom index, charts without any symptom are omitted
+     */
+    public HashMap<Integer, byte[]> loadSymptoms(Collection<Integer> chartIds) {
+        if (chartIds.isEmpty()) {
+            return new HashMap<>();
+        }
+        return symptomsByChart(recognitionRepository.findAllByIdChartIn(chartIds));
+    }
+
+    /**
+     * Groups the recognitions by chart and places the codes of their values in the columns of the symptom index.
+     * Every severity level is interned once, when it is read.
+     *
+     * @param recognitions the symptoms of charts
+     * @return the codes of the symptom values of every chart with at least one recognition
+     */
+    private HashMap<Integer, byte[]> symptomsByChart(List<Recognition> recognitions) {
+        HashMap<Integer, byte[]> result = new HashMap<>();
+        for (Recognition recognition : recognitions) {
+            int column = symptomIndex.getColumn(recognition.getIdSymptom());
+            if (column >= 0) {
+                result.computeIfAbsent(recognition.getIdChart(), k -> emptySymptoms())[column] =
+                        ValueEncoder.SYMPTOM_VALUES.code(recognition.getSymptomValueLevel());
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Creates symptom values of a chart without any symptom.
+     *
+     * @return the code of an absent value for every indexed symptom
+     */
+    private byte[] emptySymptoms() {
+        return new byte[symptomIndex.size()];
+    }
+}
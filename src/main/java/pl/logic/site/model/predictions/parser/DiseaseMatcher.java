@@ -0,0 +1,297 @@
+package pl.logic.site.model.predictions.parser;
+
+import pl.logic.site.model.mysql.DiagnosisRequest;
+import pl.logic.site.model.mysql.DiagnosisRequestDisease;
+import pl.logic.site.model.mysql.Disease;
+
+import java.nio.charset.StandardCharsets;
+import java.text.Normalizer;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.CRC32;
+
+/**
+ * A class that finds the names of all diseases in a diagnosis in a single pass (Aho-Corasick automaton).
+ * The automaton is compiled once from the list of all diseases, so the time of a search depends on the length
+ * of the diagnosis and not on the number of diseases.
+ * Names and diagnoses are compared case-insensitively and without diacritics, whitespace runs are treated
+ * as a single space, and a name is found only as whole words (e.g. "arthritis" is not found in "osteoarthritis").
+ * The diseases of every diagnosis request are memoised by its id until its diagnosis changes,
+ * the memo can be filled with the links resolved earlier (diagnosis_request_disease) from the same diseases
+ * without parsing.
+ *
+ * @author Kacper
+ */
+public class DiseaseMatcher {
+    private static final int ROOT = 0;
+
+    private final List<Disease> diseases;
+    private final HashMap<Integer, Integer> diseaseIndex;
+    private final List<Map<Character, Integer>> transitions;
+    private final int[] fail;
+    private final int[][] outputs;
+    private final int[] patternLengths;
+    private final int[][] patternDiseases;
+    private final ConcurrentHashMap<Integer, Parsed> parsed;
+    private final long diseasesChecksum;
+
+    /**
+     * Compiles the automaton of the names of the given diseases.
+     *
+     * @param diseases the list of all diseases (from database)
+     */
+    public DiseaseMatcher(List<Disease> diseases) {
+        this.diseases = List.copyOf(diseases);
+        this.parsed = new ConcurrentHashMap<>();
+        CRC32 crc = new CRC32();
+        for (Disease disease : this.diseases) {
+            crc.update((disease.getId() + "|" + disease.getName() + "\n").getBytes(StandardCharsets.UTF_8));
+        }
+        this.diseasesChecksum = crc.getValue();
+        this.diseaseIndex = new HashMap<>();
+        for (int i = 0; i < this.diseases.size(); i++) {
+            diseaseIndex.putIfAbsent(this.diseases.get(i).getId(), i);
+        }
+
+        LinkedHashMap<String, List<Integer>> patterns = new LinkedHashMap<>();
+        for (int i = 0; i < this.diseases.size(); i++) {
+            String name = this.diseases.get(i).getName();
+            String pattern = name == null ? "" : normalize(name).trim();
+            if (!pattern.isEmpty()) {
+                patterns.computeIfAbsent(pattern, k -> new ArrayList<>()).add(i);
+            }
+        }
+        this.patternLengths = new int[patterns.size()];
+        this.patternDiseases = new int[patterns.size()][];
+
+        this.transitions = new ArrayList<>();
+        this.transitions.add(new HashMap<>());
+        List<List<Integer>> nodeOutputs = new ArrayList<>();
+        nodeOutputs.add(new ArrayList<>());
+        int patternIndex = 0;
+        for (Map.Entry<String, List<Integer>> entry : patterns.entrySet()) {
+            String pattern = entry.getKey();
+            int node = ROOT;
+            for (int i = 0; i < pattern.length(); i++) {
+                Integer next = transitions.get(node).get(pattern.charAt(i));
+                if (next == null) {
+                    next = transitions.size();
+                    transitions.get(node).put(pattern.charAt(i), next);
+                    transitions.add(new HashMap<>());
+                    nodeOutputs.add(new ArrayList<>());
+                }
+                node = next;
+            }
+            nodeOutputs.get(node).add(patternIndex);
+            patternLengths[patternIndex] = pattern.length();
+            patternDiseases[patternIndex] = entry.getValue().stream().mapToInt(Integer::intValue).toArray();
+            patternIndex++;
+        }
+
+        // failure links in breadth-first order, every node also reports the patterns of its failure node
+        this.fail = new int[transitions.size()];
+        ArrayDeque<Integer> queue = new ArrayDeque<>(transitions.get(ROOT).values());
+        while (!queue.isEmpty()) {
+            int node = queue.poll();
+            for (Map.Entry<Character, Integer> edge : transitions.get(node).entrySet()) {
+                int child = edge.getValue();
+                int state = fail[node];
+                while (state != ROOT && !transitions.get(state).containsKey(edge.getKey())) {
+                    state = fail[state];
+                }
+                Integer target = transitions.get(state).get(edge.getKey());
+                fail[child] = target != null && target != child ? target : ROOT;
+                nodeOutputs.get(child).addAll(nodeOutputs.get(fail[child]));
+                queue.add(child);
+            }
+        }
+        this.outputs = new int[transitions.size()][];
+        for (int i = 0; i < outputs.length; i++) {
+            outputs[i] = nodeOutputs.get(i).stream().mapToInt(Integer::intValue).toArray();
+        }
+    }
+
+    /**
+     * Returns the diseases the automaton was compiled from.
+     */
+    public List<Disease> getDiseases() {
+        return diseases;
+    }
+
+    /**
+     * Returns the checksum of the ids and names of the diseases stored with the links resolved by this matcher,
+     * links resolved from other diseases are stale.
+     */
+    public long getDiseasesChecksum() {
+        return diseasesChecksum;
+    }
+
+    /**
+     * Finds the diseases whose names occur in the diagnosis.
+     *
+     * @param diagnosis the diagnosis (String)
+     * @return the found diseases in the order of the list of all diseases, every disease once
+     */
+    public List<Disease> match(String diagnosis) {
+        if (diagnosis == null || diagnosis.isEmpty()) {
+            return List.of();
+        }
+        String text = normalize(diagnosis);
+        boolean[] found = new boolean[diseases.size()];
+        int state = ROOT;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            Integer next = transitions.get(state).get(c);
+            while (next == null && state != ROOT) {
+                state = fail[state];
+                next = transitions.get(state).get(c);
+            }
+            state = next == null ? ROOT : next;
+            for (int pattern : outputs[state]) {
+                int start = i + 1 - patternLengths[pattern];
+                if (isBoundary(text, start - 1) && isBoundary(text, i + 1)) {
+                    for (int disease : patternDiseases[pattern]) {
+                        found[disease] = true;
+                    }
+                }
+            }
+        }
+        List<Disease> result = new ArrayList<>();
+        for (int i = 0; i < found.length; i++) {
+            if (found[i]) {
+                result.add(diseases.get(i));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Finds the diseases of the diagnosis request, the result is memoised until the diagnosis of the request changes.
+     *
+     * @param diagnosisRequestId the id of the diagnosis request
+     * @param diagnosis          the diagnosis of the request
+     * @return the found diseases, must not be modified
+     */
+    public List<Disease> match(int diagnosisRequestId, String diagnosis) {
+        if (diagnosis == null || diagnosis.isEmpty()) {
+            parsed.remove(diagnosisRequestId);
+            return List.of();
+        }
+        Parsed memo = parsed.get(diagnosisRequestId);
+        if (memo != null && memo.diagnosis().equals(diagnosis)) {
+            return memo.diseases();
+        }
+        List<Disease> result = Collections.unmodifiableList(match(diagnosis));
+        parsed.put(diagnosisRequestId, new Parsed(diagnosis, result));
+        return result;
+    }
+
+    /**
+     * Memoises the linked diseases of the diagnosis requests whose links were resolved from their current diagnosis
+     * and the diseases of this matcher.
+     * Requests without links or with stale links are left to be parsed when they are first matched.
+     *
+     * @param diagnosisRequests the diagnosis requests
+     * @param links             the resolved links of the requests (a link to disease -1 means no disease was found)
+     * @return the number of memoised requests
+     */
+    public int rememberLinks(Collection<DiagnosisRequest> diagnosisRequests, List<DiagnosisRequestDisease> links) {
+        HashMap<Integer, List<DiagnosisRequestDisease>> linksByRequest = new HashMap<>();
+        for (DiagnosisRequestDisease link : links) {
+            linksByRequest.computeIfAbsent(link.getIdDiagnosisRequest(), k -> new ArrayList<>()).add(link);
+        }
+        int remembered = 0;
+        for (DiagnosisRequest diagnosisRequest : diagnosisRequests) {
+            List<DiagnosisRequestDisease> requestLinks = linksByRequest.get(diagnosisRequest.getId());
+            String diagnosis = diagnosisRequest.getDiagnosis();
+            if (requestLinks == null || diagnosis == null || diagnosis.isEmpty()) {
+                continue;
+            }
+            long crc = checksum(diagnosis);
+            if (requestLinks.stream().anyMatch(link -> link.getDiagnosisCrc() != crc
+                    || link.getDiseasesCrc() != diseasesChecksum)) {
+                continue;
+            }
+            boolean[] found = new boolean[diseases.size()];
+            for (DiagnosisRequestDisease link : requestLinks) {
+                Integer index = diseaseIndex.get(link.getIdDisease());
+                if (index != null) {
+                    found[index] = true;
+                }
+            }
+            List<Disease> result = new ArrayList<>();
+            for (int i = 0; i < found.length; i++) {
+                if (found[i]) {
+                    result.add(diseases.get(i));
+                }
+            }
+            parsed.put(diagnosisRequest.getId(), new Parsed(diagnosis, Collections.unmodifiableList(result)));
+            remembered++;
+        }
+        return remembered;
+    }
+
+    /**
+     * Returns the checksum of the diagnosis stored with its links, equal to CRC32(diagnosis) in MySQL.
+     *
+     * @param diagnosis the diagnosis (String)
+     * @return the CRC32 of the UTF-8 bytes of the diagnosis
+     */
+    public static long checksum(String diagnosis) {
+        CRC32 crc = new CRC32();
+        crc.update(diagnosis.getBytes(StandardCharsets.UTF_8));
+        return crc.getValue();
+    }
+
+    /**
+     * Forgets the memoised diseases of a removed diagnosis request.
+     *
+     * @param diagnosisRequestId the id of the diagnosis request
+     */
+    public void forget(int diagnosisRequestId) {
+        parsed.remove(diagnosisRequestId);
+    }
+
+    /**
+     * Returns the number of memoised diagnosis requests.
+     */
+    public int memoSize() {
+        return parsed.size();
+    }
+
+    /**
+     * Lowercases the text, removes diacritics and replaces every whitespace run with a single space.
+     *
+     * @param text the text to normalize
+     * @return the normalized text
+     */
+    static String normalize(String text) {
+        String decomposed = Normalizer.normalize(text, Normalizer.Form.NFD);
+        StringBuilder result = new StringBuilder(decomposed.length());
+        boolean space = false;
+        for (int i = 0; i < decomposed.length(); i++) {
+            char c = decomposed.charAt(i);
+            if (Character.getType(c) == Character.NON_SPACING_MARK) {
+                continue;
+            }
+            if (Character.isWhitespace(c)) {
+                if (!space) {
+                    result.append(' ');
+                }
+                space = true;
+                continue;
+            }
+            space = false;
+            c = Character.toLowerCase(c);
+            result.append(c == 'ł' ? 'l' : c);
+        }
+        return result.toString();
+    }
+
+    private static boolean isBoundary(String text, int index) {
+        return index < 0 || index >= text.length() || !Character.isLetterOrDigit(text.charAt(index));
+    }
+
+    private record Parsed(String diagnosis, List<Disease> diseases) {
+    }
+}
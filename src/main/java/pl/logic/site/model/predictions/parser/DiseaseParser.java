@@ -8,6 +8,7 @@ import java.util.List;
 /**
  * A class for parsing a diagnosis string and finding the corresponding diseases.
  * Search the diagnosis and add the diseases found to the variable list of diseases.
+ * The names are searched with a {@link DiseaseMatcher}, as whole words ignoring case and diacritics.
  * Important: If the patient has not had a diagnosis or no potential diseases have been detected,
  * the diseases list will be empty.
  *
@@ -38,21 +39,17 @@ public class DiseaseParser {
      * @param allDiseases the list of all diseases (from database)
      */
     public DiseaseParser(String diagnosis, List<Disease> allDiseases) {
-        this.diagnosis = diagnosis;
-        this.diseases = new ArrayList<Disease>();
-        parseDiseases(allDiseases);
+        this(diagnosis, new DiseaseMatcher(allDiseases));
     }
 
     /**
-     * Parses the given list of diseases and adds any that match the diagnosis string to the list of matched diseases.
+     * Constructs a DiseaseParser object with the given diagnosis and an already compiled matcher of all diseases.
      *
-     * @param allDiseases the list of all diseases
+     * @param diagnosis      the diagnosis (String)
+     * @param diseaseMatcher the matcher of all diseases
      */
-    private void parseDiseases(List<Disease> allDiseases) {
-        for (Disease disease : allDiseases) {
-            if (this.diagnosis.contains(disease.getName())) {
-                diseases.add(disease);
-            }
-        }
+    public DiseaseParser(String diagnosis, DiseaseMatcher diseaseMatcher) {
+        this.diagnosis = diagnosis;
+        this.diseases = new ArrayList<Disease>(diseaseMatcher.match(diagnosis));
     }
 }
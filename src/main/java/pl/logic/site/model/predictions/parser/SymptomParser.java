@@ -8,9 +8,11 @@ import pl.logic.site.model.dao.SymptomDAO;
 import pl.logic.site.model.mysql.Chart;
 import pl.logic.site.model.mysql.Recognition;
 import pl.logic.site.model.mysql.Symptom;
+import pl.logic.site.model.predictions.features.SymptomIndex;
 import pl.logic.site.repository.RecognitionRepository;
 import pl.logic.site.service.ChartService;
 import pl.logic.site.service.SymptomService;
+import pl.logic.site.utils.predictions.ValueEncoder;
 
 import java.util.*;
 import java.util.stream.Collectors;
@@ -68,6 +70,26 @@ public class SymptomParser {
         return result;
     }
 
+    /**
+     * Connects the patient's symptoms from his chart to the columns of the given symptom index,
+     * returning the code (ValueEncoder.SYMPTOM_VALUES) of the symptoms severity level of every indexed symptom.
+     * If the patient does not have a symptom, the code will be ValueEncoder.ABSENT.
+     *
+     * @param id_chart     the ID of the patient's chart
+     * @param symptomIndex the index that assigns every symptom its column
+     * @return the codes of the symptoms severity levels ordered by the columns of the index
+     */
+    public byte[] connectSymptoms(int id_chart, SymptomIndex symptomIndex) {
+        byte[] result = madeZeroSymptoms(symptomIndex);
+        for (Recognition recognition : recognitionRepository.findByIdChart(id_chart)) {
+            int column = symptomIndex.getColumn(recognition.getIdSymptom());
+            if (column >= 0) {
+                result[column] = ValueEncoder.SYMPTOM_VALUES.code(recognition.getSymptomValueLevel());
+            }
+        }
+        return result;
+    }
+
     /**
      * Searches the database for the patient's symptoms with the given ID in his chart.
      *
@@ -97,4 +119,8 @@ public class SymptomParser {
         }
         return result;
     }
+
+    public byte[] madeZeroSymptoms(SymptomIndex symptomIndex) {
+        return new byte[symptomIndex.size()];
+    }
 }
@@ -0,0 +1,284 @@
+package pl.logic.site.model.predictions.statictic;
+
+import pl.logic.site.model.mysql.ChartSymptom;
+import pl.logic.site.model.mysql.DiagnosisRequest;
+import pl.logic.site.model.mysql.Disease;
+import pl.logic.site.model.predictions.parser.DiseaseMatcher;
+
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.*;
+
+/**
+ * A class that keeps the daily number of symptoms and diseases of diagnosis requests (day x symptom, day x disease).
+ * A diagnosis request adds, on the day it was created, one to every disease it was diagnosed with
+ * and the number of rows of every symptom of its chart.
+ * The cube is built in a single pass over the requests, it is updated incrementally when a request
+ * or the symptoms of a chart change, and every range of days is answered with prefix sums in O(1).
+ *
+ * @author Kacper
+ */
+public class DailyCountCube {
+    private final DiseaseMatcher diseaseMatcher;
+    private final HashMap<Integer, HashMap<Integer, Integer>> symptomsByChart;
+    private final HashMap<Integer, Contribution> contributions;
+    private final DailyCounts symptomCounts;
+    private final DailyCounts diseaseCounts;
+
+    /**
+     * Creates a new empty cube.
+     *
+     * @param diseaseMatcher the matcher of all diseases, used to parse diagnoses
+     */
+    public DailyCountCube(DiseaseMatcher diseaseMatcher) {
+        this.diseaseMatcher = diseaseMatcher;
+        this.symptomsByChart = new HashMap<>();
+        this.contributions = new HashMap<>();
+        this.symptomCounts = new DailyCounts();
+        this.diseaseCounts = new DailyCounts();
+    }
+
+    /**
+     * Creates a new cube of the given diagnosis requests.
+     *
+     * @param diagnosisRequests the diagnosis requests to count
+     * @param chartSymptoms     the symptoms of the charts
+     * @param diseases          the list of all diseases (from database), used to parse diagnoses
+     */
+    public DailyCountCube(List<DiagnosisRequest> diagnosisRequests, List<ChartSymptom> chartSymptoms,
+                          List<Disease> diseases) {
+        this(diagnosisRequests, chartSymptoms, new DiseaseMatcher(diseases));
+    }
+
+    /**
+     * Creates a new cube of the given diagnosis requests that shares the matcher (and its memoised diagnoses)
+     * of all diseases.
+     *
+     * @param diagnosisRequests the diagnosis requests to count
+     * @param chartSymptoms     the symptoms of the charts
+     * @param diseaseMatcher    the matcher of all diseases, used to parse diagnoses
+     */
+    public DailyCountCube(List<DiagnosisRequest> diagnosisRequests, List<ChartSymptom> chartSymptoms,
+                          DiseaseMatcher diseaseMatcher) {
+        this(diseaseMatcher);
+        for (ChartSymptom chartSymptom : chartSymptoms) {
+            symptomsByChart.computeIfAbsent(chartSymptom.getIdChart(), k -> new HashMap<>())
+                    .merge(chartSymptom.getIdSymptom(), 1, Integer::sum);
+        }
+        for (DiagnosisRequest diagnosisRequest : diagnosisRequests) {
+            add(diagnosisRequest.getId(), contributionOf(diagnosisRequest));
+        }
+    }
+
+    /**
+     * Adds the diagnosis request to the cube or replaces its previous version.
+     *
+     * @param diagnosisRequest the created or updated diagnosis request
+     */
+    public synchronized void putRequest(DiagnosisRequest diagnosisRequest) {
+        removeRequest(diagnosisRequest.getId());
+        add(diagnosisRequest.getId(), contributionOf(diagnosisRequest));
+    }
+
+    /**
+     * Removes the diagnosis request from the cube.
+     *
+     * @param diagnosisRequestId the id of the removed diagnosis request
+     */
+    public synchronized void removeRequest(int diagnosisRequestId) {
+        Contribution contribution = contributions.remove(diagnosisRequestId);
+        if (contribution != null) {
+            apply(contribution, -1);
+        }
+    }
+
+    /**
+     * Replaces the symptoms of the chart and recounts the diagnosis requests of the chart.
+     *
+     * @param chartId       the id of the chart
+     * @param chartSymptoms the current symptoms of the chart, empty if the chart was removed
+     */
+    public synchronized void putChartSymptoms(int chartId, List<ChartSymptom> chartSymptoms) {
+        List<Contribution> chartContributions = contributions.values().stream()
+                .filter(contribution -> contribution.chartId() == chartId)
+                .toList();
+        chartContributions.forEach(contribution -> applySymptoms(contribution, -1));
+        HashMap<Integer, Integer> counts = new HashMap<>();
+        for (ChartSymptom chartSymptom : chartSymptoms) {
+            counts.merge(chartSymptom.getIdSymptom(), 1, Integer::sum);
+        }
+        if (counts.isEmpty()) {
+            symptomsByChart.remove(chartId);
+        } else {
+            symptomsByChart.put(chartId, counts);
+        }
+        chartContributions.forEach(contribution -> applySymptoms(contribution, 1));
+    }
+
+    /**
+     * Creates a new cube of the given diagnosis requests that shares the symptoms of charts with this cube.
+     * Requests already counted by this cube are not parsed again.
+     *
+     * @param diagnosisRequests the diagnosis requests to count
+     * @return the new cube
+     */
+    public synchronized DailyCountCube select(Collection<DiagnosisRequest> diagnosisRequests) {
+        DailyCountCube result = new DailyCountCube(diseaseMatcher);
+        for (DiagnosisRequest diagnosisRequest : diagnosisRequests) {
+            HashMap<Integer, Integer> counts = symptomsByChart.get(diagnosisRequest.getIdChart());
+            if (counts != null) {
+                result.symptomsByChart.put(diagnosisRequest.getIdChart(), counts);
+            }
+            Contribution contribution = contributions.get(diagnosisRequest.getId());
+            result.add(diagnosisRequest.getId(), contribution != null ? contribution : contributionOf(diagnosisRequest));
+        }
+        return result;
+    }
+
+    /**
+     * Returns the number of occurrences of the symptom in diagnosis requests created in the given range of days.
+     *
+     * @param symptomId the id of the symptom
+     * @param from      the first day of the range (inclusive)
+     * @param to        the last day of the range (exclusive)
+     * @return the number of occurrences
+     */
+    public synchronized int getSymptomCount(int symptomId, LocalDate from, LocalDate to) {
+        return symptomCounts.count(symptomId, from.toEpochDay(), to.toEpochDay());
+    }
+
+    /**
+     * Returns the number of diagnosis requests with the disease created in the given range of days.
+     *
+     * @param diseaseId the id of the disease
+     * @param from      the first day of the range (inclusive)
+     * @param to        the last day of the range (exclusive)
+     * @return the number of diagnosis requests
+     */
+    public synchronized int getDiseaseCount(int diseaseId, LocalDate from, LocalDate to) {
+        return diseaseCounts.count(diseaseId, from.toEpochDay(), to.toEpochDay());
+    }
+
+    /**
+     * Returns the number of counted diagnosis requests.
+     */
+    public synchronized int size() {
+        return contributions.size();
+    }
+
+    private void add(int diagnosisRequestId, Contribution contribution) {
+        if (contribution != null) {
+            contributions.put(diagnosisRequestId, contribution);
+            apply(contribution, 1);
+        }
+    }
+
+    private void apply(Contribution contribution, int sign) {
+        applySymptoms(contribution, sign);
+        for (int diseaseId : contribution.diseaseIds()) {
+            diseaseCounts.add(diseaseId, contribution.day(), sign);
+        }
+    }
+
+    private void applySymptoms(Contribution contribution, int sign) {
+        HashMap<Integer, Integer> counts = symptomsByChart.get(contribution.chartId());
+        if (counts == null) {
+            return;
+        }
+        for (Map.Entry<Integer, Integer> entry : counts.entrySet()) {
+            symptomCounts.add(entry.getKey(), contribution.day(), sign * entry.getValue());
+        }
+    }
+
+    /**
+     * Calculates what the diagnosis request adds to the cube.
+     * The disease of the request is its id_disease, if it is not set the diagnosis is parsed
+     * and every found disease is counted once.
+     *
+     * @param diagnosisRequest the diagnosis request
+     * @return the contribution or null if the request has no creation date
+     */
+    private Contribution contributionOf(DiagnosisRequest diagnosisRequest) {
+        if (diagnosisRequest.getCreationDate() == null) {
+            return null;
+        }
+        long day = diagnosisRequest.getCreationDate().toInstant().atZone(ZoneId.systemDefault()).toLocalDate()
+                .toEpochDay();
+        int[] diseaseIds;
+        if (diagnosisRequest.getIdDisease() > 0) {
+            diseaseIds = new int[]{diagnosisRequest.getIdDisease()};
+        } else if (diagnosisRequest.getDiagnosis() == null || diagnosisRequest.getDiagnosis().isEmpty()) {
+            diseaseIds = new int[0];
+        } else {
+            diseaseIds = diseaseMatcher.match(diagnosisRequest.getId(), diagnosisRequest.getDiagnosis()).stream()
+                    .mapToInt(Disease::getId)
+                    .distinct()
+                    .toArray();
+        }
+        return new Contribution(diagnosisRequest.getIdChart(), day, diseaseIds);
+    }
+
+    private record Contribution(int chartId, long day, int[] diseaseIds) {
+    }
+
+    /**
+     * Daily counts of every key stored in arrays indexed by day, with prefix sums calculated lazily per key.
+     */
+    private static class DailyCounts {
+        private final HashMap<Integer, int[]> daily = new HashMap<>();
+        private final HashMap<Integer, long[]> prefixSums = new HashMap<>();
+        private long firstDay;
+        private int length;
+
+        void add(int key, long day, int delta) {
+            ensureCapacity(day);
+            daily.computeIfAbsent(key, k -> new int[length])[(int) (day - firstDay)] += delta;
+            prefixSums.remove(key);
+        }
+
+        int count(int key, long from, long to) {
+            int[] counts = daily.get(key);
+            if (counts == null || from >= to) {
+                return 0;
+            }
+            long[] prefix = prefixSums.computeIfAbsent(key, k -> {
+                long[] sums = new long[counts.length + 1];
+                for (int i = 0; i < counts.length; i++) {
+                    sums[i + 1] = sums[i] + counts[i];
+                }
+                return sums;
+            });
+            return (int) (prefix[position(to)] - prefix[position(from)]);
+        }
+
+        private int position(long day) {
+            return (int) Math.max(0, Math.min(length, day - firstDay));
+        }
+
+        /**
+         * Grows all arrays so that they contain the day, at least doubling them to keep additions amortized O(1).
+         */
+        private void ensureCapacity(long day) {
+            if (length == 0) {
+                firstDay = day;
+                length = 1;
+                return;
+            }
+            if (day >= firstDay && day < firstDay + length) {
+                return;
+            }
+            long newFirstDay = day < firstDay ? Math.min(day, firstDay - length) : firstDay;
+            long newEnd = day < firstDay ? firstDay + length : Math.max(day + 1, firstDay + 2L * length);
+            int newLength = (int) (newEnd - newFirstDay);
+            int shift = (int) (firstDay - newFirstDay);
+            for (Map.Entry<Integer, int[]> entry : daily.entrySet()) {
+                int[] counts = new int[newLength];
+                System.arraycopy(entry.getValue(), 0, counts, shift, length);
+                entry.setValue(counts);
+            }
+            prefixSums.clear();
+            firstDay = newFirstDay;
+            length = newLength;
+        }
+    }
+}
@@ -0,0 +1,115 @@
+package pl.logic.site.model.predictions.statictic;
+
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * A class that counts diagnosis requests in consecutive intervals of days going back from the current date,
+ * in total and per doctor.
+ * Interval i (starting from 0) contains the requests created in the daysInterval before
+ * currentDate - i * daysInterval (both ends excluded), the same days as
+ * {@link StatisticPrediction#getDiagnosisRequestsSizeByDaysInterval}.
+ * Every request is assigned to its interval in O(1), so all intervals are filled in a single pass
+ * over the requests and the requests do not have to be read once per interval.
+ *
+ * @author Kacper
+ */
+public class IntervalCounter {
+    private final long currentDay;
+    private final int daysInterval;
+    private final int[] requestCounts;
+    private final int[][] doctorCounts;
+    private final HashMap<Integer, Integer> doctorIndex;
+
+    /**
+     * Creates a new counter without any request.
+     *
+     * @param currentDate  the date the intervals go back from
+     * @param daysInterval how many days have the single interval
+     * @param intervals    the number of intervals
+     * @param doctorIds    the ids of the doctors to count, requests of other doctors are counted only in total
+     */
+    public IntervalCounter(LocalDate currentDate, int daysInterval, int intervals, List<Integer> doctorIds) {
+        this.currentDay = currentDate.toEpochDay();
+        this.daysInterval = daysInterval;
+        this.requestCounts = new int[intervals];
+        this.doctorCounts = new int[intervals][doctorIds.size()];
+        this.doctorIndex = new HashMap<>();
+        for (int i = 0; i < doctorIds.size(); i++) {
+            doctorIndex.putIfAbsent(doctorIds.get(i), i);
+        }
+    }
+
+    /**
+     * Returns the first day that may belong to an interval, requests created earlier are never counted.
+     */
+    public LocalDate getFirstDay() {
+        return LocalDate.ofEpochDay(currentDay - (long) daysInterval * requestCounts.length + 1);
+    }
+
+    /**
+     * Returns the day after the last day that may belong to an interval (the current date).
+     */
+    public LocalDate getEndDay() {
+        return LocalDate.ofEpochDay(currentDay);
+    }
+
+    /**
+     * Returns true if no request can belong to any interval,
+     * e.g. when the intervals are shorter than two days and both of their ends are excluded.
+     */
+    public boolean isEmpty() {
+        return daysInterval <= 1 || requestCounts.length == 0;
+    }
+
+    /**
+     * Counts the diagnosis request in its interval, if it belongs to any.
+     *
+     * @param creationDate the creation date of the request, requests without it are not counted
+     * @param doctorId     the id of the doctor of the request
+     */
+    public void add(Date creationDate, int doctorId) {
+        if (creationDate == null || isEmpty()) {
+            return;
+        }
+        long daysBefore = currentDay - Instant.ofEpochMilli(creationDate.getTime())
+                .atZone(ZoneId.systemDefault()).toLocalDate().toEpochDay();
+        if (daysBefore < 1 || daysBefore % daysInterval == 0) {
+            return;
+        }
+        long interval = (daysBefore - 1) / daysInterval;
+        if (interval >= requestCounts.length) {
+            return;
+        }
+        requestCounts[(int) interval]++;
+        Integer index = doctorIndex.get(doctorId);
+        if (index != null) {
+            doctorCounts[(int) interval][index]++;
+        }
+    }
+
+    /**
+     * Returns the number of diagnosis requests in the interval.
+     *
+     * @param interval the interval, 0 is the latest one
+     * @return the number of diagnosis requests
+     */
+    public int getRequestCount(int interval) {
+        return requestCounts[interval];
+    }
+
+    /**
+     * Returns the number of diagnosis requests of the doctor in the interval.
+     *
+     * @param interval    the interval, 0 is the latest one
+     * @param doctorIndex the position of the doctor in the ids given to the constructor
+     * @return the number of diagnosis requests
+     */
+    public int getDoctorCount(int interval, int doctorIndex) {
+        return doctorCounts[interval][doctorIndex];
+    }
+}
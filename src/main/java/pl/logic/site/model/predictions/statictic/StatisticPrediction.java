@@ -1,11 +1,9 @@
 package pl.logic.site.model.predictions.statictic;
 
 import org.springframework.jdbc.core.JdbcTemplate;
-import pl.logic.site.model.mysql.ChartSymptom;
 import pl.logic.site.model.mysql.DiagnosisRequest;
 import pl.logic.site.model.mysql.Disease;
 import pl.logic.site.model.mysql.Doctor;
-import pl.logic.site.model.predictions.parser.DiseaseParser;
 import pl.logic.site.service.ChartSymptomService;
 import pl.logic.site.service.DiagnosisRequestService;
 
@@ -56,26 +54,18 @@ public class StatisticPrediction {
     }
 
 
-    public static int getSymptomCountInDaysInterval(List<DiagnosisRequest> allDiagnosisRequests, List<ChartSymptom> chartSymptoms, int daysInterval, LocalDate currentDate, int symptomId) {
-        List<DiagnosisRequest> diagnosis = getDiagnosisRequestsByDaysIntervalOptimalized(allDiagnosisRequests, daysInterval, currentDate);
-        int counter = 0;
-        Iterator<DiagnosisRequest> iterator = diagnosis.iterator();
-        while (iterator.hasNext()) {
-            DiagnosisRequest diagnosisRequest = iterator.next();
-            int idChart = diagnosisRequest.getIdChart();
-            List<ChartSymptom> chartSymptomsCopy = new ArrayList<>();
-            for (ChartSymptom chartSymptom : chartSymptoms) {
-                if (chartSymptom.getIdChart() == idChart) {
-                    chartSymptomsCopy.add(chartSymptom);
-                }
-            }
-            for (ChartSymptom chartSymptom : chartSymptomsCopy) {
-                if (chartSymptom.getIdSymptom() == symptomId) {
-                    counter++;
-                }
-            }
-        }
-        return counter;
+    /**
+     * Returns the number of occurrences of the symptom in diagnosis requests created
+     * in the daysInterval before currentDate (both ends excluded).
+     *
+     * @param dailyCountCube - the daily counts of diagnosis requests
+     * @param daysInterval   - number of days interval
+     * @param currentDate    - current date
+     * @param symptomId      - id of the symptom
+     * @return - number of occurrences of the symptom in the given days interval
+     */
+    public static int getSymptomCountInDaysInterval(DailyCountCube dailyCountCube, int daysInterval, LocalDate currentDate, int symptomId) {
+        return dailyCountCube.getSymptomCount(symptomId, currentDate.minusDays(daysInterval - 1L), currentDate);
     }
 
     public static int getDiseaseCountInDaysIntervalFaster(List<DiagnosisRequest> allDiagnosisRequests, List<Disease> diseases, int daysInterval, LocalDate currentDate, int diseaseId) {
@@ -89,32 +79,20 @@ public class StatisticPrediction {
         return counter;
     }
 
-    public static int getDiseaseCountInDaysInterval(List<DiagnosisRequest> allDiagnosisRequests, List<Disease> diseases, int daysInterval, LocalDate currentDate, int diseaseId) {
-        List<DiagnosisRequest> diagnosis = getDiagnosisRequestsByDaysIntervalOptimalized(allDiagnosisRequests, daysInterval, currentDate);
-        int counter = 0;
-        for (DiagnosisRequest diagnosisRequest : diagnosis) {
-            if (diagnosisRequest.getIdDisease() > 0) {
-                if (diagnosisRequest.getIdDisease() == diseaseId) {
-                    counter++;
-                }
-            } else {
-                if (diagnosisRequest.getDiagnosis() == null || diagnosisRequest.getDiagnosis().isEmpty()) {
-                    continue;
-                }
-                DiseaseParser diseaseParser = new DiseaseParser(diagnosisRequest.getDiagnosis(), diseases);
-                List<Disease> results = diseaseParser.getDiseases();
-                for (Disease disease : results) {
-                    if (disease.getId() == diseaseId) {
-                        counter++;
-                        break;
-                    }
-                }
-            }
-        }
-        return counter;
+    /**
+     * Returns the number of diagnosis requests with the disease created
+     * in the daysInterval before currentDate (both ends excluded).
+     *
+     * @param dailyCountCube - the daily counts of diagnosis requests
+     * @param daysInterval   - number of days interval
+     * @param currentDate    - current date
+     * @param diseaseId      - id of the disease
+     * @return - number of diagnosis requests with the disease in the given days interval
+     */
+    public static int getDiseaseCountInDaysInterval(DailyCountCube dailyCountCube, int daysInterval, LocalDate currentDate, int diseaseId) {
+        return dailyCountCube.getDiseaseCount(diseaseId, currentDate.minusDays(daysInterval - 1L), currentDate);
     }
 
-
     private static List<DiagnosisRequest> getDiagnosisRequestsByDaysIntervalOptimalized(List<DiagnosisRequest> allDiagnosisRequests, int daysInterval, LocalDate currentDate) {
         List<DiagnosisRequest> allDiagnosisRequestsCopy = new ArrayList<>(allDiagnosisRequests);
         LocalDate dateThreshold = currentDate.minusDays(daysInterval);
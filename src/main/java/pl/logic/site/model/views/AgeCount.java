@@ -0,0 +1,22 @@
+package pl.logic.site.model.views;
+
+/**
+ * Projection of an aggregated report row: the number of occurrences of a symptom or a disease
+ * among patients of the given age.
+ */
+public interface AgeCount {
+    /**
+     * @return the current age of the patients in years, null if the birth date is unknown
+     */
+    Integer getAge();
+
+    /**
+     * @return the id of the symptom or the disease
+     */
+    Integer getId();
+
+    /**
+     * @return the number of occurrences
+     */
+    Long getCount();
+}
@@ -0,0 +1,21 @@
+package pl.logic.site.model.views;
+
+/**
+ * Projection of an aggregated report row: the number of occurrences of a symptom or a disease on a day.
+ */
+public interface DateCount {
+    /**
+     * @return the day in the yyyy-MM-dd format
+     */
+    String getDay();
+
+    /**
+     * @return the id of the symptom or the disease
+     */
+    Integer getId();
+
+    /**
+     * @return the number of occurrences
+     */
+    Long getCount();
+}
@@ -0,0 +1,18 @@
+package pl.logic.site.model.views;
+
+import java.util.Date;
+
+/**
+ * Projection of a diagnosis request reduced to what the interval predictions need: when it was created and for whom.
+ */
+public interface RequestDate {
+    /**
+     * @return the creation date of the diagnosis request
+     */
+    Date getCreationDate();
+
+    /**
+     * @return the id of the doctor of the diagnosis request
+     */
+    Integer getIdDoctor();
+}
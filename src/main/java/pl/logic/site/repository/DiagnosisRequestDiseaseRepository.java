@@ -0,0 +1,9 @@
+package pl.logic.site.repository;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+import pl.logic.site.model.mysql.DiagnosisRequestDisease;
+
+@Repository
+public interface DiagnosisRequestDiseaseRepository extends JpaRepository<DiagnosisRequestDisease, Integer> {
+}
@@ -1,17 +1,96 @@
 package pl.logic.site.repository;
 
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 import pl.logic.site.model.mysql.DiagnosisRequest;
+import pl.logic.site.model.views.AgeCount;
+import pl.logic.site.model.views.DateCount;
+import pl.logic.site.model.views.RequestDate;
 
+import java.util.Collection;
+import java.util.Date;
 import java.util.List;
 import java.util.Optional;
 
 @Repository
 public interface DiagnosisRequestRepository extends JpaRepository<DiagnosisRequest, Integer> {
     List<DiagnosisRequest> findAllByIdChart(int idchart);
+
+    /**
+     * Finds the doctors of the diagnosis requests of the given charts.
+     */
+    @Query(value = "SELECT DISTINCT dr.id_doctor FROM diagnosis_request dr WHERE dr.id_chart IN :chartIds", nativeQuery = true)
+    List<Integer> findDoctorIdsByChartIn(@Param("chartIds") Collection<Integer> chartIds);
+
+    /**
+     * Finds the doctors of the diagnosis requests of the charts of the given patients.
+     */
+    @Query(value = "SELECT DISTINCT dr.id_doctor FROM diagnosis_request dr JOIN chart c ON c.id = dr.id_chart " +
+            "WHERE c.id_patient IN :patientIds", nativeQuery = true)
+    List<Integer> findDoctorIdsByPatientIn(@Param("patientIds") Collection<Integer> patientIds);
+    List<DiagnosisRequest> findAllByIdChartIn(Collection<Integer> chartIds);
     Optional<DiagnosisRequest> findAllById(int id);
     Optional<DiagnosisRequest> findById(int id);
     Optional<DiagnosisRequest> findByIdChart(int id);
     List<DiagnosisRequest> findAllByIdDoctor(int id);
+
+    /**
+     * Reads the creation date and the doctor of every diagnosis request created in [fromDate, toDate).
+     */
+    @Query("SELECT dr.creationDate AS creationDate, dr.idDoctor AS idDoctor FROM DiagnosisRequest dr " +
+            "WHERE dr.creationDate >= :fromDate AND dr.creationDate < :toDate")
+    List<RequestDate> findCreationDatesBetween(@Param("fromDate") Date fromDate, @Param("toDate") Date toDate);
+
+    /**
+     * Counts the symptoms of the charts of the doctor's diagnosis requests by the day of the chart.
+     * Every distinct symptom of a chart is counted once per diagnosis request of the doctor.
+     */
+    @Query(value = "SELECT DATE_FORMAT(c.date, '%Y-%m-%d') AS day, cs.id_symptom AS id, COUNT(*) AS count " +
+            "FROM diagnosis_request dr " +
+            "JOIN chart c ON c.id = dr.id_chart " +
+            "JOIN (SELECT DISTINCT id_chart, id_symptom FROM chart_symptom) cs ON cs.id_chart = c.id " +
+            "WHERE dr.id_doctor = :idDoctor AND c.date BETWEEN :fromDate AND :toDate " +
+            "GROUP BY day, cs.id_symptom ORDER BY day", nativeQuery = true)
+    List<DateCount> countSymptomsByDay(@Param("idDoctor") int idDoctor, @Param("fromDate") Date fromDate,
+                                       @Param("toDate") Date toDate);
+
+    /**
+     * Counts the diagnosed diseases of the doctor's diagnosis requests by the day of the last modification.
+     */
+    @Query(value = "SELECT DATE_FORMAT(dr.modification_date, '%Y-%m-%d') AS day, dr.id_disease AS id, COUNT(*) AS count " +
+            "FROM diagnosis_request dr " +
+            "WHERE dr.id_doctor = :idDoctor AND dr.creation_date IS NOT NULL AND dr.id_disease > 0 " +
+            "AND dr.modification_date BETWEEN :fromDate AND :toDate " +
+            "GROUP BY day, dr.id_disease ORDER BY day", nativeQuery = true)
+    List<DateCount> countDiseasesByDay(@Param("idDoctor") int idDoctor, @Param("fromDate") Date fromDate,
+                                       @Param("toDate") Date toDate);
+
+    /**
+     * Counts the symptoms of the charts of the doctor's diagnosis requests by the current age of the patient.
+     * Every distinct symptom of a chart is counted once per diagnosis request of the doctor.
+     */
+    @Query(value = "SELECT TIMESTAMPDIFF(YEAR, p.birth_date, CURDATE()) AS age, cs.id_symptom AS id, COUNT(*) AS count " +
+            "FROM diagnosis_request dr " +
+            "JOIN chart c ON c.id = dr.id_chart " +
+            "JOIN patient p ON p.id = c.id_patient " +
+            "JOIN (SELECT DISTINCT id_chart, id_symptom FROM chart_symptom) cs ON cs.id_chart = c.id " +
+            "WHERE dr.id_doctor = :idDoctor AND c.date BETWEEN :fromDate AND :toDate " +
+            "GROUP BY age, cs.id_symptom", nativeQuery = true)
+    List<AgeCount> countSymptomsByAge(@Param("idDoctor") int idDoctor, @Param("fromDate") Date fromDate,
+                                      @Param("toDate") Date toDate);
+
+    /**
+     * Counts the diagnosed diseases of the doctor's diagnosis requests by the current age of the patient.
+     */
+    @Query(value = "SELECT TIMESTAMPDIFF(YEAR, p.birth_date, CURDATE()) AS age, dr.id_disease AS id, COUNT(*) AS count " +
+            "FROM diagnosis_request dr " +
+            "JOIN chart c ON c.id = dr.id_chart " +
+            "JOIN patient p ON p.id = c.id_patient " +
+            "WHERE dr.id_doctor = :idDoctor AND dr.creation_date IS NOT NULL AND dr.id_disease > 0 " +
+            "AND dr.modification_date BETWEEN :fromDate AND :toDate " +
+            "GROUP BY age, dr.id_disease", nativeQuery = true)
+    List<AgeCount> countDiseasesByAge(@Param("idDoctor") int idDoctor, @Param("fromDate") Date fromDate,
+                                      @Param("toDate") Date toDate);
 }
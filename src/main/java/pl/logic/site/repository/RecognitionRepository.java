@@ -4,9 +4,11 @@ import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.stereotype.Repository;
 import pl.logic.site.model.mysql.Recognition;
 
+import java.util.Collection;
 import java.util.List;
 
 @Repository
 public interface RecognitionRepository extends JpaRepository<Recognition, Integer> {
     List<Recognition> findByIdChart(int id_chart);
+    List<Recognition> findAllByIdChartIn(Collection<Integer> chartIds);
 }
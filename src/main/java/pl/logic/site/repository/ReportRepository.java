@@ -1,12 +1,43 @@
 package pl.logic.site.repository;
 
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+import pl.logic.site.model.ReportProgress;
+import pl.logic.site.model.enums.ReportStatus;
 import pl.logic.site.model.mysql.Report;
 
+import java.util.Collection;
+import java.util.Date;
 import java.util.List;
+import java.util.Optional;
 
 @Repository
 public interface ReportRepository extends JpaRepository<Report, Integer> {
     List<Report> findAllByIdDoctor(String doctorId);
+
+    @Query(value = "SELECT new pl.logic.site.model.ReportProgress(r.id, r.status, r.progress, r.error) FROM Report r WHERE r.id = :id")
+    Optional<ReportProgress> findProgressById(@Param("id") int id);
+
+    @Transactional
+    @Modifying
+    @Query(value = "UPDATE Report r SET r.status = :status, r.progress = :progress, r.error = :error WHERE r.id = :id")
+    int updateProgress(@Param("id") int id, @Param("status") ReportStatus status, @Param("progress") int progress,
+                       @Param("error") String error);
+
+    @Transactional
+    @Modifying
+    @Query(value = "UPDATE Report r SET r.status = pl.logic.site.model.enums.ReportStatus.done, r.progress = 100, r.error = null, r.fileHash = :hash, r.fileSize = :size WHERE r.id = :id")
+    int completeReport(@Param("id") int id, @Param("hash") String hash, @Param("size") long size);
+
+    @Transactional
+    @Modifying
+    @Query(value = "UPDATE Report r SET r.status = :status, r.error = :error WHERE r.status IN :unfinished " +
+            "AND (r.instanceId = :instanceId OR (r.instanceId IS NULL AND r.creationDate < :startedBefore))")
+    int updateUnfinished(@Param("status") ReportStatus status, @Param("error") String error,
+                         @Param("unfinished") Collection<ReportStatus> unfinished,
+                         @Param("instanceId") String instanceId, @Param("startedBefore") Date startedBefore);
 }
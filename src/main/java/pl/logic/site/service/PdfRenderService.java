@@ -0,0 +1,7 @@
+package pl.logic.site.service;
+
+import java.io.OutputStream;
+
+public interface PdfRenderService {
+    void render(String html, OutputStream out);
+}
@@ -0,0 +1,18 @@
+package pl.logic.site.service;
+
+import pl.logic.site.model.ReportArtifact;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Storage of report files outside the database, files are addressed by the hash of their content,
+ * so identical reports share one stored file.
+ */
+public interface ReportArtifactStore {
+    ReportArtifact save(InputStream in) throws IOException;
+
+    InputStream open(String hash) throws IOException;
+
+    boolean exists(String hash);
+}
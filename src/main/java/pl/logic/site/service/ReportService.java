@@ -1,11 +1,16 @@
 package pl.logic.site.service;
 
 import pl.logic.site.model.ReportDTO;
-import pl.logic.site.model.mysql.Disease;
 import pl.logic.site.model.mysql.Report;
 
+import java.io.IOException;
+import java.io.InputStream;
 import java.util.List;
 
 public interface ReportService {
     List<ReportDTO> getReportsByDoctorId(String doctorID);
+
+    Report getReport(int reportId);
+
+    InputStream openReportFile(Report report) throws IOException;
 }
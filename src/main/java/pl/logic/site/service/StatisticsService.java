@@ -1,17 +1,24 @@
 package pl.logic.site.service;
 
+import pl.logic.site.model.ReportProgress;
+import pl.logic.site.model.enums.ReportType;
 import pl.logic.site.model.mysql.Disease;
 import pl.logic.site.model.mysql.Report;
 import pl.logic.site.model.mysql.Symptom;
 import pl.logic.site.model.reportsForms.ReportCreateForm;
 
-import java.sql.SQLException;
+import java.io.IOException;
+import java.io.OutputStream;
 import java.time.LocalDate;
 import java.util.Date;
 import java.util.List;
 
 public interface StatisticsService {
-    Report createReport(ReportCreateForm reportCreateForm) throws SQLException;
+    Report createReport(ReportCreateForm reportCreateForm);
+
+    ReportProgress getReportProgress(int reportId);
+
+    void writeCSVReport(ReportType reportType, int idDoctor, Date fromDate, Date toDate, OutputStream out) throws IOException;
 
     public String[] getAgeGroups();
 
@@ -0,0 +1,306 @@
+package pl.logic.site.service.impl;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.ParameterizedPreparedStatementSetter;
+import org.springframework.stereotype.Component;
+import pl.logic.site.model.enums.AuditOverflowPolicy;
+import pl.logic.site.model.mysql.Log;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Writes audit logs to the database in the background.
+ * Logs are put into a bounded queue and a single writer thread inserts them in JDBC batches,
+ * so creating a log does not add a database round trip to the request.
+ * When the queue is full the overflow policy decides whether the request waits, the log is dropped
+ * or it is spilled to a local file, which is written to the database when the queue is idle.
+ * A batch that fails is retried row by row, so one bad row does not lose the whole batch.
+ * Logs that could not be written because the database is unavailable are spilled (with the spill policy)
+ * or counted as failed; a replay of the spill file that hits such an error stops and keeps them in the file.
+ * Queue depth and outcomes are counted in the meter registry (audit.log.*).
+ */
+@Slf4j
+@Component
+public class AuditLogWriter {
+    static final String INSERT = "INSERT INTO log (event_date, message, type, details, user_id) VALUES (?, ?, ?, ?, ?)";
+    private static final ParameterizedPreparedStatementSetter<Log> SETTER = (ps, log) -> {
+        ps.setTimestamp(1, new Timestamp(log.getEventDate().getTime()));
+        ps.setString(2, log.getMessage());
+        ps.setInt(3, log.getType().ordinal());
+        ps.setString(4, log.getDetails());
+        ps.setInt(5, log.getUserId());
+    };
+
+    private final JdbcTemplate jdbcTemplate;
+    private final BlockingQueue<Log> queue;
+    private final int batchSize;
+    private final long flushMillis;
+    private final AuditOverflowPolicy overflowPolicy;
+    private final Path spillFile;
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final Counter written;
+    private final Counter dropped;
+    private final Counter spilled;
+    private final Counter failed;
+    private volatile boolean running;
+    private Thread writer;
+
+    @Autowired
+    public AuditLogWriter(JdbcTemplate jdbcTemplate, MeterRegistry meterRegistry,
+                          @Value("${audit.log.queue-capacity:10000}") int capacity,
+                          @Value("${audit.log.batch-size:200}") int batchSize,
+                          @Value("${audit.log.flush-interval-ms:500}") long flushMillis,
+                          @Value("${audit.log.overflow-policy:spill}") AuditOverflowPolicy overflowPolicy,
+                          @Value("${audit.log.spill-file:audit-log-spill.jsonl}") String spillFile) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.queue = new ArrayBlockingQueue<>(capacity);
+        this.batchSize = batchSize;
+        this.flushMillis = flushMillis;
+        this.overflowPolicy = overflowPolicy;
+        this.spillFile = Paths.get(spillFile).toAbsolutePath();
+        Gauge.builder("audit.log.queue.depth", queue, BlockingQueue::size)
+                .description("Audit logs waiting to be written").register(meterRegistry);
+        this.written = outcome(meterRegistry, "written");
+        this.dropped = outcome(meterRegistry, "dropped");
+        this.spilled = outcome(meterRegistry, "spilled");
+        this.failed = outcome(meterRegistry, "failed");
+    }
+
+    private static Counter outcome(MeterRegistry meterRegistry, String outcome) {
+        return Counter.builder("audit.log.entries").tag("outcome", outcome)
+                .description("Audit logs by outcome").register(meterRegistry);
+    }
+
+    @PostConstruct
+    public void start() {
+        running = true;
+        writer = new Thread(this::run, "audit-log-writer");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    /**
+     * Stops the writer thread and writes the logs left in the queue.
+     */
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        running = false;
+        if (writer != null) {
+            writer.interrupt();
+            writer.join(TimeUnit.SECONDS.toMillis(10));
+        }
+        while (!queue.isEmpty()) {
+            drain(0);
+        }
+    }
+
+    /**
+     * Queues the log for writing, applying the overflow policy when the queue is full.
+     * @param log - the log to write, its id must be 0
+     *
+     * @return boolean - false if the log was dropped
+     * */
+    public boolean submit(Log log) {
+        if (queue.offer(log))
+            return true;
+        switch (overflowPolicy) {
+            case block -> {
+                try {
+                    queue.put(log);
+                    return true;
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    dropped.increment();
+                    return false;
+                }
+            }
+            case spill -> {
+                if (spill(log))
+                    return true;
+                dropped.increment();
+                return false;
+            }
+            default -> {
+                dropped.increment();
+                return false;
+            }
+        }
+    }
+
+    private void run() {
+        while (running) {
+            try {
+                if (drain(flushMillis) == 0) {
+                    replaySpill();
+                }
+            } catch (InterruptedException e) {
+                return;
+            } catch (RuntimeException e) {
+                log.error("Audit log writer failed: {}", e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Waits for a log and writes it together with the other queued logs, up to one batch.
+     * @param timeoutMillis - how long to wait for the first log
+     *
+     * @return int - the number of logs taken from the queue
+     * */
+    int drain(long timeoutMillis) throws InterruptedException {
+        Log first = queue.poll(timeoutMillis, TimeUnit.MILLISECONDS);
+        if (first == null)
+            return 0;
+        List<Log> batch = new ArrayList<>(batchSize);
+        batch.add(first);
+        queue.drainTo(batch, batchSize - 1);
+        for (Log entry : write(batch)) {
+            if (overflowPolicy != AuditOverflowPolicy.spill || !spill(entry)) {
+                failed.increment();
+                log.error("Audit log not written: {}", entry.getMessage());
+            }
+        }
+        return batch.size();
+    }
+
+    /**
+     * Writes the logs in a single batch, a failed batch is retried row by row.
+     * A row rejected by the database (e.g. a too long message) is counted as failed and skipped.
+     * Any other error means the database can't be written now, the row and all rows after it are returned.
+     * @param batch - the logs to write
+     *
+     * @return List - the logs that were not written because of the database and can be written later, in order
+     * */
+    private List<Log> write(List<Log> batch) {
+        try {
+            jdbcTemplate.batchUpdate(INSERT, batch, batchSize, SETTER);
+            written.increment(batch.size());
+            return List.of();
+        } catch (DataAccessException e) {
+            log.warn("Audit log batch of {} failed, writing row by row: {}", batch.size(), e.getMessage());
+        }
+        for (int i = 0; i < batch.size(); i++) {
+            Log entry = batch.get(i);
+            try {
+                jdbcTemplate.batchUpdate(INSERT, List.of(entry), 1, SETTER);
+                written.increment();
+            } catch (DataIntegrityViolationException rowError) {
+                failed.increment();
+                log.error("Audit log not written: {} ({})", entry.getMessage(), rowError.getMessage());
+            } catch (DataAccessException rowError) {
+                log.error("Audit logs can't be written, {} left unwritten: {}", batch.size() - i, rowError.getMessage());
+                return batch.subList(i, batch.size());
+            }
+        }
+        return List.of();
+    }
+
+    private synchronized boolean spill(Log entry) {
+        try (BufferedWriter out = Files.newBufferedWriter(spillFile, StandardCharsets.UTF_8,
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND)) {
+            out.write(objectMapper.writeValueAsString(entry));
+            out.newLine();
+            spilled.increment();
+            return true;
+        } catch (IOException e) {
+            log.error("Audit log could not be spilled to {}: {}", spillFile, e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * Writes the spilled logs to the database. The file is renamed first, so logs spilled in the meantime
+     * go to a new file. If the database can't be written, the replay stops and the file keeps the unwritten logs
+     * and all logs after them, so the next replay continues with them.
+     */
+    void replaySpill() {
+        Path replay = spillFile.resolveSibling(spillFile.getFileName() + ".replay");
+        try {
+            if (!Files.exists(replay)) {
+                synchronized (this) {
+                    if (!Files.exists(spillFile))
+                        return;
+                    Files.move(spillFile, replay, StandardCopyOption.ATOMIC_MOVE);
+                }
+            }
+            List<Log> batch = new ArrayList<>(batchSize);
+            List<Log> unwritten = List.of();
+            List<String> unread = List.of();
+            try (BufferedReader in = Files.newBufferedReader(replay, StandardCharsets.UTF_8)) {
+                String line;
+                while ((line = in.readLine()) != null) {
+                    if (line.isBlank())
+                        continue;
+                    try {
+                        batch.add(objectMapper.readValue(line, Log.class));
+                    } catch (IOException e) {
+                        failed.increment();
+                        log.error("Spilled audit log skipped, it cannot be read: {}", e.getMessage());
+                        continue;
+                    }
+                    if (batch.size() == batchSize) {
+                        unwritten = write(batch);
+                        batch = new ArrayList<>(batchSize);
+                        if (!unwritten.isEmpty()) {
+                            unread = in.lines().toList();
+                            break;
+                        }
+                    }
+                }
+            }
+            if (unwritten.isEmpty() && !batch.isEmpty())
+                unwritten = write(batch);
+            if (!unwritten.isEmpty()) {
+                keepUnwritten(replay, unwritten, unread);
+                return;
+            }
+            Files.delete(replay);
+        } catch (IOException e) {
+            log.error("Spilled audit logs in {} could not be written: {}", replay, e.getMessage());
+        }
+    }
+
+    /**
+     * Replaces the replay file with the unwritten logs followed by the lines that were not read yet.
+     */
+    private void keepUnwritten(Path replay, List<Log> unwritten, List<String> unread) throws IOException {
+        Path kept = replay.resolveSibling(replay.getFileName() + ".tmp");
+        try (BufferedWriter out = Files.newBufferedWriter(kept, StandardCharsets.UTF_8)) {
+            for (Log entry : unwritten) {
+                out.write(objectMapper.writeValueAsString(entry));
+                out.newLine();
+            }
+            for (String line : unread) {
+                out.write(line);
+                out.newLine();
+            }
+        }
+        Files.move(kept, replay, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        log.warn("Spilled audit log replay stopped, {} logs kept in {}", unwritten.size() + unread.size(), replay);
+    }
+}
@@ -0,0 +1,97 @@
+package pl.logic.site.service.impl;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.stereotype.Component;
+import pl.logic.site.model.predictions.knn.DatasetWatermark;
+import pl.logic.site.model.predictions.knn.DatasetWatermark.TableMark;
+
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * Reads the watermark of the tables the prediction dataset is built from and finds the patients whose
+ * DiseaseVectors have changed since an earlier watermark.
+ * Every mark is a single aggregate query evaluated by the database, so checking a stored dataset snapshot
+ * costs a few round trips and no rows are transferred.
+ * Rows with ids above the earlier watermark are appended rows, their patients can be refreshed one by one.
+ * Any other change (an edited or removed row, including an edited diagnosis) can't be attributed to patients
+ * and requires a full reload. Modification dates are not used, they are set by the clients.
+ */
+@Component
+public class DatasetChangeTracker {
+    static final String PATIENT_MARK = mark("patient", "id, height, weight, gender, birth_date");
+    static final String CHART_MARK = mark("chart", "id, id_patient");
+    static final String RECOGNITION_MARK = mark("recognition", "id, id_chart, id_symptom, symptom_value_level");
+    static final String DIAGNOSIS_REQUEST_MARK = mark("diagnosis_request", "id, id_chart, diagnosis");
+    static final String DISEASE_MARK = mark("disease", "id, name");
+    static final String SELECT_CHANGED_PATIENTS = "SELECT p.id FROM patient p WHERE p.id > ? " +
+            "UNION SELECT c.id_patient FROM chart c WHERE c.id > ? " +
+            "UNION SELECT c.id_patient FROM recognition r JOIN chart c ON c.id = r.id_chart WHERE r.id > ? " +
+            "UNION SELECT c.id_patient FROM diagnosis_request dr JOIN chart c ON c.id = dr.id_chart " +
+            "WHERE dr.id > ?";
+    private static final RowMapper<TableMark> TABLE_MARK = (rs, rowNum) ->
+            new TableMark(rs.getLong(1), rs.getLong(2), rs.getLong(3));
+
+    private final JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    public DatasetChangeTracker(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    /**
+     * Reads the current watermark.
+     *
+     * @return the watermark of all tables
+     */
+    public DatasetWatermark read() {
+        return new DatasetWatermark(
+                mark(PATIENT_MARK, Long.MAX_VALUE),
+                mark(CHART_MARK, Long.MAX_VALUE),
+                mark(RECOGNITION_MARK, Long.MAX_VALUE),
+                mark(DIAGNOSIS_REQUEST_MARK, Long.MAX_VALUE),
+                mark(DISEASE_MARK, Long.MAX_VALUE));
+    }
+
+    /**
+     * Checks that the rows covered by the earlier watermark are unchanged, so all changes since then
+     * are appended rows, which {@link #findChangedPatients} finds.
+     *
+     * @param since the earlier watermark
+     * @return true if the changes can be caught up patient by patient, false if the dataset has to be reloaded
+     */
+    public boolean isAppendOnly(DatasetWatermark since) {
+        return mark(PATIENT_MARK, since.patients().maxId()).equals(since.patients())
+                && mark(CHART_MARK, since.charts().maxId()).equals(since.charts())
+                && mark(RECOGNITION_MARK, since.recognitions().maxId()).equals(since.recognitions())
+                && mark(DIAGNOSIS_REQUEST_MARK, since.diagnosisRequests().maxId()).equals(since.diagnosisRequests())
+                && mark(DISEASE_MARK, Long.MAX_VALUE).equals(since.diseases());
+    }
+
+    /**
+     * Finds the patients with rows appended since the earlier watermark.
+     *
+     * @param since the earlier watermark
+     * @return the ids of the patients, in ascending order
+     */
+    public Set<Integer> findChangedPatients(DatasetWatermark since) {
+        return new TreeSet<>(jdbcTemplate.queryForList(SELECT_CHANGED_PATIENTS, Integer.class,
+                since.patients().maxId(), since.charts().maxId(), since.recognitions().maxId(),
+                since.diagnosisRequests().maxId()));
+    }
+
+    private TableMark mark(String sql, long upToId) {
+        return jdbcTemplate.queryForObject(sql, TABLE_MARK, upToId);
+    }
+
+    /**
+     * Returns the query of the number of rows, the greatest id and the checksum of the columns of the rows
+     * with ids up to the parameter.
+     */
+    private static String mark(String table, String columns) {
+        return "SELECT COUNT(*), COALESCE(MAX(id), 0), COALESCE(BIT_XOR(CRC32(CONCAT_WS('|', " + columns + "))), 0) " +
+                "FROM " + table + " WHERE id <= ?";
+    }
+}
@@ -3,10 +3,12 @@ package pl.logic.site.service.impl;
 import lombok.AllArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
 import pl.logic.site.model.dao.DiagnosisRequestDAO;
+import pl.logic.site.model.events.DiagnosisRequestReassignedEvent;
 import pl.logic.site.model.exception.DeleteError;
 import pl.logic.site.model.exception.EntityNotFound;
 import pl.logic.site.model.exception.SaveError;
@@ -42,6 +44,8 @@ public class DiagnosisRequestServiceImpl implements DiagnosisRequestService {
 
     @Autowired
     ChartRepository chartRepository;
+    @Autowired
+    private ApplicationEventPublisher eventPublisher;
 
     /**
      * Create diagnosis request based on given data access object
@@ -147,6 +151,7 @@ public class DiagnosisRequestServiceImpl implements DiagnosisRequestService {
             log.error(err.getMessage());
             throw err;
         }
+        int previousIdDoctor = diagnosisRequestFromDatabase.get().getIdDoctor();
         DiagnosisRequest returned;
         try {
             returned = diagnosisRequestRepository.saveAndFlush(diagnosisRequestEntity);
@@ -155,6 +160,9 @@ public class DiagnosisRequestServiceImpl implements DiagnosisRequestService {
             log.error(err.getMessage());
             throw err;
         }
+        if (previousIdDoctor != returned.getIdDoctor()) {
+            eventPublisher.publishEvent(new DiagnosisRequestReassignedEvent(returned.getId(), previousIdDoctor));
+        }
         log.info("Diagnosis request with id: {} was successfully updated: {}", diagnosisRequestId, returned);
         return returned;
     }
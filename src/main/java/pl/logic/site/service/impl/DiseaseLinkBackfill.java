@@ -0,0 +1,221 @@
+package pl.logic.site.service.impl;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.transaction.support.TransactionTemplate;
+import pl.logic.site.model.enums.ChangeType;
+import pl.logic.site.model.events.DiagnosisRequestChangedEvent;
+import pl.logic.site.model.events.DiseaseChangedEvent;
+import pl.logic.site.model.mysql.DiagnosisRequest;
+import pl.logic.site.model.mysql.Disease;
+import pl.logic.site.model.predictions.parser.DiseaseMatcher;
+import pl.logic.site.service.DiseaseService;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Resolves the free-text diagnoses of diagnosis requests into persisted links to diseases (diagnosis_request_disease),
+ * so predictions read disease ids instead of parsing the diagnoses again.
+ * Every link keeps the CRC32 of the diagnosis and the checksum of the diseases it was resolved from, and a link
+ * that does not match the current diagnosis or diseases is ignored, so links never have to be cleared in
+ * the transaction that changes the request or a disease.
+ * At startup all requests without current links are resolved in batches ordered by id, each batch in its own
+ * transaction; the links themselves record the progress, so an interrupted backfill resumes where it stopped.
+ * Created and updated requests are resolved after commit, a change of diseases resolves the stale links again
+ * the same way. All work runs on a single background thread.
+ */
+@Slf4j
+@Component
+public class DiseaseLinkBackfill {
+    static final String SELECT_UNLINKED = "SELECT dr.id, dr.diagnosis FROM diagnosis_request dr " +
+            "WHERE dr.id > ? AND dr.diagnosis IS NOT NULL AND dr.diagnosis <> '' " +
+            "AND NOT EXISTS (SELECT 1 FROM diagnosis_request_disease l " +
+            "WHERE l.id_diagnosis_request = dr.id AND l.diagnosis_crc = CRC32(dr.diagnosis) AND l.diseases_crc = ?) " +
+            "ORDER BY dr.id LIMIT ?";
+    static final String DELETE = "DELETE FROM diagnosis_request_disease WHERE id_diagnosis_request = ?";
+    static final String INSERT = "INSERT INTO diagnosis_request_disease " +
+            "(id_diagnosis_request, id_disease, diagnosis_crc, diseases_crc) VALUES (?, ?, ?, ?)";
+    private static final RowMapper<Unlinked> UNLINKED = (rs, rowNum) ->
+            new Unlinked(rs.getInt("id"), rs.getString("diagnosis"));
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final DiseaseService diseaseService;
+    private final int batchSize;
+    private final ExecutorService executor;
+    private volatile DiseaseMatcher diseaseMatcher;
+
+    @Autowired
+    public DiseaseLinkBackfill(JdbcTemplate jdbcTemplate, TransactionTemplate transactionTemplate,
+                               DiseaseService diseaseService,
+                               @Value("${diagnosis.links.batch-size:500}") int batchSize) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = transactionTemplate;
+        this.diseaseService = diseaseService;
+        this.batchSize = batchSize;
+        this.executor = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "disease-link-backfill");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Compiles the matcher of disease names.
+     */
+    @PostConstruct
+    public void init() {
+        this.diseaseMatcher = new DiseaseMatcher(diseaseService.getDiseases());
+    }
+
+    /**
+     * Starts resolving the history in the background once the application (and its schema) is ready.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        executor.execute(this::backfill);
+    }
+
+    /**
+     * Stops the background thread, an unfinished backfill continues at the next start.
+     */
+    @PreDestroy
+    public void stop() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * Waits until the work submitted so far is done.
+     *
+     * @param timeoutMillis the maximum time to wait
+     */
+    void awaitIdle(long timeoutMillis) throws Exception {
+        executor.submit(() -> {
+        }).get(timeoutMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Resolves the diagnosis of a created or updated request and forgets the links of a deleted one.
+     *
+     * @param event the event describing the changed diagnosis request
+     */
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onDiagnosisRequestChanged(DiagnosisRequestChangedEvent event) {
+        DiagnosisRequest diagnosisRequest = event.diagnosisRequest();
+        String diagnosis = diagnosisRequest.getDiagnosis();
+        if (event.changeType() == ChangeType.deleted || diagnosis == null || diagnosis.isEmpty()) {
+            executor.execute(() -> unlink(diagnosisRequest.getId()));
+        } else {
+            executor.execute(() -> link(List.of(new Unlinked(diagnosisRequest.getId(), diagnosis))));
+        }
+    }
+
+    /**
+     * Recompiles the matcher of disease names and resolves the links, which are all stale now, again
+     * batch by batch. Until a request is resolved again its stale link is ignored.
+     *
+     * @param event the event describing the changed disease
+     */
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onDiseaseChanged(DiseaseChangedEvent event) {
+        executor.execute(() -> {
+            try {
+                this.diseaseMatcher = new DiseaseMatcher(diseaseService.getDiseases());
+            } catch (DataAccessException e) {
+                log.error("Error recompiling disease matcher after a change of disease with ID: {}", event.diseaseId(), e);
+                return;
+            }
+            backfill();
+        });
+    }
+
+    /**
+     * Resolves all diagnoses without current links, batch by batch in the order of ids.
+     *
+     * @return the number of resolved diagnosis requests
+     */
+    int backfill() {
+        int resolved = 0;
+        int afterId = 0;
+        long diseasesCrc = this.diseaseMatcher.getDiseasesChecksum();
+        try {
+            while (!Thread.currentThread().isInterrupted()) {
+                List<Unlinked> batch = jdbcTemplate.query(SELECT_UNLINKED, UNLINKED, afterId, diseasesCrc, batchSize);
+                if (batch.isEmpty()) {
+                    break;
+                }
+                link(batch);
+                resolved += batch.size();
+                afterId = batch.getLast().id();
+            }
+        } catch (DataAccessException e) {
+            log.error("Disease link backfill stopped after {} diagnosis requests", resolved, e);
+            return resolved;
+        }
+        if (resolved > 0) {
+            log.info("Disease links resolved for {} diagnosis requests", resolved);
+        }
+        return resolved;
+    }
+
+    /**
+     * Replaces the links of the diagnosis requests in a single transaction.
+     * A request without any known disease gets a link to disease -1, which marks it as resolved.
+     *
+     * @param requests the diagnosis requests to resolve
+     */
+    void link(List<Unlinked> requests) {
+        DiseaseMatcher matcher = this.diseaseMatcher;
+        long diseasesCrc = matcher.getDiseasesChecksum();
+        List<Object[]> deletes = new ArrayList<>(requests.size());
+        List<Object[]> inserts = new ArrayList<>(requests.size());
+        for (Unlinked request : requests) {
+            long crc = DiseaseMatcher.checksum(request.diagnosis());
+            deletes.add(new Object[]{request.id()});
+            List<Disease> found = matcher.match(request.diagnosis());
+            if (found.isEmpty()) {
+                inserts.add(new Object[]{request.id(), -1, crc, diseasesCrc});
+            }
+            for (Disease disease : found) {
+                inserts.add(new Object[]{request.id(), disease.getId(), crc, diseasesCrc});
+            }
+        }
+        try {
+            transactionTemplate.executeWithoutResult(status -> {
+                jdbcTemplate.batchUpdate(DELETE, deletes);
+                jdbcTemplate.batchUpdate(INSERT, inserts);
+            });
+        } catch (DataAccessException e) {
+            log.error("Error saving disease links of {} diagnosis requests", requests.size(), e);
+            throw e;
+        }
+    }
+
+    private void unlink(int diagnosisRequestId) {
+        try {
+            jdbcTemplate.update(DELETE, diagnosisRequestId);
+        } catch (DataAccessException e) {
+            log.error("Error removing disease links of diagnosis request with ID: {}", diagnosisRequestId, e);
+        }
+    }
+
+    /**
+     * A diagnosis request whose diagnosis has to be resolved.
+     */
+    record Unlinked(int id, String diagnosis) {
+    }
+}
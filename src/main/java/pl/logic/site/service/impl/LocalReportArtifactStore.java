@@ -0,0 +1,103 @@
+package pl.logic.site.service.impl;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import pl.logic.site.model.ReportArtifact;
+import pl.logic.site.service.ReportArtifactStore;
+
+import java.io.*;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.regex.Pattern;
+
+/**
+ * Report artifact store on the local filesystem.
+ * A file is saved as {root}/{first two characters of the hash}/{hash}. It is first written to a temporary file
+ * in the root directory while its hash is calculated, and then moved into place, so a file that exists
+ * under its hash is always complete.
+ */
+@Slf4j
+@Service
+public class LocalReportArtifactStore implements ReportArtifactStore {
+    private static final Pattern HASH = Pattern.compile("[0-9a-f]{64}");
+
+    private final Path root;
+
+    public LocalReportArtifactStore(@Value("${report.artifacts.dir:report-artifacts}") String root) {
+        this.root = Paths.get(root).toAbsolutePath();
+    }
+
+    /**
+     * Saves the content of the stream, the stream is not closed.
+     * If a file with the same content is already stored, the new copy is discarded.
+     * @param in - content of the file
+     *
+     * @return ReportArtifact - hash and size of the file
+     * */
+    @Override
+    public ReportArtifact save(InputStream in) throws IOException {
+        Files.createDirectories(root);
+        Path temp = Files.createTempFile(root, "upload-", ".tmp");
+        try {
+            MessageDigest digest = sha256();
+            long size;
+            try (OutputStream out = new DigestOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)), digest)) {
+                size = in.transferTo(out);
+            }
+            String hash = HexFormat.of().formatHex(digest.digest());
+            Path target = resolve(hash);
+            if (Files.exists(target)) {
+                log.info("Report file {} already stored", hash);
+                return new ReportArtifact(hash, size);
+            }
+            Files.createDirectories(target.getParent());
+            try {
+                Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE);
+            } catch (FileAlreadyExistsException e) {
+                // saved concurrently with the same content
+            }
+            return new ReportArtifact(hash, size);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    /**
+     * Opens the stored file for reading, the caller closes the stream.
+     * @param hash - hash of the file
+     *
+     * @return InputStream - content of the file
+     * @throws java.nio.file.NoSuchFileException - no file is stored under the hash
+     * */
+    @Override
+    public InputStream open(String hash) throws IOException {
+        return new BufferedInputStream(Files.newInputStream(resolve(hash)));
+    }
+
+    @Override
+    public boolean exists(String hash) {
+        return Files.exists(resolve(hash));
+    }
+
+    private Path resolve(String hash) {
+        if (hash == null || !HASH.matcher(hash).matches())
+            throw new IllegalArgumentException("Invalid report file hash: " + hash);
+        return root.resolve(hash.substring(0, 2)).resolve(hash);
+    }
+
+    private MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
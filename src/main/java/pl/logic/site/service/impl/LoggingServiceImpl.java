@@ -29,10 +29,13 @@ import java.util.List;
 @Service
 @RequiredArgsConstructor
 public class LoggingServiceImpl implements LoggingService {
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
     @Autowired
     private LogRepository logRepository;
     @Autowired
     private JwtServiceImpl jwtService;
+    @Autowired
+    private AuditLogWriter auditLogWriter;
 
     @Transactional
     public Log addLog(final Log log) {
@@ -49,16 +52,20 @@ public class LoggingServiceImpl implements LoggingService {
     }
 
 
+    /**
+     * Creates a log of the action and queues it for writing, the log is written to the database in the background.
+     * The user id is read from the payload of the token here, so the token itself is never queued or spilled.
+     */
     @Override
     public void createLog(String message, Object details, LogType logType, String header) {
         try {
             int userId = Integer.parseInt(jwtService.decodeJWT(header).get("SpringUserId"));
             switch (logType) {
                 case info, error -> {
-                    addLog(new Log(0, new Date(), message + "Action taken by springUserId: " + userId, logType, (String) details, userId));
+                    auditLogWriter.submit(new Log(0, new Date(), message + "Action taken by springUserId: " + userId, logType, (String) details, userId));
                 }
                 case create, delete, update -> {
-                    addLog(new Log(0, new Date(), message + "Action taken by springUserId: " + userId, logType, new ObjectMapper().writeValueAsString(details), userId));
+                    auditLogWriter.submit(new Log(0, new Date(), message + "Action taken by springUserId: " + userId, logType, OBJECT_MAPPER.writeValueAsString(details), userId));
                 }
             }
         } catch (Exception e) {
@@ -0,0 +1,115 @@
+package pl.logic.site.service.impl;
+
+import com.itextpdf.html2pdf.ConverterProperties;
+import com.itextpdf.html2pdf.HtmlConverter;
+import com.itextpdf.html2pdf.resolver.font.DefaultFontProvider;
+import com.itextpdf.layout.font.FontSet;
+import com.itextpdf.styledxmlparser.resolver.font.BasicFontProvider;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import pl.logic.site.service.PdfRenderService;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Converts HTML reports to PDF.
+ * The fonts are loaded once at startup into a shared FontSet, every render gets its own font provider over that set
+ * (a font provider caches fonts of a single document), so no render parses font files again.
+ * At most pdf.render.concurrency renders run at the same time (0 = number of processors), others wait for a permit.
+ * Render times are recorded in the report.pdf.render timer.
+ */
+@Slf4j
+@Service
+public class PdfRenderServiceImpl implements PdfRenderService {
+    private final Semaphore permits;
+    private final int concurrency;
+    private final Timer successTimer;
+    private final Timer failureTimer;
+    private FontSet fontSet;
+    private String defaultFontFamily;
+
+    @Autowired
+    public PdfRenderServiceImpl(MeterRegistry meterRegistry, @Value("${pdf.render.concurrency:0}") int concurrency) {
+        this.concurrency = concurrency > 0 ? concurrency : Runtime.getRuntime().availableProcessors();
+        this.permits = new Semaphore(this.concurrency, true);
+        this.successTimer = Timer.builder("report.pdf.render").tag("outcome", "success")
+                .description("Time of converting a report from HTML to PDF").register(meterRegistry);
+        this.failureTimer = Timer.builder("report.pdf.render").tag("outcome", "failure")
+                .description("Time of converting a report from HTML to PDF").register(meterRegistry);
+        Gauge.builder("report.pdf.render.waiting", permits, Semaphore::getQueueLength)
+                .description("Renders waiting for a permit").register(meterRegistry);
+    }
+
+    /**
+     * Loads the standard and shipped fonts and renders a small document, so the first report does not pay for it.
+     */
+    @PostConstruct
+    public void init() {
+        long start = System.nanoTime();
+        DefaultFontProvider fontProvider = new DefaultFontProvider(true, true, false);
+        this.fontSet = fontProvider.getFontSet();
+        this.defaultFontFamily = fontProvider.getDefaultFontFamily();
+        HtmlConverter.convertToPdf("<p>warm-up</p>", OutputStream.nullOutputStream(), converterProperties());
+        log.info("PDF renderer ready with {} fonts and {} permits in {} ms", fontSet.size(), concurrency,
+                (System.nanoTime() - start) / 1_000_000);
+    }
+
+    /**
+     * Converts the HTML document to PDF, waits while all permits are taken.
+     * @param html - the HTML document
+     * @param out - target of the PDF, not closed
+     *
+     * @throws IllegalStateException - the thread was interrupted while waiting for a permit
+     * */
+    @Override
+    public void render(String html, OutputStream out) {
+        try {
+            permits.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for the PDF renderer", e);
+        }
+        long start = System.nanoTime();
+        boolean rendered = false;
+        try {
+            HtmlConverter.convertToPdf(html, new NonClosingOutputStream(out), converterProperties());
+            rendered = true;
+        } finally {
+            permits.release();
+            (rendered ? successTimer : failureTimer).record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    private ConverterProperties converterProperties() {
+        return new ConverterProperties().setFontProvider(new BasicFontProvider(fontSet, defaultFontFamily));
+    }
+
+    /**
+     * HtmlConverter closes the stream it writes to, the caller of render owns it.
+     */
+    private static class NonClosingOutputStream extends FilterOutputStream {
+        NonClosingOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+        }
+
+        @Override
+        public void close() throws IOException {
+            flush();
+        }
+    }
+}
@@ -1,27 +1,66 @@
 package pl.logic.site.service.impl;
 
 import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionalEventListener;
+import pl.logic.site.model.enums.ChangeType;
+import pl.logic.site.model.events.ChartChangedEvent;
+import pl.logic.site.model.events.DiagnosisRequestChangedEvent;
+import pl.logic.site.model.events.DiseaseChangedEvent;
+import pl.logic.site.model.events.PatientChangedEvent;
 import pl.logic.site.model.exception.EntityNotFound;
 import pl.logic.site.model.mysql.*;
 import pl.logic.site.model.predictions.features.DiseaseVector;
+import pl.logic.site.model.predictions.features.FeatureMatrix;
+import pl.logic.site.model.predictions.features.SymptomIndex;
+import pl.logic.site.model.predictions.knn.ChartPredictionCache;
+import pl.logic.site.model.predictions.knn.DatasetSnapshot;
+import pl.logic.site.model.predictions.knn.DatasetWatermark;
 import pl.logic.site.model.predictions.knn.KNN;
+import pl.logic.site.model.predictions.knn.NeighbourIndex;
+import pl.logic.site.model.predictions.knn.SnapshotFile;
+import pl.logic.site.model.predictions.knn.VPTree;
 import pl.logic.site.model.predictions.metric.EuclideanMetric;
-import pl.logic.site.model.predictions.parser.DiseaseParser;
+import pl.logic.site.model.predictions.parser.DatasetLoader;
+import pl.logic.site.model.predictions.parser.DiseaseMatcher;
 import pl.logic.site.model.predictions.parser.SymptomParser;
 import pl.logic.site.model.predictions.quality.Quality;
 import pl.logic.site.model.predictions.quality.Result;
+import pl.logic.site.model.predictions.statictic.DailyCountCube;
 import pl.logic.site.model.predictions.statictic.DiseasePrediction;
+import pl.logic.site.model.predictions.statictic.IntervalCounter;
 import pl.logic.site.model.predictions.statictic.Prediction;
+import pl.logic.site.model.views.RequestDate;
+import pl.logic.site.repository.ChartRepository;
+import pl.logic.site.repository.ChartSymptomRepository;
+import pl.logic.site.repository.DiagnosisRequestDiseaseRepository;
+import pl.logic.site.repository.DiagnosisRequestRepository;
 import pl.logic.site.repository.RecognitionRepository;
 import pl.logic.site.service.*;
 
+import java.io.IOException;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.time.LocalDate;
+import java.time.Period;
 import java.time.YearMonth;
+import java.time.ZoneId;
 import java.time.temporal.ChronoUnit;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
 
 import static pl.logic.site.model.predictions.statictic.StatisticPrediction.*;
 import static pl.logic.site.utils.predictions.PredictionConsts.K;
@@ -35,6 +74,8 @@ import static pl.logic.site.utils.predictions.PredictionConsts.MAX_DEEP_OF_PREDI
 @Slf4j
 @Service
 public class PredictionServiceImpl implements PredictionService {
+    private static final int SNAPSHOT_SHUTDOWN_SECONDS = 10;
+
     @Autowired
     private DiagnosisRequestService diagnosisRequestService;
     @Autowired
@@ -52,19 +93,45 @@ public class PredictionServiceImpl implements PredictionService {
     @Autowired
     private RecognitionRepository recognitionRepository;
     @Autowired
+    private ChartRepository chartRepository;
+    @Autowired
+    private ChartSymptomRepository chartSymptomRepository;
+    @Autowired
+    private DiagnosisRequestRepository diagnosisRequestRepository;
+    @Autowired
+    private DiagnosisRequestDiseaseRepository diagnosisRequestDiseaseRepository;
+    @Autowired
     private StatisticsService statisticsService;
-
-
-    private List<DiseaseVector> dataset;
-    private List<DiseaseVector> learningSet;
-    private List<DiseaseVector> testingSet;
+    @Autowired
+    private DatasetChangeTracker datasetChangeTracker;
+    @Value("${prediction.knn.parallelism:0}")
+    private int parallelism;
+    @Value("${prediction.snapshot.file:prediction-snapshot.bin}")
+    private String snapshotFile;
+
+
+    private volatile DatasetSnapshot snapshot;
+    private volatile DatasetWatermark syncedWatermark;
+    private ExecutorService snapshotExecutor;
+    private final Object pendingChangeLock = new Object();
+    private Set<Integer> pendingPatients = new LinkedHashSet<>();
+    private Map<Integer, PendingChart> pendingCharts = new LinkedHashMap<>();
+    private boolean pendingChangesScheduled;
+    private Function<FeatureMatrix, NeighbourIndex> indexFactory;
+    private ChartPredictionCache chartPredictionCache;
     private EuclideanMetric euclideanMetric;
-    private int numberOfCompleteDiseaseVectors;
+    private ForkJoinPool classificationPool;
     private SymptomParser symptomParser;
-
-    private List<Disease> diseases;
-    private List<Patient> patients;
-    private List<Chart> charts;
+    private DatasetLoader datasetLoader;
+    private SymptomIndex symptomIndex;
+    private volatile DailyCountCube dailyCountCube;
+    private final Object dailyCountLock = new Object();
+    private List<Consumer<DailyCountCube>> pendingDailyCountChanges;
+    private volatile CompletableFuture<Void> dailyCountsBuilt;
+    private ExecutorService dailyCountExecutor;
+    private volatile DiseaseMatcher diseaseMatcher;
+
+    private volatile List<Disease> diseases;
     private List<Symptom> symptoms;
 
     /**
@@ -72,61 +139,463 @@ public class PredictionServiceImpl implements PredictionService {
      * This method initializes first part of necessary parameters.
      */
     public PredictionServiceImpl() {
-        this.dataset = new ArrayList<>();
-        this.learningSet = new ArrayList<>();
-        this.testingSet = new ArrayList<>();
         this.euclideanMetric = new EuclideanMetric();
-        this.numberOfCompleteDiseaseVectors = 0;
+        this.chartPredictionCache = new ChartPredictionCache();
     }
 
     /**
      * This method initializes rest of necessary parameters.
      * DiseaseVector calculates for every patient who has a patient card and has previously suffered
      * from at least one disease.
-     * Such DiseaseVectors are added to the dataset
+     * Such DiseaseVectors are added to the dataset.
+     * The dataset is restored from the snapshot file when there is a valid one and caught up with the database
+     * in the background, otherwise it is loaded from the database and the snapshot file is written in the background.
+     * The daily counts are built in the background too.
      */
     @PostConstruct
     public void init() {
+        this.pendingDailyCountChanges = new ArrayList<>();
+        this.dailyCountsBuilt = new CompletableFuture<>();
+        this.dailyCountExecutor = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "daily-counts");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.snapshotExecutor = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "prediction-snapshot");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.indexFactory = matrix -> new VPTree(matrix, euclideanMetric);
+        DatasetWatermark watermark = datasetChangeTracker.read();
         this.symptomParser = new SymptomParser(chartService, recognitionRepository, symptomService);
+        this.classificationPool = new ForkJoinPool(parallelism > 0 ? parallelism : Runtime.getRuntime().availableProcessors());
         this.diseases = diseaseService.getDiseases();
-        this.patients = patientService.getPatients();
-        this.charts = chartService.getAllCharts();
+        this.diseaseMatcher = new DiseaseMatcher(diseases);
+        List<Patient> patients = patientService.getPatients();
+        List<Chart> charts = chartService.getAllCharts();
         this.symptoms = symptomService.getSymptoms();
+        this.symptomIndex = new SymptomIndex(symptoms);
         log.info("Prediction service initialized");
-        for (int i = 0; i < patients.size(); i++) {
-            List<DiagnosisRequest> patientDiagnosisRequests = new ArrayList<>();
-            try {
-                List<Integer> chartIds = symptomParser.searchChartIdByPatientId(patients.get(i).getId());
-                for (Integer chartId : chartIds) {
-                    List<DiagnosisRequest> newDiagnosisRequests = diagnosisRequestService.getAllDiagnosisRequestsByChart(chartId);
-                    patientDiagnosisRequests.addAll(newDiagnosisRequests);
+        this.datasetLoader = new DatasetLoader(chartRepository, recognitionRepository, diagnosisRequestRepository,
+                symptomIndex, diseaseMatcher);
+        this.snapshot = restoreSnapshot(watermark, patients, charts);
+        List<DiagnosisRequest> diagnosisRequests = null;
+        if (this.snapshot == null) {
+            diagnosisRequests = diagnosisRequestService.getAllDiagnosisRequests();
+            rememberDiseaseLinks(diagnosisRequests);
+            this.snapshot = new DatasetSnapshot(0, patients, charts, datasetLoader.loadAll(patients, charts), indexFactory);
+            this.syncedWatermark = watermark;
+            log.info("Dataset initialized");
+            snapshotExecutor.execute(() -> saveSnapshot(watermark));
+        }
+        List<DiagnosisRequest> loadedRequests = diagnosisRequests;
+        dailyCountExecutor.execute(() -> buildDailyCounts(loadedRequests != null ? () -> loadedRequests
+                : this::readDiagnosisRequests));
+    }
+
+    /**
+     * Reads all diagnosis requests and memoises the diseases of those resolved earlier.
+     *
+     * @return all diagnosis requests
+     */
+    private List<DiagnosisRequest> readDiagnosisRequests() {
+        List<DiagnosisRequest> diagnosisRequests = diagnosisRequestService.getAllDiagnosisRequests();
+        rememberDiseaseLinks(diagnosisRequests);
+        return diagnosisRequests;
+    }
+
+    /**
+     * Memoises the diseases of the diagnosis requests resolved earlier from the current diseases
+     * (diagnosis_request_disease), so their diagnoses are not parsed again.
+     *
+     * @param diagnosisRequests all diagnosis requests
+     */
+    private void rememberDiseaseLinks(List<DiagnosisRequest> diagnosisRequests) {
+        int linked = diseaseMatcher.rememberLinks(diagnosisRequests, diagnosisRequestDiseaseRepository.findAll());
+        log.info("Diseases of {} diagnosis requests read from their links", linked);
+    }
+
+    /**
+     * Builds the daily counts of all diagnosis requests on the daily counts thread. Changes of the counts made
+     * in the meantime are kept and applied to the built counts before they replace the current ones, so none
+     * of them is lost. Readers of the counts wait until they are built for the first time, later they read
+     * the current counts until the new ones are built.
+     *
+     * @param diagnosisRequests supplies all diagnosis requests
+     */
+    private void buildDailyCounts(Supplier<List<DiagnosisRequest>> diagnosisRequests) {
+        synchronized (dailyCountLock) {
+            if (pendingDailyCountChanges == null) {
+                pendingDailyCountChanges = new ArrayList<>();
+            }
+        }
+        try {
+            DailyCountCube counts = new DailyCountCube(diagnosisRequests.get(), chartSymptomService.getAllChartSymptoms(),
+                    diseaseMatcher);
+            synchronized (dailyCountLock) {
+                pendingDailyCountChanges.forEach(change -> change.accept(counts));
+                pendingDailyCountChanges = null;
+                this.dailyCountCube = counts;
+            }
+            if (!dailyCountsBuilt.complete(null) && dailyCountsBuilt.isCompletedExceptionally()) {
+                dailyCountsBuilt = CompletableFuture.completedFuture(null);
+            }
+            log.info("Daily counts built");
+        } catch (RuntimeException e) {
+            synchronized (dailyCountLock) {
+                if (this.dailyCountCube != null) {
+                    pendingDailyCountChanges.forEach(change -> change.accept(this.dailyCountCube));
                 }
-//                patientDiagnosisRequests = diagnosisRequestService.getDiagnosisRequests(symptomParser.searchChartIdByPatientId(patients.get(i).getId()));
-            } catch (Exception e) {
-                log.error("Error while getting diagnosis requests for patient with ID: " + patients.get(i).getId());
-                continue;
+                pendingDailyCountChanges = null;
             }
-            List<Integer> chartIds = symptomParser.searchChartIdByPatientId(patients.get(i).getId());
-            if (chartIds.isEmpty()) {
-                continue;
+            dailyCountsBuilt.completeExceptionally(e);
+            log.error("Error building daily counts", e);
+        }
+    }
+
+    /**
+     * Applies the change to the daily counts, or keeps it until the counts are built.
+     *
+     * @param change the change of the counts
+     */
+    private void changeDailyCounts(Consumer<DailyCountCube> change) {
+        DailyCountCube counts;
+        synchronized (dailyCountLock) {
+            if (pendingDailyCountChanges != null) {
+                pendingDailyCountChanges.add(change);
+                return;
             }
-            for (Integer chartId : chartIds) {
-                HashMap<String, String> patientSymptoms = symptomParser.connectSymptoms(chartId, symptoms);
-                for (int j = 0; j < patientDiagnosisRequests.size(); j++) {
-                    DiseaseParser diseaseParser = new DiseaseParser(patientDiagnosisRequests.get(j).getDiagnosis(), diseases);
-                    List<Disease> patientDiseases = diseaseParser.getDiseases();
-                    if (!patientDiseases.isEmpty()) {
-                        for (Disease disease : patientDiseases) {
-                            this.dataset.add(new DiseaseVector(disease, patients.get(i), patientSymptoms));
-                            this.numberOfCompleteDiseaseVectors++;
-                        }
-                    }
+            counts = this.dailyCountCube;
+        }
+        if (counts != null) {
+            change.accept(counts);
+        }
+    }
+
+    /**
+     * Returns the daily counts, waits until they are built.
+     *
+     * @return the daily counts of all diagnosis requests
+     */
+    private DailyCountCube dailyCounts() {
+        dailyCountsBuilt.join();
+        return this.dailyCountCube;
+    }
+
+    /**
+     * Shuts down the pool used to classify testing sets and saves the dataset to the snapshot file,
+     * unless it is still being caught up with the database.
+     * The file gets the watermark the dataset was last synchronised to, not the current one, so changes
+     * the dataset may have missed since then are caught up again at the next start.
+     */
+    @PreDestroy
+    public void destroy() {
+        this.classificationPool.shutdown();
+        this.dailyCountExecutor.shutdownNow();
+        this.snapshotExecutor.shutdownNow();
+        try {
+            if (!this.snapshotExecutor.awaitTermination(SNAPSHOT_SHUTDOWN_SECONDS, TimeUnit.SECONDS)) {
+                return;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return;
+        }
+        DatasetWatermark watermark = this.syncedWatermark;
+        if (watermark != null) {
+            saveSnapshot(watermark);
+        }
+    }
+
+    /**
+     * Restores the dataset from the snapshot file and, if the database has changed since the snapshot was saved,
+     * catches the dataset up in the background.
+     *
+     * @param watermark the current watermark of the database
+     * @param patients  all patients
+     * @param charts    all charts
+     * @return the restored dataset or null if there is no valid snapshot file
+     */
+    private DatasetSnapshot restoreSnapshot(DatasetWatermark watermark, List<Patient> patients, List<Chart> charts) {
+        Path path = Paths.get(snapshotFile).toAbsolutePath();
+        SnapshotFile.Stored stored;
+        try {
+            stored = SnapshotFile.read(path, symptomIndex, diseases);
+        } catch (NoSuchFileException e) {
+            log.info("No dataset snapshot file at {}", path);
+            return null;
+        } catch (IOException e) {
+            log.warn("Dataset snapshot file {} not used: {}", path, e.getMessage());
+            return null;
+        }
+        this.datasetLoader.rememberCharts(patients, charts);
+        DatasetSnapshot restored = new DatasetSnapshot(0, patients, charts, stored.vectorsByPatient(), indexFactory);
+        log.info("Dataset restored from snapshot file {}", path);
+        if (stored.watermark().equals(watermark)) {
+            this.syncedWatermark = watermark;
+        } else {
+            snapshotExecutor.execute(() -> catchUp(stored.watermark()));
+        }
+        return restored;
+    }
+
+    /**
+     * Catches the restored dataset up with the database. If only rows were appended
+     * since the snapshot was saved, the changed patients are refreshed one by one,
+     * otherwise the whole dataset is reloaded. The caught up dataset is saved to the snapshot file.
+     *
+     * @param since the watermark of the restored snapshot
+     */
+    private void catchUp(DatasetWatermark since) {
+        try {
+            DatasetWatermark watermark = datasetChangeTracker.read();
+            if (datasetChangeTracker.isAppendOnly(since)) {
+                Set<Integer> changedPatients = datasetChangeTracker.findChangedPatients(since);
+                if (!refreshPatients(this.snapshot, changedPatients)) {
+                    return;
+                }
+                log.info("Dataset caught up with {} changed patients", changedPatients.size());
+            } else {
+                reloadDataset();
+                log.info("Dataset reloaded, the database has changed since the snapshot file was saved");
+            }
+            this.syncedWatermark = watermark;
+            saveSnapshot(watermark);
+        } catch (DataAccessException e) {
+            log.error("Error catching the dataset up with the database", e);
+        }
+    }
+
+    /**
+     * Loads the whole dataset from the database and publishes it as a new snapshot.
+     * It runs on the snapshot thread like all changes of the dataset, so the changes wait until the reload
+     * is published and none of them is lost.
+     */
+    private void reloadDataset() {
+        List<Patient> patients = patientService.getPatients();
+        List<Chart> charts = chartService.getAllCharts();
+        this.snapshot = new DatasetSnapshot(snapshot.getVersion() + 1, patients, charts,
+                datasetLoader.loadAll(patients, charts), indexFactory);
+    }
+
+    /**
+     * Saves the current dataset to the snapshot file.
+     *
+     * @param watermark the watermark read before the last change of the dataset was read from the database
+     */
+    private void saveSnapshot(DatasetWatermark watermark) {
+        Path path = Paths.get(snapshotFile).toAbsolutePath();
+        try {
+            SnapshotFile.write(path, watermark, symptomIndex, this.snapshot.getVectorsByPatient());
+            log.info("Dataset saved to snapshot file {}", path);
+        } catch (IOException e) {
+            log.error("Error saving dataset snapshot file {}", path, e);
+        }
+    }
+
+    /**
+     * Recounts the changed diagnosis request in the daily counts and schedules the refresh of the dataset rows
+     * of its patient.
+     *
+     * @param event the event describing the changed diagnosis request
+     */
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onDiagnosisRequestChanged(DiagnosisRequestChangedEvent event) {
+        DiagnosisRequest diagnosisRequest = event.diagnosisRequest();
+        if (event.changeType() == ChangeType.deleted) {
+            changeDailyCounts(counts -> counts.removeRequest(diagnosisRequest.getId()));
+            diseaseMatcher.forget(diagnosisRequest.getId());
+        } else {
+            changeDailyCounts(counts -> counts.putRequest(diagnosisRequest));
+        }
+        scheduleChartChange(diagnosisRequest.getIdChart(), new PendingChart(null, false, false));
+    }
+
+    /**
+     * Forgets the memoised prediction of the changed chart and schedules the refresh of the dataset rows
+     * of its owner (and previous owner). Changed symptoms are recounted in the daily counts when the change is applied.
+     *
+     * @param event the event describing the changed chart
+     */
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onChartChanged(ChartChangedEvent event) {
+        chartPredictionCache.invalidateChart(event.chartId());
+        scheduleChartChange(event.chartId(), new PendingChart(event.chart(),
+                event.changeType() == ChangeType.deleted, event.chart() == null));
+    }
+
+    /**
+     * Forgets the memoised predictions of the changed patient and schedules the refresh of his dataset rows,
+     * a deleted patient is evicted from the dataset.
+     *
+     * @param event the event describing the changed patient
+     */
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onPatientChanged(PatientChangedEvent event) {
+        chartPredictionCache.invalidatePatient(event.patientId());
+        synchronized (pendingChangeLock) {
+            pendingPatients.add(event.patientId());
+            schedulePendingChanges();
+        }
+    }
+
+    /**
+     * Recompiles the matcher of disease names and rebuilds the daily counts on the daily counts thread
+     * after the builds queued before. Diagnoses already linked to the new diseases are read from their links,
+     * the others are parsed again.
+     * Dataset rows pick up the new diseases when their patient is refreshed.
+     *
+     * @param event the event describing the changed disease
+     */
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onDiseaseChanged(DiseaseChangedEvent event) {
+        dailyCountExecutor.execute(() -> {
+            List<Disease> currentDiseases;
+            try {
+                currentDiseases = diseaseService.getDiseases();
+            } catch (RuntimeException e) {
+                log.error("Error recompiling disease matcher after a change of disease with ID: {}", event.diseaseId(), e);
+                return;
+            }
+            DiseaseMatcher matcher = new DiseaseMatcher(currentDiseases);
+            this.diseases = currentDiseases;
+            this.diseaseMatcher = matcher;
+            this.datasetLoader.setDiseaseMatcher(matcher);
+            log.info("Disease matcher recompiled after a change of disease with ID: {}", event.diseaseId());
+            buildDailyCounts(this::readDiagnosisRequests);
+        });
+    }
+
+    /**
+     * Queues the change of a chart, several changes of the same chart are applied as one.
+     *
+     * @param chartId the id of the changed chart
+     * @param change  the change of the chart
+     */
+    private void scheduleChartChange(int chartId, PendingChart change) {
+        synchronized (pendingChangeLock) {
+            pendingCharts.merge(chartId, change, PendingChart::merge);
+            schedulePendingChanges();
+        }
+    }
+
+    /**
+     * Schedules the queued changes to be applied on the snapshot thread, unless they already are.
+     * Must be called while holding pendingChangeLock.
+     */
+    private void schedulePendingChanges() {
+        if (!pendingChangesScheduled) {
+            pendingChangesScheduled = true;
+            snapshotExecutor.execute(this::applyPendingChanges);
+        }
+    }
+
+    /**
+     * Applies all queued changes of charts and patients. Every changed patient is loaded once,
+     * however many of his rows have changed, and the KNN is rebuilt at most once for all of them.
+     */
+    private void applyPendingChanges() {
+        Set<Integer> patientIds;
+        Map<Integer, PendingChart> charts;
+        synchronized (pendingChangeLock) {
+            patientIds = pendingPatients;
+            charts = pendingCharts;
+            pendingPatients = new LinkedHashSet<>();
+            pendingCharts = new LinkedHashMap<>();
+            pendingChangesScheduled = false;
+        }
+        try {
+            DatasetSnapshot current = this.snapshot;
+            Set<Integer> changedPatients = new LinkedHashSet<>(patientIds);
+            for (Map.Entry<Integer, PendingChart> entry : charts.entrySet()) {
+                int chartId = entry.getKey();
+                PendingChart change = entry.getValue();
+                if (change.symptomsChanged()) {
+                    List<ChartSymptom> chartSymptoms = chartSymptomRepository.findAllByIdChart(chartId);
+                    changeDailyCounts(counts -> counts.putChartSymptoms(chartId, chartSymptoms));
+                }
+                if (change.chart() != null) {
+                    current = change.deleted() ? current.withoutChart(chartId) : current.withChart(change.chart());
+                }
+                Integer previousOwner = this.datasetLoader.getChartOwner(chartId);
+                if (previousOwner != null) {
+                    changedPatients.add(previousOwner);
                 }
+                int owner = change.chart() != null ? change.chart().getIdPatient() : readChartOwner(chartId);
+                if (owner != 0) {
+                    changedPatients.add(owner);
+                }
+            }
+            refreshPatients(current, changedPatients);
+        } catch (DataAccessException e) {
+            log.error("Error applying changes of {} charts and {} patients to the dataset", charts.size(), patientIds.size(), e);
+        }
+    }
+
+    /**
+     * Reads the owner of the chart from the database.
+     *
+     * @param chartId the id of the chart
+     * @return the id of the owner or 0 if the chart does not exist
+     */
+    private int readChartOwner(int chartId) {
+        try {
+            return chartService.getChart(chartId).getIdPatient();
+        } catch (EntityNotFound e) {
+            return 0;
+        }
+    }
+
+    /**
+     * Replaces the dataset rows of the given patients with freshly calculated ones and publishes the result
+     * as a new snapshot, predictions in progress keep the previous one.
+     * Only the data of these patients is read from the database, the rows of other patients are kept.
+     * Patients that no longer exist are evicted from the dataset.
+     *
+     * @param current    the snapshot to apply the changes to
+     * @param patientIds the ids of the patients
+     * @return false if the thread was interrupted and nothing was published
+     */
+    private boolean refreshPatients(DatasetSnapshot current, Collection<Integer> patientIds) {
+        List<Patient> found = new ArrayList<>();
+        HashMap<Integer, List<DiseaseVector>> vectors = new HashMap<>();
+        List<Integer> removed = new ArrayList<>();
+        for (int patientId : patientIds) {
+            if (Thread.currentThread().isInterrupted()) {
+                return false;
+            }
+            try {
+                Patient patient = patientService.getPatient(patientId);
+                found.add(patient);
+                vectors.put(patientId, datasetLoader.loadPatient(patient));
+            } catch (EntityNotFound e) {
+                this.datasetLoader.forgetPatient(patientId);
+                removed.add(patientId);
             }
         }
-        log.info("Dataset initialized");
+        DatasetSnapshot refreshed = current.withPatients(found, vectors, removed);
+        this.snapshot = refreshed;
+        if (!patientIds.isEmpty()) {
+            log.info("Dataset refreshed for {} patients ({} evicted), version {}", patientIds.size(), removed.size(),
+                    refreshed.getVersion());
+        }
+        return true;
     }
 
+    /**
+     * A queued change of a chart.
+     *
+     * @param chart           the changed chart, or null if only its symptoms or diagnosis requests have changed
+     * @param deleted         true if the chart was deleted
+     * @param symptomsChanged true if the symptoms of the chart have changed
+     */
+    private record PendingChart(Chart chart, boolean deleted, boolean symptomsChanged) {
+        private PendingChart merge(PendingChart next) {
+            return new PendingChart(next.chart() != null ? next.chart() : chart, next.chart() != null ? next.deleted() : deleted,
+                    symptomsChanged || next.symptomsChanged());
+        }
+    }
 
     /**
      * Gets the statistic disease for a set of patients without a health card or a previously diagnosed
@@ -136,30 +605,29 @@ public class PredictionServiceImpl implements PredictionService {
      */
     @Override
     public Object getStatisticDisease() {
-        this.learningSet = this.dataset;
-        KNN knn = new KNN(learningSet);
-
+        DatasetSnapshot current = this.snapshot;
+        List<Patient> patients = current.getPatients();
+        List<DiseaseVector> testingSet = new ArrayList<>();
         for (int i = 0; i < patients.size(); i++) {
             List<Integer> chartIds = symptomParser.searchChartIdByPatientId(patients.get(i).getId());
             if (chartIds == null || chartIds.isEmpty()) {
-                HashMap<String, String> patientSymptom;
-                patientSymptom = symptomParser.madeZeroSymptoms(symptoms);
-                this.testingSet.add(new DiseaseVector(null, patients.get(i), patientSymptom));
+                byte[] patientSymptom = symptomParser.madeZeroSymptoms(symptomIndex);
+                testingSet.add(new DiseaseVector(null, patients.get(i), patientSymptom));
                 continue;
             }
             for (Integer chartId : chartIds) {
-                HashMap<String, String> patientSymptom;
+                byte[] patientSymptom;
                 if (chartId == null) {
-                    patientSymptom = symptomParser.madeZeroSymptoms(symptoms);
+                    patientSymptom = symptomParser.madeZeroSymptoms(symptomIndex);
                 } else {
-                    patientSymptom = symptomParser.connectSymptoms(chartId, symptoms);
+                    patientSymptom = symptomParser.connectSymptoms(chartId, symptomIndex);
                 }
-                this.testingSet.add(new DiseaseVector(null, patients.get(i), patientSymptom));
+                testingSet.add(new DiseaseVector(null, patients.get(i), patientSymptom));
             }
         }
         log.info("Testing set prepared");
 
-        List<Result> results = knn.classifyVectors(testingSet, K, euclideanMetric, diseases);
+        List<Result> results = current.getKnn().classifyVectors(testingSet, K, euclideanMetric, diseases, classificationPool);
         Prediction diseasePrediction = new DiseasePrediction();
         log.info("Prediction made successfully");
 
@@ -175,13 +643,14 @@ public class PredictionServiceImpl implements PredictionService {
      */
     @Override
     public double getPredictionAccuracy(String[] proportions) {
-        int[] proportionsInts = Quality.countProportions(proportions, numberOfCompleteDiseaseVectors);
-        this.learningSet = dataset.subList(0, proportionsInts[0]);
-        this.testingSet = dataset.subList(proportionsInts[0], numberOfCompleteDiseaseVectors);
+        List<DiseaseVector> dataset = this.snapshot.getDataset();
+        int[] proportionsInts = Quality.countProportions(proportions, dataset.size());
+        List<DiseaseVector> learningSet = dataset.subList(0, proportionsInts[0]);
+        List<DiseaseVector> testingSet = dataset.subList(proportionsInts[0], dataset.size());
         log.info("Successfully divided dataset on learning set and testing set by given proportion");
 
-        KNN knn = new KNN(learningSet);
-        List<Result> results = knn.classifyVectors(testingSet, K, euclideanMetric, diseases);
+        KNN knn = new KNN(learningSet, matrix -> new VPTree(matrix, euclideanMetric));
+        List<Result> results = knn.classifyVectors(testingSet, K, euclideanMetric, diseases, classificationPool);
         log.info("Compute accuracy successfully");
 
         return Quality.calculateAccuracy(results);
@@ -191,30 +660,75 @@ public class PredictionServiceImpl implements PredictionService {
      * Gets a likely diagnosis for a specific patient.
      * The method counts the most likely disease for the patient.
      * They are most interesting for patients who have not previously been diagnosed with the disease.
+     * The prediction is memoised until the dataset or the chart changes.
      *
      * @param chartId the patient's chart id (if patient does not have a chart, then give 0 as charId).
      * @return the patient disease
      */
     @Override
     public Disease getPatientDisease(int chartId) {
-        int patientId = chartService.getChart(chartId).getIdPatient();
-        Patient patient = patientService.getPatient(patientId);
+        DatasetSnapshot current = this.snapshot;
+        Disease cached = chartPredictionCache.get(chartId, current.getVersion());
+        if (cached != null) {
+            return cached;
+        }
+        Chart chart = chartService.getChart(chartId);
+        Disease result = predictChartDiseases(current, List.of(chart)).getFirst();
+        log.info("Prediction made successfully");
 
-        HashMap<String, String> patientSymptom;
+        return result;
+    }
 
-        if (chartId == 0) {
-            patientSymptom = symptomParser.madeZeroSymptoms(symptoms);
-        } else {
-            patientSymptom = symptomParser.connectSymptoms(chartId, symptoms);
+    /**
+     * Predicts the disease of every given chart.
+     * Memoised predictions of the current dataset version are reused, the symptoms of the remaining charts
+     * are loaded with a single query and classified in one batch, then memoised.
+     *
+     * @param current the dataset snapshot to predict with
+     * @param charts  the charts to predict
+     * @return the predicted disease of every chart, in the order of charts
+     */
+    private List<Disease> predictChartDiseases(DatasetSnapshot current, List<Chart> charts) {
+        long stamp = chartPredictionCache.stamp();
+        Disease[] results = new Disease[charts.size()];
+        List<Integer> misses = new ArrayList<>();
+        for (int i = 0; i < charts.size(); i++) {
+            results[i] = chartPredictionCache.get(charts.get(i).getId(), current.getVersion());
+            if (results[i] == null) {
+                misses.add(i);
+            }
+        }
+        if (misses.isEmpty()) {
+            return Arrays.asList(results);
         }
 
-        DiseaseVector patientDiseaseVector = new DiseaseVector(null, patient, patientSymptom);
-        this.learningSet = this.dataset;
-        KNN knn = new KNN(learningSet);
-        Result result = knn.classifyVector(patientDiseaseVector, K, euclideanMetric, diseases);
-        log.info("Prediction made successfully");
+        HashMap<Integer, Patient> patientsById = new HashMap<>();
+        for (Patient patient : current.getPatients()) {
+            patientsById.put(patient.getId(), patient);
+        }
+        HashMap<Integer, byte[]> symptomsByChart =
+                datasetLoader.loadSymptoms(misses.stream().map(i -> charts.get(i).getId()).toList());
+        List<DiseaseVector> vectors = new ArrayList<>(misses.size());
+        for (int i : misses) {
+            Chart chart = charts.get(i);
+            Patient patient = patientsById.get(chart.getIdPatient());
+            if (patient == null) {
+                patient = patientService.getPatient(chart.getIdPatient());
+            }
+            byte[] patientSymptom = symptomsByChart.get(chart.getId());
+            if (patientSymptom == null) {
+                patientSymptom = symptomParser.madeZeroSymptoms(symptomIndex);
+            }
+            vectors.add(new DiseaseVector(null, patient, patientSymptom));
+        }
 
-        return result.getResult();
+        List<Result> predicted = current.getKnn().classifyVectors(vectors, K, euclideanMetric, diseases, classificationPool);
+        for (int j = 0; j < misses.size(); j++) {
+            Chart chart = charts.get(misses.get(j));
+            results[misses.get(j)] = predicted.get(j).getResult();
+            chartPredictionCache.put(chart.getId(), chart.getIdPatient(), current.getVersion(), results[misses.get(j)], stamp);
+        }
+        return Arrays.asList(results);
     }
 
     /**
@@ -229,12 +743,10 @@ public class PredictionServiceImpl implements PredictionService {
      */
     @Override
     public double getFutureDiagnosisRequest(int daysInterval) {
+        IntervalCounter counter = countRequestsInIntervals(daysInterval, List.of());
         List<Integer> results = new ArrayList<>();
-        LocalDate currentDate = LocalDate.now();
         for (int i = 1; i <= MAX_DEEP_OF_PREDICTIONS; i++) {
-            results.add(getDiagnosisRequestsSizeByDaysInterval(
-                    diagnosisRequestService, daysInterval, currentDate) * (MAX_DEEP_OF_PREDICTIONS - i + 1));
-            currentDate = currentDate.minusDays(daysInterval);
+            results.add(counter.getRequestCount(i - 1) * (MAX_DEEP_OF_PREDICTIONS - i + 1));
         }
         return calculateFraction(results);
     }
@@ -249,26 +761,47 @@ public class PredictionServiceImpl implements PredictionService {
      */
     @Override
     public Doctor getMostWantedDoctor(int daysInterval) {
-        List<HashMap<Integer, Integer>> doctorsCounter = new ArrayList<>();
-        LocalDate currentDate = LocalDate.now();
         List<Doctor> doctors = this.doctorService.getDoctors(2); // because filter == 2 returns all doctors
-        for (int i = 1; i <= MAX_DEEP_OF_PREDICTIONS; i++) {
-            doctorsCounter.add(getDoctorsInInterval(diagnosisRequestService, doctors, daysInterval, currentDate));
-            currentDate = currentDate.minusDays(daysInterval);
+        if (doctors.isEmpty()) {
+            throw new EntityNotFound("No doctor found");
         }
+        IntervalCounter counter = countRequestsInIntervals(daysInterval, doctors.stream().map(Doctor::getId).toList());
+
+        int mostWanted = 0;
+        long maxWeight = -1;
+        for (int j = 0; j < doctors.size(); j++) {
+            long weight = 0;
+            for (int i = 0; i < MAX_DEEP_OF_PREDICTIONS; i++) {
+                weight += (long) counter.getDoctorCount(i, j) * (MAX_DEEP_OF_PREDICTIONS - i + 1);
+            }
+            if (weight > maxWeight) {
+                maxWeight = weight;
+                mostWanted = j;
+            }
+        }
+        return doctorService.getDoctor(doctors.get(mostWanted).getId());
+    }
 
-        HashMap<Integer, Double> doctorsWeightAverage = getIntegerDoubleHashMap(doctorsCounter);
-
-        Optional<Map.Entry<Integer, Double>> maxEntry = doctorsWeightAverage.entrySet()
-                .stream()
-                .max(Map.Entry.comparingByValue());
-
-        if (maxEntry.isPresent()) {
-            Integer mostWantedDoctorId = maxEntry.get().getKey();
-            return doctorService.getDoctor(mostWantedDoctorId);
-        } else {
-            throw new EntityNotFound("No doctor found");
+    /**
+     * Counts the diagnosis requests in the MAX_DEEP_OF_PREDICTIONS intervals before today
+     * with a single query restricted to the days of the intervals.
+     *
+     * @param daysInterval how many days have the single interval
+     * @param doctorIds    the ids of the doctors whose requests are counted separately
+     * @return the filled counter
+     */
+    private IntervalCounter countRequestsInIntervals(int daysInterval, List<Integer> doctorIds) {
+        IntervalCounter counter = new IntervalCounter(LocalDate.now(), daysInterval, MAX_DEEP_OF_PREDICTIONS, doctorIds);
+        if (counter.isEmpty()) {
+            return counter;
         }
+        ZoneId zone = ZoneId.systemDefault();
+        Date fromDate = Date.from(counter.getFirstDay().atStartOfDay(zone).toInstant());
+        Date toDate = Date.from(counter.getEndDay().atStartOfDay(zone).toInstant());
+        for (RequestDate request : diagnosisRequestRepository.findCreationDatesBetween(fromDate, toDate)) {
+            counter.add(request.getCreationDate(), request.getIdDoctor() == null ? 0 : request.getIdDoctor());
+        }
+        return counter;
     }
 
 
@@ -288,7 +821,6 @@ public class PredictionServiceImpl implements PredictionService {
         List<Object> results = new ArrayList<>();
         LocalDate startDate = statisticsService.convertToLocalDate(fromDate);
         LocalDate endDate = statisticsService.convertToLocalDate(toDate);
-        List<DiagnosisRequest> allDiagnosisRequests = diagnosisRequestService.getAllDiagnosisRequests();
 
 //        List<Integer> intervalList = getIntervalList(startDate, endDate);
 //        System.out.println(intervalList);
@@ -297,7 +829,7 @@ public class PredictionServiceImpl implements PredictionService {
 
         List<String> symptomsNames = getSymptomsNames();
         List<String> dates = statisticsService.generateDateRange(fromDate, toDate);
-        List<List<Double>> symptomsCountInIntervals = getSymptomsCountInIntervals(startDate, endDate, allDiagnosisRequests);
+        List<List<Double>> symptomsCountInIntervals = getSymptomsCountInIntervals(startDate, endDate, dailyCounts());
 
         results.add(symptomsNames);
         results.add(dates);
@@ -311,11 +843,10 @@ public class PredictionServiceImpl implements PredictionService {
         List<Object> results = new ArrayList<>();
         LocalDate startDate = statisticsService.convertToLocalDate(fromDate);
         LocalDate endDate = statisticsService.convertToLocalDate(toDate);
-        List<DiagnosisRequest> allDiagnosisRequests = diagnosisRequestService.getAllDiagnosisRequests();
 
         List<String> diseasesNames = getDiseasesNames();
         List<String> dates = statisticsService.generateDateRange(fromDate, toDate);
-        List<List<Double>> diseasesCountInIntervals = getDiseasesCountInIntervals(startDate, endDate, allDiagnosisRequests);
+        List<List<Double>> diseasesCountInIntervals = getDiseasesCountInIntervals(startDate, endDate, dailyCounts());
 
         results.add(diseasesNames);
         results.add(dates);
@@ -398,10 +929,14 @@ public class PredictionServiceImpl implements PredictionService {
 
     @Override
     public List<List<Double>> getSymptomsCountInIntervals(LocalDate startDate, LocalDate endDate, List<DiagnosisRequest> allDiagnosisRequests) {
+        return getSymptomsCountInIntervals(startDate, endDate, dailyCounts().select(allDiagnosisRequests));
+    }
+
+    private List<List<Double>> getSymptomsCountInIntervals(LocalDate startDate, LocalDate endDate, DailyCountCube counts) {
         List<List<Double>> results = new ArrayList<>();
         for (Symptom symptom : symptoms) {
             log.info("Symptom: " + symptom.getName() + " id: " + symptom.getId() + " is being processed");
-            List<Double> symptomCountInIntervals = getSymptomCountInIntervals(startDate, endDate, symptom.getId(), allDiagnosisRequests);
+            List<Double> symptomCountInIntervals = getSymptomCountInIntervals(startDate, endDate, symptom.getId(), counts);
             results.add(symptomCountInIntervals);
         }
         return results;
@@ -410,29 +945,27 @@ public class PredictionServiceImpl implements PredictionService {
 
     @Override
     public List<Double> getSymptomCountInIntervals(LocalDate startDate, LocalDate endDate, int symptomId, List<DiagnosisRequest> allDiagnosisRequests) {
-//        List<DiagnosisRequest> allDiagnosisRequests = diagnosisRequestService.getAllDiagnosisRequests();
-        List<ChartSymptom> chartSymptoms = chartSymptomService.getAllChartSymptoms();
-        List<Integer> intervalList = getIntervalList(startDate, endDate);
-        List<Double> results = new ArrayList<>();
-        LocalDate currentDate = LocalDate.now();
-
-        for (int i = 0; i < intervalList.size(); i++) {
-            int intervalSum = (int) ChronoUnit.DAYS.between(currentDate, startDate);
+        return getSymptomCountInIntervals(startDate, endDate, symptomId, dailyCounts().select(allDiagnosisRequests));
+    }
 
-            for (int j = 0; j <= i; j++) {
-                intervalSum += intervalList.get(j);
-            }
-            results.add(getSymptomCountInInterval(allDiagnosisRequests, chartSymptoms, intervalSum, symptomId));
+    private List<Double> getSymptomCountInIntervals(LocalDate startDate, LocalDate endDate, int symptomId, DailyCountCube counts) {
+        List<Double> results = new ArrayList<>();
+        for (int intervalSum : getIntervalSums(startDate, endDate)) {
+            results.add(getSymptomCountInInterval(counts, intervalSum, symptomId));
         }
         return results;
     }
 
     @Override
     public List<List<Double>> getDiseasesCountInIntervals(LocalDate startDate, LocalDate endDate, List<DiagnosisRequest> allDiagnosisRequests) {
+        return getDiseasesCountInIntervals(startDate, endDate, dailyCounts().select(allDiagnosisRequests));
+    }
+
+    private List<List<Double>> getDiseasesCountInIntervals(LocalDate startDate, LocalDate endDate, DailyCountCube counts) {
         List<List<Double>> results = new ArrayList<>();
         for (Disease disease : diseases) {
             log.info("Disease: " + disease.getName() + " id: " + disease.getId() + " is being processed");
-            List<Double> diseaseCountInIntervals = getDiseaseCountInIntervals(startDate, endDate, disease.getId(), allDiagnosisRequests);
+            List<Double> diseaseCountInIntervals = getDiseaseCountInIntervals(startDate, endDate, disease.getId(), counts);
             results.add(diseaseCountInIntervals);
         }
         return results;
@@ -440,40 +973,51 @@ public class PredictionServiceImpl implements PredictionService {
 
     @Override
     public List<Double> getDiseaseCountInIntervals(LocalDate startDate, LocalDate endDate, int diseaseId, List<DiagnosisRequest> allDiagnosisRequests) {
-//        List<DiagnosisRequest> allDiagnosisRequests = diagnosisRequestService.getAllDiagnosisRequests();
-        List<Disease> diseases = this.diseases;
-        List<Integer> intervalList = getIntervalList(startDate, endDate);
-        List<Double> results = new ArrayList<>();
-        LocalDate currentDate = LocalDate.now();
+        return getDiseaseCountInIntervals(startDate, endDate, diseaseId, dailyCounts().select(allDiagnosisRequests));
+    }
 
-        for (int i = 0; i < intervalList.size(); i++) {
-            int intervalSum = (int) ChronoUnit.DAYS.between(currentDate, startDate);
-            ;
-            for (int j = 0; j <= i; j++) {
-                intervalSum += intervalList.get(j);
-            }
-            results.add(getDiseaseCountInInterval(allDiagnosisRequests, diseases, intervalSum, diseaseId));
+    private List<Double> getDiseaseCountInIntervals(LocalDate startDate, LocalDate endDate, int diseaseId, DailyCountCube counts) {
+        List<Double> results = new ArrayList<>();
+        for (int intervalSum : getIntervalSums(startDate, endDate)) {
+            results.add(getDiseaseCountInInterval(counts, intervalSum, diseaseId));
         }
         return results;
     }
 
-    private Double getDiseaseCountInInterval(List<DiagnosisRequest> allDiagnosisRequests, List<Disease> diseases, int daysInterval, int diseaseId) {
+    /**
+     * Returns for every interval between the dates the number of days from today to the end of the interval.
+     *
+     * @param startDate the start of the first interval
+     * @param endDate   the end of the last interval
+     * @return the number of days to the end of every interval
+     */
+    private List<Integer> getIntervalSums(LocalDate startDate, LocalDate endDate) {
+        List<Integer> intervalSums = new ArrayList<>();
+        int intervalSum = (int) ChronoUnit.DAYS.between(LocalDate.now(), startDate);
+        for (int interval : getIntervalList(startDate, endDate)) {
+            intervalSum += interval;
+            intervalSums.add(intervalSum);
+        }
+        return intervalSums;
+    }
+
+    private Double getDiseaseCountInInterval(DailyCountCube counts, int daysInterval, int diseaseId) {
         List<Integer> diseaseCounter = new ArrayList<>();
         LocalDate currentDate = LocalDate.now();
 
         for (int i = 1; i <= MAX_DEEP_OF_PREDICTIONS; i++) {
-            diseaseCounter.add(getDiseaseCountInDaysInterval(allDiagnosisRequests, diseases, daysInterval, currentDate, diseaseId) * (MAX_DEEP_OF_PREDICTIONS - i + 1));
+            diseaseCounter.add(getDiseaseCountInDaysInterval(counts, daysInterval, currentDate, diseaseId) * (MAX_DEEP_OF_PREDICTIONS - i + 1));
             currentDate = currentDate.minusDays(daysInterval);
         }
         return calculateFraction(diseaseCounter);
     }
 
-    private Double getSymptomCountInInterval(List<DiagnosisRequest> allDiagnosisRequests, List<ChartSymptom> chartSymptoms, int daysInterval, int symptomId) {
+    private Double getSymptomCountInInterval(DailyCountCube counts, int daysInterval, int symptomId) {
         List<Integer> symptomCounter = new ArrayList<>();
         LocalDate currentDate = LocalDate.now();
 
         for (int i = 1; i <= MAX_DEEP_OF_PREDICTIONS; i++) {
-            symptomCounter.add(getSymptomCountInDaysInterval(allDiagnosisRequests, chartSymptoms, daysInterval, currentDate, symptomId) * (MAX_DEEP_OF_PREDICTIONS - i + 1));
+            symptomCounter.add(getSymptomCountInDaysInterval(counts, daysInterval, currentDate, symptomId) * (MAX_DEEP_OF_PREDICTIONS - i + 1));
             currentDate = currentDate.minusDays(daysInterval);
         }
         return calculateFraction(symptomCounter);
@@ -485,8 +1029,8 @@ public class PredictionServiceImpl implements PredictionService {
         }
 
         Map<Disease, Integer> diseaseCount = new HashMap<>();
-        for (Chart chart : this.charts) {
-            Disease disease = getPatientDisease(chart.getId());
+        DatasetSnapshot current = this.snapshot;
+        for (Disease disease : predictChartDiseases(current, current.getCharts())) {
             diseaseCount.put(disease, diseaseCount.getOrDefault(disease, 0) + 1);
         }
 
@@ -548,21 +1092,78 @@ public class PredictionServiceImpl implements PredictionService {
         return roundToTwoDecimalPlaces((double) meter / denominator);
     }
 
-    private List<DiagnosisRequest> getDiagnosisRequestsByAgeGroups(List<DiagnosisRequest> allDiagnosisRequests, int[] ageGroup) {
-        List<DiagnosisRequest> allDiagnosisRequestsCopy = new ArrayList<>();
+    /**
+     * Splits the diagnosis requests into age groups by the current age of the chart owner, in a single pass.
+     * The owner and the age of every chart are resolved once per call from the dataset snapshot,
+     * patients missing in the snapshot are read from the database.
+     * Requests of unknown charts or of patients with an unknown birth date are not assigned to any group.
+     *
+     * @param allDiagnosisRequests the diagnosis requests to split
+     * @param ageGroups            the age groups, e.g. "0-5" or "71+"
+     * @return the diagnosis requests of every age group, in the order of ageGroups
+     */
+    private List<List<DiagnosisRequest>> getDiagnosisRequestsByAgeGroups(List<DiagnosisRequest> allDiagnosisRequests, List<String> ageGroups) {
+        int[][] ranges = new int[ageGroups.size()][];
+        List<List<DiagnosisRequest>> allDiagnosisRequestsAgeGroups = new ArrayList<>();
+        for (int i = 0; i < ageGroups.size(); i++) {
+            ranges[i] = convertRangeStringToArray(ageGroups.get(i));
+            allDiagnosisRequestsAgeGroups.add(new ArrayList<>());
+        }
+
+        DatasetSnapshot current = this.snapshot;
+        HashMap<Integer, Integer> chartOwners = new HashMap<>();
+        for (Chart chart : current.getCharts()) {
+            chartOwners.put(chart.getId(), chart.getIdPatient());
+        }
+        HashMap<Integer, Patient> patientsById = new HashMap<>();
+        for (Patient patient : current.getPatients()) {
+            patientsById.put(patient.getId(), patient);
+        }
+        LocalDate currentDate = LocalDate.now();
+        HashMap<Integer, Integer> ageByPatient = new HashMap<>();
+
         for (DiagnosisRequest request : allDiagnosisRequests) {
-            for (Chart chart : this.charts) {
-                if (chart.getId() == request.getIdChart()) {
-                    int patientId = chart.getIdPatient();
-                    int age = patientService.getAge(patientId);
-                    if (age >= ageGroup[0] && age <= ageGroup[1]) {
-                        allDiagnosisRequestsCopy.add(request);
-                    }
+            Integer patientId = chartOwners.get(request.getIdChart());
+            if (patientId == null) {
+                continue;
+            }
+            int age = ageByPatient.computeIfAbsent(patientId, id -> getAge(patientsById.get(id), id, currentDate));
+            if (age < 0) {
+                continue;
+            }
+            for (int i = 0; i < ranges.length; i++) {
+                if (age >= ranges[i][0] && age <= ranges[i][1]) {
+                    allDiagnosisRequestsAgeGroups.get(i).add(request);
                 }
             }
         }
+        return allDiagnosisRequestsAgeGroups;
+    }
 
-        return allDiagnosisRequestsCopy;
+    /**
+     * Returns the age of the patient in full years.
+     *
+     * @param patient     the patient, or null if it has to be read from the database
+     * @param patientId   the id of the patient
+     * @param currentDate the current date
+     * @return the age of the patient or -1 if the birth date is unknown or in the future
+     */
+    private int getAge(Patient patient, int patientId, LocalDate currentDate) {
+        if (patient == null) {
+            try {
+                patient = patientService.getPatient(patientId);
+            } catch (EntityNotFound e) {
+                return -1;
+            }
+        }
+        if (patient.getBirth_date() == null) {
+            return -1;
+        }
+        LocalDate birthLocalDate = patient.getBirth_date().toInstant().atZone(ZoneId.systemDefault()).toLocalDate();
+        if (birthLocalDate.isAfter(currentDate)) {
+            return -1;
+        }
+        return Period.between(birthLocalDate, currentDate).getYears();
     }
 
     private int[] convertRangeStringToArray(String range) {
@@ -585,15 +1186,23 @@ public class PredictionServiceImpl implements PredictionService {
     public List<List<Double>> getDiseasesCount(List<DiagnosisRequest> allDiagnosisRequests, List<String> ageGroups) {
         List<List<Double>> results = new ArrayList<>();
 
-        List<List<DiagnosisRequest>> allDiagnosisRequestsAgeGroups = new ArrayList<List<DiagnosisRequest>>();
-        for (String ageGroup : ageGroups) {
-            int[] ageGroupInt = convertRangeStringToArray(ageGroup);
-            allDiagnosisRequestsAgeGroups.add(getDiagnosisRequestsByAgeGroups(allDiagnosisRequests, ageGroupInt));
+        List<List<DiagnosisRequest>> allDiagnosisRequestsAgeGroups = getDiagnosisRequestsByAgeGroups(allDiagnosisRequests, ageGroups);
+
+        List<HashMap<Integer, Double>> diseaseCountsAgeGroups = new ArrayList<>();
+        for (List<DiagnosisRequest> ageGroupRequests : allDiagnosisRequestsAgeGroups) {
+            HashMap<Integer, Double> diseaseCounts = new HashMap<>();
+            for (DiagnosisRequest request : ageGroupRequests) {
+                diseaseCounts.merge(request.getIdDisease(), 1., Double::sum);
+            }
+            diseaseCountsAgeGroups.add(diseaseCounts);
         }
 
         for (Disease disease : diseases) {
             log.info("Disease: " + disease.getName() + " id: " + disease.getId() + " is being processed");
-            List<Double> diseaseCount = getDiseaseCount(ageGroups, disease.getId(), allDiagnosisRequestsAgeGroups);
+            List<Double> diseaseCount = new ArrayList<>();
+            for (HashMap<Integer, Double> diseaseCounts : diseaseCountsAgeGroups) {
+                diseaseCount.add(diseaseCounts.getOrDefault(disease.getId(), 0.));
+            }
             results.add(diseaseCount);
         }
         return results;
@@ -619,15 +1228,16 @@ public class PredictionServiceImpl implements PredictionService {
     public List<List<Double>> getSymptomsCount(List<DiagnosisRequest> allDiagnosisRequests, List<String> ageGroups, LocalDate startDate, LocalDate endDate) {
         List<List<Double>> results = new ArrayList<>();
 
-        List<List<DiagnosisRequest>> allDiagnosisRequestsAgeGroups = new ArrayList<List<DiagnosisRequest>>();
-        for (String ageGroup : ageGroups) {
-            int[] ageGroupInt = convertRangeStringToArray(ageGroup);
-            allDiagnosisRequestsAgeGroups.add(getDiagnosisRequestsByAgeGroups(allDiagnosisRequests, ageGroupInt));
-        }
+        List<List<DiagnosisRequest>> allDiagnosisRequestsAgeGroups = getDiagnosisRequestsByAgeGroups(allDiagnosisRequests, ageGroups);
 
+        List<DailyCountCube> ageGroupsCounts = allDiagnosisRequestsAgeGroups.stream().map(dailyCounts()::select).toList();
+        int days = (int) ChronoUnit.DAYS.between(startDate, endDate);
         for (Symptom symptom : symptoms) {
             log.info("Symptom: " + symptom.getName() + " id: " + symptom.getId() + " is being processed");
-            List<Double> symptomCount = getSymptomCount(ageGroups, symptom.getId(), allDiagnosisRequestsAgeGroups, startDate, endDate);
+            List<Double> symptomCount = new ArrayList<>();
+            for (DailyCountCube counts : ageGroupsCounts) {
+                symptomCount.add(getSymptomCountInInterval(counts, days, symptom.getId()));
+            }
             results.add(symptomCount);
         }
         return results;
@@ -635,30 +1245,10 @@ public class PredictionServiceImpl implements PredictionService {
 
     public List<Double> getSymptomCount(List<String> ageGroups, int symptomId, List<List<DiagnosisRequest>> allDiagnosisRequestsAgeGroups, LocalDate startDate, LocalDate endDate) {
         List<Double> results = new ArrayList<>();
-        List<ChartSymptom> chartSymptoms = chartSymptomService.getAllChartSymptoms();
-        List<Integer> intervalList = getIntervalList(startDate, endDate);
-        LocalDate currentDate = LocalDate.now();
         int days = (int) ChronoUnit.DAYS.between(startDate, endDate);
 
-
         for (int i = 0; i < ageGroups.size(); i++) {
-            results.add(getSymptomCountInInterval(allDiagnosisRequestsAgeGroups.get(i), chartSymptoms, days, symptomId));
-//            for (DiagnosisRequest request : allDiagnosisRequestsAgeGroups.get(i)) {
-//                int idChart = request.getIdChart();
-//                List<ChartSymptom> chartSymptomsCopy = new ArrayList<>();
-//                for (ChartSymptom chartSymptom : chartSymptoms) {
-//                    if (chartSymptom.getIdChart() == idChart) {
-//                        chartSymptomsCopy.add(chartSymptom);
-//                    }
-//                }
-//                for (ChartSymptom chartSymptom : chartSymptomsCopy) {
-//                    if (chartSymptom.getIdSymptom() == symptomId) {
-//                        counter++;
-//                    }
-//                }
-//            }
-//            results.add(counter);
-//            counter = 0.;
+            results.add(getSymptomCountInInterval(dailyCounts().select(allDiagnosisRequestsAgeGroups.get(i)), days, symptomId));
         }
         return results;
     }
@@ -1,23 +1,23 @@
 package pl.logic.site.service.impl;
 
+import jakarta.annotation.PostConstruct;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.stereotype.Service;
+import pl.logic.site.model.ReportArtifact;
 import pl.logic.site.model.ReportDTO;
 import pl.logic.site.model.exception.EntityNotFound;
-import pl.logic.site.model.mysql.Disease;
 import pl.logic.site.model.mysql.Report;
-import pl.logic.site.repository.DiseaseRepository;
 import pl.logic.site.repository.ReportRepository;
-import pl.logic.site.service.DiseaseService;
+import pl.logic.site.service.ReportArtifactStore;
 import pl.logic.site.service.ReportService;
 import pl.logic.site.utils.Consts;
 
 import java.io.IOException;
 import java.io.InputStream;
-import java.sql.Blob;
-import java.sql.SQLException;
-import java.util.Base64;
+import java.io.UncheckedIOException;
 import java.util.List;
 import java.util.stream.Collectors;
 
@@ -26,49 +26,87 @@ import java.util.stream.Collectors;
 public class ReportServiceImpl implements ReportService {
     @Autowired
     private ReportRepository reportRepository;
+    @Autowired
+    private ReportArtifactStore reportArtifactStore;
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
 
+    /**
+     * Moves files of reports created before the artifact store from the "file" column into the store.
+     * Every file is streamed from the database into the store and the column is cleared, so this runs only once per report.
+     */
+    @PostConstruct
+    public void moveLegacyFiles() {
+        List<Integer> ids;
+        try {
+            ids = jdbcTemplate.queryForList("SELECT id FROM report WHERE file IS NOT NULL AND file_hash IS NULL", Integer.class);
+        } catch (DataAccessException e) {
+            return; // the legacy column does not exist
+        }
+        for (int id : ids) {
+            try {
+                ReportArtifact artifact = jdbcTemplate.query("SELECT file FROM report WHERE id = ?", rs -> {
+                    if (!rs.next())
+                        return null;
+                    try (InputStream in = rs.getBinaryStream(1)) {
+                        return reportArtifactStore.save(in);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                }, id);
+                if (artifact != null) {
+                    jdbcTemplate.update("UPDATE report SET file_hash = ?, file_size = ?, file = NULL WHERE id = ?",
+                            artifact.hash(), artifact.size(), id);
+                }
+            } catch (DataAccessException | UncheckedIOException e) {
+                log.error("Could not move file of report with ID: {} to the artifact store: {}", id, e.getMessage());
+            }
+        }
+        if (!ids.isEmpty()) {
+            log.info("{} report files moved to the artifact store", ids.size());
+        }
+    }
 
     /**
-     * Retrieves all reports by doctor id
+     * Retrieves all reports by doctor id, without their files
      * @param doctorID
      * @return
      */
     public List<ReportDTO> getReportsByDoctorId(final String doctorID) {
         List<Report> reports = reportRepository.findAllByIdDoctor(doctorID);
         return reports.stream()
-                .map(this::convertReportToDTO)
+                .map(ReportDTO::new)
                 .collect(Collectors.toList());
     }
 
-    private ReportDTO convertReportToDTO(Report report) {
-        ReportDTO reportDTO = null;
-        try {
-            reportDTO = new ReportDTO(report);
-            reportDTO.setId(report.getId());
-            reportDTO.setIdDoctor(report.getIdDoctor());
-            reportDTO.setTitle(report.getTitle());
-            reportDTO.setFiletype(report.getFiletype());
-            if (report.getFile() != null) {
-                try {
-                    reportDTO.setFile(encodeBlobToBase64(report.getFile()));
-                } catch (SQLException | IOException e) {
-                    // Handle the exception as per your application's error handling strategy
-                    e.printStackTrace();
-                }
-            }
-        } catch (SQLException e) {
-            throw new RuntimeException(e);
-        } catch (IOException e) {
-            throw new RuntimeException(e);
-        }
-
-        return reportDTO;
+    /**
+     * Retrieves the report by id
+     * @param reportId
+     * @return
+     */
+    @Override
+    public Report getReport(final int reportId) {
+        return reportRepository.findById(reportId).orElseThrow(() -> {
+            EntityNotFound err = new EntityNotFound(Consts.C404 + " ID: " + reportId + " Type: " + this.getClass());
+            log.error(err.getMessage());
+            return err;
+        });
     }
 
-    private String encodeBlobToBase64(Blob blob) throws SQLException, IOException {
-        try (InputStream inputStream = blob.getBinaryStream()) {
-            byte[] bytes = inputStream.readAllBytes();
-            return Base64.getEncoder().encodeToString(bytes);
+    /**
+     * Opens the file of the report, the caller closes the stream
+     * @param report
+     * @return
+     * @throws EntityNotFound - the report has no file yet
+     */
+    @Override
+    public InputStream openReportFile(final Report report) throws IOException {
+        if (report.getFileHash() == null) {
+            EntityNotFound err = new EntityNotFound(Consts.C404 + " File of report ID: " + report.getId() + " Type: " + this.getClass());
+            log.error(err.getMessage());
+            throw err;
         }
+        return reportArtifactStore.open(report.getFileHash());
     }
 }
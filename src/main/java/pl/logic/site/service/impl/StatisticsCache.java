@@ -0,0 +1,140 @@
+package pl.logic.site.service.impl;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+
+/**
+ * A bounded cache of statistics tables keyed by the table, the doctor and the date range.
+ * Entries are evicted when they are older than the time to live or, least recently used first, when the cache is full.
+ * Writes of the data of a doctor invalidate all of its entries. A table calculated while the data of its doctor
+ * was being invalidated is returned but not stored, so the cache never keeps a table older than the last write.
+ * Hits, misses and evictions are counted in the meter registry (statistics.cache.*).
+ */
+@Component
+public class StatisticsCache {
+    private final LinkedHashMap<Key, Entry> entries;
+    private final HashMap<Integer, Long> generations;
+    private final int maxSize;
+    private final long ttlMillis;
+    private final Clock clock;
+    private final Counter hits;
+    private final Counter misses;
+    private final Counter evictions;
+    private long globalGeneration;
+
+    @Autowired
+    public StatisticsCache(MeterRegistry meterRegistry,
+                           @Value("${statistics.cache.max-size:500}") int maxSize,
+                           @Value("${statistics.cache.ttl:PT10M}") Duration ttl) {
+        this(meterRegistry, maxSize, ttl, Clock.systemUTC());
+    }
+
+    StatisticsCache(MeterRegistry meterRegistry, int maxSize, Duration ttl, Clock clock) {
+        this.maxSize = maxSize;
+        this.ttlMillis = ttl.toMillis();
+        this.clock = clock;
+        this.generations = new HashMap<>();
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, Entry> eldest) {
+                if (size() > StatisticsCache.this.maxSize) {
+                    evictions.increment();
+                    return true;
+                }
+                return false;
+            }
+        };
+        this.hits = Counter.builder("statistics.cache.requests").tag("result", "hit")
+                .description("Statistics tables served from the cache").register(meterRegistry);
+        this.misses = Counter.builder("statistics.cache.requests").tag("result", "miss")
+                .description("Statistics tables calculated from the database").register(meterRegistry);
+        this.evictions = Counter.builder("statistics.cache.evictions")
+                .description("Statistics tables removed because the cache was full or they expired").register(meterRegistry);
+        Gauge.builder("statistics.cache.size", this, StatisticsCache::size).register(meterRegistry);
+    }
+
+    /**
+     * Returns the cached table or calculates and caches it.
+     * The table is shared by all callers and must not be modified.
+     *
+     * @param table    the name of the table
+     * @param idDoctor the id of the doctor
+     * @param fromDate the start date
+     * @param toDate   the end date
+     * @param loader   calculates the table on a miss, called without holding the lock of the cache
+     * @return the table
+     */
+    public List<List<Object>> get(String table, int idDoctor, Date fromDate, Date toDate, Supplier<List<List<Object>>> loader) {
+        Key key = new Key(table, idDoctor, fromDate.getTime(), toDate.getTime());
+        long generation;
+        synchronized (this) {
+            Entry entry = entries.get(key);
+            if (entry != null && clock.millis() - entry.created() < ttlMillis) {
+                hits.increment();
+                return entry.table();
+            }
+            if (entry != null) {
+                entries.remove(key);
+                evictions.increment();
+            }
+            generation = generation(idDoctor);
+        }
+        misses.increment();
+        long created = clock.millis();
+        List<List<Object>> result = loader.get();
+        synchronized (this) {
+            if (generation(idDoctor) == generation) {
+                entries.put(key, new Entry(result, created));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Removes all tables of the doctor.
+     *
+     * @param idDoctor the id of the doctor whose data has changed
+     */
+    public synchronized void invalidateDoctor(int idDoctor) {
+        generations.merge(idDoctor, 1L, Long::sum);
+        entries.keySet().removeIf(key -> key.idDoctor() == idDoctor);
+    }
+
+    /**
+     * Removes all tables, used when the changed data may belong to any doctor.
+     */
+    public synchronized void invalidateAll() {
+        globalGeneration++;
+        entries.clear();
+    }
+
+    /**
+     * Returns the number of cached tables (including expired ones not removed yet).
+     */
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    private long generation(int idDoctor) {
+        return globalGeneration + generations.getOrDefault(idDoctor, 0L);
+    }
+
+    private record Key(String table, int idDoctor, long from, long to) {
+    }
+
+    private record Entry(List<List<Object>> table, long created) {
+    }
+}
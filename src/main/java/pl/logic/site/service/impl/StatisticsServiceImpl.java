@@ -1,50 +1,77 @@
 package pl.logic.site.service.impl;
 
-import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.databind.ObjectMapper;
-import com.itextpdf.html2pdf.ConverterProperties;
-import com.itextpdf.html2pdf.HtmlConverter;
-import io.quickchart.QuickChart;
-import jakarta.transaction.Transactional;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
 import lombok.Data;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.csv.CSVFormat;
 import org.apache.commons.csv.CSVPrinter;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.dao.DataAccessException;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.web.util.HtmlUtils;
+import pl.logic.site.model.ReportArtifact;
+import pl.logic.site.model.ReportProgress;
+import pl.logic.site.model.enums.ChangeType;
 import pl.logic.site.model.enums.ReportFiletype;
+import pl.logic.site.model.enums.ReportStatus;
 import pl.logic.site.model.enums.ReportType;
+import pl.logic.site.model.events.ChartChangedEvent;
+import pl.logic.site.model.events.DiagnosisRequestChangedEvent;
+import pl.logic.site.model.events.DiagnosisRequestReassignedEvent;
+import pl.logic.site.model.events.PatientChangedEvent;
+import pl.logic.site.model.exception.EntityNotFound;
 import pl.logic.site.model.exception.SaveError;
 import pl.logic.site.model.mysql.*;
 import pl.logic.site.model.reportsForms.ReportCreateForm;
+import pl.logic.site.model.views.AgeCount;
+import pl.logic.site.model.views.DateCount;
 import pl.logic.site.model.views.DoctorChat;
 import pl.logic.site.model.views.DoctorPatientsWithData;
 import pl.logic.site.repository.*;
 import pl.logic.site.service.*;
-
-import javax.sql.rowset.serial.SerialBlob;
-import java.io.ByteArrayOutputStream;
-import java.io.FileOutputStream;
-import java.io.IOException;
-import java.io.OutputStreamWriter;
+import pl.logic.site.utils.BarChart;
+import pl.logic.site.utils.Consts;
+import pl.logic.site.utils.HtmlTemplate;
+
+import java.io.*;
+import java.lang.management.ManagementFactory;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
-import java.nio.file.Paths;
 import java.security.InvalidParameterException;
-import java.sql.Blob;
-import java.sql.SQLException;
 import java.text.SimpleDateFormat;
 import java.time.LocalDate;
 import java.time.ZoneId;
 import java.time.format.DateTimeFormatter;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 
 @Slf4j
 @Service
 public class StatisticsServiceImpl implements StatisticsService {
     private final String[] ageGroups = {"0-5", "6-10", "11-18", "19-30", "31-50", "51-70", "71+"};
+    private final HtmlTemplate userReportTemplate = HtmlTemplate.load("static/pdf/user_report.html", List.of(
+            "{Name Surname}", "{Specialisation}", "{Title}", "{from}", "{to}", "{yyyy-mm-dd H:i}",
+            "{received_messages_count}", "{answered_messages_count}", "{received_diagnosis_requests_count}",
+            "{answered_diagnosis_requests_count}", "<!--NEW_PATIENTS_TABLE-->", "<!--NEW_PATIENTS_TABLE2-->",
+            "{new_patient_count}", "{chartUrl}"));
+    private final HtmlTemplate diseasesReportTemplate = HtmlTemplate.load("static/pdf/diseases_report.html", List.of(
+            "{Name Surname}", "{Specialisation}", "{Title}", "{from}", "{to}", "{yyyy-mm-dd H:i}",
+            "{symptom_date_table_part}", "{diseases_date_table_part}", "{symptom_age_groups_table_part}",
+            "{diseases_age_groups_table_part}"));
+    private final HtmlTemplate dataTableTemplate = HtmlTemplate.load("static/pdf/_data_table.html", List.of(
+            "{table_title}", "<!-- Dynamic Table Rows -->"));
     @Autowired
     private DoctorRepository doctorRepository;
     @Autowired
@@ -67,6 +94,30 @@ public class StatisticsServiceImpl implements StatisticsService {
     private DiagnosisRequestService diagnosisRequestService;
     @Autowired
     private ReportRepository reportRepository;
+    @Autowired
+    private DiagnosisRequestRepository diagnosisRequestRepository;
+    @Autowired
+    private ThreadPoolTaskExecutor reportExecutor;
+    @Autowired
+    private ReportArtifactStore reportArtifactStore;
+    @Autowired
+    private StatisticsCache statisticsCache;
+    @Autowired
+    private PdfRenderService pdfRenderService;
+    @Value("${report.instance-id:}")
+    private String instanceId;
+    @Value("${server.port:8080}")
+    private int serverPort;
+    private final Map<Integer, Long> patientBirthDates = new ConcurrentHashMap<>();
+    private final Object pendingInvalidationLock = new Object();
+    private Set<Integer> pendingCharts = new HashSet<>();
+    private Set<Integer> pendingPatients = new HashSet<>();
+    private boolean invalidationScheduled;
+    private final ExecutorService invalidationExecutor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "statistics-invalidation");
+        thread.setDaemon(true);
+        return thread;
+    });
 
 
     @Override
@@ -74,91 +125,209 @@ public class StatisticsServiceImpl implements StatisticsService {
         return ageGroups;
     }
 
+    /**
+     * Marks reports left unfinished by the previous run of this application instance as failed.
+     * Reports of other instances are still being generated and are left alone, reports without an instance
+     * are failed only if they were created before this instance started.
+     * The instance is identified by report.instance-id, by default the host name and the server port.
+     * */
+    @PostConstruct
+    public void failInterruptedReports() {
+        if (instanceId == null || instanceId.isBlank()) {
+            instanceId = defaultInstanceId();
+        }
+        int interrupted = reportRepository.updateUnfinished(ReportStatus.failed, "Generation interrupted by a restart",
+                List.of(ReportStatus.queued, ReportStatus.running), instanceId,
+                new Date(ManagementFactory.getRuntimeMXBean().getStartTime()));
+        if (interrupted > 0) {
+            log.warn("{} unfinished reports marked as failed", interrupted);
+        }
+    }
+
+    private String defaultInstanceId() {
+        try {
+            return InetAddress.getLocalHost().getHostName() + ":" + serverPort;
+        } catch (UnknownHostException e) {
+            log.warn("Host name unknown, reports are owned by localhost:{}", serverPort);
+            return "localhost:" + serverPort;
+        }
+    }
+
+    /**
+     * Saves a queued report and schedules the generation of its file on the report executor.
+     * The report is returned immediately, its state can be polled with getReportProgress.
+     * @param reportCreateForm - form of the report
+     *
+     * @return Report - the queued report without a file
+     * @throws SaveError - unsupported report type for the filetype or too many reports in the queue
+     * */
     @Override
-    @Transactional
-    public Report createReport(ReportCreateForm reportCreateForm) throws SQLException {
+    public Report createReport(ReportCreateForm reportCreateForm) {
+        if (!isSupported(reportCreateForm))
+            throw new SaveError("Incorrect report type for filetype");
+
         Report report = new Report();
         report.setTitle(reportCreateForm.getTitle());
         report.setFiletype(reportCreateForm.getFiletype());
         report.setIdDoctor(String.valueOf(reportCreateForm.getIdDoctor()));
+        report.setStatus(ReportStatus.queued);
+        report.setProgress(0);
+        report.setCreationDate(new Date());
+        report.setInstanceId(instanceId);
+        Report saved = reportRepository.save(report);
 
-        Blob fileEncoded = extractReportFileEncoded(reportCreateForm);
-        if(fileEncoded == null)
-            throw new SaveError("Incorrect report type for filetype");
-        report.setFile(fileEncoded);
-
-        Report report1 = new Report();
         try {
-            report1 = reportRepository.save(report);
-        } catch (Exception e){
-            e.printStackTrace();
+            reportExecutor.execute(() -> generateReport(saved.getId(), reportCreateForm));
+        } catch (TaskRejectedException e) {
+            reportRepository.updateProgress(saved.getId(), ReportStatus.failed, 0, "Too many reports in the queue");
+            throw new SaveError("Too many reports are being generated, try again later");
         }
+        return saved;
+    }
 
-        return report1;
+    @Override
+    public ReportProgress getReportProgress(int reportId) {
+        ReportProgress progress = reportRepository.findProgressById(reportId).orElse(null);
+        if (progress == null) {
+            EntityNotFound err = new EntityNotFound(Consts.C404 + " ID: " + reportId + " Type: " + this.getClass());
+            log.error(err.getMessage());
+            throw err;
+        }
+        if (progress.status() == null) {
+            return new ReportProgress(progress.id(), ReportStatus.done, 100, null);
+        }
+        return progress;
     }
 
-    private Blob extractReportFileEncoded(ReportCreateForm reportCreateForm) throws SQLException {
-        if(reportCreateForm.getFiletype() == ReportFiletype.pdf){
-            return switch (reportCreateForm.getReportType()){
-                case ReportType.user -> createUserReport(reportCreateForm.getIdDoctor(), reportCreateForm.getFrom(), reportCreateForm.getTo(), reportCreateForm.getTitle());
-                case ReportType.diseases -> createDiseasesReport(reportCreateForm.getIdDoctor(), reportCreateForm.getFrom(), reportCreateForm.getTo(), reportCreateForm.getTitle());
-                case symptoms_date -> null;
-                case diseases_date -> null;
-                case symptoms_age_groups -> null;
-                case diseases_age_groups -> null;
-            };
-        } else if(reportCreateForm.getFiletype() == ReportFiletype.csv){
-            return switch (reportCreateForm.getReportType()){
-                case user -> null;
-                case diseases -> null;
-                case ReportType.symptoms_date -> createSymptomsDateReport(reportCreateForm.getIdDoctor(), reportCreateForm.getFrom(), reportCreateForm.getTo());
-                case ReportType.diseases_date -> createDiseasesDateReport(reportCreateForm.getIdDoctor(), reportCreateForm.getFrom(), reportCreateForm.getTo());
-                case ReportType.symptoms_age_groups -> createSymptomsAgeGroupsReport(reportCreateForm.getIdDoctor(), reportCreateForm.getFrom(), reportCreateForm.getTo());
-                case ReportType.diseases_age_groups -> createDiseasesAgeGroupsReport(reportCreateForm.getIdDoctor(), reportCreateForm.getFrom(), reportCreateForm.getTo());
-            };
+    /**
+     * Generates the file of a queued report and stores it, runs on the report executor.
+     * No transaction is held while the file is being generated.
+     * The file is streamed into a temporary file and from there into the report artifact store, so it is never held in memory,
+     * the report row keeps only the hash and size of the file.
+     * @param reportId - id of the queued report
+     * @param reportCreateForm - form of the report
+     * */
+    private void generateReport(int reportId, ReportCreateForm reportCreateForm) {
+        Path reportFile = null;
+        try {
+            reportRepository.updateProgress(reportId, ReportStatus.running, 10, null);
+            reportFile = Files.createTempFile("report-" + reportId + "-", "." + reportCreateForm.getFiletype());
+            try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(reportFile))) {
+                writeReportFile(reportCreateForm, out);
+            }
+            reportRepository.updateProgress(reportId, ReportStatus.running, 90, null);
+
+            ReportArtifact artifact;
+            try (InputStream in = new BufferedInputStream(Files.newInputStream(reportFile))) {
+                artifact = reportArtifactStore.save(in);
+            }
+            if (reportRepository.completeReport(reportId, artifact.hash(), artifact.size()) == 0)
+                throw new EntityNotFound(Consts.C404 + " ID: " + reportId + " Type: " + this.getClass());
+            log.info("Report with ID: {} generated", reportId);
+        } catch (Exception e) {
+            log.error("Report with ID: {} failed: {}", reportId, e.getMessage());
+            reportRepository.updateProgress(reportId, ReportStatus.failed, 0, String.valueOf(e.getMessage()));
+        } finally {
+            deleteQuietly(reportFile);
+        }
+    }
+
+    private void deleteQuietly(Path path) {
+        if (path == null)
+            return;
+        try {
+            Files.deleteIfExists(path);
+        } catch (IOException e) {
+            log.warn("Could not delete temporary report file {}", path);
         }
-        return null;
     }
 
+    private boolean isSupported(ReportCreateForm reportCreateForm) {
+        if (reportCreateForm.getFiletype() == null || reportCreateForm.getReportType() == null)
+            return false;
+        return switch (reportCreateForm.getReportType()) {
+            case user, diseases -> reportCreateForm.getFiletype() == ReportFiletype.pdf;
+            case symptoms_date, diseases_date, symptoms_age_groups, diseases_age_groups -> reportCreateForm.getFiletype() == ReportFiletype.csv;
+        };
+    }
 
+    /**
+     * Writes the file of the report to the stream, the stream is not closed.
+     * @param reportCreateForm - form of the report, the filetype must be supported by the report type
+     * @param out - target of the file
+     * */
+    private void writeReportFile(ReportCreateForm reportCreateForm, OutputStream out) throws IOException {
+        int idDoctor = reportCreateForm.getIdDoctor();
+        Date from = reportCreateForm.getFrom();
+        Date to = reportCreateForm.getTo();
+        switch (reportCreateForm.getReportType()) {
+            case user -> writeUserReport(idDoctor, from, to, reportCreateForm.getTitle(), out);
+            case diseases -> writeDiseasesReport(idDoctor, from, to, reportCreateForm.getTitle(), out);
+            default -> writeCSVReport(reportCreateForm.getReportType(), idDoctor, from, to, out);
+        }
+    }
 
-    private Blob createUserReport(int idDoctor, Date fromDate, Date toDate, String title) throws SQLException {
+    /**
+     * Streams a table report as CSV, the stream is not closed.
+     * Date reports are printed row by row from the counts ordered by day, age group reports have a fixed number of rows
+     * and are printed from their table.
+     * @param reportType - one of the table report types (symptoms_date, diseases_date, symptoms_age_groups, diseases_age_groups)
+     * @param idDoctor - id of the doctor
+     * @param fromDate - start date
+     * @param toDate - end date
+     * @param out - target of the CSV
+     *
+     * @throws IllegalArgumentException - the report type is not a table report
+     * */
+    @Override
+    public void writeCSVReport(ReportType reportType, int idDoctor, Date fromDate, Date toDate, OutputStream out) throws IOException {
+        switch (reportType) {
+            case symptoms_date -> {
+                List<Symptom> symptoms = symptomRepository.findAll();
+                writeDateCSV(symptoms.stream().map(Symptom::getName).toList(),
+                        columnIndexes(symptoms.stream().map(Symptom::getId).toList()),
+                        diagnosisRequestRepository.countSymptomsByDay(idDoctor, fromDate, toDate),
+                        generateDateRange(fromDate, toDate), out);
+            }
+            case diseases_date -> {
+                List<Disease> diseases = diseaseRepository.findAll();
+                writeDateCSV(diseases.stream().map(Disease::getName).toList(),
+                        columnIndexes(diseases.stream().map(Disease::getId).toList()),
+                        diagnosisRequestRepository.countDiseasesByDay(idDoctor, fromDate, toDate),
+                        generateDateRange(fromDate, toDate), out);
+            }
+            case symptoms_age_groups -> {
+                Object[] symptomAgeGroups = createSymptomAgeGroups(idDoctor, fromDate, toDate);
+                writeCSV((List<String>) symptomAgeGroups[0], (List<String>) symptomAgeGroups[1], (List<List<Integer>>) symptomAgeGroups[2], "Age groups", out);
+            }
+            case diseases_age_groups -> {
+                Object[] diseasesAgeGroups = createDiseasesAgeGroups(idDoctor, fromDate, toDate);
+                writeCSV((List<String>) diseasesAgeGroups[0], (List<String>) diseasesAgeGroups[1], (List<List<Integer>>) diseasesAgeGroups[2], "Age groups", out);
+            }
+            default -> throw new IllegalArgumentException("Report type " + reportType + " is not a table report");
+        }
+    }
+
+    private void writeUserReport(int idDoctor, Date fromDate, Date toDate, String title, OutputStream out) {
         Doctor doctor = doctorRepository.findById(idDoctor).get();
         List<String> messagesPart = getMessagesPart(idDoctor, fromDate, toDate);
         List<String> diagnosisRequestsPart = getDiagnosisRequestsPart(idDoctor, fromDate, toDate);
-        List<List<String>> newPatientsPart = getNewPatientsPart(idDoctor, fromDate, toDate);
+        List<DoctorPatientsWithData> newPatients = doctorService.getMyPatientsByDate(idDoctor, fromDate, toDate);
         List<List<String>> patientAgeGroups = getPatientAgeGroups(idDoctor);
         //create bar chart with 2 series for all patients and my patients: darkblue and blue from front (btn-default but just rgb)
         Object[] symptomAgeGroups = createSymptomAgeGroups(idDoctor, fromDate, toDate);
         //html table to insert
-        String symptomAgeGroupsPart = getTableForPDF((List<String>) symptomAgeGroups[0], (List<String>) symptomAgeGroups[1], (List<List<Integer>>) symptomAgeGroups[2], "Age groups", "Symptoms reported by age groups");
+        HtmlTemplate.Fragment symptomAgeGroupsPart = getTableForPDF((List<String>) symptomAgeGroups[0], (List<String>) symptomAgeGroups[1], (List<List<Integer>>) symptomAgeGroups[2], "Symptoms reported by age groups");
 
         // Generate HTML content
-        String htmlContent = generateHtmlContent(doctor, messagesPart, diagnosisRequestsPart, newPatientsPart, patientAgeGroups, symptomAgeGroupsPart, fromDate, toDate, title);
+        String htmlContent = generateHtmlContent(doctor, messagesPart, diagnosisRequestsPart, newPatients, patientAgeGroups, symptomAgeGroupsPart, fromDate, toDate, title);
 
         // Convert HTML to PDF
-        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
-        HtmlConverter.convertToPdf(htmlContent, outputStream);
-
-        // Get the PDF content as a byte array
-        byte[] pdfBytes = outputStream.toByteArray();
-
-        // Save the PDF to a file or return the file path
-        String filePath = null;
-        try {
-            filePath = savePdfToFile(pdfBytes);
-        } catch (IOException e) {
-            throw new RuntimeException(e);
-        }
-
-        Blob blob = new SerialBlob(pdfBytes);
-
-        return new SerialBlob(pdfBytes);
-
+        pdfRenderService.render(htmlContent, out);
     }
 
 
-    private String generateHtmlContent(Doctor doctor, List<String> messagesPart, List<String> diagnosisRequestsPart, List<List<String>> newPatientsPart, List<List<String>> patientAgeGroups, String symptomAgeGroupsPart, Date fromDate, Date toDate, String title) {
+    private String generateHtmlContent(Doctor doctor, List<String> messagesPart, List<String> diagnosisRequestsPart, List<DoctorPatientsWithData> newPatients, List<List<String>> patientAgeGroups, HtmlTemplate.Fragment symptomAgeGroupsPart, Date fromDate, Date toDate, String title) {
         // Fill in the placeholders in the HTML templates with the fetched data
         String doctorName = doctor.getName() + " " + doctor.getSurname();
         String specialisation = specialisationRepository.findById(doctor.getSpecialisation_id()).get().getSpecialisation();
@@ -175,101 +344,48 @@ public class StatisticsServiceImpl implements StatisticsService {
         String receivedDiagnosisRequestsCount = diagnosisRequestsPart.size() > 1 ? diagnosisRequestsPart.get(1) : "0";
         String answeredDiagnosisRequestsCount = diagnosisRequestsPart.size() > 0 ? diagnosisRequestsPart.get(0) : "0";
 
-        // Read HTML template from file
-        String htmlTemplatePath = "src/main/resources/static/pdf/user_report.html";
-        String htmlTemplate;
-        try {
-            htmlTemplate = Files.readString(Paths.get(htmlTemplatePath));
-        } catch (IOException e) {
-            throw new RuntimeException("Error reading HTML template file", e);
-        }
-
-        StringBuilder newPatientsTable = new StringBuilder();
-        for (List<String> patient : newPatientsPart) {
-            String username = patient.get(0);
-            String contactedOn = patient.get(1);
-            String createdThroughDiagnosisRequest = patient.get(2);
-
-            newPatientsTable.append("<tr style=\"border: 1px solid lightslategray; color: black; height: 40px;\">")
-                    .append("<td style=\"padding: 4px;\">").append(username).append("</td>")
-                    .append("<td style=\"padding: 4px;\">").append(contactedOn).append("</td>")
-                    .append("<td style=\"padding: 4px; text-align:right;\">").append(createdThroughDiagnosisRequest).append("</td>")
-                    .append("</tr>");
-        }
+        // Rows of new patients are written straight into the document
+        HtmlTemplate.Fragment newPatientsTable = out -> {
+            for (DoctorPatientsWithData patient : newPatients) {
+                out.append("<tr style=\"border: 1px solid lightslategray; color: black; height: 40px;\">")
+                        .append("<td style=\"padding: 4px;\">").append(HtmlUtils.htmlEscape(patient.getPatient().getName() + " " + patient.getPatient().getSurname())).append("</td>")
+                        .append("<td style=\"padding: 4px;\">").append(patient.getDateofcontact()).append("</td>")
+                        .append("<td style=\"padding: 4px; text-align:right;\">").append(HtmlUtils.htmlEscape(String.valueOf(patient.getIsDiagnosisRequest()))).append("</td>")
+                        .append("</tr>");
+            }
+        };
 
         // Prepare chart data
         List<Integer> allPatientsData = patientAgeGroups.get(0).stream().map(Integer::parseInt).collect(Collectors.toList());
         List<Integer> myPatientsData = patientAgeGroups.get(1).stream().map(Integer::parseInt).collect(Collectors.toList());
 
-        ObjectMapper objectMapper = new ObjectMapper();
-        String labelsJson = null;
-        String allPatientsDataJson = null;
-        String myPatientsDataJson = null;
-        try {
-            labelsJson = objectMapper.writeValueAsString(ageGroups);
-            allPatientsDataJson = objectMapper.writeValueAsString(allPatientsData);
-            myPatientsDataJson = objectMapper.writeValueAsString(myPatientsData);
-        } catch (JsonProcessingException e) {
-            throw new RuntimeException("Error converting data to JSON", e);
-        }
-
-        // Generate chart image using QuickChart
-        QuickChart chart = new QuickChart();
-        chart.setWidth(800);
-        chart.setHeight(600);
-        chart.setConfig("{" +
-                "type: 'bar'," +
-                "data: {" +
-                "labels: " + labelsJson + "," +
-                "datasets: [{" +
-                "label: 'All Patients'," +
-                "data: " + allPatientsDataJson + "," +
-                "backgroundColor: 'rgba(0, 0, 128, 0.5)'," +
-                "borderColor: 'rgba(0, 0, 128, 1)'," +
-                "borderWidth: 1" +
-                "}, {" +
-                "label: 'My Patients'," +
-                "data: " + myPatientsDataJson + "," +
-                "backgroundColor: 'rgba(0, 0, 255, 0.5)'," +
-                "borderColor: 'rgba(0, 0, 255, 1)'," +
-                "borderWidth: 1" +
-                "}]" +
-                "}," +
-                "options: {" +
-                "scales: {" +
-                "x: {" +
-                "beginAtZero: true" +
-                "}," +
-                "y: {" +
-                "beginAtZero: true" +
-                "}" +
-                "}" +
-                "}" +
-                "}");
-
-        String chartUrl = chart.getUrl();
-
-
-        String filledHtmlContent = htmlTemplate
-                .replace("{Name Surname}", doctorName)
-                .replace("{Specialisation}", specialisation)
-                .replace("{Title}", title)
-                .replace("{from}", fromDateStr)
-                .replace("{to}", toDateStr)
-                .replace("{yyyy-mm-dd H:i}", generatedDateStr)
-                .replace("{received_messages_count}", receivedMessagesCount)
-                .replace("{answered_messages_count}", answeredMessagesCount)
-                .replace("{received_diagnosis_requests_count}", receivedDiagnosisRequestsCount)
-                .replace("{answered_diagnosis_requests_count}", answeredDiagnosisRequestsCount)
-                .replace("<!--NEW_PATIENTS_TABLE-->", newPatientsTable.toString())
-                .replace("<!--NEW_PATIENTS_TABLE2-->", symptomAgeGroupsPart)
-                .replace("{new_patient_count}", String.valueOf(newPatientsPart.size()))
-                .replace("{chartUrl}", chartUrl);
-
-        return filledHtmlContent;
-    }
-
-    private String generateHtmlContent2(Doctor doctor, Date fromDate, Date toDate, String title, String symptom_date_table_part, String diseases_date_table_part, String symptom_age_groups_table_part, String diseases_age_groups_table_part) {
+        // Render the chart in-process, the PDF converter reads it from a data URI
+        String chartUrl = new BarChart(800, 600, List.of(ageGroups))
+                .addSeries(new BarChart.Series("All Patients", 0, 0, 128, allPatientsData))
+                .addSeries(new BarChart.Series("My Patients", 0, 0, 255, myPatientsData))
+                .toDataUri();
+
+
+        Map<String, Object> values = new HashMap<>();
+        values.put("{Name Surname}", doctorName);
+        values.put("{Specialisation}", specialisation);
+        values.put("{Title}", title);
+        values.put("{from}", fromDateStr);
+        values.put("{to}", toDateStr);
+        values.put("{yyyy-mm-dd H:i}", generatedDateStr);
+        values.put("{received_messages_count}", receivedMessagesCount);
+        values.put("{answered_messages_count}", answeredMessagesCount);
+        values.put("{received_diagnosis_requests_count}", receivedDiagnosisRequestsCount);
+        values.put("{answered_diagnosis_requests_count}", answeredDiagnosisRequestsCount);
+        values.put("<!--NEW_PATIENTS_TABLE-->", newPatientsTable);
+        values.put("<!--NEW_PATIENTS_TABLE2-->", symptomAgeGroupsPart);
+        values.put("{new_patient_count}", String.valueOf(newPatients.size()));
+        values.put("{chartUrl}", chartUrl);
+
+        return userReportTemplate.render(values);
+    }
+
+    private String generateHtmlContent2(Doctor doctor, Date fromDate, Date toDate, String title, HtmlTemplate.Fragment symptom_date_table_part, HtmlTemplate.Fragment diseases_date_table_part, HtmlTemplate.Fragment symptom_age_groups_table_part, HtmlTemplate.Fragment diseases_age_groups_table_part) {
         // Fill in the placeholders in the HTML templates with the fetched data
         String doctorName = doctor.getName() + " " + doctor.getSurname();
         String specialisation = specialisationRepository.findById(doctor.getSpecialisation_id()).get().getSpecialisation();
@@ -278,38 +394,22 @@ public class StatisticsServiceImpl implements StatisticsService {
         String toDateStr = dateFormat.format(toDate);
         String generatedDateStr = new Date().toString();
 
-        // Read HTML template from file
-        String htmlTemplatePath = "src/main/resources/static/pdf/diseases_report.html";
-        String htmlTemplate;
-        try {
-            htmlTemplate = Files.readString(Paths.get(htmlTemplatePath));
-        } catch (IOException e) {
-            throw new RuntimeException("Error reading HTML template file", e);
-        }
-
-        String filledHtmlContent = htmlTemplate
-                .replace("{Name Surname}", doctorName)
-                .replace("{Specialisation}", specialisation)
-                .replace("{Title}", title)
-                .replace("{from}", fromDateStr)
-                .replace("{to}", toDateStr)
-                .replace("{yyyy-mm-dd H:i}", generatedDateStr)
-                .replace("{symptom_date_table_part}", symptom_date_table_part)
-                .replace("{diseases_date_table_part}", diseases_date_table_part)
-                .replace("{symptom_age_groups_table_part}", symptom_age_groups_table_part)
-                .replace("{diseases_age_groups_table_part}", diseases_age_groups_table_part);
-
-        return filledHtmlContent;
+        Map<String, Object> values = new HashMap<>();
+        values.put("{Name Surname}", doctorName);
+        values.put("{Specialisation}", specialisation);
+        values.put("{Title}", title);
+        values.put("{from}", fromDateStr);
+        values.put("{to}", toDateStr);
+        values.put("{yyyy-mm-dd H:i}", generatedDateStr);
+        values.put("{symptom_date_table_part}", symptom_date_table_part);
+        values.put("{diseases_date_table_part}", diseases_date_table_part);
+        values.put("{symptom_age_groups_table_part}", symptom_age_groups_table_part);
+        values.put("{diseases_age_groups_table_part}", diseases_age_groups_table_part);
+
+        return diseasesReportTemplate.render(values);
     }
 
 
-    private String savePdfToFile(byte[] pdfBytes) throws IOException {
-        // Save the PDF to a file and return the file path
-        String filePath = "report.pdf";
-        java.nio.file.Files.write(java.nio.file.Paths.get(filePath), pdfBytes);
-        return filePath;
-    }
-
     private List<String> getMessagesPart(int idDoctor, Date fromDate, Date toDate){
         List<String> messagesPart = new ArrayList<>();
         int answered = 0;
@@ -352,21 +452,6 @@ public class StatisticsServiceImpl implements StatisticsService {
         return diagnosisRequestsPart;
     }
 
-    private List<List<String>> getNewPatientsPart(int idDoctor, Date fromDate, Date toDate){
-        List<List<String>> newPatients = new ArrayList<>();
-        //fetch new patients for doctor in timeframe
-        List<DoctorPatientsWithData> patients = doctorService.getMyPatientsByDate(idDoctor, fromDate, toDate);
-        //foreach patient chosen create row with name surname, chat creation date, if started with diagnosis request
-        for (DoctorPatientsWithData patient : patients){
-            List<String> patientData = new ArrayList<>();
-            patientData.add(patient.getPatient().getName()+" "+patient.getPatient().getSurname());
-            patientData.add(patient.getDateofcontact().toString());
-            patientData.add(patient.getIsDiagnosisRequest());
-            newPatients.add(patientData);
-        }
-        return newPatients;
-    }
-
     private List<List<String>> getPatientAgeGroups(int idDoctor){
         List<Patient> allPatients = patientRepository.findAll();
         List<Integer> all_patients_age_groups = new ArrayList<>();
@@ -402,62 +487,29 @@ public class StatisticsServiceImpl implements StatisticsService {
         return patientAgeGroups;
     }
     /////////////////////////////////////////////////////////////////////////////////////////////////////////////////
-    private Blob createDiseasesReport(int idDoctor, Date fromDate, Date toDate, String title) throws SQLException {
+    private void writeDiseasesReport(int idDoctor, Date fromDate, Date toDate, String title, OutputStream out) {
         Doctor doctor = doctorRepository.findAllById(idDoctor);
 
         // Generate HTML content for each table
         Object[] symptomDate = createSymptomsDate(idDoctor, fromDate, toDate);
-        String symptom_date_table_part = getTableForPDF((List<String>) symptomDate[0], (List<String>) symptomDate[1], (List<List<Integer>>) symptomDate[2], (String) symptomDate[3], "Symptoms reported by date");
+        HtmlTemplate.Fragment symptom_date_table_part = getTableForPDF((List<String>) symptomDate[0], (List<String>) symptomDate[1], (List<List<Integer>>) symptomDate[2], "Symptoms reported by date");
 
         Object[] diseasesDate = createDiseasesDate(idDoctor, fromDate, toDate);
-        String diseases_date_table_part = getTableForPDF((List<String>) diseasesDate[0], (List<String>) diseasesDate[1], (List<List<Integer>>) diseasesDate[2], (String) diseasesDate[3], "Diseases diagnosed by date");
+        HtmlTemplate.Fragment diseases_date_table_part = getTableForPDF((List<String>) diseasesDate[0], (List<String>) diseasesDate[1], (List<List<Integer>>) diseasesDate[2], "Diseases diagnosed by date");
 
         Object[] symptomAgeGroups = createSymptomAgeGroups(idDoctor, fromDate, toDate);
-        String symptom_age_groups_table_part = getTableForPDF((List<String>) symptomAgeGroups[0], (List<String>) symptomAgeGroups[1], (List<List<Integer>>) symptomAgeGroups[2], "Age groups", "Symptoms reported by age groups");
+        HtmlTemplate.Fragment symptom_age_groups_table_part = getTableForPDF((List<String>) symptomAgeGroups[0], (List<String>) symptomAgeGroups[1], (List<List<Integer>>) symptomAgeGroups[2], "Symptoms reported by age groups");
 
         Object[] diseasesAgeGroups = createDiseasesAgeGroups(idDoctor, fromDate, toDate);
-        String diseases_age_groups_table_part = getTableForPDF((List<String>) diseasesAgeGroups[0], (List<String>) diseasesAgeGroups[1], (List<List<Integer>>) diseasesAgeGroups[2], "Age groups", "Diseases diagnosed to age groups");
+        HtmlTemplate.Fragment diseases_age_groups_table_part = getTableForPDF((List<String>) diseasesAgeGroups[0], (List<String>) diseasesAgeGroups[1], (List<List<Integer>>) diseasesAgeGroups[2], "Diseases diagnosed to age groups");
 
         // Generate HTML content
         String filledHtmlContent = generateHtmlContent2(doctor, fromDate, toDate, title, symptom_date_table_part, diseases_date_table_part, symptom_age_groups_table_part, diseases_age_groups_table_part);
 
         // Convert HTML to PDF
-        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
-        HtmlConverter.convertToPdf(filledHtmlContent, outputStream);
-
-        // Get the PDF content as a byte array
-        byte[] pdfBytes = outputStream.toByteArray();
-
-        // Save the PDF to a file or return the file path
-        String filePath = null;
-        try {
-            filePath = savePdfToFile(pdfBytes);
-        } catch (IOException e) {
-            throw new RuntimeException(e);
-        }
-
-        Blob blob = new SerialBlob(pdfBytes);
-
-        return blob;
+        pdfRenderService.render(filledHtmlContent, out);
     }
     //////////////////////////////////////////////////////////////////////////////////////////////////////////////////
-    private Blob createSymptomsDateReport(int idDoctor, Date fromDate, Date toDate) throws SQLException {
-        Object[] symptomDate = createSymptomsDate(idDoctor, fromDate, toDate);
-        List<List<Object>> csvTable = getTableForCSV((List<String>) symptomDate[0], (List<String>) symptomDate[1], (List<List<Integer>>) symptomDate[2], (String) symptomDate[3]);
-        // Generate CSV file
-        String csvContent = generateCSV(csvTable);
-
-        // Save to file
-        Path csvFilePath = saveCSVToFile(csvContent, "symptoms_date_report.csv");
-
-        // Encode CSV content to Base64
-
-        Blob blob = new SerialBlob(csvContent.getBytes(StandardCharsets.UTF_8));
-
-        return blob;
-//        return Base64.getEncoder().encodeToString(csvContent.getBytes(StandardCharsets.UTF_8));
-    }
-
     private Object[] createSymptomsDate(int idDoctor, Date fromDate, Date toDate){
         List<Symptom> symptoms = symptomRepository.findAll();
         List<String> symptomNames = new ArrayList<>();
@@ -474,16 +526,8 @@ public class StatisticsServiceImpl implements StatisticsService {
             }
         }
 
-        List<Chart> charts = doctorService.getMyCharts(idDoctor, fromDate, toDate);
-        for(Chart chart : charts){
-            int dateIndex = findIndexForDate(chart.getDate(), dateRanges);
-
-            List<Symptom> chartSymptoms = chartService.getSymptoms(chart.getId());
-            for(Symptom symptom : chartSymptoms){
-                int symptomIndex = findSymptomIndex(symptoms, symptom);
-                data.get(dateIndex).set(symptomIndex, data.get(dateIndex).get(symptomIndex) + 1);
-            }
-        }
+        fillByDate(data, diagnosisRequestRepository.countSymptomsByDay(idDoctor, fromDate, toDate), dateRanges,
+                columnIndexes(symptoms.stream().map(Symptom::getId).toList()));
 
         Object[] symptomsDate = new Object[4];
         symptomsDate[0] = symptomNames;
@@ -494,21 +538,6 @@ public class StatisticsServiceImpl implements StatisticsService {
     }
 
     //////////////////////////////////////////////////////////////////////////////////////////////////////////
-    private Blob createDiseasesDateReport(int idDoctor, Date fromDate, Date toDate) throws SQLException {
-        Object[] diseasesDate = createDiseasesDate(idDoctor, fromDate, toDate);
-        List<List<Object>> csvTable = getTableForCSV((List<String>) diseasesDate[0], (List<String>) diseasesDate[1], (List<List<Integer>>) diseasesDate[2], (String) diseasesDate[3]);
-
-        String csvContent = generateCSV(csvTable);
-
-        // Save to file
-        Path csvFilePath = saveCSVToFile(csvContent, "diseases_date_report.csv");
-
-        Blob blob = new SerialBlob(csvContent.getBytes(StandardCharsets.UTF_8));
-
-        return blob;
-
-    }
-
     private Object[] createDiseasesDate(int idDoctor, Date fromDate, Date toDate){
         List<Disease> diseases = diseaseRepository.findAll();
         List<String> diseasesNames = new ArrayList<>();
@@ -526,16 +555,8 @@ public class StatisticsServiceImpl implements StatisticsService {
         }
 
 
-        List<DiagnosisRequest> diagnosisRequests = doctorService.getMyDiagnosisRequests(idDoctor, fromDate, toDate);
-        for(DiagnosisRequest diagnosisRequest : diagnosisRequests){
-            if(diagnosisRequest.getIdDisease() == -1 ||diagnosisRequest.getIdDisease()  == 0)
-                continue;
-
-            int dateIndex = findIndexForDate(diagnosisRequest.getModificationDate(), dateRanges);
-
-            int diseaseIndex = findDiseaseIndexById(diseases, diagnosisRequest.getIdDisease());
-            data.get(dateIndex).set(diseaseIndex, data.get(dateIndex).get(diseaseIndex) + 1);
-        }
+        fillByDate(data, diagnosisRequestRepository.countDiseasesByDay(idDoctor, fromDate, toDate), dateRanges,
+                columnIndexes(diseases.stream().map(Disease::getId).toList()));
 
 
         Object[] diseasesDate = new Object[4];
@@ -547,20 +568,6 @@ public class StatisticsServiceImpl implements StatisticsService {
     }
 
     /////////////////////////////////////////////////////////////////////////////////////////////////////////
-    private Blob createSymptomsAgeGroupsReport(int idDoctor, Date fromDate, Date toDate) throws SQLException {
-        Object[] symptomAgeGroups = createSymptomAgeGroups(idDoctor, fromDate, toDate);
-        List<List<Object>> csvTable = getTableForCSV((List<String>) symptomAgeGroups[0], (List<String>) symptomAgeGroups[1], (List<List<Integer>>) symptomAgeGroups[2], "Age groups");
-
-        String csvContent = generateCSV(csvTable);
-
-        // Save to file
-        Path csvFilePath = saveCSVToFile(csvContent, "symptoms_age_report.csv");
-
-        Blob blob = new SerialBlob(csvContent.getBytes(StandardCharsets.UTF_8));
-
-        return blob;
-    }
-
     private Object[] createSymptomAgeGroups(int idDoctor, Date fromDate, Date toDate){
         List<Symptom> symptoms = symptomRepository.findAll();
         List<String> symptomNames = new ArrayList<>();
@@ -577,17 +584,8 @@ public class StatisticsServiceImpl implements StatisticsService {
         }
 
 
-        List<Chart> charts = doctorService.getMyCharts(idDoctor, fromDate, toDate);
-        for(Chart chart : charts){
-            Patient chartPatient = chartService.getPatient(chart.getId());
-            int ageIndex = findAgeGroupIndex(patientService.getAge(chartPatient.getId()));
-
-            List<Symptom> chartSymptoms = chartService.getSymptoms(chart.getId());
-            for(Symptom symptom : chartSymptoms){
-                int symptomIndex = findSymptomIndex(symptoms, symptom);
-                data.get(ageIndex).set(symptomIndex, data.get(ageIndex).get(symptomIndex) + 1);
-            }
-        }
+        fillByAgeGroup(data, diagnosisRequestRepository.countSymptomsByAge(idDoctor, fromDate, toDate),
+                columnIndexes(symptoms.stream().map(Symptom::getId).toList()));
 
         Object[] ageGroupsData = new Object[3];
         ageGroupsData[0] = symptomNames;
@@ -597,20 +595,6 @@ public class StatisticsServiceImpl implements StatisticsService {
     }
 
     ////////////////////////////////////////////////////////////////////////////////////////////////////////
-    private Blob createDiseasesAgeGroupsReport(int idDoctor, Date fromDate, Date toDate) throws SQLException {
-        Object[] diseasesAgeGroups = createDiseasesAgeGroups(idDoctor, fromDate, toDate);
-        List<List<Object>> csvTable = getTableForCSV((List<String>) diseasesAgeGroups[0], (List<String>) diseasesAgeGroups[1], (List<List<Integer>>) diseasesAgeGroups[2], "Age groups");
-
-        String csvContent = generateCSV(csvTable);
-
-        // Save to file
-        Path csvFilePath = saveCSVToFile(csvContent, "diseases_age_report.csv");
-
-        Blob blob = new SerialBlob(csvContent.getBytes(StandardCharsets.UTF_8));
-
-        return blob;
-    }
-
     private Object[] createDiseasesAgeGroups(int idDoctor, Date fromDate, Date toDate){
         List<Disease> diseases = diseaseRepository.findAll();
         List<String> diseasesNames = new ArrayList<>();
@@ -627,18 +611,8 @@ public class StatisticsServiceImpl implements StatisticsService {
         }
 
 
-        List<DiagnosisRequest> diagnosisRequests = doctorService.getMyDiagnosisRequests(idDoctor, fromDate, toDate);
-        for(DiagnosisRequest diagnosisRequest : diagnosisRequests){
-
-            Patient diagnosisRequestPatient = diagnosisRequestService.getPatient(diagnosisRequest.getId());
-            int ageIndex = findAgeGroupIndex(patientService.getAge(diagnosisRequestPatient.getId()));
-
-            int diseaseIndex = findDiseaseIndexById(diseases, diagnosisRequest.getIdDisease());
-            if(diseaseIndex == -1)
-                continue;
-
-            data.get(ageIndex).set(diseaseIndex, data.get(ageIndex).get(diseaseIndex) + 1);
-        }
+        fillByAgeGroup(data, diagnosisRequestRepository.countDiseasesByAge(idDoctor, fromDate, toDate),
+                columnIndexes(diseases.stream().map(Disease::getId).toList()));
 
         Object[] ageGroupsData = new Object[3];
         ageGroupsData[0] = diseasesNames;
@@ -667,13 +641,62 @@ public class StatisticsServiceImpl implements StatisticsService {
         return -1; // Disease not found in the list
     }
 
-    private int findDiseaseIndexById(List<Disease> diseasesList, int idDisease) {
-        for (int i = 0; i < diseasesList.size(); i++) {
-            if (diseasesList.get(i).getId() == idDisease) {
-                return i;
+    /**
+     * Maps every id to its position in the list
+     * @param ids - ids of the table columns
+     *
+     * @return Map<Integer, Integer>
+     * */
+    private Map<Integer, Integer> columnIndexes(List<Integer> ids) {
+        Map<Integer, Integer> indexes = new HashMap<>();
+        for (int i = 0; i < ids.size(); i++) {
+            indexes.putIfAbsent(ids.get(i), i);
+        }
+        return indexes;
+    }
+
+    /**
+     * Adds counts aggregated by the database per day to the table of date ranges (days or months).
+     * Counts of unknown columns or days outside the date ranges are skipped.
+     * @param data - table with a row for every date range
+     * @param counts - counts per day and id
+     * @param dateRanges - dates of the rows in the format returned by generateDateRange
+     * @param columns - position of every id in the rows
+     * */
+    private void fillByDate(List<List<Integer>> data, List<DateCount> counts, List<String> dateRanges, Map<Integer, Integer> columns) {
+        Map<String, Integer> rows = new HashMap<>();
+        for (int i = 0; i < dateRanges.size(); i++) {
+            rows.put(dateRanges.get(i), i);
+        }
+        for (DateCount count : counts) {
+            if (count.getDay() == null) {
+                continue;
+            }
+            String day = count.getDay();
+            Integer row = rows.get(dateRanges.getFirst().length() == 10 ? day : day.substring(0, 7));
+            Integer column = columns.get(count.getId());
+            if (row != null && column != null) {
+                data.get(row).set(column, data.get(row).get(column) + count.getCount().intValue());
             }
         }
-        return -1; // Disease not found in the list
+    }
+
+    /**
+     * Adds counts aggregated by the database per age to the table of age groups.
+     * Counts of unknown columns or of patients with an unknown age are skipped.
+     * @param data - table with a row for every age group
+     * @param counts - counts per age and id
+     * @param columns - position of every id in the rows
+     * */
+    private void fillByAgeGroup(List<List<Integer>> data, List<AgeCount> counts, Map<Integer, Integer> columns) {
+        for (AgeCount count : counts) {
+            Integer column = columns.get(count.getId());
+            if (count.getAge() == null || count.getAge() < 0 || column == null) {
+                continue;
+            }
+            int row = findAgeGroupIndex(count.getAge());
+            data.get(row).set(column, data.get(row).get(column) + count.getCount().intValue());
+        }
     }
 
     @Override
@@ -781,67 +804,35 @@ public class StatisticsServiceImpl implements StatisticsService {
                 .toLocalDate();
     }
 
-    private String getTableForPDF(List<String> columns, List<String> rows, List<List<Integer>> data, String rowsName, String tableTitle) {
-        // Prepare the data for the HTML table
-        List<List<String>> result = new ArrayList<>();
-
-        // Add header row
-        result.add(new ArrayList<>());
-        result.get(0).add(""); // Placeholder for the empty cell in the top-left corner
-        for (String column : columns) {
-            result.get(0).add(column);
-        }
-
-        // Add data rows
-        for (int i = 0; i < rows.size(); i++) {
-            result.add(new ArrayList<>());
-            result.get(i + 1).add(rows.get(i)); // First cell in each row is the row name
-            for (Integer datum : data.get(i)) {
-                result.get(i + 1).add(datum.toString());
-            }
-        }
-
-        // Read HTML template from file
-        String htmlTemplatePath = "src/main/resources/static/pdf/_data_table.html";
-        String htmlTemplate;
-        try {
-            htmlTemplate = Files.readString(Paths.get(htmlTemplatePath));
-        } catch (IOException e) {
-            throw new RuntimeException("Error reading HTML template file", e);
-        }
-
-        // Replace placeholders in the HTML template with actual data
-        String tableHtml = htmlTemplate.replace("{table_title}", tableTitle);
-
-        // Generate table rows dynamically
-        StringBuilder tableRows = new StringBuilder();
-        for (int i = 0; i < result.size(); i++) {
-            List<String> row = result.get(i);
-            if (i == 0) {
-                // Header row
-                tableRows.append("<tr style=\"border: 1px solid lightslategray; background-color: lightslategray; color: white; font-weight: 600;\">");
-            } else {
-                tableRows.append("<tr style=\"border: 1px solid lightslategray; color: black; height: 40px;\">");
+    /**
+     * Table of a PDF report, the rows are written straight into the document when it is rendered
+     * @param columns - names of the columns
+     * @param rows - names of the rows
+     * @param data - values of the table, a list for every row
+     * @param tableTitle - title above the table
+     *
+     * @return HtmlTemplate.Fragment - the filled data table template
+     * */
+    private HtmlTemplate.Fragment getTableForPDF(List<String> columns, List<String> rows, List<List<Integer>> data, String tableTitle) {
+        HtmlTemplate.Fragment tableRows = out -> {
+            // Header row with an empty cell in the top-left corner
+            out.append("<tr style=\"border: 1px solid lightslategray; background-color: lightslategray; color: white; font-weight: 600;\">");
+            out.append("<th style=\"height: 40px; padding: 4px;\"></th>");
+            for (String column : columns) {
+                out.append("<th style=\"height: 40px; padding: 4px;\">").append(HtmlUtils.htmlEscape(column)).append("</th>");
             }
-            for (int j = 0; j < row.size(); j++) {
-                if (i == 0 && j == 0) {
-                    // Empty cell in the top-left corner
-                    tableRows.append("<th style=\"height: 40px; padding: 4px;\"></th>");
-                } else if (i == 0) {
-                    // Header cells
-                    tableRows.append("<th style=\"height: 40px; padding: 4px;\">").append(row.get(j)).append("</th>");
-                } else {
-                    // Data cells
-                    tableRows.append("<td style=\"padding: 4px;\">").append(row.get(j)).append("</td>");
+            out.append("</tr>");
+            // Data rows, the first cell in each row is the row name
+            for (int i = 0; i < rows.size(); i++) {
+                out.append("<tr style=\"border: 1px solid lightslategray; color: black; height: 40px;\">");
+                out.append("<td style=\"padding: 4px;\">").append(HtmlUtils.htmlEscape(rows.get(i))).append("</td>");
+                for (Integer datum : data.get(i)) {
+                    out.append("<td style=\"padding: 4px;\">").append(datum).append("</td>");
                 }
+                out.append("</tr>");
             }
-            tableRows.append("</tr>");
-        }
-
-        // Insert the generated table rows into the HTML template
-        tableHtml = tableHtml.replace("<!-- Dynamic Table Rows -->", tableRows.toString());
-
-        return tableHtml;
+        };
+        return out -> dataTableTemplate.render(out, Map.of("{table_title}", tableTitle, "<!-- Dynamic Table Rows -->", tableRows));
     }
 
     private List<List<Object>> getTableForCSV(List<String> columns, List<String> rows, List<List<Integer>> data, String rowsName){
@@ -861,47 +852,227 @@ public class StatisticsServiceImpl implements StatisticsService {
         return result;
     }
 
-    private Path saveCSVToFile(String csvContent, String fileName) {
-        try {
-            Path path = Paths.get(fileName);
-            Files.write(path, csvContent.getBytes(StandardCharsets.UTF_8));
-            return path;
-        } catch (IOException e) {
-            throw new RuntimeException("Error while saving CSV to file", e);
+    /**
+     * Streams the table as CSV: a header with the columns, then a row for every element of rows.
+     * The rows are printed straight from the data, no copy of the table is made. The stream is flushed but not closed.
+     * @param columns - names of the columns
+     * @param rows - names of the rows
+     * @param data - values of the table, a list for every row
+     * @param rowsName - name of the first column
+     * @param out - target of the CSV
+     * */
+    private void writeCSV(List<String> columns, List<String> rows, List<List<Integer>> data, String rowsName, OutputStream out) throws IOException {
+        CSVPrinter csvPrinter = startCSV(columns, rowsName, out);
+        for (int i = 0; i < rows.size(); i++) {
+            csvPrinter.print(rows.get(i));
+            for (Integer datum : data.get(i)) {
+                csvPrinter.print(datum);
+            }
+            csvPrinter.println();
         }
+        csvPrinter.flush();
     }
 
-    private String generateCSV(List<List<Object>> csvTable) {
-        try (ByteArrayOutputStream out = new ByteArrayOutputStream();
-             OutputStreamWriter writer = new OutputStreamWriter(out, StandardCharsets.UTF_8);
-             CSVPrinter csvPrinter = new CSVPrinter(writer, CSVFormat.DEFAULT)) {
 
-            for (List<Object> row : csvTable) {
-                csvPrinter.printRecord(row);
+    /**
+     * Streams a table of date ranges as CSV straight from the counts aggregated by the database, ordered by day.
+     * Only the row of the current date range is kept in memory, it is printed once all its counts are added.
+     * Counts of unknown columns or days outside the date ranges are skipped. The stream is flushed but not closed.
+     * @param columns - names of the columns
+     * @param columnIndexes - position of every id in the rows
+     * @param counts - counts per day and id, ordered by day
+     * @param dateRanges - dates of the rows in the format returned by generateDateRange
+     * @param out - target of the CSV
+     * */
+    private void writeDateCSV(List<String> columns, Map<Integer, Integer> columnIndexes, List<DateCount> counts,
+                              List<String> dateRanges, OutputStream out) throws IOException {
+        boolean days = dateRanges.getFirst().length() == 10;
+        CSVPrinter csvPrinter = startCSV(columns, days ? "Dates" : "Months", out);
+        Iterator<DateCount> iterator = counts.iterator();
+        DateCount next = iterator.hasNext() ? iterator.next() : null;
+        int[] row = new int[columns.size()];
+        for (String dateRange : dateRanges) {
+            Arrays.fill(row, 0);
+            while (next != null) {
+                String day = next.getDay();
+                int order = day == null ? -1 : (days ? day : day.substring(0, 7)).compareTo(dateRange);
+                if (order > 0) {
+                    break;
+                }
+                Integer column = columnIndexes.get(next.getId());
+                if (order == 0 && column != null) {
+                    row[column] += next.getCount().intValue();
+                }
+                next = iterator.hasNext() ? iterator.next() : null;
             }
-
-            csvPrinter.flush();
-            return out.toString(StandardCharsets.UTF_8);
-        } catch (Exception e) {
-            throw new RuntimeException("Error while generating CSV", e);
+            csvPrinter.print(dateRange);
+            for (int datum : row) {
+                csvPrinter.print(datum);
+            }
+            csvPrinter.println();
         }
+        csvPrinter.flush();
     }
 
+    /**
+     * Creates the CSV printer of the stream and prints the header.
+     * @param columns - names of the columns
+     * @param rowsName - name of the first column
+     * @param out - target of the CSV
+     *
+     * @return CSVPrinter - printer positioned after the header
+     * */
+    private CSVPrinter startCSV(List<String> columns, String rowsName, OutputStream out) throws IOException {
+        Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+        CSVPrinter csvPrinter = new CSVPrinter(writer, CSVFormat.DEFAULT);
+        csvPrinter.print(rowsName);
+        for (String column : columns) {
+            csvPrinter.print(column);
+        }
+        csvPrinter.println();
+        return csvPrinter;
+    }
 
+    /**
+     * Table of symptoms by month or day, served from the statistics cache
+     * @param idDoctor - id of the doctor
+     * @param fromDate - start date
+     * @param toDate - end date
+     *
+     * @return List<List<Object>> - header row followed by a row for every date
+     * */
     public List<List<Object>> getSymptomsDate(int idDoctor, Date fromDate, Date toDate){
-        Object[] symptomDate = createSymptomsDate(idDoctor, fromDate, toDate);
-        return getTableForCSV((List<String>) symptomDate[0], (List<String>) symptomDate[1], (List<List<Integer>>) symptomDate[2], (String) symptomDate[3]);
+        return statisticsCache.get("symptoms_date", idDoctor, fromDate, toDate, () -> {
+            Object[] symptomDate = createSymptomsDate(idDoctor, fromDate, toDate);
+            return getTableForCSV((List<String>) symptomDate[0], (List<String>) symptomDate[1], (List<List<Integer>>) symptomDate[2], (String) symptomDate[3]);
+        });
     }
     public List<List<Object>> getDiseasesDate(int idDoctor, Date fromDate, Date toDate){
-        Object[] symptomDate = createDiseasesDate(idDoctor, fromDate, toDate);
-        return getTableForCSV((List<String>) symptomDate[0], (List<String>) symptomDate[1], (List<List<Integer>>) symptomDate[2], (String) symptomDate[3]);
+        return statisticsCache.get("diseases_date", idDoctor, fromDate, toDate, () -> {
+            Object[] symptomDate = createDiseasesDate(idDoctor, fromDate, toDate);
+            return getTableForCSV((List<String>) symptomDate[0], (List<String>) symptomDate[1], (List<List<Integer>>) symptomDate[2], (String) symptomDate[3]);
+        });
     }
     public List<List<Object>> getSymptomsAgeGroups(int idDoctor, Date fromDate, Date toDate){
-        Object[] symptomDate = createSymptomAgeGroups(idDoctor, fromDate, toDate);
-        return getTableForCSV((List<String>) symptomDate[0], (List<String>) symptomDate[1], (List<List<Integer>>) symptomDate[2], "Age groups");
+        return statisticsCache.get("symptoms_age_groups", idDoctor, fromDate, toDate, () -> {
+            Object[] symptomDate = createSymptomAgeGroups(idDoctor, fromDate, toDate);
+            return getTableForCSV((List<String>) symptomDate[0], (List<String>) symptomDate[1], (List<List<Integer>>) symptomDate[2], "Age groups");
+        });
     }
     public List<List<Object>> getDiseasesAgeGroups(int idDoctor, Date fromDate, Date toDate){
-        Object[] symptomDate = createDiseasesAgeGroups(idDoctor, fromDate, toDate);
-        return getTableForCSV((List<String>) symptomDate[0], (List<String>) symptomDate[1], (List<List<Integer>>) symptomDate[2], "Age groups");
+        return statisticsCache.get("diseases_age_groups", idDoctor, fromDate, toDate, () -> {
+            Object[] symptomDate = createDiseasesAgeGroups(idDoctor, fromDate, toDate);
+            return getTableForCSV((List<String>) symptomDate[0], (List<String>) symptomDate[1], (List<List<Integer>>) symptomDate[2], "Age groups");
+        });
+    }
+
+    /**
+     * Invalidates the cached statistics of the doctor of the changed diagnosis request.
+     * @param event - the changed diagnosis request
+     * */
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onDiagnosisRequestChanged(DiagnosisRequestChangedEvent event) {
+        statisticsCache.invalidateDoctor(event.diagnosisRequest().getIdDoctor());
+    }
+
+    /**
+     * Invalidates the cached statistics of the doctor a diagnosis request was moved away from.
+     * @param event - the moved diagnosis request
+     * */
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onDiagnosisRequestReassigned(DiagnosisRequestReassignedEvent event) {
+        statisticsCache.invalidateDoctor(event.previousIdDoctor());
+    }
+
+    /**
+     * Schedules the invalidation of the cached statistics of the doctors of diagnosis requests
+     * of the changed chart or its symptoms.
+     * @param event - the changed chart
+     * */
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onChartChanged(ChartChangedEvent event) {
+        synchronized (pendingInvalidationLock) {
+            pendingCharts.add(event.chartId());
+            scheduleInvalidation();
+        }
+    }
+
+    /**
+     * Schedules the invalidation of the cached statistics of the doctors of diagnosis requests of the changed patient,
+     * only if the birth date of the patient (the age counted in the statistics) may have changed.
+     * The birth date of every changed patient is remembered, so other changes (e.g. the status) are ignored.
+     * @param event - the changed patient
+     * */
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onPatientChanged(PatientChangedEvent event) {
+        long birthDate = event.birthDate() == null ? Long.MIN_VALUE : event.birthDate().getTime();
+        Long previous = event.changeType() == ChangeType.deleted
+                ? patientBirthDates.remove(event.patientId())
+                : patientBirthDates.put(event.patientId(), birthDate);
+        if (event.changeType() == ChangeType.created
+                || (event.changeType() == ChangeType.updated && previous != null && previous == birthDate)) {
+            return;
+        }
+        synchronized (pendingInvalidationLock) {
+            pendingPatients.add(event.patientId());
+            scheduleInvalidation();
+        }
+    }
+
+    /**
+     * Stops the thread invalidating the cached statistics.
+     * */
+    @PreDestroy
+    public void stopInvalidation() {
+        invalidationExecutor.shutdownNow();
+    }
+
+    /**
+     * Waits until the invalidations scheduled so far are done.
+     * @param timeoutMillis - the maximum time to wait
+     * */
+    void awaitInvalidations(long timeoutMillis) throws Exception {
+        invalidationExecutor.submit(() -> {
+        }).get(timeoutMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Schedules the pending invalidations, unless they already are. Must be called while holding pendingInvalidationLock.
+     * */
+    private void scheduleInvalidation() {
+        if (!invalidationScheduled) {
+            invalidationScheduled = true;
+            invalidationExecutor.execute(this::invalidatePending);
+        }
+    }
+
+    /**
+     * Invalidates the cached statistics of the doctors of all pending charts and patients with one query per kind,
+     * so a chart or a patient changed many times in the meantime is looked up once.
+     * If the doctors can't be read, all cached statistics are invalidated.
+     * */
+    private void invalidatePending() {
+        Set<Integer> charts;
+        Set<Integer> patients;
+        synchronized (pendingInvalidationLock) {
+            charts = pendingCharts;
+            patients = pendingPatients;
+            pendingCharts = new HashSet<>();
+            pendingPatients = new HashSet<>();
+            invalidationScheduled = false;
+        }
+        try {
+            Set<Integer> doctors = new HashSet<>();
+            if (!charts.isEmpty()) {
+                doctors.addAll(diagnosisRequestRepository.findDoctorIdsByChartIn(charts));
+            }
+            if (!patients.isEmpty()) {
+                doctors.addAll(diagnosisRequestRepository.findDoctorIdsByPatientIn(patients));
+            }
+            doctors.forEach(statisticsCache::invalidateDoctor);
+        } catch (DataAccessException e) {
+            log.error("Error reading the doctors of {} changed charts and {} changed patients", charts.size(), patients.size(), e);
+            statisticsCache.invalidateAll();
+        }
     }
 }
\ No newline at end of file
@@ -0,0 +1,157 @@
+package pl.logic.site.utils;
+
+import org.springframework.web.util.HtmlUtils;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * A grouped bar chart rendered in-process as SVG, used to embed charts in PDF reports as data URIs
+ * without fetching images from an external chart service.
+ * Every series has a value for every label, the value axis starts at zero.
+ */
+public class BarChart {
+    private static final int MARGIN_LEFT = 60;
+    private static final int MARGIN_RIGHT = 20;
+    private static final int MARGIN_TOP = 50;
+    private static final int MARGIN_BOTTOM = 40;
+    private static final int TICKS = 5;
+
+    private final int width;
+    private final int height;
+    private final List<String> labels;
+    private final List<Series> series;
+
+    /**
+     * A named row of values drawn with one color.
+     *
+     * @param name   the name shown in the legend
+     * @param red    the red component of the color
+     * @param green  the green component of the color
+     * @param blue   the blue component of the color
+     * @param values the value for every label
+     */
+    public record Series(String name, int red, int green, int blue, List<Integer> values) {
+    }
+
+    /**
+     * Creates a new chart without series.
+     *
+     * @param width  the width of the image in pixels
+     * @param height the height of the image in pixels
+     * @param labels the labels of the groups of bars
+     */
+    public BarChart(int width, int height, List<String> labels) {
+        this.width = width;
+        this.height = height;
+        this.labels = List.copyOf(labels);
+        this.series = new ArrayList<>();
+    }
+
+    /**
+     * Adds a series of bars.
+     *
+     * @param series the series, must have a value for every label
+     * @return this chart
+     */
+    public BarChart addSeries(Series series) {
+        if (series.values().size() != labels.size()) {
+            throw new IllegalArgumentException("Series " + series.name() + " has " + series.values().size()
+                    + " values for " + labels.size() + " labels");
+        }
+        this.series.add(series);
+        return this;
+    }
+
+    /**
+     * Returns the chart as an SVG document.
+     */
+    public String toSvg() {
+        int plotWidth = width - MARGIN_LEFT - MARGIN_RIGHT;
+        int plotHeight = height - MARGIN_TOP - MARGIN_BOTTOM;
+        int step = tickStep(series.stream().flatMap(s -> s.values().stream()).mapToInt(Integer::intValue).max().orElse(0));
+        int axisMax = step * TICKS;
+
+        StringBuilder svg = new StringBuilder(4096);
+        svg.append("<svg xmlns=\"http://www.w3.org/2000/svg\" width=\"").append(width).append("\" height=\"").append(height)
+                .append("\" viewBox=\"0 0 ").append(width).append(' ').append(height).append("\">");
+        svg.append("<rect x=\"0\" y=\"0\" width=\"").append(width).append("\" height=\"").append(height).append("\" fill=\"white\"/>");
+
+        // value axis with grid lines
+        for (int i = 0; i <= TICKS; i++) {
+            double y = MARGIN_TOP + plotHeight - (double) plotHeight * i / TICKS;
+            svg.append("<line x1=\"").append(MARGIN_LEFT).append("\" y1=\"").append(format(y)).append("\" x2=\"").append(MARGIN_LEFT + plotWidth)
+                    .append("\" y2=\"").append(format(y)).append("\" stroke=\"rgb(220,220,220)\" stroke-width=\"1\"/>");
+            text(svg, MARGIN_LEFT - 8, y + 4, "end", String.valueOf(step * i));
+        }
+
+        // bars grouped by label
+        double groupWidth = labels.isEmpty() ? plotWidth : (double) plotWidth / labels.size();
+        double barWidth = series.isEmpty() ? 0 : groupWidth * 0.8 / series.size();
+        for (int i = 0; i < labels.size(); i++) {
+            double groupX = MARGIN_LEFT + groupWidth * i;
+            for (int j = 0; j < series.size(); j++) {
+                Series s = series.get(j);
+                double barHeight = (double) plotHeight * s.values().get(i) / axisMax;
+                double x = groupX + groupWidth * 0.1 + barWidth * j;
+                svg.append("<rect x=\"").append(format(x)).append("\" y=\"").append(format(MARGIN_TOP + plotHeight - barHeight))
+                        .append("\" width=\"").append(format(barWidth)).append("\" height=\"").append(format(barHeight)).append("\" ")
+                        .append(color(s)).append("/>");
+            }
+            text(svg, groupX + groupWidth / 2, MARGIN_TOP + plotHeight + 20, "middle", labels.get(i));
+        }
+        svg.append("<line x1=\"").append(MARGIN_LEFT).append("\" y1=\"").append(MARGIN_TOP + plotHeight).append("\" x2=\"")
+                .append(MARGIN_LEFT + plotWidth).append("\" y2=\"").append(MARGIN_TOP + plotHeight).append("\" stroke=\"rgb(128,128,128)\" stroke-width=\"1\"/>");
+
+        // legend above the plot
+        double legendX = MARGIN_LEFT;
+        for (Series s : series) {
+            svg.append("<rect x=\"").append(format(legendX)).append("\" y=\"15\" width=\"30\" height=\"12\" ").append(color(s)).append("/>");
+            text(svg, legendX + 36, 26, "start", s.name());
+            legendX += 50 + s.name().length() * 8;
+        }
+        svg.append("</svg>");
+        return svg.toString();
+    }
+
+    /**
+     * Returns the chart as a data URI to use as the source of an image.
+     */
+    public String toDataUri() {
+        return "data:image/svg+xml;base64," + Base64.getEncoder().encodeToString(toSvg().getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Returns the distance between grid lines: the smallest 1, 2 or 5 times a power of ten
+     * for which TICKS lines cover the maximum value.
+     */
+    static int tickStep(int max) {
+        int magnitude = 1;
+        while (true) {
+            for (int factor : new int[]{1, 2, 5}) {
+                if ((long) factor * magnitude * TICKS >= max) {
+                    return factor * magnitude;
+                }
+            }
+            magnitude *= 10;
+        }
+    }
+
+    private void text(StringBuilder svg, double x, double y, String anchor, String value) {
+        svg.append("<text x=\"").append(format(x)).append("\" y=\"").append(format(y)).append("\" text-anchor=\"").append(anchor)
+                .append("\" font-family=\"Helvetica\" font-size=\"12\" fill=\"rgb(64,64,64)\">")
+                .append(HtmlUtils.htmlEscape(value, "UTF-8")).append("</text>");
+    }
+
+    private String color(Series s) {
+        String rgb = "rgb(" + s.red() + "," + s.green() + "," + s.blue() + ")";
+        return "fill=\"" + rgb + "\" fill-opacity=\"0.5\" stroke=\"" + rgb + "\" stroke-width=\"1\"";
+    }
+
+    private String format(double value) {
+        return String.format(Locale.ROOT, "%.1f", value);
+    }
+}
@@ -0,0 +1,114 @@
+package pl.logic.site.utils;
+
+import org.springframework.web.util.HtmlUtils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * An HTML template parsed once into literal segments and placeholders.
+ * Rendering appends the literals and the values of the placeholders to a StringBuilder in a single pass,
+ * so the document is not copied for every placeholder and values are never searched for other placeholders.
+ * Every occurrence of a placeholder is filled. Text values are HTML-escaped, fragments are written as they are.
+ */
+public class HtmlTemplate {
+    /**
+     * A part of the document written straight into the output, e.g. rows of a table.
+     */
+    @FunctionalInterface
+    public interface Fragment {
+        void writeTo(StringBuilder out);
+    }
+
+    private final String[] literals;
+    private final String[] placeholders;
+    private final int literalLength;
+
+    /**
+     * Parses the template.
+     *
+     * @param source       the HTML of the template
+     * @param placeholders the placeholders used in the template, e.g. "{Title}" or "&lt;!--TABLE--&gt;"
+     */
+    public HtmlTemplate(String source, List<String> placeholders) {
+        List<String> literalList = new ArrayList<>();
+        List<String> placeholderList = new ArrayList<>();
+        int position = 0;
+        while (true) {
+            int next = -1;
+            String found = null;
+            for (String placeholder : placeholders) {
+                int index = source.indexOf(placeholder, position);
+                if (index >= 0 && (next < 0 || index < next || (index == next && placeholder.length() > found.length()))) {
+                    next = index;
+                    found = placeholder;
+                }
+            }
+            if (found == null) {
+                literalList.add(source.substring(position));
+                break;
+            }
+            literalList.add(source.substring(position, next));
+            placeholderList.add(found);
+            position = next + found.length();
+        }
+        this.literals = literalList.toArray(new String[0]);
+        this.placeholders = placeholderList.toArray(new String[0]);
+        this.literalLength = literalList.stream().mapToInt(String::length).sum();
+    }
+
+    /**
+     * Loads and parses a template from the classpath.
+     *
+     * @param resource     the path of the template on the classpath, e.g. "static/pdf/user_report.html"
+     * @param placeholders the placeholders used in the template
+     * @return the parsed template
+     */
+    public static HtmlTemplate load(String resource, List<String> placeholders) {
+        try (InputStream in = HtmlTemplate.class.getClassLoader().getResourceAsStream(resource)) {
+            if (in == null) {
+                throw new IllegalStateException("HTML template " + resource + " not found on the classpath");
+            }
+            return new HtmlTemplate(new String(in.readAllBytes(), StandardCharsets.UTF_8), placeholders);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Error reading HTML template " + resource, e);
+        }
+    }
+
+    /**
+     * Appends the filled template to the output.
+     *
+     * @param out    the output
+     * @param values the value of every placeholder, a Fragment or a text; missing placeholders are left empty
+     */
+    public void render(StringBuilder out, Map<String, ?> values) {
+        out.ensureCapacity(out.length() + literalLength);
+        for (int i = 0; i < placeholders.length; i++) {
+            out.append(literals[i]);
+            Object value = values.get(placeholders[i]);
+            if (value instanceof Fragment fragment) {
+                fragment.writeTo(out);
+            } else if (value != null) {
+                out.append(HtmlUtils.htmlEscape(value.toString()));
+            }
+        }
+        out.append(literals[literals.length - 1]);
+    }
+
+    /**
+     * Returns the filled template.
+     *
+     * @param values the value of every placeholder, a Fragment or a text
+     * @return the HTML document
+     */
+    public String render(Map<String, ?> values) {
+        StringBuilder out = new StringBuilder(literalLength * 2);
+        render(out, values);
+        return out.toString();
+    }
+}
@@ -1,6 +1,8 @@
 package pl.logic.site.utils.predictions;
 
-import java.util.HashMap;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
 /**
  * A static class that contains a mapping of gender strings to double values.
@@ -11,10 +13,11 @@ import java.util.HashMap;
 public class GenderDict {
     /**
      * A mapping of gender strings to double values, where 0. represents male and 1. represents female.
+     * Immutable, the order of the entries is the order of their codes in ValueEncoder.
      */
-    public static final HashMap<String, Double> genderDict = new HashMap<String, Double>() {{
+    public static final Map<String, Double> genderDict = Collections.unmodifiableMap(new LinkedHashMap<String, Double>() {{
         put("male", 0.);
         put("female", 1.);
         put("other", 0.5);
-    }};
+    }});
 }
@@ -1,6 +1,8 @@
 package pl.logic.site.utils.predictions;
 
-import java.util.HashMap;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
 /**
  * This class contains a list of symptoms (should be all symptoms in database) and their respective weights.
@@ -12,8 +14,9 @@ import java.util.HashMap;
 public class SymptomsDict {
     /**
      * A map containing the symptoms and their weights.
+     * Immutable, the order of the entries is the order of their codes in ValueEncoder.
      */
-    public static final HashMap<String, Double> symptomsDict = new HashMap<String, Double>() {{
+    public static final Map<String, Double> symptomsDict = Collections.unmodifiableMap(new LinkedHashMap<String, Double>() {{
         put("null", 0.0);
         put("hard", 0.8);
         put("weak", 0.25);
@@ -44,5 +47,5 @@ public class SymptomsDict {
         put("prolonged", 0.65);
         put("bloating", 0.15);
         put("chronic", 0.7);
-    }};
+    }});
 }
@@ -0,0 +1,111 @@
+package pl.logic.site.utils.predictions;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * An immutable encoder of text values (symptom severity levels, genders) into numeric features.
+ * Every known value is interned to a small code once, when it is read, and a code is turned into
+ * its numeric value with a single array access, so encoding a chart is a plain array fill.
+ * Code 0 is reserved for a missing or unknown value.
+ * Codes follow the order of the dictionary the encoder was created from, so they are stable between runs.
+ *
+ * @author Kacper
+ */
+public final class ValueEncoder {
+    /**
+     * The code of a missing or unknown value.
+     */
+    public static final byte ABSENT = 0;
+
+    /**
+     * The encoder of symptom severity levels (SymptomsDict), an unknown level encodes as an absent symptom (0.0).
+     */
+    public static final ValueEncoder SYMPTOM_VALUES = new ValueEncoder(SymptomsDict.symptomsDict, 0.0);
+
+    /**
+     * The encoder of lowercase genders (GenderDict).
+     */
+    public static final ValueEncoder GENDERS = new ValueEncoder(GenderDict.genderDict, Double.NaN);
+
+    private final HashMap<String, Byte> codes;
+    private final String[] values;
+    private final double[] weights;
+
+    /**
+     * Creates a new encoder of the values of the dictionary.
+     *
+     * @param dictionary    the numeric value of every text value, at most 127 values
+     * @param absentWeight  the numeric value of a missing or unknown value
+     */
+    public ValueEncoder(Map<String, Double> dictionary, double absentWeight) {
+        if (dictionary.size() > Byte.MAX_VALUE) {
+            throw new IllegalArgumentException("Too many values to encode: " + dictionary.size());
+        }
+        this.codes = new HashMap<>();
+        this.values = new String[dictionary.size() + 1];
+        this.weights = new double[dictionary.size() + 1];
+        weights[ABSENT] = absentWeight;
+        byte code = ABSENT;
+        for (Map.Entry<String, Double> entry : dictionary.entrySet()) {
+            code++;
+            codes.put(entry.getKey(), code);
+            values[code] = entry.getKey();
+            weights[code] = entry.getValue();
+        }
+    }
+
+    /**
+     * Returns the code of the value.
+     *
+     * @param value the text value
+     * @return the code of the value, ABSENT if the value is null or unknown
+     */
+    public byte code(String value) {
+        if (value == null) {
+            return ABSENT;
+        }
+        Byte code = codes.get(value);
+        return code == null ? ABSENT : code;
+    }
+
+    /**
+     * Returns the text value of the code.
+     *
+     * @param code the code
+     * @return the text value, null for ABSENT
+     */
+    public String value(byte code) {
+        return values[code];
+    }
+
+    /**
+     * Returns the numeric value of the code.
+     *
+     * @param code the code
+     * @return the numeric value
+     */
+    public double weight(byte code) {
+        return weights[code];
+    }
+
+    /**
+     * Writes the numeric values of the codes into the target array.
+     *
+     * @param codes  the codes
+     * @param target the array to write into
+     * @param offset the index in target at which the value of the first code is written
+     */
+    public void decode(byte[] codes, double[] target, int offset) {
+        for (int i = 0; i < codes.length; i++) {
+            target[offset + i] = weights[codes[i]];
+        }
+    }
+
+    /**
+     * Returns the number of codes, including ABSENT.
+     */
+    public int size() {
+        return weights.length;
+    }
+}
@@ -0,0 +1,73 @@
+package pl.logic.site.model.predictions.features;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import pl.logic.site.model.enums.Status;
+import pl.logic.site.model.mysql.Disease;
+import pl.logic.site.model.mysql.Patient;
+
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class FeatureMatrixTest {
+    private List<DiseaseVector> diseaseVectors;
+
+    @BeforeEach
+    void setUp() throws ParseException {
+        SimpleDateFormat formatter = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss");
+        Date birth_date = formatter.parse("2000-03-01 02:00:00");
+        Patient patient_1 = new Patient(1, "John", "Smith", birth_date, 180, 80, "male", Status.ONLINE, "cm", "kg");
+        Patient patient_2 = new Patient(2, "Anna", "Smith", birth_date, 165, 60, "female", Status.ONLINE, "cm", "kg");
+
+        HashMap<String, String> symptoms_1 = new HashMap<>();
+        symptoms_1.put("headache", "strong");
+        symptoms_1.put("cough", "null");
+        HashMap<String, String> symptoms_2 = new HashMap<>();
+        symptoms_2.put("headache", "mild");
+        symptoms_2.put("cough", "moderate");
+
+        this.diseaseVectors = new ArrayList<>();
+        this.diseaseVectors.add(new DiseaseVector(new Disease(1, "migraine"), patient_1, symptoms_1));
+        this.diseaseVectors.add(new DiseaseVector(new Disease(2, "flu"), patient_2, symptoms_2));
+    }
+
+    @Test
+    void packsRowsInOrder() {
+        FeatureMatrix featureMatrix = new FeatureMatrix(diseaseVectors);
+
+        assertEquals(2, featureMatrix.getRows());
+        assertEquals(6, featureMatrix.getColumns());
+        assertEquals(12, featureMatrix.getFeatures().length);
+        for (int row = 0; row < featureMatrix.getRows(); row++) {
+            double[] expected = diseaseVectors.get(row).getFeatureVector().getPackedFeatures();
+            for (int column = 0; column < featureMatrix.getColumns(); column++) {
+                assertEquals(expected[column], featureMatrix.getFeatures()[featureMatrix.getOffset(row) + column]);
+            }
+            assertEquals(diseaseVectors.get(row).getDisease(), featureMatrix.getLabel(row));
+        }
+    }
+
+    @Test
+    void emptyLearningSet() {
+        FeatureMatrix featureMatrix = new FeatureMatrix(new ArrayList<>());
+
+        assertEquals(0, featureMatrix.getRows());
+        assertEquals(0, featureMatrix.getColumns());
+    }
+
+    @Test
+    void differentLengthsAreRejected() {
+        HashMap<String, String> symptoms = new HashMap<>();
+        symptoms.put("headache", "strong");
+        Patient patient = new Patient(3, "Jan", "Kowalski", new Date(), 170, 70, "male", Status.ONLINE, "cm", "kg");
+        diseaseVectors.add(new DiseaseVector(new Disease(1, "migraine"), patient, symptoms));
+
+        assertThrows(IllegalArgumentException.class, () -> new FeatureMatrix(diseaseVectors));
+    }
+}
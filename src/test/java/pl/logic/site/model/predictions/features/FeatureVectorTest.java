@@ -56,9 +56,37 @@ class FeatureVectorTest {
     @Test
     void getSymptomFeatures() {
         System.out.println(Arrays.toString(this.featureVector.getSymptomFeatures()));
-        assertEquals(0.2, this.featureVector.getSymptomFeatures()[0], 0.001);
+        assertEquals(0.5, this.featureVector.getSymptomFeatures()[0], 0.001);
         assertEquals(0.8, this.featureVector.getSymptomFeatures()[1], 0.001);
-        assertEquals(0.5, this.featureVector.getSymptomFeatures()[2], 0.001);
+        assertEquals(0.2, this.featureVector.getSymptomFeatures()[2], 0.001);
         assertEquals(0.0, this.featureVector.getSymptomFeatures()[3], 0.001);
     }
-}
\ No newline at end of file
+
+    @Test
+    void unknownSymptomValueKeepsColumn() {
+        String[] symptomValues = {"strong", "unknown value", null, "mild"};
+        FeatureVector vector = new FeatureVector(180., 80., "male", new Date(), symptomValues);
+
+        assertEquals(4, vector.getSymptomFeatures().length);
+        assertEquals(0.8, vector.getSymptomFeatures()[0], 0.001);
+        assertEquals(0.0, vector.getSymptomFeatures()[1], 0.001);
+        assertEquals(0.0, vector.getSymptomFeatures()[2], 0.001);
+        assertEquals(0.2, vector.getSymptomFeatures()[3], 0.001);
+    }
+
+    @Test
+    void getPackedFeatures() {
+        double[] packed = this.featureVector.getPackedFeatures();
+        assertEquals(this.featureVector.getLength(), packed.length);
+        assertEquals(3 + 1 + this.featureVector.getSymptomFeatures().length, packed.length);
+        assertEquals(0.72, packed[0], 0.001);
+        assertEquals(0.5373, packed[1], 0.001);
+        assertEquals(0.0, packed[2], 0.001);
+        double days = (double) this.featureVector.getDateFeatures()[0].getTime() / TimeUnit.DAYS.toMillis(1);
+        assertEquals(days / 18250, packed[3], 0.000001);
+        Double[] symptoms = this.featureVector.getSymptomFeatures();
+        for (int i = 0; i < symptoms.length; i++) {
+            assertEquals(symptoms[i], packed[4 + i], 0.001);
+        }
+    }
+}
@@ -0,0 +1,47 @@
+package pl.logic.site.model.predictions.features;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import pl.logic.site.model.mysql.Symptom;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SymptomIndexTest {
+    private SymptomIndex symptomIndex;
+
+    @BeforeEach
+    void setUp() {
+        List<Symptom> symptoms = new ArrayList<>();
+        symptoms.add(new Symptom(7, "vomiting"));
+        symptoms.add(new Symptom(2, "sore throat"));
+        symptoms.add(new Symptom(5, "headache"));
+        symptoms.add(new Symptom(2, "sore throat"));
+        this.symptomIndex = new SymptomIndex(symptoms);
+    }
+
+    @Test
+    void columnsAreOrderedById() {
+        assertEquals(3, symptomIndex.size());
+        assertEquals(0, symptomIndex.getColumn(2));
+        assertEquals(1, symptomIndex.getColumn(5));
+        assertEquals(2, symptomIndex.getColumn(7));
+        assertEquals(5, symptomIndex.getSymptomId(1));
+        assertEquals("vomiting", symptomIndex.getSymptomName(2));
+    }
+
+    @Test
+    void columnByName() {
+        assertEquals(0, symptomIndex.getColumn("sore throat"));
+        assertEquals(1, symptomIndex.getColumn("headache"));
+        assertEquals(-1, symptomIndex.getColumn("cough"));
+    }
+
+    @Test
+    void unknownSymptomId() {
+        assertEquals(-1, symptomIndex.getColumn(1));
+        assertEquals(-1, symptomIndex.getColumn(100));
+    }
+}
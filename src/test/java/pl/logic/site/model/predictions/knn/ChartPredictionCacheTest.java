@@ -0,0 +1,45 @@
+package pl.logic.site.model.predictions.knn;
+
+import org.junit.jupiter.api.Test;
+import pl.logic.site.model.mysql.Disease;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ChartPredictionCacheTest {
+    private final Disease flu = new Disease(1, "flu");
+
+    @Test
+    void entryIsValidOnlyForItsVersion() {
+        ChartPredictionCache cache = new ChartPredictionCache();
+        cache.put(10, 1, 3, flu, cache.stamp());
+
+        assertEquals(flu, cache.get(10, 3));
+        assertNull(cache.get(10, 4));
+        assertNull(cache.get(11, 3));
+    }
+
+    @Test
+    void invalidationRemovesEntries() {
+        ChartPredictionCache cache = new ChartPredictionCache();
+        cache.put(10, 1, 0, flu, cache.stamp());
+        cache.put(11, 1, 0, flu, cache.stamp());
+        cache.put(12, 2, 0, flu, cache.stamp());
+
+        cache.invalidateChart(12);
+        assertNull(cache.get(12, 0));
+        assertEquals(2, cache.size());
+
+        cache.invalidatePatient(1);
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    void staleCalculationIsNotStored() {
+        ChartPredictionCache cache = new ChartPredictionCache();
+        long stamp = cache.stamp();
+        cache.invalidateChart(10);
+        cache.put(10, 1, 0, flu, stamp);
+
+        assertNull(cache.get(10, 0));
+    }
+}
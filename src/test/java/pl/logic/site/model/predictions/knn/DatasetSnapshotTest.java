@@ -0,0 +1,99 @@
+package pl.logic.site.model.predictions.knn;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import pl.logic.site.model.enums.Status;
+import pl.logic.site.model.mysql.Chart;
+import pl.logic.site.model.mysql.Disease;
+import pl.logic.site.model.mysql.Patient;
+import pl.logic.site.model.predictions.features.DiseaseVector;
+import pl.logic.site.model.predictions.metric.EuclideanMetric;
+
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DatasetSnapshotTest {
+    private final EuclideanMetric euclideanMetric = new EuclideanMetric();
+    private Patient patient_1;
+    private Patient patient_2;
+    private DatasetSnapshot snapshot;
+
+    private DiseaseVector vector(Patient patient, String disease, String headache) {
+        return new DiseaseVector(new Disease(disease.length(), disease), patient, new String[]{headache, "null"});
+    }
+
+    @BeforeEach
+    void setUp() {
+        patient_1 = new Patient(1, "John", "Smith", new Date(0), 180, 80, "male", Status.ONLINE, "cm", "kg");
+        patient_2 = new Patient(2, "Anna", "Smith", new Date(0), 165, 60, "female", Status.ONLINE, "cm", "kg");
+        LinkedHashMap<Integer, List<DiseaseVector>> vectors = new LinkedHashMap<>();
+        vectors.put(1, List.of(vector(patient_1, "flu", "strong")));
+        vectors.put(2, List.of(vector(patient_2, "angina", "mild"), vector(patient_2, "migraine", "mild")));
+        snapshot = new DatasetSnapshot(0, List.of(patient_1, patient_2), List.of(), vectors,
+                matrix -> new VPTree(matrix, euclideanMetric));
+    }
+
+    @Test
+    void flattensVectorsInPatientOrder() {
+        assertEquals(3, snapshot.getDataset().size());
+        assertEquals("flu", snapshot.getDataset().get(0).getDisease().getName());
+        assertEquals(2, snapshot.getPatients().size());
+        assertThrows(UnsupportedOperationException.class, () -> snapshot.getDataset().add(null));
+    }
+
+    @Test
+    void changesCreateNewSnapshot() {
+        DatasetSnapshot replaced = snapshot.withPatient(patient_1, List.of());
+        DatasetSnapshot evicted = snapshot.withoutPatient(2);
+
+        assertEquals(3, snapshot.getDataset().size());
+        assertEquals(2, replaced.getDataset().size());
+        assertEquals(1, replaced.getVersion());
+        assertEquals(2, replaced.getPatients().size());
+        assertEquals(1, evicted.getDataset().size());
+        assertEquals(1, evicted.getPatients().size());
+        assertNotSame(snapshot.getKnn(), evicted.getKnn());
+    }
+
+    @Test
+    void chartChangesKeepKnnAndVersion() {
+        DatasetSnapshot added = snapshot.withChart(new Chart(7, 1, new Date(0)));
+        DatasetSnapshot unchangedPatient = added.withPatient(
+                new Patient(3, "Tom", "Brown", new Date(0), 170, 70, "male", Status.ONLINE, "cm", "kg"), List.of());
+
+        assertEquals(1, added.getCharts().size());
+        assertEquals(0, added.getVersion());
+        assertSame(snapshot.getKnn(), added.getKnn());
+        assertEquals(0, added.withoutChart(7).getCharts().size());
+        assertEquals(0, unchangedPatient.getVersion());
+        assertSame(snapshot.getKnn(), unchangedPatient.getKnn());
+        assertEquals(3, unchangedPatient.getPatients().size());
+    }
+
+    @Test
+    void unchangedVectorsKeepKnnAndVersion() {
+        List<DiseaseVector> sameVectors = List.of(vector(patient_2, "angina", "mild"), vector(patient_2, "migraine", "mild"));
+        Patient offline = new Patient(2, "Anna", "Smith", new Date(0), 165, 60, "female", Status.OFFLINE, "cm", "kg");
+
+        DatasetSnapshot statusChanged = snapshot.withPatient(offline, sameVectors);
+
+        assertSame(snapshot, snapshot.withPatient(patient_2, sameVectors));
+        assertEquals(0, statusChanged.getVersion());
+        assertSame(snapshot.getKnn(), statusChanged.getKnn());
+        assertTrue(statusChanged.getPatients().contains(offline));
+    }
+
+    @Test
+    void batchedChangesIncreaseVersionOnce() {
+        DatasetSnapshot changed = snapshot.withPatients(List.of(patient_1),
+                Map.of(1, List.of(vector(patient_1, "flu", "mild"))), List.of(2));
+
+        assertEquals(1, changed.getVersion());
+        assertEquals(1, changed.getDataset().size());
+        assertEquals(List.of(patient_1), changed.getPatients());
+    }
+}
@@ -0,0 +1,85 @@
+package pl.logic.site.model.predictions.knn;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import pl.logic.site.model.enums.Status;
+import pl.logic.site.model.mysql.Disease;
+import pl.logic.site.model.mysql.Patient;
+import pl.logic.site.model.predictions.features.DiseaseVector;
+import pl.logic.site.model.predictions.metric.EuclideanMetric;
+import pl.logic.site.model.predictions.quality.Result;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class KNNParallelTest {
+    private static final String[] VALUES = {"null", "mild", "moderate", "strong"};
+
+    private final EuclideanMetric euclideanMetric = new EuclideanMetric();
+    private List<Disease> diseases;
+    private List<DiseaseVector> learningSet;
+    private List<DiseaseVector> testingSet;
+
+    private DiseaseVector randomVector(Random random, Disease disease) {
+        Patient patient = new Patient(0, "John", "Smith", new Date(random.nextInt(1000) * 86_400_000L),
+                150 + random.nextInt(50), 50 + random.nextInt(50), random.nextBoolean() ? "male" : "female",
+                Status.ONLINE, "cm", "kg");
+        String[] symptoms = new String[6];
+        for (int i = 0; i < symptoms.length; i++) {
+            symptoms[i] = VALUES[random.nextInt(VALUES.length)];
+        }
+        return new DiseaseVector(disease, patient, symptoms);
+    }
+
+    @BeforeEach
+    void setUp() {
+        Random random = new Random(11);
+        this.diseases = List.of(new Disease(1, "flu"), new Disease(2, "migraine"), new Disease(3, "angina"));
+        this.learningSet = new ArrayList<>();
+        for (int i = 0; i < 500; i++) {
+            learningSet.add(randomVector(random, diseases.get(random.nextInt(diseases.size()))));
+        }
+        this.testingSet = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            testingSet.add(randomVector(random, null));
+        }
+    }
+
+    @Test
+    void parallelResultsAreIdenticalToSerial() {
+        KNN knn = new KNN(learningSet, matrix -> new VPTree(matrix, euclideanMetric));
+        for (int neighbours : new int[]{1, 5}) {
+            List<Result> serial = knn.classifyVectors(testingSet, neighbours, euclideanMetric, diseases);
+            for (int parallelism : new int[]{1, 3, 8}) {
+                ForkJoinPool pool = new ForkJoinPool(parallelism);
+                try {
+                    List<Result> parallel = knn.classifyVectors(testingSet, neighbours, euclideanMetric, diseases, pool);
+                    assertEquals(serial.size(), parallel.size());
+                    for (int i = 0; i < serial.size(); i++) {
+                        assertEquals(serial.get(i).getExpected(), parallel.get(i).getExpected());
+                        assertEquals(serial.get(i).getResult(), parallel.get(i).getResult());
+                    }
+                } finally {
+                    pool.shutdown();
+                }
+            }
+        }
+    }
+
+    @Test
+    void indexAndFullScanAgree() {
+        KNN indexed = new KNN(learningSet, matrix -> new VPTree(matrix, euclideanMetric));
+        KNN scanned = new KNN(learningSet);
+
+        List<Result> expected = scanned.classifyVectors(testingSet, 3, euclideanMetric, diseases);
+        List<Result> actual = indexed.classifyVectors(testingSet, 3, euclideanMetric, diseases);
+        for (int i = 0; i < expected.size(); i++) {
+            assertEquals(expected.get(i).getResult(), actual.get(i).getResult());
+        }
+    }
+}
@@ -0,0 +1,64 @@
+package pl.logic.site.model.predictions.knn;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class NeighbourHeapTest {
+
+    @Test
+    void keepsNearestRowsInOrder() {
+        NeighbourHeap heap = new NeighbourHeap(3);
+        heap.offer(0.5, 0);
+        heap.offer(0.1, 1);
+        heap.offer(0.9, 2);
+        assertEquals(0.9, heap.getRadius());
+        assertFalse(heap.offer(1.0, 3));
+        assertTrue(heap.offer(0.2, 4));
+
+        assertArrayEquals(new int[]{1, 4, 0}, heap.drainSorted());
+        assertEquals(0, heap.size());
+    }
+
+    @Test
+    void equalDistancesPreferLowerRow() {
+        NeighbourHeap heap = new NeighbourHeap(2);
+        heap.offer(0.3, 7);
+        heap.offer(0.3, 5);
+        assertTrue(heap.offer(0.3, 2));
+        assertFalse(heap.offer(0.3, 6));
+
+        assertArrayEquals(new int[]{2, 5}, heap.drainSorted());
+    }
+
+    @Test
+    void radiusIsInfiniteUntilFull() {
+        NeighbourHeap heap = new NeighbourHeap(2);
+        heap.offer(0.3, 1);
+        assertEquals(Double.POSITIVE_INFINITY, heap.getRadius());
+        heap.clear();
+        assertEquals(0, heap.size());
+        assertFalse(new NeighbourHeap(0).offer(0.1, 1));
+    }
+
+    @Test
+    void matchesFullSort() {
+        Random random = new Random(3);
+        double[] distances = new double[1000];
+        for (int i = 0; i < distances.length; i++) {
+            distances[i] = random.nextInt(50);
+        }
+        NeighbourHeap heap = new NeighbourHeap(10);
+        for (int i = 0; i < distances.length; i++) {
+            heap.offer(distances[i], i);
+        }
+        int[] expected = IntStream.range(0, distances.length).boxed()
+                .sorted((a, b) -> Double.compare(distances[a], distances[b]))
+                .limit(10).mapToInt(Integer::intValue).toArray();
+
+        assertArrayEquals(expected, heap.drainSorted());
+    }
+}
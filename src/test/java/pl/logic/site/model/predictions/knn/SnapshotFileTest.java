@@ -0,0 +1,134 @@
+package pl.logic.site.model.predictions.knn;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import pl.logic.site.model.enums.Status;
+import pl.logic.site.model.mysql.Disease;
+import pl.logic.site.model.mysql.Patient;
+import pl.logic.site.model.mysql.Symptom;
+import pl.logic.site.model.predictions.features.DiseaseVector;
+import pl.logic.site.model.predictions.features.FeatureMatrix;
+import pl.logic.site.model.predictions.features.SymptomIndex;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SnapshotFileTest {
+    private static final DatasetWatermark WATERMARK = new DatasetWatermark(
+            new DatasetWatermark.TableMark(2, 2, 11), new DatasetWatermark.TableMark(3, 5, 12),
+            new DatasetWatermark.TableMark(4, 9, 13), new DatasetWatermark.TableMark(3, 3, 14),
+            new DatasetWatermark.TableMark(3, 3, 15));
+
+    @TempDir
+    Path directory;
+
+    private final Disease flu = new Disease(1, "flu");
+    private final Disease angina = new Disease(2, "angina");
+    private final Disease migraine = new Disease(3, "migraine");
+    private final List<Disease> diseases = List.of(flu, angina, migraine);
+    private SymptomIndex symptomIndex;
+    private LinkedHashMap<Integer, List<DiseaseVector>> vectors;
+    private Path file;
+
+    @BeforeEach
+    void setUp() {
+        symptomIndex = new SymptomIndex(List.of(new Symptom(4, "headache"), new Symptom(7, "fever")));
+        Patient patient_1 = new Patient(1, "John", "Smith", new Date(86_400_000L * 9000), 180, 80, "male", Status.ONLINE, "cm", "kg");
+        Patient patient_2 = new Patient(2, "Anna", "Smith", new Date(86_400_000L * 7000 + 1), 165, 60, "female", Status.ONLINE, "cm", "kg");
+        vectors = new LinkedHashMap<>();
+        vectors.put(1, List.of(new DiseaseVector(flu, patient_1, new String[]{"strong", "null"})));
+        vectors.put(2, List.of(
+                new DiseaseVector(angina, patient_2, new String[]{"mild", "high"}),
+                new DiseaseVector(migraine, patient_2, new String[]{"mild", "high"}),
+                new DiseaseVector(flu, patient_2, new String[]{"null", "mild"})));
+        file = directory.resolve("snapshot.bin");
+    }
+
+    @Test
+    void shouldRestoreTheSameDataset() throws IOException {
+        SnapshotFile.write(file, WATERMARK, symptomIndex, vectors);
+
+        SnapshotFile.Stored stored = SnapshotFile.read(file, symptomIndex, diseases);
+
+        assertEquals(WATERMARK, stored.watermark());
+        assertEquals(List.of(1, 2), List.copyOf(stored.vectorsByPatient().keySet()));
+        FeatureMatrix expected = new FeatureMatrix(vectors.values().stream().flatMap(List::stream).toList());
+        FeatureMatrix restored = new FeatureMatrix(stored.vectorsByPatient().values().stream().flatMap(List::stream).toList());
+        assertArrayEquals(expected.getFeatures(), restored.getFeatures());
+        for (int row = 0; row < 4; row++) {
+            assertSame(expected.getLabel(row), restored.getLabel(row));
+        }
+        assertEquals(vectors.get(2).getFirst().getFeatureVector().getDateFeatures()[0],
+                stored.vectorsByPatient().get(2).getFirst().getFeatureVector().getDateFeatures()[0]);
+    }
+
+    @Test
+    void shouldStoreFeaturesOfTheSameChartOnce() throws IOException {
+        SnapshotFile.write(file, WATERMARK, symptomIndex, vectors);
+
+        List<DiseaseVector> restored = SnapshotFile.read(file, symptomIndex, diseases).vectorsByPatient().get(2);
+
+        assertSame(restored.get(0).getFeatureVector(), restored.get(1).getFeatureVector());
+        assertNotSame(restored.get(1).getFeatureVector(), restored.get(2).getFeatureVector());
+    }
+
+    @Test
+    void shouldRejectOtherSymptomColumns() throws IOException {
+        SnapshotFile.write(file, WATERMARK, symptomIndex, vectors);
+        SymptomIndex otherIndex = new SymptomIndex(List.of(new Symptom(4, "headache"), new Symptom(8, "fever")));
+
+        assertThrows(IOException.class, () -> SnapshotFile.read(file, otherIndex, diseases));
+    }
+
+    @Test
+    void shouldRejectUnknownDisease() throws IOException {
+        SnapshotFile.write(file, WATERMARK, symptomIndex, vectors);
+
+        assertThrows(IOException.class, () -> SnapshotFile.read(file, symptomIndex, List.of(flu, angina)));
+    }
+
+    @Test
+    void shouldRejectDamagedFile() throws IOException {
+        SnapshotFile.write(file, WATERMARK, symptomIndex, vectors);
+        byte[] content = Files.readAllBytes(file);
+        content[content.length / 2] ^= 1;
+        Files.write(file, content);
+
+        assertThrows(IOException.class, () -> SnapshotFile.read(file, symptomIndex, diseases));
+    }
+
+    @Test
+    void shouldRejectTruncatedFile() throws IOException {
+        SnapshotFile.write(file, WATERMARK, symptomIndex, vectors);
+        byte[] content = Files.readAllBytes(file);
+        Files.write(file, Arrays.copyOf(content, 6));
+
+        assertThrows(IOException.class, () -> SnapshotFile.read(file, symptomIndex, diseases));
+    }
+
+    @Test
+    void shouldReportMissingFile() {
+        assertThrows(NoSuchFileException.class, () -> SnapshotFile.read(file, symptomIndex, diseases));
+    }
+
+    @Test
+    void shouldReplaceExistingFile() throws IOException {
+        SnapshotFile.write(file, WATERMARK, symptomIndex, vectors);
+        LinkedHashMap<Integer, List<DiseaseVector>> fewer = new LinkedHashMap<>();
+        fewer.put(1, vectors.get(1));
+
+        SnapshotFile.write(file, WATERMARK, symptomIndex, fewer);
+
+        assertEquals(1, SnapshotFile.read(file, symptomIndex, diseases).vectorsByPatient().size());
+        assertFalse(Files.exists(directory.resolve("snapshot.bin.tmp")));
+    }
+}
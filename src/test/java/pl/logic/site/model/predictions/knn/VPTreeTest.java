@@ -0,0 +1,72 @@
+package pl.logic.site.model.predictions.knn;
+
+import org.junit.jupiter.api.Test;
+import pl.logic.site.model.mysql.Disease;
+import pl.logic.site.model.predictions.features.FeatureMatrix;
+import pl.logic.site.model.predictions.metric.EuclideanMetric;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class VPTreeTest {
+    private final EuclideanMetric euclideanMetric = new EuclideanMetric();
+
+    private FeatureMatrix randomMatrix(Random random, int rows, int columns, int distinctValues) {
+        double[] features = new double[rows * columns];
+        for (int i = 0; i < features.length; i++) {
+            features[i] = random.nextInt(distinctValues) / (double) distinctValues;
+        }
+        Disease[] labels = new Disease[rows];
+        for (int i = 0; i < rows; i++) {
+            labels[i] = new Disease(i % 5, "disease " + i % 5);
+        }
+        return new FeatureMatrix(features, labels, columns);
+    }
+
+    private double[] randomQuery(Random random, int columns, int distinctValues) {
+        double[] query = new double[columns];
+        for (int i = 0; i < columns; i++) {
+            query[i] = random.nextInt(distinctValues) / (double) distinctValues;
+        }
+        return query;
+    }
+
+    @Test
+    void findsTheSameRowsAsBruteForce() {
+        Random random = new Random(42);
+        FeatureMatrix featureMatrix = randomMatrix(random, 2000, 8, 100);
+        VPTree vpTree = new VPTree(featureMatrix, euclideanMetric);
+        BruteForceIndex bruteForce = new BruteForceIndex(featureMatrix, euclideanMetric);
+
+        for (int i = 0; i < 200; i++) {
+            double[] query = randomQuery(random, 8, 100);
+            for (int neighbours : new int[]{1, 3, 10}) {
+                assertArrayEquals(bruteForce.findNearest(query, neighbours), vpTree.findNearest(query, neighbours));
+            }
+        }
+    }
+
+    @Test
+    void tiesAreBrokenByRow() {
+        Random random = new Random(7);
+        FeatureMatrix featureMatrix = randomMatrix(random, 500, 3, 2);
+        VPTree vpTree = new VPTree(featureMatrix, euclideanMetric);
+        BruteForceIndex bruteForce = new BruteForceIndex(featureMatrix, euclideanMetric);
+
+        for (int i = 0; i < 50; i++) {
+            double[] query = randomQuery(random, 3, 2);
+            assertArrayEquals(bruteForce.findNearest(query, 5), vpTree.findNearest(query, 5));
+        }
+    }
+
+    @Test
+    void smallAndEmptyMatrices() {
+        Random random = new Random(1);
+        FeatureMatrix featureMatrix = randomMatrix(random, 3, 4, 10);
+        VPTree vpTree = new VPTree(featureMatrix, euclideanMetric);
+
+        assertEquals(3, vpTree.findNearest(randomQuery(random, 4, 10), 10).length);
+        assertEquals(0, new VPTree(randomMatrix(random, 0, 4, 10), euclideanMetric).findNearest(new double[4], 1).length);
+    }
+}
@@ -0,0 +1,101 @@
+package pl.logic.site.model.predictions.parser;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import pl.logic.site.model.enums.Status;
+import pl.logic.site.model.mysql.*;
+import pl.logic.site.model.predictions.features.DiseaseVector;
+import pl.logic.site.model.predictions.features.SymptomIndex;
+import pl.logic.site.repository.ChartRepository;
+import pl.logic.site.repository.DiagnosisRequestRepository;
+import pl.logic.site.repository.RecognitionRepository;
+
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class DatasetLoaderTest {
+    @Mock
+    private ChartRepository chartRepository;
+    @Mock
+    private RecognitionRepository recognitionRepository;
+    @Mock
+    private DiagnosisRequestRepository diagnosisRequestRepository;
+
+    private DatasetLoader datasetLoader;
+    private Patient patient_1;
+    private Patient patient_2;
+    private List<Chart> charts;
+
+    @BeforeEach
+    void setUp() {
+        List<Symptom> symptoms = List.of(new Symptom(1, "headache"), new Symptom(2, "cough"));
+        List<Disease> diseases = List.of(new Disease(1, "flu"), new Disease(2, "migraine"));
+        this.datasetLoader = new DatasetLoader(chartRepository, recognitionRepository, diagnosisRequestRepository,
+                new SymptomIndex(symptoms), diseases);
+        this.patient_1 = new Patient(1, "John", "Smith", new Date(0), 180, 80, "male", Status.ONLINE, "cm", "kg");
+        this.patient_2 = new Patient(2, "Anna", "Smith", new Date(0), 165, 60, "female", Status.ONLINE, "cm", "kg");
+        this.charts = List.of(new Chart(10, 1, new Date()), new Chart(11, 1, new Date()), new Chart(20, 2, new Date()));
+    }
+
+    private DiagnosisRequest diagnosisRequest(int id, int chartId, String diagnosis) {
+        return new DiagnosisRequest(id, chartId, 1, diagnosis, -1, "", new Date(), new Date());
+    }
+
+    @Test
+    void loadAllAssemblesVectorsInMemory() {
+        when(recognitionRepository.findAll()).thenReturn(List.of(
+                new Recognition(1, 10, 1, "strong"),
+                new Recognition(2, 11, 2, "mild"),
+                new Recognition(3, 20, 2, "moderate")));
+        when(diagnosisRequestRepository.findAll()).thenReturn(List.of(
+                diagnosisRequest(1, 10, "flu"),
+                diagnosisRequest(2, 20, "nothing serious")));
+
+        LinkedHashMap<Integer, List<DiseaseVector>> result = datasetLoader.loadAll(List.of(patient_1, patient_2), charts);
+
+        assertEquals(1, result.size());
+        List<DiseaseVector> vectors = result.get(1);
+        assertEquals(2, vectors.size());
+        assertEquals("flu", vectors.get(0).getDisease().getName());
+        assertEquals(0.8, vectors.get(0).getFeatureVector().getSymptomFeatures()[0], 0.001);
+        assertEquals(0.0, vectors.get(0).getFeatureVector().getSymptomFeatures()[1], 0.001);
+        assertEquals(0.0, vectors.get(1).getFeatureVector().getSymptomFeatures()[0], 0.001);
+        assertEquals(0.2, vectors.get(1).getFeatureVector().getSymptomFeatures()[1], 0.001);
+        assertEquals(1, datasetLoader.getChartOwner(11));
+        assertEquals(2, datasetLoader.getChartOwner(20));
+        verify(recognitionRepository, never()).findByIdChart(anyInt());
+    }
+
+    @Test
+    void loadPatientUsesSetBasedQueries() {
+        when(chartRepository.findAllByIdPatient(1)).thenReturn(charts.subList(0, 2));
+        when(recognitionRepository.findAllByIdChartIn(anyCollection())).thenReturn(List.of());
+        when(diagnosisRequestRepository.findAllByIdChartIn(anyCollection())).thenReturn(List.of(
+                diagnosisRequest(1, 10, "flu"),
+                diagnosisRequest(2, 11, "migraine")));
+
+        List<DiseaseVector> vectors = datasetLoader.loadPatient(patient_1);
+
+        assertEquals(4, vectors.size());
+        verify(recognitionRepository, times(1)).findAllByIdChartIn(anyCollection());
+        verify(diagnosisRequestRepository, times(1)).findAllByIdChartIn(anyCollection());
+    }
+
+    @Test
+    void loadPatientWithoutCharts() {
+        when(chartRepository.findAllByIdPatient(2)).thenReturn(List.of());
+
+        assertTrue(datasetLoader.loadPatient(patient_2).isEmpty());
+        assertNull(datasetLoader.getChartOwner(20));
+    }
+}
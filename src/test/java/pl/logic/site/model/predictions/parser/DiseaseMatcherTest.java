@@ -0,0 +1,119 @@
+package pl.logic.site.model.predictions.parser;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import pl.logic.site.model.mysql.DiagnosisRequest;
+import pl.logic.site.model.mysql.DiagnosisRequestDisease;
+import pl.logic.site.model.mysql.Disease;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DiseaseMatcherTest {
+    private List<Disease> diseases;
+    private DiseaseMatcher matcher;
+
+    @BeforeEach
+    void setUp() {
+        diseases = List.of(
+                new Disease(1, "pneumonia"),
+                new Disease(2, "motion sickness"),
+                new Disease(3, "arthritis"),
+                new Disease(4, "celiac disease"),
+                new Disease(5, "Lyme disease"),
+                new Disease(6, "disease"),
+                new Disease(7, "zapalenie płuc"),
+                new Disease(8, "rheumatoid arthritis"));
+        matcher = new DiseaseMatcher(diseases);
+    }
+
+    private List<Integer> ids(List<Disease> found) {
+        return found.stream().map(Disease::getId).toList();
+    }
+
+    @Test
+    void findsOverlappingNamesInTheOrderOfDiseases() {
+        assertEquals(List.of(3, 4, 6, 8), ids(matcher.match("Celiac disease with rheumatoid arthritis.")));
+    }
+
+    @Test
+    void ignoresCaseDiacriticsAndWhitespaceRuns() {
+        assertEquals(List.of(2, 5, 6), ids(matcher.match("MOTION\n  sickness or lyme DISEASE")));
+        assertEquals(List.of(7), ids(matcher.match("Zapalenie Płuc")));
+        assertEquals(List.of(7), ids(matcher.match("zapalenie pluc")));
+    }
+
+    @Test
+    void findsOnlyWholeWords() {
+        assertEquals(List.of(), ids(matcher.match("osteoarthritis, pneumonias")));
+        assertEquals(List.of(1), ids(matcher.match("(pneumonia)")));
+    }
+
+    @Test
+    void findsEveryDiseaseOnce() {
+        assertEquals(List.of(1), ids(matcher.match("pneumonia, pneumonia and pneumonia")));
+        assertEquals(List.of(), matcher.match(""));
+        assertEquals(List.of(), matcher.match(null));
+    }
+
+    @Test
+    void agreesWithSearchingEveryName() {
+        String diagnosis = "It could be lyme disease, pneumonia or motion sickness; arthritis is unlikely.";
+        List<Disease> expected = diseases.stream()
+                .filter(disease -> diagnosis.toLowerCase().contains(disease.getName().toLowerCase()))
+                .toList();
+        assertEquals(expected, matcher.match(diagnosis));
+    }
+
+    @Test
+    void memoisesByRequestUntilTheDiagnosisChanges() {
+        List<Disease> first = matcher.match(10, "pneumonia");
+        assertSame(first, matcher.match(10, "pneumonia"));
+        assertEquals(List.of(3), ids(matcher.match(10, "arthritis")));
+        assertEquals(1, matcher.memoSize());
+        matcher.forget(10);
+        assertEquals(0, matcher.memoSize());
+    }
+
+    @Test
+    void parserUsesTheMatcher() {
+        assertEquals(List.of(1), ids(new DiseaseParser("Pneumonia", matcher).getDiseases()));
+        assertEquals(List.of(1), ids(new DiseaseParser("Pneumonia", diseases).getDiseases()));
+    }
+
+    @Test
+    void remembersCurrentLinksWithoutParsing() {
+        DiagnosisRequest linked = new DiagnosisRequest(1, 1, 1, "text without names", -1, null, null, null);
+        DiagnosisRequest stale = new DiagnosisRequest(2, 1, 1, "pneumonia", -1, null, null, null);
+        DiagnosisRequest none = new DiagnosisRequest(3, 1, 1, "a cold", -1, null, null, null);
+        DiagnosisRequest oldDiseases = new DiagnosisRequest(4, 1, 1, "pneumonia", -1, null, null, null);
+        long diseasesCrc = matcher.getDiseasesChecksum();
+        int remembered = matcher.rememberLinks(List.of(linked, stale, none, oldDiseases), List.of(
+                new DiagnosisRequestDisease(1, 1, 3, DiseaseMatcher.checksum("text without names"), diseasesCrc),
+                new DiagnosisRequestDisease(2, 1, 1, DiseaseMatcher.checksum("text without names"), diseasesCrc),
+                new DiagnosisRequestDisease(3, 2, 3, DiseaseMatcher.checksum("old diagnosis"), diseasesCrc),
+                new DiagnosisRequestDisease(4, 3, -1, DiseaseMatcher.checksum("a cold"), diseasesCrc),
+                new DiagnosisRequestDisease(5, 4, -1, DiseaseMatcher.checksum("pneumonia"), diseasesCrc + 1)));
+
+        assertEquals(2, remembered);
+        assertEquals(List.of(1, 3), ids(matcher.match(1, "text without names")));
+        assertEquals(List.of(1), ids(matcher.match(2, "pneumonia")));
+        assertEquals(List.of(), matcher.match(3, "a cold"));
+        assertEquals(List.of(1), ids(matcher.match(4, "pneumonia")));
+    }
+
+    @Test
+    void diseasesChecksumChangesWithTheDiseases() {
+        assertEquals(matcher.getDiseasesChecksum(), new DiseaseMatcher(diseases).getDiseasesChecksum());
+        List<Disease> renamed = new ArrayList<>(diseases);
+        renamed.set(0, new Disease(renamed.get(0).getId(), "renamed"));
+        assertNotEquals(matcher.getDiseasesChecksum(), new DiseaseMatcher(renamed).getDiseasesChecksum());
+    }
+
+    @Test
+    void checksumIsCrc32OfUtf8() {
+        assertEquals(0x414FA339L, DiseaseMatcher.checksum("The quick brown fox jumps over the lazy dog"));
+    }
+}
@@ -0,0 +1,84 @@
+package pl.logic.site.model.predictions.statictic;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import pl.logic.site.model.mysql.ChartSymptom;
+import pl.logic.site.model.mysql.DiagnosisRequest;
+import pl.logic.site.model.mysql.Disease;
+
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.Date;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static pl.logic.site.model.predictions.statictic.StatisticPrediction.getDiseaseCountInDaysInterval;
+import static pl.logic.site.model.predictions.statictic.StatisticPrediction.getSymptomCountInDaysInterval;
+
+class DailyCountCubeTest {
+    private final LocalDate today = LocalDate.of(2024, 5, 20);
+    private List<Disease> diseases;
+    private DailyCountCube cube;
+
+    private DiagnosisRequest request(int id, int idChart, String diagnosis, int idDisease, LocalDate day) {
+        Date creationDate = Date.from(day.atStartOfDay(ZoneId.systemDefault()).toInstant());
+        return new DiagnosisRequest(id, idChart, 1, diagnosis, idDisease, null, creationDate, creationDate);
+    }
+
+    @BeforeEach
+    void setUp() {
+        diseases = List.of(new Disease(1, "pneumonia"), new Disease(2, "measles"));
+        List<ChartSymptom> chartSymptoms = List.of(
+                new ChartSymptom(1, 10, 5, "high"),
+                new ChartSymptom(2, 10, 6, "low"),
+                new ChartSymptom(3, 11, 5, "mild"));
+        cube = new DailyCountCube(List.of(
+                request(1, 10, null, 1, today.minusDays(1)),
+                request(2, 11, "it looks like measles", -1, today.minusDays(3)),
+                request(3, 10, null, 2, today.minusDays(40))), chartSymptoms, diseases);
+    }
+
+    @Test
+    void countsRangesOfDays() {
+        assertEquals(2, cube.getSymptomCount(5, today.minusDays(3), today));
+        assertEquals(1, cube.getSymptomCount(5, today.minusDays(2), today));
+        assertEquals(3, cube.getSymptomCount(5, today.minusDays(100), today.plusDays(100)));
+        assertEquals(1, cube.getDiseaseCount(2, today.minusDays(5), today));
+        assertEquals(0, cube.getDiseaseCount(1, today, today.plusDays(5)));
+        assertEquals(0, cube.getDiseaseCount(99, today.minusDays(5), today));
+    }
+
+    @Test
+    void keepsIntervalSemanticsOfStatisticPrediction() {
+        // requests created after today - daysInterval and before today
+        assertEquals(1, getDiseaseCountInDaysInterval(cube, 2, today, 1));
+        assertEquals(0, getDiseaseCountInDaysInterval(cube, 1, today, 1));
+        assertEquals(1, getSymptomCountInDaysInterval(cube, 3, today, 6));
+        assertEquals(1, getSymptomCountInDaysInterval(cube, 3, today, 5));
+    }
+
+    @Test
+    void updatesIncrementally() {
+        cube.putRequest(request(4, 11, null, 1, today.plusDays(500)));
+        cube.putRequest(request(1, 10, null, 2, today.minusDays(1)));
+        cube.removeRequest(3);
+
+        assertEquals(1, cube.getDiseaseCount(1, today.minusDays(1000), today.plusDays(1000)));
+        assertEquals(1, cube.getDiseaseCount(2, today.minusDays(2), today));
+        assertEquals(0, cube.getDiseaseCount(2, today.minusDays(50), today.minusDays(30)));
+        assertEquals(1, cube.getSymptomCount(5, today.plusDays(500), today.plusDays(501)));
+
+        cube.putChartSymptoms(10, List.of());
+        assertEquals(0, cube.getSymptomCount(6, today.minusDays(5), today));
+        assertEquals(3, cube.size());
+    }
+
+    @Test
+    void selectCountsOnlyGivenRequests() {
+        DailyCountCube selected = cube.select(List.of(request(2, 11, "it looks like measles", -1, today.minusDays(3))));
+
+        assertEquals(1, selected.getSymptomCount(5, today.minusDays(10), today));
+        assertEquals(1, selected.getDiseaseCount(2, today.minusDays(10), today));
+        assertEquals(1, selected.size());
+    }
+}
@@ -0,0 +1,71 @@
+package pl.logic.site.model.predictions.statictic;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.Date;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class IntervalCounterTest {
+    private final LocalDate today = LocalDate.of(2024, 5, 20);
+
+    private Date at(LocalDate day, int hour) {
+        return Date.from(day.atStartOfDay(ZoneId.systemDefault()).plusHours(hour).toInstant());
+    }
+
+    /**
+     * The filter the intervals used to be calculated with, applied once per interval.
+     */
+    private boolean inInterval(LocalDate creationDate, int daysInterval, LocalDate currentDate) {
+        return creationDate.isAfter(currentDate.minusDays(daysInterval)) && creationDate.isBefore(currentDate);
+    }
+
+    @Test
+    void countsLikeFilteringEveryIntervalSeparately() {
+        for (int daysInterval = 1; daysInterval <= 8; daysInterval++) {
+            IntervalCounter counter = new IntervalCounter(today, daysInterval, 5, List.of(7, 3));
+            for (int daysBefore = -2; daysBefore <= 50; daysBefore++) {
+                counter.add(at(today.minusDays(daysBefore), 12), daysBefore % 2 == 0 ? 7 : 3);
+            }
+            LocalDate currentDate = today;
+            for (int i = 0; i < 5; i++) {
+                int expected = 0;
+                int expectedEven = 0;
+                for (int daysBefore = -2; daysBefore <= 50; daysBefore++) {
+                    if (inInterval(today.minusDays(daysBefore), daysInterval, currentDate)) {
+                        expected++;
+                        if (daysBefore % 2 == 0) {
+                            expectedEven++;
+                        }
+                    }
+                }
+                assertEquals(expected, counter.getRequestCount(i), "interval " + i + " of " + daysInterval + " days");
+                assertEquals(expectedEven, counter.getDoctorCount(i, 0));
+                assertEquals(expected - expectedEven, counter.getDoctorCount(i, 1));
+                currentDate = currentDate.minusDays(daysInterval);
+            }
+        }
+    }
+
+    @Test
+    void rangeCoversAllIntervals() {
+        IntervalCounter counter = new IntervalCounter(today, 7, 5, List.of());
+        assertEquals(today.minusDays(34), counter.getFirstDay());
+        assertEquals(today, counter.getEndDay());
+        assertFalse(counter.isEmpty());
+        assertTrue(new IntervalCounter(today, 1, 5, List.of()).isEmpty());
+    }
+
+    @Test
+    void requestsOfUnknownDoctorsAreCountedOnlyInTotal() {
+        IntervalCounter counter = new IntervalCounter(today, 7, 5, List.of(1));
+        counter.add(at(today.minusDays(2), 0), 2);
+        counter.add(at(today.minusDays(2), 23), 1);
+        counter.add(null, 1);
+        assertEquals(2, counter.getRequestCount(0));
+        assertEquals(1, counter.getDoctorCount(0, 0));
+    }
+}
@@ -0,0 +1,158 @@
+package pl.logic.site.service.impl;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.ParameterizedPreparedStatementSetter;
+import pl.logic.site.model.enums.AuditOverflowPolicy;
+import pl.logic.site.model.enums.LogType;
+import pl.logic.site.model.mysql.Log;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collection;
+import java.util.Date;
+import java.util.List;
+
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+public class AuditLogWriterTest {
+    @Mock
+    private JdbcTemplate jdbcTemplate;
+    @TempDir
+    Path dir;
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+
+    private AuditLogWriter writer(int capacity, AuditOverflowPolicy policy) {
+        return new AuditLogWriter(jdbcTemplate, registry, capacity, 200, 10, policy, dir.resolve("spill.jsonl").toString());
+    }
+
+    private Log log(String message) {
+        return new Log(0, new Date(1_700_000_000_000L), message, LogType.create, "{}", 3);
+    }
+
+    private double entries(String outcome) {
+        return registry.get("audit.log.entries").tag("outcome", outcome).counter().count();
+    }
+
+    @SuppressWarnings("unchecked")
+    private ArgumentCaptor<Collection<Log>> batches() {
+        return ArgumentCaptor.forClass(Collection.class);
+    }
+
+    @Test
+    void shouldWriteQueuedLogsInOneBatch() throws Exception {
+        AuditLogWriter writer = writer(10, AuditOverflowPolicy.block);
+        writer.submit(log("a"));
+        writer.submit(log("b"));
+        writer.submit(log("c"));
+        Assertions.assertEquals(3, registry.get("audit.log.queue.depth").gauge().value());
+
+        Assertions.assertEquals(3, writer.drain(0));
+
+        ArgumentCaptor<Collection<Log>> batch = batches();
+        verify(jdbcTemplate, times(1)).batchUpdate(eq(AuditLogWriter.INSERT), batch.capture(), eq(200), any(ParameterizedPreparedStatementSetter.class));
+        Assertions.assertEquals(List.of("a", "b", "c"), batch.getValue().stream().map(Log::getMessage).toList());
+        Assertions.assertEquals(3, entries("written"));
+        Assertions.assertEquals(0, registry.get("audit.log.queue.depth").gauge().value());
+    }
+
+    @Test
+    void shouldDropLogsWhenQueueIsFull() {
+        AuditLogWriter writer = writer(1, AuditOverflowPolicy.drop);
+
+        Assertions.assertTrue(writer.submit(log("a")));
+        Assertions.assertFalse(writer.submit(log("b")));
+
+        Assertions.assertEquals(1, entries("dropped"));
+        verifyNoInteractions(jdbcTemplate);
+    }
+
+    @Test
+    void shouldSpillOverflowAndReplayItWhenIdle() throws Exception {
+        AuditLogWriter writer = writer(1, AuditOverflowPolicy.spill);
+        writer.submit(log("a"));
+        writer.submit(log("b"));
+        Assertions.assertEquals(1, entries("spilled"));
+        Assertions.assertTrue(Files.exists(dir.resolve("spill.jsonl")));
+
+        writer.replaySpill();
+
+        ArgumentCaptor<Collection<Log>> batch = batches();
+        verify(jdbcTemplate, times(1)).batchUpdate(eq(AuditLogWriter.INSERT), batch.capture(), eq(200), any(ParameterizedPreparedStatementSetter.class));
+        Assertions.assertEquals(List.of(log("b")), List.copyOf(batch.getValue()));
+        Assertions.assertFalse(Files.exists(dir.resolve("spill.jsonl")));
+        Assertions.assertFalse(Files.exists(dir.resolve("spill.jsonl.replay")));
+    }
+
+    @Test
+    void shouldRetryFailedBatchRowByRow() throws Exception {
+        AuditLogWriter writer = writer(10, AuditOverflowPolicy.block);
+        when(jdbcTemplate.batchUpdate(eq(AuditLogWriter.INSERT), anyCollection(), anyInt(), any(ParameterizedPreparedStatementSetter.class)))
+                .thenAnswer(invocation -> {
+                    Collection<Log> logs = invocation.getArgument(1);
+                    if (logs.size() > 1 || logs.iterator().next().getMessage().equals("bad"))
+                        throw new DataIntegrityViolationException("too long");
+                    return new int[][]{{1}};
+                });
+        writer.submit(log("a"));
+        writer.submit(log("bad"));
+        writer.submit(log("c"));
+
+        writer.drain(0);
+
+        Assertions.assertEquals(2, entries("written"));
+        Assertions.assertEquals(1, entries("failed"));
+    }
+
+    @Test
+    void shouldKeepSpilledLogsWhileDatabaseIsUnavailable() throws Exception {
+        AuditLogWriter writer = writer(1, AuditOverflowPolicy.spill);
+        writer.submit(log("a"));
+        writer.submit(log("b"));
+        writer.submit(log("c"));
+        when(jdbcTemplate.batchUpdate(eq(AuditLogWriter.INSERT), anyCollection(), anyInt(), any(ParameterizedPreparedStatementSetter.class)))
+                .thenThrow(new DataAccessResourceFailureException("connection refused"));
+
+        writer.replaySpill();
+
+        Path replay = dir.resolve("spill.jsonl.replay");
+        Assertions.assertTrue(Files.exists(replay));
+        Assertions.assertEquals(2, Files.readAllLines(replay).size());
+        Assertions.assertEquals(0, entries("failed"));
+
+        reset(jdbcTemplate);
+        writer.replaySpill();
+
+        ArgumentCaptor<Collection<Log>> batch = batches();
+        verify(jdbcTemplate, times(1)).batchUpdate(eq(AuditLogWriter.INSERT), batch.capture(), eq(200), any(ParameterizedPreparedStatementSetter.class));
+        Assertions.assertEquals(List.of(log("b"), log("c")), List.copyOf(batch.getValue()));
+        Assertions.assertFalse(Files.exists(replay));
+    }
+
+    @Test
+    void shouldSpillQueuedLogsWhileDatabaseIsUnavailable() throws Exception {
+        AuditLogWriter writer = writer(10, AuditOverflowPolicy.spill);
+        when(jdbcTemplate.batchUpdate(eq(AuditLogWriter.INSERT), anyCollection(), anyInt(), any(ParameterizedPreparedStatementSetter.class)))
+                .thenThrow(new DataAccessResourceFailureException("connection refused"));
+        writer.submit(log("a"));
+        writer.submit(log("b"));
+
+        writer.drain(0);
+
+        Assertions.assertEquals(2, Files.readAllLines(dir.resolve("spill.jsonl")).size());
+        Assertions.assertEquals(2, entries("spilled"));
+        Assertions.assertEquals(0, entries("failed"));
+    }
+}
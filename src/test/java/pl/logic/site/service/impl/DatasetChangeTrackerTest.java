@@ -0,0 +1,92 @@
+package pl.logic.site.service.impl;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import pl.logic.site.model.predictions.knn.DatasetWatermark;
+import pl.logic.site.model.predictions.knn.DatasetWatermark.TableMark;
+
+import java.util.List;
+import java.util.Set;
+
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+public class DatasetChangeTrackerTest {
+    private static final TableMark PATIENTS = new TableMark(2, 2, 11);
+    private static final TableMark CHARTS = new TableMark(3, 5, 12);
+    private static final TableMark RECOGNITIONS = new TableMark(4, 9, 13);
+    private static final TableMark DIAGNOSIS_REQUESTS = new TableMark(3, 3, 14);
+    private static final TableMark DISEASES = new TableMark(3, 3, 15);
+    private static final DatasetWatermark SAVED = new DatasetWatermark(PATIENTS, CHARTS, RECOGNITIONS,
+            DIAGNOSIS_REQUESTS, DISEASES);
+
+    @Mock
+    private JdbcTemplate jdbcTemplate;
+
+    private DatasetChangeTracker tracker;
+
+    @BeforeEach
+    void setUp() {
+        tracker = new DatasetChangeTracker(jdbcTemplate);
+    }
+
+    @SuppressWarnings("unchecked")
+    private void givenMark(String sql, long upToId, TableMark mark) {
+        when(jdbcTemplate.queryForObject(eq(sql), any(RowMapper.class), eq(upToId))).thenReturn(mark);
+    }
+
+    @Test
+    void shouldReadMarksOfWholeTables() {
+        givenMark(DatasetChangeTracker.PATIENT_MARK, Long.MAX_VALUE, PATIENTS);
+        givenMark(DatasetChangeTracker.CHART_MARK, Long.MAX_VALUE, CHARTS);
+        givenMark(DatasetChangeTracker.RECOGNITION_MARK, Long.MAX_VALUE, RECOGNITIONS);
+        givenMark(DatasetChangeTracker.DIAGNOSIS_REQUEST_MARK, Long.MAX_VALUE, DIAGNOSIS_REQUESTS);
+        givenMark(DatasetChangeTracker.DISEASE_MARK, Long.MAX_VALUE, DISEASES);
+
+        Assertions.assertEquals(SAVED, tracker.read());
+    }
+
+    @Test
+    void shouldCompareSavedRowsOnly() {
+        givenMark(DatasetChangeTracker.PATIENT_MARK, 2, PATIENTS);
+        givenMark(DatasetChangeTracker.CHART_MARK, 5, CHARTS);
+        givenMark(DatasetChangeTracker.RECOGNITION_MARK, 9, RECOGNITIONS);
+        givenMark(DatasetChangeTracker.DIAGNOSIS_REQUEST_MARK, 3, DIAGNOSIS_REQUESTS);
+        givenMark(DatasetChangeTracker.DISEASE_MARK, Long.MAX_VALUE, DISEASES);
+
+        Assertions.assertTrue(tracker.isAppendOnly(SAVED));
+    }
+
+    @Test
+    void shouldDetectChangedSavedRows() {
+        givenMark(DatasetChangeTracker.PATIENT_MARK, 2, PATIENTS);
+        givenMark(DatasetChangeTracker.CHART_MARK, 5, new TableMark(3, 5, 99));
+
+        Assertions.assertFalse(tracker.isAppendOnly(SAVED));
+        verify(jdbcTemplate, never()).queryForObject(eq(DatasetChangeTracker.RECOGNITION_MARK), any(RowMapper.class), anyLong());
+    }
+
+    @Test
+    void shouldDetectRemovedSavedRows() {
+        givenMark(DatasetChangeTracker.PATIENT_MARK, 2, new TableMark(1, 2, 11));
+
+        Assertions.assertFalse(tracker.isAppendOnly(SAVED));
+    }
+
+    @Test
+    void shouldFindChangedPatientsAfterTheSavedIds() {
+        when(jdbcTemplate.queryForList(DatasetChangeTracker.SELECT_CHANGED_PATIENTS, Integer.class,
+                2L, 5L, 9L, 3L)).thenReturn(List.of(8, 3, 8));
+
+        Set<Integer> changed = tracker.findChangedPatients(SAVED);
+
+        Assertions.assertEquals(List.of(3, 8), List.copyOf(changed));
+    }
+}
@@ -8,7 +8,9 @@ import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.context.ApplicationEventPublisher;
 import pl.logic.site.model.dao.DiagnosisRequestDAO;
+import pl.logic.site.model.events.DiagnosisRequestReassignedEvent;
 import pl.logic.site.model.exception.DeleteError;
 import pl.logic.site.model.exception.EntityNotFound;
 import pl.logic.site.model.exception.SaveError;
@@ -38,6 +40,8 @@ public class DiagnosisRequestImplTest {
     private MessageServiceImpl messageService;
     @Mock
     private DiagnosisRequestRepository diagnosisRequestRepository;
+    @Mock
+    private ApplicationEventPublisher eventPublisher;
     @InjectMocks
     private DiagnosisRequestServiceImpl diagnosisRequestService;
     DiagnosisRequest diagnosisRequestWithId0;
@@ -131,6 +135,17 @@ public class DiagnosisRequestImplTest {
         Assertions.assertEquals(diagnosisRequestWithId0, savedDiagnosisRequest);
     }
 
+    @Test
+    void shouldPublishPreviousDoctorOfReassignedDiagnosisRequest() {
+        DiagnosisRequest reassigned = new DiagnosisRequest(0, 1, 5, "", 1, "", new Date(), new Date());
+        when(diagnosisRequestRepository.findById(0)).thenReturn(Optional.of(diagnosisRequestWithId0));
+        when(diagnosisRequestRepository.saveAndFlush(any(DiagnosisRequest.class))).thenReturn(reassigned);
+
+        diagnosisRequestService.updateDiagnosisRequest(new DiagnosisRequestDAO(reassigned), 0);
+
+        verify(eventPublisher, times(1)).publishEvent(new DiagnosisRequestReassignedEvent(0, 0));
+    }
+
     @Test
     void shouldThrowWhileUpdatingNonExistingDiagnosisRequest() {
         when(diagnosisRequestRepository.findById(diagnosisRequestWithId0.getId())).thenReturn(Optional.empty());
@@ -0,0 +1,114 @@
+package pl.logic.site.service.impl;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import pl.logic.site.model.enums.ChangeType;
+import pl.logic.site.model.events.DiseaseChangedEvent;
+import pl.logic.site.model.mysql.Disease;
+import pl.logic.site.model.predictions.parser.DiseaseMatcher;
+import pl.logic.site.service.DiseaseService;
+
+import java.util.List;
+
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+public class DiseaseLinkBackfillTest {
+    @Mock
+    private JdbcTemplate jdbcTemplate;
+    @Mock
+    private PlatformTransactionManager transactionManager;
+    @Mock
+    private DiseaseService diseaseService;
+
+    private DiseaseLinkBackfill backfill;
+    private long diseasesCrc;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        List<Disease> diseases = List.of(new Disease(1, "pneumonia"), new Disease(2, "measles"));
+        when(diseaseService.getDiseases()).thenReturn(diseases);
+        diseasesCrc = new DiseaseMatcher(diseases).getDiseasesChecksum();
+        backfill = new DiseaseLinkBackfill(jdbcTemplate, new TransactionTemplate(transactionManager), diseaseService, 2);
+        backfill.init();
+        backfill.start();
+        backfill.awaitIdle(5000);
+    }
+
+    @AfterEach
+    void tearDown() {
+        backfill.stop();
+    }
+
+    @SuppressWarnings("unchecked")
+    private ArgumentCaptor<List<Object[]>> rows() {
+        return ArgumentCaptor.forClass(List.class);
+    }
+
+    @Test
+    void shouldResolveHistoryInBatchesAfterTheLastId() {
+        when(jdbcTemplate.query(eq(DiseaseLinkBackfill.SELECT_UNLINKED), any(RowMapper.class), eq(0), eq(diseasesCrc), eq(2)))
+                .thenReturn(List.of(new DiseaseLinkBackfill.Unlinked(3, "Pneumonia and measles"),
+                        new DiseaseLinkBackfill.Unlinked(5, "a cold")));
+        when(jdbcTemplate.query(eq(DiseaseLinkBackfill.SELECT_UNLINKED), any(RowMapper.class), eq(5), eq(diseasesCrc), eq(2)))
+                .thenReturn(List.of(new DiseaseLinkBackfill.Unlinked(8, "measles")));
+        when(jdbcTemplate.query(eq(DiseaseLinkBackfill.SELECT_UNLINKED), any(RowMapper.class), eq(8), eq(diseasesCrc), eq(2)))
+                .thenReturn(List.of());
+
+        Assertions.assertEquals(3, backfill.backfill());
+
+        ArgumentCaptor<List<Object[]>> inserts = rows();
+        verify(jdbcTemplate, times(2)).batchUpdate(eq(DiseaseLinkBackfill.INSERT), inserts.capture());
+        List<Object[]> first = inserts.getAllValues().getFirst();
+        long crc = DiseaseMatcher.checksum("Pneumonia and measles");
+        Assertions.assertEquals(3, first.size());
+        Assertions.assertArrayEquals(new Object[]{3, 1, crc, diseasesCrc}, first.get(0));
+        Assertions.assertArrayEquals(new Object[]{3, 2, crc, diseasesCrc}, first.get(1));
+        Assertions.assertArrayEquals(new Object[]{5, -1, DiseaseMatcher.checksum("a cold"), diseasesCrc}, first.get(2));
+        verify(jdbcTemplate, times(2)).batchUpdate(eq(DiseaseLinkBackfill.DELETE), anyList());
+        verify(transactionManager, times(2)).commit(any());
+    }
+
+    @Test
+    void shouldReplaceTheLinksOfARequest() {
+        backfill.link(List.of(new DiseaseLinkBackfill.Unlinked(4, "measles")));
+
+        ArgumentCaptor<List<Object[]>> deletes = rows();
+        verify(jdbcTemplate).batchUpdate(eq(DiseaseLinkBackfill.DELETE), deletes.capture());
+        Assertions.assertArrayEquals(new Object[]{4}, deletes.getValue().getFirst());
+        ArgumentCaptor<List<Object[]>> inserts = rows();
+        verify(jdbcTemplate).batchUpdate(eq(DiseaseLinkBackfill.INSERT), inserts.capture());
+        Assertions.assertArrayEquals(new Object[]{4, 2, DiseaseMatcher.checksum("measles"), diseasesCrc}, inserts.getValue().getFirst());
+    }
+
+    @Test
+    void shouldRelinkStaleLinksInBatchesAfterADiseaseChange() throws Exception {
+        List<Disease> changed = List.of(new Disease(1, "pneumonia"), new Disease(2, "measles"), new Disease(3, "flu"));
+        long changedCrc = new DiseaseMatcher(changed).getDiseasesChecksum();
+        when(diseaseService.getDiseases()).thenReturn(changed);
+        when(jdbcTemplate.query(eq(DiseaseLinkBackfill.SELECT_UNLINKED), any(RowMapper.class), eq(0), eq(changedCrc), eq(2)))
+                .thenReturn(List.of(new DiseaseLinkBackfill.Unlinked(6, "flu")));
+        when(jdbcTemplate.query(eq(DiseaseLinkBackfill.SELECT_UNLINKED), any(RowMapper.class), eq(6), eq(changedCrc), eq(2)))
+                .thenReturn(List.of());
+
+        backfill.onDiseaseChanged(new DiseaseChangedEvent(3, ChangeType.created));
+        backfill.awaitIdle(5000);
+
+        verify(jdbcTemplate, never()).update(anyString());
+        ArgumentCaptor<List<Object[]>> inserts = rows();
+        verify(jdbcTemplate).batchUpdate(eq(DiseaseLinkBackfill.INSERT), inserts.capture());
+        Assertions.assertArrayEquals(new Object[]{6, 3, DiseaseMatcher.checksum("flu"), changedCrc},
+                inserts.getValue().getFirst());
+    }
+}
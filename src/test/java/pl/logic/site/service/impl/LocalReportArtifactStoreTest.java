@@ -0,0 +1,60 @@
+package pl.logic.site.service.impl;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import pl.logic.site.model.ReportArtifact;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.util.stream.Stream;
+
+public class LocalReportArtifactStoreTest {
+    @TempDir
+    Path root;
+
+    private InputStream content(String text) {
+        return new ByteArrayInputStream(text.getBytes(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    void shouldAddressFilesByContentHash() throws Exception {
+        LocalReportArtifactStore store = new LocalReportArtifactStore(root.toString());
+
+        ReportArtifact artifact = store.save(content("abc"));
+
+        Assertions.assertEquals("ba7816bf8f01cfea414140de5dae2223b00361a396177a9cb410ff61f20015ad", artifact.hash());
+        Assertions.assertEquals(3, artifact.size());
+        Assertions.assertTrue(store.exists(artifact.hash()));
+        try (InputStream in = store.open(artifact.hash())) {
+            Assertions.assertEquals("abc", new String(in.readAllBytes(), StandardCharsets.UTF_8));
+        }
+    }
+
+    @Test
+    void shouldStoreIdenticalFilesOnce() throws Exception {
+        LocalReportArtifactStore store = new LocalReportArtifactStore(root.toString());
+
+        ReportArtifact first = store.save(content("Dates,flu\r\n"));
+        ReportArtifact second = store.save(content("Dates,flu\r\n"));
+        ReportArtifact other = store.save(content("Dates,cold\r\n"));
+
+        Assertions.assertEquals(first, second);
+        Assertions.assertNotEquals(first.hash(), other.hash());
+        try (Stream<Path> files = Files.walk(root)) {
+            Assertions.assertEquals(2, files.filter(Files::isRegularFile).count());
+        }
+    }
+
+    @Test
+    void shouldRejectUnknownAndInvalidHashes() {
+        LocalReportArtifactStore store = new LocalReportArtifactStore(root.toString());
+
+        Assertions.assertThrows(NoSuchFileException.class, () -> store.open("0".repeat(64)));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> store.open("../report"));
+    }
+}
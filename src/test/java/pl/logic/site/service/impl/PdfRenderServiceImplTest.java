@@ -0,0 +1,66 @@
+package pl.logic.site.service.impl;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+public class PdfRenderServiceImplTest {
+    private SimpleMeterRegistry registry;
+    private PdfRenderServiceImpl pdfRenderService;
+
+    @BeforeEach
+    void setUp() {
+        registry = new SimpleMeterRegistry();
+        pdfRenderService = new PdfRenderServiceImpl(registry, 2);
+        pdfRenderService.init();
+    }
+
+    @Test
+    void shouldRenderPdfWithoutClosingStream() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream() {
+            @Override
+            public void close() {
+                throw new AssertionError("stream closed");
+            }
+        };
+
+        pdfRenderService.render("<html><body><p>Report</p></body></html>", out);
+
+        Assertions.assertTrue(new String(out.toByteArray(), 0, 5, StandardCharsets.US_ASCII).startsWith("%PDF-"));
+        Assertions.assertEquals(1, registry.get("report.pdf.render").tag("outcome", "success").timer().count());
+    }
+
+    @Test
+    void shouldRenderConcurrentlyIntoSeparateOutputs() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<byte[]>> results = new ArrayList<>();
+            for (int i = 0; i < 8; i++) {
+                String html = "<p>Report " + i + "</p>";
+                results.add(executor.submit(() -> {
+                    ByteArrayOutputStream out = new ByteArrayOutputStream();
+                    pdfRenderService.render(html, out);
+                    return out.toByteArray();
+                }));
+            }
+            for (Future<byte[]> result : results) {
+                byte[] pdf = result.get();
+                Assertions.assertEquals("%PDF-", new String(pdf, 0, 5, StandardCharsets.US_ASCII));
+                Assertions.assertEquals("%%EOF", new String(pdf, pdf.length - 6, 5, StandardCharsets.US_ASCII));
+            }
+        } finally {
+            executor.shutdown();
+        }
+        Assertions.assertEquals(8, registry.get("report.pdf.render").tag("outcome", "success").timer().count());
+        Assertions.assertEquals(0, registry.get("report.pdf.render.waiting").gauge().value());
+    }
+}
@@ -0,0 +1,110 @@
+package pl.logic.site.service.impl;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class StatisticsCacheTest {
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private final Date from = new Date(0);
+    private final Date to = new Date(86_400_000L);
+
+    private static class MutableClock extends Clock {
+        private long millis;
+
+        @Override
+        public ZoneId getZone() {
+            return ZoneId.of("UTC");
+        }
+
+        @Override
+        public Clock withZone(ZoneId zone) {
+            return this;
+        }
+
+        @Override
+        public Instant instant() {
+            return Instant.ofEpochMilli(millis);
+        }
+    }
+
+    private double requests(String result) {
+        return registry.get("statistics.cache.requests").tag("result", result).counter().count();
+    }
+
+    @Test
+    void shouldCountHitsAndMisses() {
+        StatisticsCache cache = new StatisticsCache(registry, 10, Duration.ofMinutes(1), new MutableClock());
+        AtomicInteger loads = new AtomicInteger();
+
+        cache.get("diseases_date", 1, from, to, () -> List.of(List.of(loads.incrementAndGet())));
+        cache.get("diseases_date", 1, from, to, () -> List.of(List.of(loads.incrementAndGet())));
+        cache.get("diseases_date", 1, new Date(1), to, () -> List.of(List.of(loads.incrementAndGet())));
+
+        Assertions.assertEquals(2, loads.get());
+        Assertions.assertEquals(1, requests("hit"));
+        Assertions.assertEquals(2, requests("miss"));
+        Assertions.assertEquals(2, registry.get("statistics.cache.size").gauge().value());
+    }
+
+    @Test
+    void shouldExpireEntriesAfterTtl() {
+        MutableClock clock = new MutableClock();
+        StatisticsCache cache = new StatisticsCache(registry, 10, Duration.ofMinutes(1), clock);
+
+        cache.get("symptoms_date", 1, from, to, () -> List.of(List.of("old")));
+        clock.millis = 60_000;
+        List<List<Object>> table = cache.get("symptoms_date", 1, from, to, () -> List.of(List.of("new")));
+
+        Assertions.assertEquals(List.of(List.of("new")), table);
+        Assertions.assertEquals(1, registry.get("statistics.cache.evictions").counter().count());
+    }
+
+    @Test
+    void shouldEvictLeastRecentlyUsedEntry() {
+        StatisticsCache cache = new StatisticsCache(registry, 2, Duration.ofMinutes(1), new MutableClock());
+
+        cache.get("a", 1, from, to, () -> List.of());
+        cache.get("b", 1, from, to, () -> List.of());
+        cache.get("a", 1, from, to, () -> List.of());
+        cache.get("c", 1, from, to, () -> List.of());
+        cache.get("a", 1, from, to, () -> List.of());
+
+        Assertions.assertEquals(2, cache.size());
+        Assertions.assertEquals(2, requests("hit"));
+        Assertions.assertEquals(3, requests("miss"));
+    }
+
+    @Test
+    void shouldInvalidateOnlyTablesOfChangedDoctor() {
+        StatisticsCache cache = new StatisticsCache(registry, 10, Duration.ofMinutes(1), new MutableClock());
+        cache.get("diseases_date", 1, from, to, () -> List.of());
+        cache.get("diseases_date", 2, from, to, () -> List.of());
+
+        cache.invalidateDoctor(1);
+
+        Assertions.assertEquals(1, cache.size());
+        cache.get("diseases_date", 2, from, to, () -> List.of());
+        Assertions.assertEquals(1, requests("hit"));
+    }
+
+    @Test
+    void shouldNotStoreTableCalculatedDuringInvalidation() {
+        StatisticsCache cache = new StatisticsCache(registry, 10, Duration.ofMinutes(1), new MutableClock());
+
+        cache.get("diseases_date", 1, from, to, () -> {
+            cache.invalidateDoctor(1);
+            return List.of(List.of("stale"));
+        });
+
+        Assertions.assertEquals(0, cache.size());
+    }
+}
@@ -0,0 +1,315 @@
+package pl.logic.site.service.impl;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.Spy;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.test.util.ReflectionTestUtils;
+import pl.logic.site.model.ReportArtifact;
+import pl.logic.site.model.ReportProgress;
+import pl.logic.site.model.enums.ReportFiletype;
+import pl.logic.site.model.enums.ReportStatus;
+import pl.logic.site.model.enums.ReportType;
+import pl.logic.site.model.exception.EntityNotFound;
+import pl.logic.site.model.exception.SaveError;
+import pl.logic.site.model.enums.ChangeType;
+import pl.logic.site.model.events.DiagnosisRequestChangedEvent;
+import pl.logic.site.model.events.ChartChangedEvent;
+import pl.logic.site.model.events.DiagnosisRequestReassignedEvent;
+import pl.logic.site.model.events.PatientChangedEvent;
+import pl.logic.site.model.mysql.DiagnosisRequest;
+import pl.logic.site.model.mysql.Report;
+import pl.logic.site.model.reportsForms.ReportCreateForm;
+import pl.logic.site.model.mysql.Disease;
+import pl.logic.site.model.mysql.Symptom;
+import pl.logic.site.model.views.AgeCount;
+import pl.logic.site.model.views.DateCount;
+import pl.logic.site.repository.DiagnosisRequestRepository;
+import pl.logic.site.repository.DiseaseRepository;
+import pl.logic.site.repository.ReportRepository;
+import pl.logic.site.repository.SymptomRepository;
+import pl.logic.site.service.ReportArtifactStore;
+
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.Date;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+public class StatisticsServiceImplTest {
+    @Mock
+    private SymptomRepository symptomRepository;
+    @Mock
+    private DiseaseRepository diseaseRepository;
+    @Mock
+    private DiagnosisRequestRepository diagnosisRequestRepository;
+    @Mock
+    private ReportRepository reportRepository;
+    @Mock
+    private ThreadPoolTaskExecutor reportExecutor;
+    @Mock
+    private ReportArtifactStore reportArtifactStore;
+    @Spy
+    private StatisticsCache statisticsCache = new StatisticsCache(new SimpleMeterRegistry(), 100, Duration.ofMinutes(10));
+    @InjectMocks
+    private StatisticsServiceImpl statisticsService;
+
+    @AfterEach
+    void tearDown() {
+        statisticsService.stopInvalidation();
+    }
+
+    private Date date(int year, int month, int day) {
+        return Date.from(LocalDate.of(year, month, day).atStartOfDay(ZoneId.systemDefault()).toInstant());
+    }
+
+    private DateCount dateCount(String day, int id, long count) {
+        return new DateCount() {
+            public String getDay() { return day; }
+            public Integer getId() { return id; }
+            public Long getCount() { return count; }
+        };
+    }
+
+    private AgeCount ageCount(Integer age, int id, long count) {
+        return new AgeCount() {
+            public Integer getAge() { return age; }
+            public Integer getId() { return id; }
+            public Long getCount() { return count; }
+        };
+    }
+
+    @Test
+    void shouldReshapeDailyCountsIntoMonths() {
+        Date from = date(2024, 1, 10);
+        Date to = date(2024, 4, 5);
+        when(symptomRepository.findAll()).thenReturn(List.of(new Symptom(7, "cough"), new Symptom(3, "fever")));
+        when(diagnosisRequestRepository.countSymptomsByDay(1, from, to)).thenReturn(List.of(
+                dateCount("2024-01-12", 3, 2), dateCount("2024-01-30", 3, 1),
+                dateCount("2024-03-01", 7, 4), dateCount("2024-03-02", 99, 5)));
+
+        List<List<Object>> table = statisticsService.getSymptomsDate(1, from, to);
+
+        Assertions.assertEquals(List.of("Months", "cough", "fever"), table.get(0));
+        Assertions.assertEquals(List.of("2024-01", 0, 3), table.get(1));
+        Assertions.assertEquals(List.of("2024-02", 0, 0), table.get(2));
+        Assertions.assertEquals(List.of("2024-03", 4, 0), table.get(3));
+        verify(diagnosisRequestRepository, times(1)).countSymptomsByDay(1, from, to);
+    }
+
+    @Test
+    void shouldGroupAgesIntoAgeGroups() {
+        Date from = date(2024, 1, 1);
+        Date to = date(2024, 1, 31);
+        when(diseaseRepository.findAll()).thenReturn(List.of(new Disease(1, "flu"), new Disease(2, "measles")));
+        when(diagnosisRequestRepository.countDiseasesByAge(1, from, to)).thenReturn(List.of(
+                ageCount(4, 2, 1), ageCount(5, 2, 2), ageCount(40, 1, 3), ageCount(null, 1, 7)));
+
+        List<List<Object>> table = statisticsService.getDiseasesAgeGroups(1, from, to);
+
+        Assertions.assertEquals(List.of("0-5", 0, 3), table.get(1));
+        Assertions.assertEquals(List.of("31-50", 3, 0), table.get(5));
+        Assertions.assertEquals(List.of("71+", 0, 0), table.get(7));
+    }
+
+    @Test
+    void shouldFailOnlyUnfinishedReportsOfThisInstance() {
+        ReflectionTestUtils.setField(statisticsService, "instanceId", "node-a:8080");
+
+        statisticsService.failInterruptedReports();
+
+        verify(reportRepository, times(1)).updateUnfinished(eq(ReportStatus.failed), any(),
+                eq(List.of(ReportStatus.queued, ReportStatus.running)), eq("node-a:8080"), any(Date.class));
+    }
+
+    @Test
+    void shouldQueueReportAndReturnImmediately() {
+        ReportCreateForm form = new ReportCreateForm("title", ReportType.diseases_date, ReportFiletype.csv, new Date(), new Date(), 1);
+        when(reportRepository.save(any(Report.class))).thenAnswer(invocation -> {
+            Report report = invocation.getArgument(0);
+            report.setId(5);
+            return report;
+        });
+
+        Report report = statisticsService.createReport(form);
+
+        Assertions.assertEquals(5, report.getId());
+        Assertions.assertEquals(ReportStatus.queued, report.getStatus());
+        Assertions.assertNull(report.getFileHash());
+        verify(reportExecutor, times(1)).execute(any(Runnable.class));
+    }
+
+    @Test
+    void shouldRejectUnsupportedFiletype() {
+        ReportCreateForm form = new ReportCreateForm("title", ReportType.user, ReportFiletype.csv, new Date(), new Date(), 1);
+
+        Assertions.assertThrows(SaveError.class, () -> statisticsService.createReport(form));
+        verify(reportRepository, never()).save(any(Report.class));
+    }
+
+    @Test
+    void shouldFailReportWhenQueueIsFull() {
+        ReportCreateForm form = new ReportCreateForm("title", ReportType.diseases, ReportFiletype.pdf, new Date(), new Date(), 1);
+        when(reportRepository.save(any(Report.class))).thenAnswer(invocation -> {
+            Report report = invocation.getArgument(0);
+            report.setId(6);
+            return report;
+        });
+        doThrow(new TaskRejectedException("full")).when(reportExecutor).execute(any(Runnable.class));
+
+        Assertions.assertThrows(SaveError.class, () -> statisticsService.createReport(form));
+        verify(reportRepository, times(1)).updateProgress(6, ReportStatus.failed, 0, "Too many reports in the queue");
+    }
+
+    @Test
+    void shouldReportLegacyReportsAsDone() {
+        when(reportRepository.findProgressById(7)).thenReturn(Optional.of(new ReportProgress(7, null, null, null)));
+        when(reportRepository.findProgressById(8)).thenReturn(Optional.empty());
+
+        Assertions.assertEquals(new ReportProgress(7, ReportStatus.done, 100, null), statisticsService.getReportProgress(7));
+        Assertions.assertThrows(EntityNotFound.class, () -> statisticsService.getReportProgress(8));
+    }
+
+    @Test
+    void shouldStreamTableReportAsCSV() throws Exception {
+        Date from = date(2024, 1, 1);
+        Date to = date(2024, 1, 2);
+        when(symptomRepository.findAll()).thenReturn(List.of(new Symptom(7, "cough"), new Symptom(3, "fever, high")));
+        when(diagnosisRequestRepository.countSymptomsByDay(1, from, to)).thenReturn(List.of(dateCount("2024-01-02", 3, 2)));
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        statisticsService.writeCSVReport(ReportType.symptoms_date, 1, from, to, out);
+
+        Assertions.assertEquals("Dates,cough,\"fever, high\"\r\n2024-01-01,0,0\r\n2024-01-02,0,2\r\n",
+                out.toString(StandardCharsets.UTF_8));
+        Assertions.assertThrows(IllegalArgumentException.class,
+                () -> statisticsService.writeCSVReport(ReportType.user, 1, from, to, out));
+    }
+
+    @Test
+    void shouldStreamMonthlyReportFromOrderedDailyCounts() throws Exception {
+        Date from = date(2024, 1, 10);
+        Date to = date(2024, 4, 5);
+        when(diseaseRepository.findAll()).thenReturn(List.of(new Disease(4, "flu"), new Disease(5, "angina")));
+        when(diagnosisRequestRepository.countDiseasesByDay(1, from, to)).thenReturn(List.of(
+                dateCount("2023-12-31", 4, 9), dateCount("2024-01-12", 5, 2), dateCount("2024-01-30", 5, 1),
+                dateCount("2024-03-01", 4, 4), dateCount("2024-03-02", 99, 5), dateCount("2024-05-01", 4, 7)));
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        statisticsService.writeCSVReport(ReportType.diseases_date, 1, from, to, out);
+
+        Assertions.assertEquals("Months,flu,angina\r\n2024-01,0,3\r\n2024-02,0,0\r\n2024-03,4,0\r\n2024-04,0,0\r\n",
+                out.toString(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    void shouldKeepOnlyHashAndSizeOfGeneratedFile() throws Exception {
+        ReportCreateForm form = new ReportCreateForm("title", ReportType.diseases_date, ReportFiletype.csv, date(2024, 1, 1), date(2024, 1, 2), 1);
+        when(reportRepository.save(any(Report.class))).thenAnswer(invocation -> {
+            Report report = invocation.getArgument(0);
+            report.setId(9);
+            return report;
+        });
+        when(diseaseRepository.findAll()).thenReturn(List.of(new Disease(1, "flu")));
+        when(reportArtifactStore.save(any(InputStream.class))).thenAnswer(invocation -> {
+            byte[] bytes = invocation.<InputStream>getArgument(0).readAllBytes();
+            Assertions.assertEquals("Dates,flu\r\n2024-01-01,0\r\n2024-01-02,0\r\n", new String(bytes, StandardCharsets.UTF_8));
+            return new ReportArtifact("a".repeat(64), bytes.length);
+        });
+        when(reportRepository.completeReport(9, "a".repeat(64), 39)).thenReturn(1);
+
+        Report report = statisticsService.createReport(form);
+        ArgumentCaptor<Runnable> generation = ArgumentCaptor.forClass(Runnable.class);
+        verify(reportExecutor).execute(generation.capture());
+        generation.getValue().run();
+
+        Assertions.assertNotNull(report.getCreationDate());
+        verify(reportRepository, times(1)).completeReport(9, "a".repeat(64), 39);
+        verify(reportRepository, never()).updateProgress(eq(9), eq(ReportStatus.failed), anyInt(), any());
+    }
+
+    @Test
+    void shouldServeRepeatedTablesFromCacheUntilDoctorDataChanges() {
+        Date from = date(2024, 1, 1);
+        Date to = date(2024, 1, 31);
+        when(diseaseRepository.findAll()).thenReturn(List.of(new Disease(1, "flu")));
+        when(diagnosisRequestRepository.countDiseasesByAge(1, from, to)).thenReturn(List.of(ageCount(40, 1, 3)));
+        DiagnosisRequest diagnosisRequest = new DiagnosisRequest();
+        diagnosisRequest.setIdDoctor(1);
+
+        List<List<Object>> first = statisticsService.getDiseasesAgeGroups(1, from, to);
+        List<List<Object>> second = statisticsService.getDiseasesAgeGroups(1, from, to);
+        statisticsService.onDiagnosisRequestChanged(new DiagnosisRequestChangedEvent(diagnosisRequest, ChangeType.created));
+        statisticsService.getDiseasesAgeGroups(1, from, to);
+
+        Assertions.assertSame(first, second);
+        verify(diagnosisRequestRepository, times(2)).countDiseasesByAge(1, from, to);
+    }
+
+    @Test
+    void shouldInvalidatePreviousDoctorOfReassignedDiagnosisRequest() {
+        Date from = date(2024, 1, 1);
+        Date to = date(2024, 1, 31);
+        when(diseaseRepository.findAll()).thenReturn(List.of(new Disease(1, "flu")));
+        when(diagnosisRequestRepository.countDiseasesByAge(1, from, to)).thenReturn(List.of(ageCount(40, 1, 3)));
+
+        statisticsService.getDiseasesAgeGroups(1, from, to);
+        statisticsService.onDiagnosisRequestReassigned(new DiagnosisRequestReassignedEvent(4, 1));
+        statisticsService.getDiseasesAgeGroups(1, from, to);
+
+        verify(diagnosisRequestRepository, times(2)).countDiseasesByAge(1, from, to);
+    }
+
+    @Test
+    void shouldInvalidateDoctorsOfChangedChartsAfterCommit() throws Exception {
+        Date from = date(2024, 1, 1);
+        Date to = date(2024, 1, 31);
+        when(diseaseRepository.findAll()).thenReturn(List.of(new Disease(1, "flu")));
+        when(diagnosisRequestRepository.countDiseasesByAge(1, from, to)).thenReturn(List.of(ageCount(40, 1, 3)));
+        when(diagnosisRequestRepository.findDoctorIdsByChartIn(Set.of(5))).thenReturn(List.of(1));
+
+        statisticsService.getDiseasesAgeGroups(1, from, to);
+        statisticsService.onChartChanged(new ChartChangedEvent(5, null, ChangeType.updated));
+        statisticsService.onChartChanged(new ChartChangedEvent(5, null, ChangeType.updated));
+        statisticsService.awaitInvalidations(5000);
+        statisticsService.getDiseasesAgeGroups(1, from, to);
+
+        verify(diagnosisRequestRepository, times(2)).countDiseasesByAge(1, from, to);
+        verify(diagnosisRequestRepository, never()).findAllByIdChart(anyInt());
+    }
+
+    @Test
+    void shouldInvalidateDoctorsOfPatientOnlyWhenBirthDateChanges() throws Exception {
+        when(diagnosisRequestRepository.findDoctorIdsByPatientIn(Set.of(2))).thenReturn(List.of(1));
+
+        statisticsService.onPatientChanged(new PatientChangedEvent(2, date(1990, 5, 1), ChangeType.updated));
+        statisticsService.awaitInvalidations(5000);
+        statisticsService.onPatientChanged(new PatientChangedEvent(2, date(1990, 5, 1), ChangeType.updated));
+        statisticsService.awaitInvalidations(5000);
+        statisticsService.onPatientChanged(new PatientChangedEvent(2, date(1991, 5, 1), ChangeType.updated));
+        statisticsService.awaitInvalidations(5000);
+
+        verify(diagnosisRequestRepository, times(2)).findDoctorIdsByPatientIn(Set.of(2));
+        verify(statisticsCache, times(2)).invalidateDoctor(1);
+        verify(statisticsCache, never()).invalidateAll();
+    }
+}
@@ -0,0 +1,75 @@
+package pl.logic.site.utils;
+
+import com.itextpdf.html2pdf.HtmlConverter;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.w3c.dom.Document;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.List;
+
+public class BarChartTest {
+    private BarChart chart() {
+        return new BarChart(800, 600, List.of("0-5", "6-10", "71+"))
+                .addSeries(new BarChart.Series("All Patients", 0, 0, 128, List.of(3, 12, 0)))
+                .addSeries(new BarChart.Series("My <Patients>", 0, 0, 255, List.of(1, 4, 0)));
+    }
+
+    @Test
+    void shouldRenderWellFormedSvgWithBarPerValue() throws Exception {
+        Document svg = DocumentBuilderFactory.newInstance().newDocumentBuilder()
+                .parse(new ByteArrayInputStream(chart().toSvg().getBytes(StandardCharsets.UTF_8)));
+
+        // background + 6 bars + 2 legend boxes
+        Assertions.assertEquals(9, svg.getElementsByTagName("rect").getLength());
+        Assertions.assertEquals("svg", svg.getDocumentElement().getTagName());
+        Assertions.assertTrue(chart().toSvg().contains("My &lt;Patients&gt;"));
+    }
+
+    @Test
+    void shouldKeepNonAsciiLabelsWellFormed() throws Exception {
+        String svg = new BarChart(400, 300, List.of("Zapalenie płuc", "Żółtaczka"))
+                .addSeries(new BarChart.Series("Moi pacjenci & ich choroby", 0, 0, 255, List.of(2, 1)))
+                .toSvg();
+
+        Document document = DocumentBuilderFactory.newInstance().newDocumentBuilder()
+                .parse(new ByteArrayInputStream(svg.getBytes(StandardCharsets.UTF_8)));
+
+        Assertions.assertEquals("svg", document.getDocumentElement().getTagName());
+        Assertions.assertTrue(svg.contains("Żółtaczka"));
+        Assertions.assertTrue(svg.contains("Moi pacjenci &amp; ich choroby"));
+    }
+
+    @Test
+    void shouldChooseRoundTickSteps() {
+        Assertions.assertEquals(1, BarChart.tickStep(0));
+        Assertions.assertEquals(1, BarChart.tickStep(5));
+        Assertions.assertEquals(5, BarChart.tickStep(12));
+        Assertions.assertEquals(20, BarChart.tickStep(73));
+        Assertions.assertEquals(1000, BarChart.tickStep(4321));
+    }
+
+    @Test
+    void shouldEmbedAsDataUri() {
+        String uri = chart().toDataUri();
+
+        Assertions.assertTrue(uri.startsWith("data:image/svg+xml;base64,"));
+        String svg = new String(Base64.getDecoder().decode(uri.substring(uri.indexOf(',') + 1)), StandardCharsets.UTF_8);
+        Assertions.assertEquals(chart().toSvg(), svg);
+        ByteArrayOutputStream pdf = new ByteArrayOutputStream();
+        HtmlConverter.convertToPdf("<img src=\"" + uri + "\" width=\"60%\">", pdf);
+        Assertions.assertTrue(pdf.toString(StandardCharsets.ISO_8859_1).contains("/XObject"));
+    }
+
+    @Test
+    void shouldRejectSeriesOfWrongLength() {
+        BarChart chart = new BarChart(800, 600, List.of("a", "b"));
+
+        Assertions.assertThrows(IllegalArgumentException.class,
+                () -> chart.addSeries(new BarChart.Series("s", 0, 0, 0, List.of(1))));
+    }
+}
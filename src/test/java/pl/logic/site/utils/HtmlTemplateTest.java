@@ -0,0 +1,49 @@
+package pl.logic.site.utils;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+
+public class HtmlTemplateTest {
+    @Test
+    void shouldFillEveryOccurrenceInSinglePass() {
+        HtmlTemplate template = new HtmlTemplate("<b>{to}</b> {from}-{to}<!--T--><!--T2-->", List.of("{from}", "{to}", "<!--T-->", "<!--T2-->"));
+
+        String html = template.render(Map.of("{from}", "{to}", "{to}", "2024-01-31", "<!--T-->", "a<b",
+                "<!--T2-->", (HtmlTemplate.Fragment) out -> out.append("<tr></tr>")));
+
+        Assertions.assertEquals("<b>2024-01-31</b> {to}-2024-01-31a&lt;b<tr></tr>", html);
+    }
+
+    @Test
+    void shouldLeaveMissingPlaceholdersEmpty() {
+        HtmlTemplate template = new HtmlTemplate("{a}{b}.", List.of("{a}", "{b}"));
+
+        Assertions.assertEquals("x.", template.render(Map.of("{a}", "x")));
+    }
+
+    @Test
+    void shouldNestFragmentsInOneBuilder() {
+        HtmlTemplate table = new HtmlTemplate("<table>{rows}</table>", List.of("{rows}"));
+        HtmlTemplate page = new HtmlTemplate("<body>{table}</body>", List.of("{table}"));
+        StringBuilder out = new StringBuilder();
+
+        page.render(out, Map.of("{table}", (HtmlTemplate.Fragment) o ->
+                table.render(o, Map.of("{rows}", (HtmlTemplate.Fragment) r -> r.append("<tr></tr>")))));
+
+        Assertions.assertEquals("<body><table><tr></tr></table></body>", out.toString());
+    }
+
+    @Test
+    void shouldLoadReportTemplatesFromClasspath() {
+        HtmlTemplate template = HtmlTemplate.load("static/pdf/_data_table.html", List.of("{table_title}", "<!-- Dynamic Table Rows -->"));
+
+        String html = template.render(Map.of("{table_title}", "Symptoms", "<!-- Dynamic Table Rows -->", (HtmlTemplate.Fragment) out -> out.append("<tr></tr>")));
+
+        Assertions.assertTrue(html.contains("<tbody>\n                <tr></tr>\n"));
+        Assertions.assertFalse(html.contains("{table_title}"));
+        Assertions.assertThrows(IllegalStateException.class, () -> HtmlTemplate.load("static/pdf/missing.html", List.of()));
+    }
+}
@@ -0,0 +1,50 @@
+package pl.logic.site.utils.predictions;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ValueEncoderTest {
+    @Test
+    void encodesEveryDictionaryValue() {
+        for (Map.Entry<String, Double> entry : SymptomsDict.symptomsDict.entrySet()) {
+            byte code = ValueEncoder.SYMPTOM_VALUES.code(entry.getKey());
+            assertNotEquals(ValueEncoder.ABSENT, code);
+            assertEquals(entry.getKey(), ValueEncoder.SYMPTOM_VALUES.value(code));
+            assertEquals(entry.getValue(), ValueEncoder.SYMPTOM_VALUES.weight(code));
+        }
+        assertEquals(SymptomsDict.symptomsDict.size() + 1, ValueEncoder.SYMPTOM_VALUES.size());
+    }
+
+    @Test
+    void codesFollowTheOrderOfTheDictionary() {
+        assertEquals(1, ValueEncoder.GENDERS.code("male"));
+        assertEquals(2, ValueEncoder.GENDERS.code("female"));
+        assertEquals(3, ValueEncoder.GENDERS.code("other"));
+        assertEquals(1, ValueEncoder.SYMPTOM_VALUES.code("null"));
+    }
+
+    @Test
+    void unknownValuesAreAbsent() {
+        assertEquals(ValueEncoder.ABSENT, ValueEncoder.SYMPTOM_VALUES.code("unheard of"));
+        assertEquals(ValueEncoder.ABSENT, ValueEncoder.SYMPTOM_VALUES.code(null));
+        assertEquals(0.0, ValueEncoder.SYMPTOM_VALUES.weight(ValueEncoder.ABSENT));
+        assertNull(ValueEncoder.SYMPTOM_VALUES.value(ValueEncoder.ABSENT));
+    }
+
+    @Test
+    void decodesCodesIntoTheTarget() {
+        byte[] codes = {ValueEncoder.SYMPTOM_VALUES.code("severe"), ValueEncoder.ABSENT, ValueEncoder.SYMPTOM_VALUES.code("mild")};
+        double[] target = new double[5];
+        ValueEncoder.SYMPTOM_VALUES.decode(codes, target, 2);
+        assertArrayEquals(new double[]{0.0, 0.0, 0.95, 0.0, 0.2}, target);
+    }
+
+    @Test
+    void dictionariesAreImmutable() {
+        assertThrows(UnsupportedOperationException.class, () -> SymptomsDict.symptomsDict.put("new", 1.0));
+        assertThrows(UnsupportedOperationException.class, () -> GenderDict.genderDict.put("new", 1.0));
+    }
+}